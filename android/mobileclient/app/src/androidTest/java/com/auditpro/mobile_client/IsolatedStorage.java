@@ -0,0 +1,173 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+
+import com.auditpro.mobile_client.database.BaseDatabase;
+
+import org.junit.rules.ExternalResource;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * Gives each test its own databases, files and preferences, so that running the tests on a
+ * device never deletes the user's audits or changes their settings.
+ * <p>
+ * Tests declare the rule and build databases, uploaders and settings with {@link #getContext()}
+ * in place of the target context.  Everything the test wrote is removed after it runs.
+ * @author Eric Ruck
+ */
+public class IsolatedStorage extends ExternalResource {
+
+	/**
+	 * Gets the context that keeps the test's storage apart from the application's.
+	 * @return Isolated context, valid while the test runs
+	 */
+	public Context getContext() {
+		return context;
+	}
+
+	@Override
+	protected void before() {
+		// Start clean in case an earlier run was killed before its tear down
+		Context target = InstrumentationRegistry.getTargetContext();
+		context = new IsolatedContext(target, new File(target.getCacheDir(), DIR_NAME));
+		BaseDatabase.closeIdleConnections();
+		deleteTree(context.root);
+	}
+
+	@Override
+	protected void after() {
+		// Close our connections before removing the files under them
+		BaseDatabase.closeIdleConnections();
+		deleteTree(context.root);
+		context.clearPreferences();
+		context = null;
+	}
+
+	/**
+	 * Deletes a file, or a directory and everything under it.
+	 * @param file File or directory to delete
+	 */
+	private static void deleteTree(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				deleteTree(child);
+			}
+		}
+		//noinspection ResultOfMethodCallIgnored
+		file.delete();
+	}
+
+	/**
+	 * Redirects the database, file and preference storage of the target context to a private
+	 * directory.  SQLiteOpenHelper opens through openOrCreateDatabase before API 27 and through
+	 * getDatabasePath after, so both are redirected.
+	 */
+	private static class IsolatedContext extends ContextWrapper {
+
+		IsolatedContext(Context base, File root) {
+			super(base);
+			this.root = root;
+		}
+
+		@Override
+		public Context getApplicationContext() {
+			// Keep the redirection when code asks for the application context
+			return this;
+		}
+
+		@Override
+		public File getDatabasePath(String name) {
+			return new File(makeDir("databases"), name);
+		}
+
+		@Override
+		public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+				SQLiteDatabase.CursorFactory factory) {
+			return openOrCreateDatabase(name, mode, factory, null);
+		}
+
+		@Override
+		public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+				SQLiteDatabase.CursorFactory factory, DatabaseErrorHandler errorHandler) {
+			int flags = SQLiteDatabase.CREATE_IF_NECESSARY;
+			if ((mode & Context.MODE_ENABLE_WRITE_AHEAD_LOGGING) != 0) {
+				flags |= SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING;
+			}
+			return SQLiteDatabase.openDatabase(getDatabasePath(name).getPath(), factory, flags,
+					errorHandler);
+		}
+
+		@Override
+		public boolean deleteDatabase(String name) {
+			return SQLiteDatabase.deleteDatabase(getDatabasePath(name));
+		}
+
+		@Override
+		public File getFilesDir() {
+			return makeDir("files");
+		}
+
+		@Override
+		public File getCacheDir() {
+			return makeDir("cache");
+		}
+
+		@Override
+		public SharedPreferences getSharedPreferences(String name, int mode) {
+			// Remember the name so the tear down can clear what the test wrote
+			prefsNames.add(name);
+			return super.getSharedPreferences(PREFS_PREFIX + name, mode);
+		}
+
+		/**
+		 * Clears every preference the test has written.
+		 */
+		void clearPreferences() {
+			for (String name : prefsNames) {
+				super.getSharedPreferences(PREFS_PREFIX + name, Context.MODE_PRIVATE).edit()
+						.clear().commit();
+			}
+		}
+
+		/**
+		 * Gets a directory under the isolated root, creating it if necessary.
+		 * @param name Directory name
+		 * @return Existing directory
+		 */
+		private File makeDir(String name) {
+			File dir = new File(root, name);
+			//noinspection ResultOfMethodCallIgnored
+			dir.mkdirs();
+			return dir;
+		}
+
+		/** Holds everything the test writes to storage. */
+		private final File root;
+
+		/** Names of the preferences the test has opened, before the prefix. */
+		private final Set<String> prefsNames = new HashSet<>();
+	}
+
+	/** Directory under the target cache that holds the isolated storage. */
+	private static final String DIR_NAME = "isolated-test";
+
+	/** Keeps isolated preferences apart from the application's. */
+	private static final String PREFS_PREFIX = "isolated-test.";
+
+	/** Context for the running test. */
+	private IsolatedContext context;
+}
@@ -0,0 +1,193 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Shares one client between threads calling a stand-in server, and checks that each call gets
+ * its own result and that connections are kept alive and reused between calls.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ApiClientConcurrencyTest {
+
+	@BeforeClass
+	public static void setUpReporting() {
+		StandInServer.startReporting(InstrumentationRegistry.getTargetContext());
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		context = InstrumentationRegistry.getTargetContext();
+
+		// Echo the caller's tag, answering not modified or failing by the tag number
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				if ("POST".equals(request.method)) {
+					return StandInServer.Response.success();
+				}
+				String tag = request.getHeader("If-None-Match");
+				int number = Integer.parseInt(tag.replace("\"", ""));
+				if (number % 3 == 1) {
+					return new StandInServer.Response(304, new byte[0]).header("ETag", tag);
+				} else if (number % 3 == 2) {
+					return StandInServer.Response.json(500, ApiResult.ERROR_STATUS, null);
+				}
+				return StandInServer.Response.json(200, ApiResult.SUCCESS_STATUS,
+						"[{\"store_id\":" + number + "}]").header("ETag", tag);
+			}
+		});
+		api = new ApiClient("token", server.getTransport());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void reusesConnection() throws IOException {
+		// Calls that succeed, are not modified, fail and post all release their connection
+		for (int number = 0; number < SEQUENTIAL_CALLS; ++number) {
+			download(number);
+		}
+		ApiResult<Void> posted = api.postPayload(new PayloadSource() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write("{}".getBytes(StandardCharsets.UTF_8));
+			}
+		}, null);
+		assertTrue(posted.getMessage(), posted.isSuccess());
+		download(SEQUENTIAL_CALLS);
+
+		// Every call used the first connection
+		List<StandInServer.Request> requests = server.getRequests();
+		assertEquals(SEQUENTIAL_CALLS + 2, requests.size());
+		for (StandInServer.Request request : requests) {
+			assertEquals(1, request.connectionId);
+		}
+		assertEquals(1, server.getConnectionCount());
+	}
+
+	@Test
+	public void keepsResultsPerCall() throws Exception {
+		// Start every thread at once so the calls overlap
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<Integer>> calls = new ArrayList<>();
+			for (int thread = 0; thread < THREADS; ++thread) {
+				final int first = thread * CALLS_PER_THREAD;
+				calls.add(callers.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						start.await();
+						for (int number = first; number < first + CALLS_PER_THREAD; ++number) {
+							download(number);
+						}
+						return CALLS_PER_THREAD;
+					}
+				}));
+			}
+			start.countDown();
+			int total = 0;
+			for (Future<Integer> call : calls) {
+				total += call.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+			}
+			assertEquals(THREADS * CALLS_PER_THREAD, total);
+		} finally {
+			callers.shutdownNow();
+		}
+
+		// Connections went back to the pool for the other threads
+		assertEquals(THREADS * CALLS_PER_THREAD, server.getRequests().size());
+		assertTrue("Opened " + server.getConnectionCount(), server.getConnectionCount() <= THREADS);
+	}
+
+	/**
+	 * Downloads with a numbered validator and checks the result is the one for that number.
+	 * @param number Numbers the call
+	 * @throws IOException Failed to create or read the spool
+	 */
+	private void download(int number) throws IOException {
+		String tag = "\"" + number + "\"";
+		File spool = File.createTempFile("stores", ".json", context.getCacheDir());
+		try {
+			ApiResult<File> res = api.downloadStores(new CacheValidator(tag, null), spool);
+			if (number % 3 == 1) {
+				// Not modified keeps the validator sent
+				assertTrue(res.isSuccess());
+				assertTrue(res.isNotModified());
+				assertEquals(tag, res.getCacheValidator().getETag());
+				assertEquals(0, spool.length());
+			} else if (number % 3 == 2) {
+				// Failure carries its own status
+				assertFalse(res.isSuccess());
+				assertEquals(500, res.getResponseCode());
+				assertNull(res.getCacheValidator());
+			} else {
+				// Success carries its own validator and body
+				assertTrue(res.getMessage(), res.isSuccess());
+				assertFalse(res.isNotModified());
+				assertEquals(tag, res.getCacheValidator().getETag());
+				assertEquals(spool, res.getData());
+				assertTrue(readFile(spool).contains("\"store_id\":" + number + "}"));
+			}
+		} finally {
+			assertTrue(spool.delete());
+		}
+	}
+
+	/**
+	 * Reads a small file as text.
+	 * @param file File to read
+	 * @return File contents
+	 * @throws IOException Failed to read the file
+	 */
+	private static String readFile(File file) throws IOException {
+		try (InputStream ins = new FileInputStream(file)) {
+			Scanner scanner = new Scanner(ins, "UTF-8").useDelimiter("\\A");
+			return scanner.hasNext() ? scanner.next() : "";
+		}
+	}
+
+	private static final int SEQUENTIAL_CALLS = 6;
+	private static final int THREADS = 4;
+	private static final int CALLS_PER_THREAD = 30;
+	private static final int TIMEOUT_SECONDS = 60;
+
+	private Context context;
+	private StandInServer server;
+	private ApiClient api;
+}
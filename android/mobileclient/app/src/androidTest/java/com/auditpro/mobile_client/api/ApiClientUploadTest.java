@@ -0,0 +1,180 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Posts audit payloads to a stand-in server, and checks that the body received matches the
+ * payload and that the sizes reported match what was written and sent.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ApiClientUploadTest {
+
+	@Before
+	public void setUp() throws IOException {
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				return StandInServer.Response.success();
+			}
+		});
+		api = new RecordingClient(server.getTransport());
+		payload = buildPayload();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void postsCompressedPayload() throws IOException {
+		api.setCompressUploads(true);
+		assertTrue(api.postPayload(source(), IDEMPOTENCY_KEY).isSuccess());
+
+		// The body inflates to the payload
+		StandInServer.Request request = onlyRequest();
+		assertEquals("POST", request.method);
+		assertEquals("payload/v1/", request.path);
+		assertEquals("gzip", request.getHeader("Content-Encoding"));
+		assertEquals(IDEMPOTENCY_KEY, request.getHeader("Idempotency-Key"));
+		assertArrayEquals(payload, inflate(request.body));
+
+		// The sizes reported are the payload and the body on the wire
+		assertEquals("audit", api.descr);
+		assertTrue(api.isCompressed);
+		assertEquals(payload.length, api.rawBytes);
+		assertEquals(request.body.length, api.sentBytes);
+		assertTrue("Sent " + api.sentBytes + " of " + api.rawBytes, api.sentBytes * 4 < api.rawBytes);
+	}
+
+	@Test
+	public void postsPlainPayload() throws IOException {
+		assertTrue(api.postPayload(source(), IDEMPOTENCY_KEY).isSuccess());
+
+		StandInServer.Request request = onlyRequest();
+		assertNull(request.getHeader("Content-Encoding"));
+		assertArrayEquals(payload, request.body);
+		assertFalse(api.isCompressed);
+		assertEquals(payload.length, api.rawBytes);
+		assertEquals(payload.length, api.sentBytes);
+	}
+
+	/**
+	 * Gets the one request the server received.
+	 * @return Request received
+	 */
+	private StandInServer.Request onlyRequest() {
+		List<StandInServer.Request> requests = server.getRequests();
+		assertEquals(1, requests.size());
+		return requests.get(0);
+	}
+
+	/**
+	 * Writes the payload as an audit upload would, in small writes.
+	 * @return Payload source
+	 */
+	private PayloadSource source() {
+		return new PayloadSource() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				for (int offset = 0; offset < payload.length; offset += WRITE_SIZE) {
+					out.write(payload, offset, Math.min(WRITE_SIZE, payload.length - offset));
+				}
+			}
+		};
+	}
+
+	/**
+	 * Builds JSON shaped like a large audit, with the same keys and names on every scan.
+	 * @return Payload bytes
+	 */
+	private static byte[] buildPayload() {
+		StringBuilder res = new StringBuilder("{\"audit\":{\"store_id\":42},\"scans\":[");
+		for (int index = 0; index < SCANS; ++index) {
+			if (index > 0) {
+				res.append(',');
+			}
+			res.append(String.format(Locale.US, "{\"audit_scan_uuid\":\"%08d-0000-4000-8000-000000000000\"," +
+					"\"chain_x_product_id\":%d,\"product_name\":\"Product %d\",\"brand_name\":\"Brand %d\"," +
+					"\"retail_price\":%d.99,\"scan_type_id\":1}", index, 1000 + index, index % 300,
+					index % 20, index % 10));
+		}
+		return res.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Inflates a gzip body.
+	 * @param body Compressed bytes
+	 * @return Inflated bytes
+	 * @throws IOException Not valid gzip
+	 */
+	private static byte[] inflate(byte[] body) throws IOException {
+		ByteArrayOutputStream res = new ByteArrayOutputStream();
+		try (InputStream ins = new GZIPInputStream(new ByteArrayInputStream(body))) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = ins.read(buffer)) >= 0) {
+				res.write(buffer, 0, count);
+			}
+		}
+		return res.toByteArray();
+	}
+
+	/**
+	 * Client that records the upload sizes it reports instead of sending them to analytics.
+	 */
+	private static class RecordingClient extends ApiClient {
+
+		/**
+		 * Initializes an authenticated client.
+		 * @param transport Transport to the stand-in server
+		 */
+		RecordingClient(HttpTransport transport) {
+			super("token", transport);
+		}
+
+		@Override
+		void logUpload(String descr, boolean isCompressed, long rawBytes, long sentBytes) {
+			this.descr = descr;
+			this.isCompressed = isCompressed;
+			this.rawBytes = rawBytes;
+			this.sentBytes = sentBytes;
+		}
+
+		String descr;
+		boolean isCompressed;
+		long rawBytes;
+		long sentBytes;
+	}
+
+	private static final String IDEMPOTENCY_KEY = "d7c6e1f0-upload-test";
+	private static final int SCANS = 2000;
+	private static final int WRITE_SIZE = 100;
+
+	private StandInServer server;
+	private RecordingClient api;
+	private byte[] payload;
+}
@@ -0,0 +1,179 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.CatalogSync;
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.database.StoresDatabase;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Syncs the catalog from a stand-in server, then fails or cancels a second sync, and checks
+ * that the cache and the validators kept for the next sync are left as the first sync made
+ * them.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class CatalogSyncTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() throws Exception {
+		context = storage.getContext();
+
+		// Serve the current catalog, or fail the products if asked
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				boolean isStores = request.path.startsWith("stores/");
+				if (!isStores && isProductsFailing) {
+					return StandInServer.Response.json(500, "error", null);
+				}
+				return StandInServer.Response.json(200, ApiResult.SUCCESS_STATUS,
+						isStores ? storesJson : productsJson).
+						header("ETag", isStores ? storesTag : productsTag);
+			}
+		});
+		api = new ApiClient("token", server.getTransport());
+
+		// First sync fills the cache
+		storesTag = "\"s1\"";
+		productsTag = "\"p1\"";
+		storesJson = storeJson("Store 10");
+		productsJson = productJson("Widget");
+		CatalogSync.apply(context, api, download(true), download(false));
+		assertUnchanged();
+
+		// Change both resources for the second sync
+		storesTag = "\"s2\"";
+		productsTag = "\"p2\"";
+		storesJson = storeJson("Store Ten");
+		productsJson = productJson("Widget Plus");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		// Clear an interrupt a failed test left set
+		Thread.interrupted();
+		server.close();
+	}
+
+	@Test
+	public void failedDownloadAppliesNeither() throws Exception {
+		isProductsFailing = true;
+		ApiResult<File> stores = download(true);
+		ApiResult<File> products = download(false);
+		assertTrue(stores.getMessage(), stores.isSuccess());
+		assertFalse(products.isSuccess());
+		try {
+			CatalogSync.apply(context, api, stores, products);
+			fail("Applied the catalog with a failed download");
+		} catch (MobileClientException exc) {
+			assertEquals(products.getMessage(), exc.getMessage());
+		}
+		assertUnchanged();
+	}
+
+	@Test
+	public void cancelledDownloadStaysCancelled() {
+		// The download stops, and leaves the interrupt for the sync to see
+		Thread.currentThread().interrupt();
+		ApiResult<File> stores = download(true);
+		assertTrue(Thread.interrupted());
+		assertFalse(stores.isSuccess());
+	}
+
+	@Test
+	public void cancelledSyncAppliesNothing() throws Exception {
+		ApiResult<File> stores = download(true);
+		ApiResult<File> products = download(false);
+		assertTrue(stores.getMessage(), stores.isSuccess());
+		assertTrue(products.getMessage(), products.isSuccess());
+
+		// Cancel after the downloads, as the sync task does when the user leaves
+		Thread.currentThread().interrupt();
+		try {
+			CatalogSync.apply(context, api, stores, products);
+		} finally {
+			assertTrue(Thread.interrupted());
+		}
+		assertUnchanged();
+	}
+
+	/**
+	 * Downloads a resource to a spool file in the isolated cache.
+	 * @param isStores Download the stores, otherwise the products
+	 * @return Download result
+	 */
+	private ApiResult<File> download(boolean isStores) {
+		File spool = new File(context.getCacheDir(), isStores ? "stores.json" : "products.json");
+		return isStores ? api.downloadStores(null, spool) : api.downloadProducts(null, spool);
+	}
+
+	/**
+	 * Checks the cache and validators are as the first sync left them.
+	 * @throws MobileClientException Failed to read the cache
+	 */
+	private void assertUnchanged() throws MobileClientException {
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			assertEquals(1, db.getStores().size());
+			assertEquals("Store 10", db.getStores().get(0).getStoreName());
+			assertEquals("Widget", db.getProduct(PRODUCT_ID).getProductName());
+		}
+		Security sec = new Security(context);
+		assertEquals("\"s1\"", sec.getCacheValidator(CatalogSync.STORES_RESOURCE).getETag());
+		assertEquals("\"p1\"", sec.getCacheValidator(CatalogSync.PRODUCTS_RESOURCE).getETag());
+	}
+
+	/**
+	 * Builds the stores response data.
+	 * @param name Name of the store
+	 * @return JSON array text
+	 */
+	private static String storeJson(String name) {
+		return "[{\"client_id\":1,\"chain_id\":2,\"chain_name\":\"Chain\",\"chain_code\":\"CH\"," +
+				"\"store_id\":10,\"store_name\":\"" + name + "\"}]";
+	}
+
+	/**
+	 * Builds the products response data.
+	 * @param name Name of the product
+	 * @return JSON array text
+	 */
+	private static String productJson(String name) {
+		return "[{\"chain_x_product_id\":" + PRODUCT_ID + ",\"client_id\":1,\"chain_id\":2," +
+				"\"product_id\":500,\"brand_name\":\"Brand\",\"product_name\":\"" + name + "\"," +
+				"\"upc\":\"012345678905\"}]";
+	}
+
+	private static final int PRODUCT_ID = 100;
+
+	private Context context;
+	private StandInServer server;
+	private ApiClient api;
+	private volatile boolean isProductsFailing;
+	private volatile String storesTag;
+	private volatile String productsTag;
+	private volatile String storesJson;
+	private volatile String productsJson;
+}
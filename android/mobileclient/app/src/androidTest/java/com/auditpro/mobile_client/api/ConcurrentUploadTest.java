@@ -0,0 +1,153 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.AuditUploader;
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Drains several completed audits to a stand-in server that fails one of them, and checks that
+ * the audits are posted a few at a time and that the failure holds back no other audit.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentUploadTest {
+
+	@BeforeClass
+	public static void setUpReporting() {
+		StandInServer.startReporting(InstrumentationRegistry.getTargetContext());
+	}
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() throws Exception {
+		context = storage.getContext();
+		Security sec = new Security(context);
+		sec.setSetting(Security.SETTING_CHUNKED_UPLOAD, false);
+
+		// Hold each post until the uploads in flight reach the limit
+		final CountDownLatch arrived = new CountDownLatch(UPLOAD_THREADS);
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				synchronized (ConcurrentUploadTest.this) {
+					maxInFlight = Math.max(maxInFlight, ++inFlight);
+				}
+				try {
+					arrived.countDown();
+					arrived.await(ARRIVAL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException exc) {
+					// Server closing
+					Thread.currentThread().interrupt();
+				} finally {
+					synchronized (ConcurrentUploadTest.this) {
+						--inFlight;
+					}
+				}
+				return request.getHeader("Idempotency-Key").equals(failingKey)
+						? StandInServer.Response.json(500, ApiResult.ERROR_STATUS, null)
+						: StandInServer.Response.success();
+			}
+		});
+		api = new ApiClient("token", server.getTransport());
+
+		// Queue the audits
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			for (int store = 1; store <= AUDITS; ++store) {
+				Audit audit = db.startAudit(USER_ID, store, "Store " + store, 1, null, null);
+				db.completeAudit(audit, null, null, null);
+			}
+			List<OutboxEntry> queued = db.getOutbox(USER_ID, null);
+			assertEquals(AUDITS, queued.size());
+			keys = new HashSet<>();
+			for (OutboxEntry entry : queued) {
+				keys.add(entry.getIdempotencyKey());
+			}
+			failing = queued.get(AUDITS / 2).getAudit().getId();
+			failingKey = queued.get(AUDITS / 2).getIdempotencyKey();
+		}
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void postsConcurrentlyPastFailure() throws Exception {
+		AuditUploader.Summary summary = AuditUploader.drain(context, api, USER_ID, true);
+		assertNotNull(summary);
+		assertEquals(AUDITS, summary.getTotal());
+		assertEquals(AUDITS - 1, summary.getPosted());
+		assertNotNull(summary.getFailure());
+
+		// Every audit was posted once, up to the limit at a time
+		List<StandInServer.Request> requests = server.getRequests();
+		assertEquals(AUDITS, requests.size());
+		Set<String> posted = new HashSet<>();
+		for (StandInServer.Request request : requests) {
+			assertTrue(posted.add(request.getHeader("Idempotency-Key")));
+		}
+		assertEquals(keys, posted);
+		synchronized (this) {
+			assertEquals(UPLOAD_THREADS, maxInFlight);
+		}
+
+		// Only the failed audit is left, queued for a later attempt
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			List<OutboxEntry> queued = db.getOutbox(USER_ID, null);
+			assertEquals(1, queued.size());
+			assertEquals(failing, queued.get(0).getAudit().getId());
+			assertEquals(1, queued.get(0).getAttempts());
+			List<Audit> completed = db.getCompleteAudits(USER_ID);
+			assertEquals(1, completed.size());
+			assertEquals(failing, completed.get(0).getId());
+		}
+	}
+
+	private static final int USER_ID = 9002;
+	private static final int AUDITS = 7;
+	private static final long ARRIVAL_TIMEOUT_MS = 2000;
+
+	/** Audits the uploader posts at once. */
+	private static final int UPLOAD_THREADS = 3;
+
+	private Context context;
+	private StandInServer server;
+	private ApiClient api;
+	private Set<String> keys;
+	private UUID failing;
+	private volatile String failingKey;
+	private int inFlight;
+	private int maxInFlight;
+}
@@ -0,0 +1,194 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.CatalogSync;
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.database.StoresDatabase;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Syncs the catalog from a stand-in server that answers conditional requests, and checks that
+ * a resource reported not modified is skipped while the other is applied.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConditionalDownloadTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() throws IOException {
+		context = storage.getContext();
+
+		// Serve each resource with its current tag, or not modified if the client has it
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				boolean isStores = request.path.startsWith("stores/");
+				String tag = isStores ? storesTag : productsTag;
+				if (tag.equals(request.getHeader("If-None-Match"))) {
+					return new StandInServer.Response(304, new byte[0]).header("ETag", tag);
+				}
+				return StandInServer.Response.json(200, ApiResult.SUCCESS_STATUS,
+						isStores ? STORES_JSON : productsJson).
+						header("ETag", tag).
+						header("Last-Modified", LAST_MODIFIED);
+			}
+		});
+		api = new ApiClient("token", server.getTransport());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void skipsUnchangedResource() throws Exception {
+		// First sync downloads and applies both
+		storesTag = "\"s1\"";
+		productsTag = "\"p1\"";
+		productsJson = productJson("Widget");
+		List<ApiResult<File>> first = sync();
+		assertFalse(first.get(0).isNotModified());
+		assertFalse(first.get(1).isNotModified());
+		assertNull(server.getRequests().get(0).getHeader("If-None-Match"));
+		assertCatalog("Widget");
+		assertValidator(CatalogSync.STORES_RESOURCE, "\"s1\"");
+		assertValidator(CatalogSync.PRODUCTS_RESOURCE, "\"p1\"");
+
+		// Only the products changed, the stores keep their validator
+		productsTag = "\"p2\"";
+		productsJson = productJson("Widget Plus");
+		List<ApiResult<File>> second = sync();
+		assertTrue(second.get(0).isNotModified());
+		assertFalse(second.get(1).isNotModified());
+		assertCatalog("Widget Plus");
+		assertValidator(CatalogSync.STORES_RESOURCE, "\"s1\"");
+		assertValidator(CatalogSync.PRODUCTS_RESOURCE, "\"p2\"");
+
+		// Nothing changed
+		List<ApiResult<File>> third = sync();
+		assertTrue(third.get(0).isNotModified());
+		assertTrue(third.get(1).isNotModified());
+		assertCatalog("Widget Plus");
+		assertValidator(CatalogSync.STORES_RESOURCE, "\"s1\"");
+		assertValidator(CatalogSync.PRODUCTS_RESOURCE, "\"p2\"");
+
+		// Every request after the first carried the validators
+		List<StandInServer.Request> requests = server.getRequests();
+		assertEquals(6, requests.size());
+		for (StandInServer.Request request : requests.subList(2, requests.size())) {
+			assertNotNull(request.path, request.getHeader("If-None-Match"));
+			assertEquals(LAST_MODIFIED, request.getHeader("If-Modified-Since"));
+		}
+	}
+
+	/**
+	 * Downloads and applies the catalog as the sync page does.
+	 * @return Stores and products download results
+	 * @throws Exception Failed to apply the catalog
+	 */
+	private List<ApiResult<File>> sync() throws Exception {
+		boolean isCached;
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			isCached = !db.isEmpty();
+		}
+		Security sec = new Security(context);
+		CacheValidator storesCached = isCached
+				? sec.getCacheValidator(CatalogSync.STORES_RESOURCE) : null;
+		CacheValidator productsCached = isCached
+				? sec.getCacheValidator(CatalogSync.PRODUCTS_RESOURCE) : null;
+		File storesSpool = File.createTempFile("stores", ".json", context.getCacheDir());
+		File productsSpool = File.createTempFile("products", ".json", context.getCacheDir());
+		try {
+			ApiResult<File> stores = api.downloadStores(storesCached, storesSpool);
+			ApiResult<File> products = api.downloadProducts(productsCached, productsSpool);
+			assertTrue(stores.getMessage(), stores.isSuccess());
+			assertTrue(products.getMessage(), products.isSuccess());
+			if (stores.isNotModified()) {
+				assertEquals("Spooled an unchanged response", 0, storesSpool.length());
+			}
+			CatalogSync.apply(context, api, stores, products);
+			List<ApiResult<File>> res = new ArrayList<>();
+			res.add(stores);
+			res.add(products);
+			return res;
+		} finally {
+			assertTrue(storesSpool.delete());
+			assertTrue(productsSpool.delete());
+		}
+	}
+
+	/**
+	 * Checks the cached catalog.
+	 * @param productName Expected name of the product
+	 * @throws MobileClientException Failed to read the cache
+	 */
+	private void assertCatalog(String productName) throws MobileClientException {
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			assertEquals(2, db.getStores().size());
+			assertEquals(productName, db.getProduct(PRODUCT_ID).getProductName());
+		}
+	}
+
+	/**
+	 * Checks the validators kept for a resource.
+	 * @param resource Names the resource
+	 * @param tag Expected entity tag
+	 */
+	private void assertValidator(String resource, String tag) {
+		CacheValidator validator = new Security(context).getCacheValidator(resource);
+		assertNotNull(resource, validator);
+		assertEquals(resource, tag, validator.getETag());
+		assertEquals(resource, LAST_MODIFIED, validator.getLastModified());
+	}
+
+	/**
+	 * Builds the products response data.
+	 * @param name Name of the product
+	 * @return JSON array text
+	 */
+	private static String productJson(String name) {
+		return "[{\"chain_x_product_id\":" + PRODUCT_ID + ",\"client_id\":1,\"chain_id\":2," +
+				"\"product_id\":500,\"brand_name\":\"Brand\",\"product_name\":\"" + name + "\"," +
+				"\"upc\":\"012345678905\"}]";
+	}
+
+	private static final int PRODUCT_ID = 100;
+	private static final String LAST_MODIFIED = "Fri, 01 Jun 2018 10:15:30 GMT";
+	private static final String STORES_JSON =
+			"[{\"client_id\":1,\"chain_id\":2,\"chain_name\":\"Chain\",\"chain_code\":\"CH\"," +
+			"\"store_id\":10,\"store_name\":\"Store 10\"}," +
+			"{\"client_id\":1,\"chain_id\":2,\"chain_name\":\"Chain\",\"chain_code\":\"CH\"," +
+			"\"store_id\":11,\"store_name\":\"Store 11\"}]";
+
+	private Context context;
+	private StandInServer server;
+	private ApiClient api;
+	private volatile String storesTag;
+	private volatile String productsTag;
+	private volatile String productsJson;
+}
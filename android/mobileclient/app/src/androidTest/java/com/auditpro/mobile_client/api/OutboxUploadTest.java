@@ -0,0 +1,244 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.AuditUploader;
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Queues completed audits in the outbox and drains them to a stand-in server, checking that
+ * failed uploads back off and keep their idempotency key, and that only one drain posts at a
+ * time.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class OutboxUploadTest {
+
+	@BeforeClass
+	public static void setUpReporting() {
+		StandInServer.startReporting(InstrumentationRegistry.getTargetContext());
+	}
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() throws IOException {
+		context = storage.getContext();
+		Security sec = new Security(context);
+		sec.setSetting(Security.SETTING_CHUNKED_UPLOAD, false);
+
+		// Fail or hold the posts as the test asks
+		server = new StandInServer(new StandInServer.Handler() {
+			@Override
+			public StandInServer.Response handle(StandInServer.Request request) {
+				CountDownLatch release = holdUntil;
+				if (release != null) {
+					try {
+						posting.countDown();
+						release.await(HOLD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+					} catch (InterruptedException exc) {
+						// Server closing
+						Thread.currentThread().interrupt();
+					}
+				}
+				return isFailing
+						? StandInServer.Response.json(503, ApiResult.ERROR_STATUS, null)
+						: StandInServer.Response.success();
+			}
+		});
+		api = new ApiClient("token", server.getTransport());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void queuesCompletedAudits() throws Exception {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			// Completing queues the audit with a new key
+			Audit audit = db.startAudit(USER_ID, 1, "Store 1", 1, null, null);
+			assertTrue(db.getOutbox(USER_ID, null).isEmpty());
+			db.completeAudit(audit, null, null, null);
+			OutboxEntry first = getEntry(db);
+			assertEquals(audit.getId(), first.getAudit().getId());
+			assertNotNull(first.getIdempotencyKey());
+			assertEquals(0, first.getAttempts());
+			assertEquals(0, first.getPartsAcked());
+
+			// Reopening withdraws it, and completing again queues it afresh
+			audit = db.reopenAudit(first.getAudit());
+			assertTrue(db.getOutbox(USER_ID, null).isEmpty());
+			assertNull(db.getNextUploadAt(USER_ID));
+			db.completeAudit(audit, null, null, null);
+			OutboxEntry second = getEntry(db);
+			assertNotEquals(first.getIdempotencyKey(), second.getIdempotencyKey());
+
+			// Deleting removes it
+			db.deleteAudit(second.getAudit());
+			assertTrue(db.getOutbox(USER_ID, null).isEmpty());
+		}
+	}
+
+	@Test
+	public void retriesWithBackoff() throws Exception {
+		String key = queueAudit();
+
+		// The first failure defers the audit by the base backoff
+		isFailing = true;
+		long before = System.currentTimeMillis();
+		assertEquals(0, drain(true).getPosted());
+		long after = System.currentTimeMillis();
+		assertDeferred(1, before + BACKOFF_BASE_MS, after + BACKOFF_BASE_MS);
+
+		// An unforced drain leaves it until due
+		AuditUploader.Summary notDue = drain(false);
+		assertEquals(0, notDue.getTotal());
+		assertEquals(1, server.getRequests().size());
+
+		// The second failure doubles the backoff
+		before = System.currentTimeMillis();
+		assertEquals(0, drain(true).getPosted());
+		after = System.currentTimeMillis();
+		assertDeferred(2, before + 2 * BACKOFF_BASE_MS, after + 2 * BACKOFF_BASE_MS);
+
+		// Posted with the same key every time, then removed
+		isFailing = false;
+		assertEquals(1, drain(true).getPosted());
+		List<StandInServer.Request> requests = server.getRequests();
+		assertEquals(3, requests.size());
+		for (StandInServer.Request request : requests) {
+			assertEquals(key, request.getHeader("Idempotency-Key"));
+		}
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			assertTrue(db.getOutbox(USER_ID, null).isEmpty());
+			assertTrue(db.getCompleteAudits(USER_ID).isEmpty());
+			assertNull(db.getNextUploadAt(USER_ID));
+		}
+	}
+
+	@Test
+	public void givesWayToDrainInProgress() throws Exception {
+		queueAudit();
+
+		// Hold a forced drain in its post
+		holdUntil = new CountDownLatch(1);
+		ExecutorService sync = Executors.newSingleThreadExecutor();
+		try {
+			Future<AuditUploader.Summary> forced = sync.submit(new Callable<AuditUploader.Summary>() {
+				@Override
+				public AuditUploader.Summary call() throws Exception {
+					return drain(true);
+				}
+			});
+			assertTrue(posting.await(HOLD_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+			// The job's drain gives way rather than post the same audit
+			assertNull(AuditUploader.drain(context, api, USER_ID, false));
+			holdUntil.countDown();
+			assertEquals(1, forced.get(HOLD_TIMEOUT_SECONDS, TimeUnit.SECONDS).getPosted());
+		} finally {
+			holdUntil.countDown();
+			sync.shutdownNow();
+		}
+		assertEquals(1, server.getRequests().size());
+	}
+
+	/**
+	 * Completes an audit, queueing it for upload.
+	 * @return Idempotency key of the queued upload
+	 * @throws Exception Failed to update the database
+	 */
+	private String queueAudit() throws Exception {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			Audit audit = db.startAudit(USER_ID, 1, "Store 1", 1, null, null);
+			db.completeAudit(audit, null, null, null);
+			return getEntry(db).getIdempotencyKey();
+		}
+	}
+
+	/**
+	 * Drains the user's outbox.
+	 * @param isForced Post every queued audit, otherwise only those due
+	 * @return Outcome of the uploads
+	 * @throws Exception Failed to read the outbox
+	 */
+	private AuditUploader.Summary drain(boolean isForced) throws Exception {
+		AuditUploader.Summary res = AuditUploader.drain(context, api, USER_ID, isForced);
+		assertNotNull(res);
+		return res;
+	}
+
+	/**
+	 * Checks the queued audit was deferred after a failure.
+	 * @param attempts Expected failed attempts
+	 * @param earliest Earliest expected time of the next attempt
+	 * @param latest Latest expected time of the next attempt
+	 * @throws Exception Failed to read the outbox
+	 */
+	private void assertDeferred(int attempts, long earliest, long latest) throws Exception {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			assertEquals(attempts, getEntry(db).getAttempts());
+			Long next = db.getNextUploadAt(USER_ID);
+			assertNotNull(next);
+			assertTrue("Next upload at " + next, (next >= earliest) && (next <= latest));
+			assertTrue(db.getOutbox(USER_ID, System.currentTimeMillis()).isEmpty());
+		}
+	}
+
+	/**
+	 * Gets the one queued upload.
+	 * @param db Audit database
+	 * @return Queued upload
+	 * @throws Exception Failed to read the outbox
+	 */
+	private static OutboxEntry getEntry(AuditDatabase db) throws Exception {
+		List<OutboxEntry> queued = db.getOutbox(USER_ID, null);
+		assertEquals(1, queued.size());
+		return queued.get(0);
+	}
+
+	private static final int USER_ID = 9003;
+	private static final int HOLD_TIMEOUT_SECONDS = 10;
+
+	/** Backoff after the first failure, as the uploader applies it. */
+	private static final long BACKOFF_BASE_MS = 30 * 1000;
+
+	private Context context;
+	private StandInServer server;
+	private ApiClient api;
+	private final CountDownLatch posting = new CountDownLatch(1);
+	private volatile CountDownLatch holdUntil;
+	private volatile boolean isFailing;
+}
@@ -0,0 +1,253 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.AuditUploader;
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.database.AuditPayload;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+import com.auditpro.mobile_client.entities.Product;
+import com.auditpro.mobile_client.entities.Scan;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Uploads an audit in parts to a stand-in server that joins them, and checks how the uploader
+ * resumes after a dropped part, a corrupted part, and parts lost or rejected by the server.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class PartsUploadTest {
+
+	@BeforeClass
+	public static void setUpReporting() {
+		StandInServer.startReporting(InstrumentationRegistry.getTargetContext());
+	}
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() throws Exception {
+		context = storage.getContext();
+		Security sec = new Security(context);
+		sec.setSetting(Security.SETTING_CHUNKED_UPLOAD, true);
+		sec.setSetting(Security.SETTING_GZIP_UPLOAD, false);
+		parts = new StandInPartsServer();
+		server = new StandInServer(parts);
+		api = new ApiClient("token", server.getTransport());
+
+		// Queue an audit several parts long
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			Audit audit = db.startAudit(USER_ID, 1, "Store 1", 1, null, null);
+			StringBuilder scanData = new StringBuilder();
+			while (scanData.length() < SCAN_DATA_LENGTH) {
+				scanData.append("0123456789");
+			}
+			for (int id = 1; id <= SCANS; ++id) {
+				db.addScan(new Scan(audit, new TestProduct(id), scanData + "-" + id, 1.99, null));
+			}
+			db.completeAudit(audit, null, null, null);
+			OutboxEntry entry = getEntry(db);
+			uploadId = entry.getIdempotencyKey();
+			ByteArrayOutputStream expected = new ByteArrayOutputStream();
+			new AuditPayload(db, entry.getAudit()).writeTo(expected);
+			payload = expected.toByteArray();
+		}
+		partCount = (payload.length + PART_SIZE - 1) / PART_SIZE;
+		assertTrue("Only " + partCount + " parts", partCount >= 4);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.close();
+	}
+
+	@Test
+	public void uploadsInParts() throws Exception {
+		assertEquals(1, drain().getPosted());
+		assertEquals(range(0, partCount), sentParts(0));
+		assertUploaded();
+		assertEquals(payload.length, parts.getPartBytes());
+	}
+
+	@Test
+	public void resumesAfterLastAckedPart() throws Exception {
+		// The connection drops on the third part
+		parts.dropPart(2);
+		assertEquals(0, drain().getPosted());
+		assertEquals(2, getPartsAcked());
+		int firstAttempt = server.getRequests().size();
+
+		// Only the dropped part is sent again
+		assertEquals(1, drain().getPosted());
+		assertEquals(range(2, partCount), sentParts(firstAttempt));
+		assertUploaded();
+		assertEquals(payload.length + PART_SIZE, parts.getPartBytes());
+	}
+
+	@Test
+	public void resendsPartFailingDigest() throws Exception {
+		// The second part is corrupted in transit
+		parts.corruptPart(1);
+		assertEquals(0, drain().getPosted());
+		assertEquals(1, getPartsAcked());
+		int firstAttempt = server.getRequests().size();
+
+		assertEquals(1, drain().getPosted());
+		assertEquals(range(1, partCount), sentParts(firstAttempt));
+		assertUploaded();
+	}
+
+	@Test
+	public void startsOverWhenPartsLost() throws Exception {
+		// Complete finds no parts and answers not found
+		parts.loseParts();
+		assertEquals(0, drain().getPosted());
+		assertEquals(0, getPartsAcked());
+		assertEquals(404, parts.getLastCompleteCode());
+		int firstAttempt = server.getRequests().size();
+
+		assertEquals(1, drain().getPosted());
+		assertEquals(range(0, partCount), sentParts(firstAttempt));
+		assertUploaded();
+	}
+
+	@Test
+	public void startsOverWhenJoinedRejected() throws Exception {
+		// Complete rejects the joined parts with a conflict
+		parts.rejectJoined();
+		assertEquals(0, drain().getPosted());
+		assertEquals(0, getPartsAcked());
+		assertEquals(409, parts.getLastCompleteCode());
+		int firstAttempt = server.getRequests().size();
+
+		assertEquals(1, drain().getPosted());
+		assertEquals(range(0, partCount), sentParts(firstAttempt));
+		assertUploaded();
+	}
+
+	/**
+	 * Runs the uploader over the user's queued audits.
+	 * @return Outcome of the uploads
+	 * @throws Exception Failed to read the outbox
+	 */
+	private AuditUploader.Summary drain() throws Exception {
+		AuditUploader.Summary res = AuditUploader.drain(context, api, USER_ID, true);
+		assertNotNull(res);
+		assertEquals(1, res.getTotal());
+		return res;
+	}
+
+	/**
+	 * Checks that the server joined the audit and the uploader removed it.
+	 * @throws Exception Failed to read the outbox
+	 */
+	private void assertUploaded() throws Exception {
+		assertArrayEquals(payload, parts.getPayload(uploadId));
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			assertTrue(db.getOutbox(USER_ID, null).isEmpty());
+		}
+	}
+
+	/**
+	 * Gets the number of parts the outbox records as acknowledged.
+	 * @return Parts acknowledged
+	 * @throws Exception Failed to read the outbox
+	 */
+	private int getPartsAcked() throws Exception {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			return getEntry(db).getPartsAcked();
+		}
+	}
+
+	/**
+	 * Gets the one queued upload.
+	 * @param db Audit database
+	 * @return Queued upload
+	 * @throws Exception Failed to read the outbox
+	 */
+	private static OutboxEntry getEntry(AuditDatabase db) throws Exception {
+		List<OutboxEntry> queued = db.getOutbox(USER_ID, null);
+		assertEquals(1, queued.size());
+		return queued.get(0);
+	}
+
+	/**
+	 * Gets the part numbers sent, in order.
+	 * @param from Index of the first request to include
+	 * @return Part numbers
+	 */
+	private List<Integer> sentParts(int from) {
+		List<Integer> res = new ArrayList<>();
+		List<StandInServer.Request> requests = server.getRequests();
+		for (StandInServer.Request request : requests.subList(from, requests.size())) {
+			if ("PUT".equals(request.method)) {
+				res.add(Integer.parseInt(request.path.substring(request.path.lastIndexOf('/') + 1)));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Lists consecutive part numbers.
+	 * @param start First part number
+	 * @param end Part number after the last
+	 * @return Part numbers
+	 */
+	private static List<Integer> range(int start, int end) {
+		List<Integer> res = new ArrayList<>();
+		for (int index = start; index < end; ++index) {
+			res.add(index);
+		}
+		return res;
+	}
+
+	/**
+	 * Product with just the fields a scan copies.
+	 */
+	private static class TestProduct extends Product {
+		TestProduct(int id) {
+			setId(id);
+			setProductName("Product " + id);
+			setBrandName("Brand " + (id % 20));
+		}
+	}
+
+	private static final int USER_ID = 9001;
+	private static final int SCANS = 2500;
+	private static final int SCAN_DATA_LENGTH = 200;
+
+	/** Part size sent by the uploader's spool. */
+	private static final int PART_SIZE = 256 * 1024;
+
+	private Context context;
+	private StandInPartsServer parts;
+	private StandInServer server;
+	private ApiClient api;
+	private String uploadId;
+	private byte[] payload;
+	private int partCount;
+}
@@ -0,0 +1,238 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.util.Base64;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Stands in for the upload in parts web services, keeping the parts received and joining
+ * them when the upload is completed, as the server does.  Failures can be queued to test how
+ * the client recovers: a dropped part, a part corrupted in transit, parts lost before the
+ * upload is completed, and a joined upload that is rejected.  Each queued failure happens once.
+ * @author Eric Ruck
+ */
+class StandInPartsServer implements StandInServer.Handler {
+
+	/**
+	 * Answers a part or complete request.
+	 * @param request Request received
+	 * @return Response to send
+	 */
+	@Override
+	public synchronized StandInServer.Response handle(StandInServer.Request request) {
+		String[] path = request.path.split("/");
+		if ((path.length != 5) || !request.path.startsWith(PARTS_PATH)) {
+			return error(404);
+		}
+		String uploadId = path[3];
+		if ("complete".equals(path[4]) && "POST".equals(request.method)) {
+			StandInServer.Response res = complete(uploadId, request);
+			lastCompleteCode = res.code;
+			return res;
+		} else if ("PUT".equals(request.method)) {
+			return putPart(uploadId, Integer.parseInt(path[4]), request);
+		}
+		return error(404);
+	}
+
+	/**
+	 * Drops the next request for a part, as if the connection failed.
+	 * @param index Zero based part number
+	 */
+	synchronized void dropPart(int index) {
+		dropParts.add(index);
+	}
+
+	/**
+	 * Corrupts the next copy of a part received, so it fails its digest check.
+	 * @param index Zero based part number
+	 */
+	synchronized void corruptPart(int index) {
+		corruptParts.add(index);
+	}
+
+	/**
+	 * Forgets the parts of the next upload completed, as if they expired on the server.
+	 */
+	synchronized void loseParts() {
+		isLosingParts = true;
+	}
+
+	/**
+	 * Rejects the next upload completed as if the joined parts did not match their digest.
+	 */
+	synchronized void rejectJoined() {
+		isRejectingJoined = true;
+	}
+
+	/**
+	 * Gets a completed upload.
+	 * @param uploadId Identifies the upload
+	 * @return Joined and decoded payload, or null if not completed
+	 */
+	synchronized byte[] getPayload(String uploadId) {
+		return payloads.get(uploadId);
+	}
+
+	/**
+	 * Gets the number of part bytes received, including parts rejected.
+	 * @return Bytes received
+	 */
+	synchronized long getPartBytes() {
+		return partBytes;
+	}
+
+	/**
+	 * Gets the status returned for the last complete request.
+	 * @return HTTP status code, or zero if none
+	 */
+	synchronized int getLastCompleteCode() {
+		return lastCompleteCode;
+	}
+
+	/**
+	 * Keeps a part after checking its digest.
+	 * @param uploadId Identifies the upload
+	 * @param index Zero based part number
+	 * @param request Part request
+	 * @return Response to send
+	 */
+	private StandInServer.Response putPart(String uploadId, int index, StandInServer.Request request) {
+		partBytes += request.body.length;
+		if (dropParts.remove(index)) {
+			return error(503);
+		}
+		byte[] body = request.body;
+		if (corruptParts.remove(index)) {
+			body = Arrays.copyOf(body, body.length);
+			body[body.length / 2] ^= 0x55;
+		}
+		if (!digestHeader(body).equals(request.getHeader("Digest"))) {
+			return error(400);
+		}
+		Map<Integer, byte[]> upload = parts.get(uploadId);
+		if (upload == null) {
+			upload = new HashMap<>();
+			parts.put(uploadId, upload);
+		}
+		upload.put(index, body);
+		return StandInServer.Response.success();
+	}
+
+	/**
+	 * Joins the parts of an upload and checks them against the manifest.
+	 * @param uploadId Identifies the upload
+	 * @param request Complete request with the manifest
+	 * @return Response to send
+	 */
+	private StandInServer.Response complete(String uploadId, StandInServer.Request request) {
+		if (payloads.containsKey(uploadId)) {
+			// Already completed, as for a retried request
+			return StandInServer.Response.success();
+		}
+		Map<Integer, byte[]> upload = parts.remove(uploadId);
+		if (isLosingParts) {
+			isLosingParts = false;
+			upload = null;
+		}
+		try {
+			// Join the parts in order
+			JSONObject manifest = new JSONObject(new String(request.body, StandardCharsets.UTF_8));
+			int count = manifest.getInt("parts");
+			ByteArrayOutputStream joined = new ByteArrayOutputStream();
+			for (int index = 0; index < count; ++index) {
+				byte[] part = (upload == null) ? null : upload.get(index);
+				if (part == null) {
+					return error(404);
+				}
+				joined.write(part);
+			}
+
+			// Check the result
+			byte[] data = joined.toByteArray();
+			if ((data.length != manifest.getLong("length")) ||
+					!digestHeader(data).equals(manifest.getString("digest")) || isRejectingJoined) {
+				isRejectingJoined = false;
+				return error(409);
+			}
+			payloads.put(uploadId, "gzip".equals(manifest.getString("encoding")) ? inflate(data) : data);
+			return StandInServer.Response.success();
+		} catch (JSONException | IOException exc) {
+			// Bad manifest or body
+			return error(400);
+		}
+	}
+
+	/**
+	 * Creates an error response.
+	 * @param code HTTP status code
+	 * @return Response to send
+	 */
+	private static StandInServer.Response error(int code) {
+		return StandInServer.Response.json(code, ApiResult.ERROR_STATUS, null);
+	}
+
+	/**
+	 * Formats a Digest header value as the client does.
+	 * @param data Bytes to digest
+	 * @return SHA-256 digest header value
+	 */
+	private static String digestHeader(byte[] data) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+			return "SHA-256=" + Base64.encodeToString(digest, Base64.NO_WRAP);
+		} catch (NoSuchAlgorithmException exc) {
+			// Every platform provides SHA-256
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	/**
+	 * Inflates a gzip payload.
+	 * @param data Compressed bytes
+	 * @return Inflated bytes
+	 * @throws IOException Not valid gzip
+	 */
+	private static byte[] inflate(byte[] data) throws IOException {
+		ByteArrayOutputStream res = new ByteArrayOutputStream();
+		try (InputStream ins = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = ins.read(buffer)) >= 0) {
+				res.write(buffer, 0, count);
+			}
+		}
+		return res.toByteArray();
+	}
+
+	private final Map<String, Map<Integer, byte[]>> parts = new HashMap<>();
+	private final Map<String, byte[]> payloads = new HashMap<>();
+	private final Set<Integer> dropParts = new HashSet<>();
+	private final Set<Integer> corruptParts = new HashSet<>();
+	private boolean isLosingParts;
+	private boolean isRejectingJoined;
+	private long partBytes;
+	private int lastCompleteCode;
+
+	private static final String PARTS_PATH = "payload/v1/parts/";
+}
@@ -0,0 +1,409 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.content.Context;
+
+import com.crashlytics.android.Crashlytics;
+import com.crashlytics.android.core.CrashlyticsCore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.fabric.sdk.android.Fabric;
+
+
+/**
+ * Stands in for the web services in tests, serving plain HTTP on the loopback interface.
+ * Each connection is served on its own thread and kept alive between requests, as the real
+ * server does, so tests can see concurrent calls and connection reuse.  Chunked request bodies
+ * are joined, other encodings are left as sent.
+ * @author Eric Ruck
+ */
+class StandInServer implements Closeable {
+
+	/**
+	 * Answers the requests made to the server.
+	 */
+	interface Handler {
+
+		/**
+		 * Answers one request.  Called on the thread serving the connection, so requests on
+		 * different connections are answered concurrently.
+		 * @param request Request received
+		 * @return Response to send
+		 */
+		Response handle(Request request);
+	}
+
+	/**
+	 * Starts a server on a free port.
+	 * @param handler Answers the requests
+	 * @throws IOException Failed to open the server socket
+	 */
+	StandInServer(Handler handler) throws IOException {
+		this.handler = handler;
+		socket = new ServerSocket(0, BACKLOG, InetAddress.getByName(HOST));
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		}, "StandInServer");
+		thread.start();
+	}
+
+	/**
+	 * Starts crash reporting and analytics with reporting disabled, since the client logs its
+	 * calls to them.  Call before the first call to the server.
+	 * @param context Test context
+	 */
+	static void startReporting(Context context) {
+		if (!Fabric.isInitialized()) {
+			Fabric.with(context, new Crashlytics.Builder().
+					core(new CrashlyticsCore.Builder().disabled(true).build()).build());
+		}
+	}
+
+	/**
+	 * Gets a transport that sends the client's calls to this server.
+	 * @return Transport to this server
+	 */
+	HttpTransport getTransport() {
+		return new HttpTransport("http://" + HOST + ":" + socket.getLocalPort() + BASE_PATH,
+				TIMEOUT_MS, TIMEOUT_MS);
+	}
+
+	/**
+	 * Gets the requests received so far, in the order they arrived.
+	 * @return Requests received
+	 */
+	List<Request> getRequests() {
+		synchronized (requests) {
+			return new ArrayList<>(requests);
+		}
+	}
+
+	/**
+	 * Gets the number of connections accepted so far.
+	 * @return Connections accepted
+	 */
+	int getConnectionCount() {
+		synchronized (connections) {
+			return connectionCount;
+		}
+	}
+
+	/**
+	 * Stops the server, closing any connections kept alive.
+	 * @throws IOException Failed to close the server socket
+	 */
+	@Override
+	public void close() throws IOException {
+		socket.close();
+		synchronized (connections) {
+			for (Socket connection : connections) {
+				connection.close();
+			}
+		}
+		try {
+			thread.join(TIMEOUT_MS);
+		} catch (InterruptedException exc) {
+			// Leave the thread to finish on its own
+			Thread.currentThread().interrupt();
+		}
+		servers.shutdownNow();
+	}
+
+	/**
+	 * Accepts connections until the server is closed, serving each on its own thread.
+	 */
+	private void accept() {
+		while (!socket.isClosed()) {
+			final Socket connection;
+			final int connectionId;
+			try {
+				connection = socket.accept();
+			} catch (IOException exc) {
+				// Closed
+				return;
+			}
+			synchronized (connections) {
+				connections.add(connection);
+				connectionId = ++connectionCount;
+			}
+			servers.execute(new Runnable() {
+				@Override
+				public void run() {
+					serve(connection, connectionId);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Answers the requests on a connection until the client or the server closes it.
+	 * @param connection Accepted connection
+	 * @param connectionId Number of the connection, counting from one
+	 */
+	private void serve(Socket connection, int connectionId) {
+		try {
+			connection.setSoTimeout(TIMEOUT_MS);
+			InputStream ins = new BufferedInputStream(connection.getInputStream());
+			OutputStream outs = connection.getOutputStream();
+			Request request;
+			while ((request = readRequest(ins, connectionId)) != null) {
+				synchronized (requests) {
+					requests.add(request);
+				}
+				writeResponse(outs, handler.handle(request));
+				if ("close".equalsIgnoreCase(request.getHeader("Connection"))) {
+					// Client will not reuse the connection
+					break;
+				}
+			}
+		} catch (IOException exc) {
+			// Drop the connection, the client reports the failure
+		} finally {
+			synchronized (connections) {
+				connections.remove(connection);
+			}
+			try {
+				connection.close();
+			} catch (IOException exc) {
+				// Already closed
+			}
+		}
+	}
+
+	/**
+	 * Reads one request from a connection.
+	 * @param ins Connection input
+	 * @param connectionId Number of the connection
+	 * @return Request read or null if the connection closed first
+	 * @throws IOException Failed to read the request
+	 */
+	private static Request readRequest(InputStream ins, int connectionId) throws IOException {
+		String requestLine = readLine(ins);
+		if ((requestLine == null) || requestLine.isEmpty()) {
+			return null;
+		}
+		String[] parts = requestLine.split(" ");
+		Map<String, String> headers = new HashMap<>();
+		String line;
+		while (((line = readLine(ins)) != null) && !line.isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+						line.substring(colon + 1).trim());
+			}
+		}
+
+		// Read the body as sent
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+			int size;
+			while ((size = Integer.parseInt(readLine(ins).split(";")[0].trim(), 16)) > 0) {
+				copy(ins, body, size);
+				readLine(ins);
+			}
+			while (((line = readLine(ins)) != null) && !line.isEmpty()) {
+				// Skip the trailers
+			}
+		} else if (headers.containsKey("content-length")) {
+			copy(ins, body, Integer.parseInt(headers.get("content-length")));
+		}
+		String path = parts[1].startsWith(BASE_PATH) ? parts[1].substring(BASE_PATH.length()) : parts[1];
+		return new Request(parts[0], path, headers, body.toByteArray(), connectionId);
+	}
+
+	/**
+	 * Writes a response, keeping the connection open for the next request.
+	 * @param outs Connection output
+	 * @param response Response to write
+	 * @throws IOException Failed to write the response
+	 */
+	private static void writeResponse(OutputStream outs, Response response) throws IOException {
+		StringBuilder head = new StringBuilder();
+		head.append("HTTP/1.1 ").append(response.code).append(" Stand In\r\n");
+		for (Map.Entry<String, String> header : response.headers.entrySet()) {
+			head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+		}
+		if (response.code != HTTP_NOT_MODIFIED) {
+			head.append("Content-Length: ").append(response.body.length).append("\r\n");
+		}
+		head.append("\r\n");
+		outs.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+		if (response.code != HTTP_NOT_MODIFIED) {
+			outs.write(response.body);
+		}
+		outs.flush();
+	}
+
+	/**
+	 * Reads a header line.
+	 * @param ins Connection input
+	 * @return Line without its end, or null at the end of the input
+	 * @throws IOException Failed to read
+	 */
+	private static String readLine(InputStream ins) throws IOException {
+		StringBuilder res = new StringBuilder();
+		int ch;
+		while ((ch = ins.read()) >= 0) {
+			if (ch == '\n') {
+				int length = res.length();
+				if ((length > 0) && (res.charAt(length - 1) == '\r')) {
+					res.setLength(length - 1);
+				}
+				return res.toString();
+			}
+			res.append((char) ch);
+		}
+		return (res.length() == 0) ? null : res.toString();
+	}
+
+	/**
+	 * Copies an exact number of bytes.
+	 * @param ins Source
+	 * @param outs Destination
+	 * @param count Bytes to copy
+	 * @throws IOException Failed to read them all
+	 */
+	private static void copy(InputStream ins, OutputStream outs, int count) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		while (count > 0) {
+			int read = ins.read(buffer, 0, Math.min(count, buffer.length));
+			if (read < 0) {
+				throw new IOException("Request body ended early");
+			}
+			outs.write(buffer, 0, read);
+			count -= read;
+		}
+	}
+
+	/**
+	 * Request received by the server.
+	 */
+	static class Request {
+
+		/**
+		 * Initializes a new instance.
+		 * @param method HTTP method
+		 * @param path Path after the web services base URL
+		 * @param headers Headers by lower case name
+		 * @param body Body as sent, chunks joined
+		 * @param connectionId Number of the connection the request arrived on
+		 */
+		Request(String method, String path, Map<String, String> headers, byte[] body,
+				int connectionId) {
+			this.method = method;
+			this.path = path;
+			this.headers = Collections.unmodifiableMap(headers);
+			this.body = body;
+			this.connectionId = connectionId;
+		}
+
+		/**
+		 * Gets a request header.
+		 * @param name Header name in any case
+		 * @return Header value or null if not sent
+		 */
+		String getHeader(String name) {
+			return headers.get(name.toLowerCase(Locale.US));
+		}
+
+		final String method;
+		final String path;
+		final Map<String, String> headers;
+		final byte[] body;
+		final int connectionId;
+	}
+
+	/**
+	 * Response sent by the server.
+	 */
+	static class Response {
+
+		/**
+		 * Initializes a response with no headers.
+		 * @param code HTTP status code
+		 * @param body Response body
+		 */
+		Response(int code, byte[] body) {
+			this.code = code;
+			this.body = body;
+		}
+
+		/**
+		 * Creates a response with a JSON envelope.
+		 * @param code HTTP status code
+		 * @param status Envelope status
+		 * @param data Envelope data as JSON text, or null for none
+		 * @return Response to send
+		 */
+		static Response json(int code, String status, String data) {
+			String body = "{\"status\":\"" + status + "\",\"message\":\"\"" +
+					((data == null) ? "" : ",\"data\":" + data) + "}";
+			return new Response(code, body.getBytes(StandardCharsets.UTF_8)).
+					header("Content-Type", "application/json; charset=UTF-8");
+		}
+
+		/**
+		 * Creates a successful response with an empty JSON envelope.
+		 * @return Response to send
+		 */
+		static Response success() {
+			return json(200, ApiResult.SUCCESS_STATUS, null);
+		}
+
+		/**
+		 * Adds a header to the response.
+		 * @param name Header name
+		 * @param value Header value
+		 * @return This response
+		 */
+		Response header(String name, String value) {
+			headers.put(name, value);
+			return this;
+		}
+
+		final int code;
+		final byte[] body;
+		final Map<String, String> headers = new HashMap<>();
+	}
+
+	private final Handler handler;
+	private final ServerSocket socket;
+	private final Thread thread;
+	private final List<Request> requests = new ArrayList<>();
+	private final Set<Socket> connections = new HashSet<>();
+	private final ExecutorService servers = Executors.newCachedThreadPool();
+	private int connectionCount;
+
+	private static final String HOST = "127.0.0.1";
+	private static final String BASE_PATH = "/api/";
+	private static final int BACKLOG = 8;
+	private static final int TIMEOUT_MS = 10000;
+	private static final int BUFFER_SIZE = 8192;
+	private static final int HTTP_NOT_MODIFIED = 304;
+}
@@ -0,0 +1,250 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.IsolatedStorage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Upgrades an audit database written with the DB_VERSION_18 schema, carrying thousands of
+ * rows and duplicate products within an audit, to the current version.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class AuditDatabaseMigrationTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() {
+		context = storage.getContext();
+	}
+
+	@Test
+	public void upgradeFromVersion18() throws Exception {
+		List<String> auditIds = writeVersion18();
+
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			SQLiteDatabase con = db.getCon();
+			assertEquals(AuditDatabase.getVersion(), con.getVersion());
+
+			// Duplicates are gone and the first row inserted for each product is the one kept
+			int expected = AUDITS * PRODUCTS;
+			assertEquals(expected, count(con, "SELECT COUNT(*) FROM scans"));
+			assertEquals(expected, count(con, "SELECT COUNT(*) FROM reports"));
+			assertEquals(expected, count(con, "SELECT COUNT(*) FROM conditions"));
+			assertEquals(0, count(con, "SELECT COUNT(*) FROM scans WHERE retail_price<>" + FIRST_PRICE));
+			assertEquals(0, count(con, "SELECT COUNT(*) FROM reports WHERE reorder_status_id<>" + FIRST_STATUS));
+			assertEquals(0, count(con, "SELECT COUNT(*) FROM conditions WHERE reorder_status_id<>'" + FIRST_CONDITIONS + "'"));
+			assertEquals(AUDITS, count(con, "SELECT COUNT(*) FROM notes"));
+
+			// Timestamps were carried over
+			assertEquals(0, count(con, "SELECT COUNT(*) FROM scans WHERE created_ms IS NULL OR updated_ms IS NULL"));
+			assertEquals(0, count(con, "SELECT COUNT(*) FROM audits WHERE audit_started_ms IS NULL"));
+			assertEquals(AUDITS / 2, count(con, "SELECT COUNT(*) FROM audits WHERE audit_ended_ms IS NOT NULL"));
+
+			// The lookups use the new indexes
+			assertIndexUsed(con, "scans_audit_product_idx",
+					"SELECT * FROM scans WHERE audit_uuid=? AND chain_x_product_id=?");
+			assertIndexUsed(con, "reports_audit_product_idx",
+					"SELECT * FROM reports WHERE audit_uuid=? AND chain_x_product_id=?");
+			assertIndexUsed(con, "conditions_audit_product_idx",
+					"SELECT * FROM conditions WHERE audit_uuid=? AND chain_x_product_id=?");
+			assertIndexUsed(con, "notes_audit_idx",
+					"SELECT * FROM notes WHERE audit_uuid=?");
+			assertIndexUsed(con, "audits_user_ended_idx",
+					"SELECT * FROM audits WHERE user_id=? AND audit_ended_ms IS NOT NULL");
+
+			// The unique indexes hold for new rows
+			con.beginTransaction();
+			try {
+				con.execSQL("INSERT INTO reports (audit_report_uuid, audit_uuid, chain_x_product_id) VALUES (?, ?, ?)",
+						new Object[] { UUID.randomUUID().toString(), auditIds.get(0), 0 });
+				fail("Duplicate report was inserted");
+			} catch (SQLiteConstraintException exc) {
+				// Expected
+			} finally {
+				con.endTransaction();
+			}
+		}
+	}
+
+	/**
+	 * Writes the audit database file as DB_VERSION_18 left it.
+	 * @return Ids of the audits written
+	 */
+	private List<String> writeVersion18() {
+		List<String> auditIds = new ArrayList<>();
+		SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(context.getDatabasePath(DB_FILE), null);
+		try {
+			db.execSQL("CREATE TABLE audits (audit_uuid TEXT PRIMARY KEY, user_id INTEGER, " +
+					"store_id INTEGER, store_descr TEXT, audit_started_at TEXT, " +
+					"audit_ended_at TEXT, audit_type_id INTEGER, latitude_at_start DOUBLE, " +
+					"longitude_at_start DOUBLE, latitude_at_end DOUBLE, longitude_at_end DOUBLE)");
+			db.execSQL("CREATE TABLE scans (audit_scan_uuid TEXT PRIMARY KEY, audit_uuid TEXT, " +
+					"created_at TEXT, updated_at TEXT, chain_x_product_id INTEGER, " +
+					"retail_price DOUBLE, sale_price DOUBLE, scan_data TEXT, " +
+					"scan_type_id INTEGER, product_name TEXT, brand_name TEXT)");
+			db.execSQL("CREATE TABLE reports (audit_report_uuid TEXT PRIMARY KEY, " +
+					"created_at TEXT, updated_at TEXT, audit_uuid TEXT, audit_scan_uuid TEXT, " +
+					"chain_x_product_id INTEGER, reorder_status_id INTEGER)");
+			db.execSQL("CREATE TABLE notes (notes_uuid TEXT PRIMARY KEY, audit_uuid TEXT, " +
+					"contents TEXT, store_audit_note TEXT)");
+			db.execSQL("CREATE TABLE conditions (conditions_uuid TEXT PRIMARY KEY, " +
+					"created_at TEXT, updated_at TEXT, audit_uuid TEXT, " +
+					"chain_x_product_id INTEGER, reorder_status_id TEXT)");
+
+			SQLiteStatement audit = db.compileStatement("INSERT INTO audits (audit_uuid, " +
+					"user_id, store_id, store_descr, audit_started_at, audit_ended_at, " +
+					"audit_type_id) VALUES (?, ?, ?, ?, ?, ?, 1)");
+			SQLiteStatement scan = db.compileStatement("INSERT INTO scans (audit_scan_uuid, " +
+					"audit_uuid, created_at, updated_at, chain_x_product_id, retail_price, " +
+					"scan_data, scan_type_id, product_name, brand_name) " +
+					"VALUES (?, ?, ?, ?, ?, ?, ?, 1, ?, ?)");
+			SQLiteStatement report = db.compileStatement("INSERT INTO reports " +
+					"(audit_report_uuid, created_at, updated_at, audit_uuid, audit_scan_uuid, " +
+					"chain_x_product_id, reorder_status_id) VALUES (?, ?, ?, ?, ?, ?, ?)");
+			SQLiteStatement condition = db.compileStatement("INSERT INTO conditions " +
+					"(conditions_uuid, created_at, updated_at, audit_uuid, chain_x_product_id, " +
+					"reorder_status_id) VALUES (?, ?, ?, ?, ?, ?)");
+			SQLiteStatement note = db.compileStatement("INSERT INTO notes (notes_uuid, " +
+					"audit_uuid, contents, store_audit_note) VALUES (?, ?, ?, ?)");
+
+			db.beginTransaction();
+			try {
+				for (int auditIndex = 0; auditIndex < AUDITS; ++auditIndex) {
+					String auditId = UUID.randomUUID().toString();
+					auditIds.add(auditId);
+					audit.bindString(1, auditId);
+					audit.bindLong(2, USER_ID);
+					audit.bindLong(3, auditIndex);
+					audit.bindString(4, "Store " + auditIndex);
+					audit.bindString(5, STARTED_AT);
+					if (auditIndex % 2 == 0) {
+						audit.bindString(6, ENDED_AT);
+					} else {
+						audit.bindNull(6);
+					}
+					audit.executeInsert();
+
+					note.bindString(1, UUID.randomUUID().toString());
+					note.bindString(2, auditId);
+					note.bindString(3, "Notes " + auditIndex);
+					note.bindString(4, "Store notes " + auditIndex);
+					note.executeInsert();
+
+					// Every tenth product was written twice, the later row holds stale values
+					for (int productId = 0; productId < PRODUCTS; ++productId) {
+						int copies = (productId % 10 == 0) ? 2 : 1;
+						for (int copy = 0; copy < copies; ++copy) {
+							boolean isFirst = copy == 0;
+							String scanId = UUID.randomUUID().toString();
+							scan.bindString(1, scanId);
+							scan.bindString(2, auditId);
+							scan.bindString(3, STARTED_AT);
+							scan.bindString(4, ENDED_AT);
+							scan.bindLong(5, productId);
+							scan.bindDouble(6, isFirst ? FIRST_PRICE : FIRST_PRICE + 1);
+							scan.bindString(7, "0001234" + productId);
+							scan.bindString(8, "Product " + productId);
+							scan.bindString(9, "Brand " + (productId % 20));
+							scan.executeInsert();
+
+							report.bindString(1, UUID.randomUUID().toString());
+							report.bindString(2, STARTED_AT);
+							report.bindString(3, ENDED_AT);
+							report.bindString(4, auditId);
+							report.bindString(5, scanId);
+							report.bindLong(6, productId);
+							report.bindLong(7, isFirst ? FIRST_STATUS : FIRST_STATUS + 1);
+							report.executeInsert();
+
+							condition.bindString(1, UUID.randomUUID().toString());
+							condition.bindString(2, STARTED_AT);
+							condition.bindString(3, ENDED_AT);
+							condition.bindString(4, auditId);
+							condition.bindLong(5, productId);
+							condition.bindString(6, isFirst ? FIRST_CONDITIONS : "[9]");
+							condition.executeInsert();
+						}
+					}
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			db.setVersion(AuditDatabase.DB_VERSION_18);
+		} finally {
+			db.close();
+		}
+		return auditIds;
+	}
+
+	/**
+	 * Runs a count query.
+	 * @param db Database to query
+	 * @param query Query returning a single number
+	 * @return Query result
+	 */
+	private static int count(SQLiteDatabase db, String query) {
+		try (Cursor cursor = db.rawQuery(query, null)) {
+			assertTrue(cursor.moveToNext());
+			return cursor.getInt(0);
+		}
+	}
+
+	/**
+	 * Checks that the query planner uses an index for a lookup.
+	 * @param db Database to query
+	 * @param index Expected index name
+	 * @param query Lookup with parameters
+	 */
+	private static void assertIndexUsed(SQLiteDatabase db, String index, String query) {
+		int params = query.length() - query.replace("?", "").length();
+		String[] args = new String[params];
+		for (int arg = 0; arg < params; ++arg) {
+			args[arg] = "1";
+		}
+		StringBuilder plan = new StringBuilder();
+		try (Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, args)) {
+			int idxDetail = cursor.getColumnIndex("detail");
+			while (cursor.moveToNext()) {
+				plan.append(cursor.getString(idxDetail)).append('\n');
+			}
+		}
+		assertTrue(plan.toString(), plan.toString().contains(index));
+	}
+
+	private static final String DB_FILE = "audit.db";
+	private static final int AUDITS = 20;
+	private static final int PRODUCTS = 250;
+	private static final int USER_ID = 7;
+	private static final double FIRST_PRICE = 2.5;
+	private static final int FIRST_STATUS = 1;
+	private static final String FIRST_CONDITIONS = "[1,2]";
+	private static final String STARTED_AT = "2018-06-01T10:15:30.000-0500";
+	private static final String ENDED_AT = "2018-06-01T11:45:00.000-0500";
+
+	private Context context;
+}
@@ -0,0 +1,136 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.IsolatedStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Shows that a reader on the shared connection is not held up by a write transaction open on
+ * another thread, as the product load and report writes are in the app.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentAccessTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() {
+		context = storage.getContext();
+		executor = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void usesWriteAheadLog() {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			try (Cursor cursor = db.getCon().rawQuery("PRAGMA journal_mode", null)) {
+				assertTrue(cursor.moveToNext());
+				assertEquals("wal", cursor.getString(0).toLowerCase());
+			}
+		}
+	}
+
+	@Test
+	public void readerDoesNotWaitForWriter() throws Exception {
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			final SQLiteDatabase con = db.getCon();
+			insertNote(con);
+			final CountDownLatch writing = new CountDownLatch(1);
+			final CountDownLatch finishWrite = new CountDownLatch(1);
+
+			// Hold a write transaction open on one thread
+			Future<Void> writer = executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					con.beginTransactionNonExclusive();
+					try {
+						insertNote(con);
+						writing.countDown();
+						assertTrue(finishWrite.await(WAIT_SECONDS, TimeUnit.SECONDS));
+						con.setTransactionSuccessful();
+					} finally {
+						con.endTransaction();
+					}
+					return null;
+				}
+			});
+			assertTrue(writing.await(WAIT_SECONDS, TimeUnit.SECONDS));
+
+			// Read on another thread while the write is open
+			long start = System.nanoTime();
+			Future<Integer> reader = executor.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return countNotes(con);
+				}
+			});
+			int countDuringWrite = reader.get(WAIT_SECONDS, TimeUnit.SECONDS);
+			long readMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertFalse("Reader finished after the writer", writer.isDone());
+			assertEquals("Reader saw an uncommitted row", 1, countDuringWrite);
+			assertTrue("Read took " + readMillis + " ms", readMillis < MAX_READ_MILLIS);
+
+			// The reader sees the row once the writer commits
+			finishWrite.countDown();
+			writer.get(WAIT_SECONDS, TimeUnit.SECONDS);
+			assertEquals(2, countNotes(con));
+		}
+	}
+
+	/**
+	 * Adds a note row.
+	 * @param con Database connection
+	 */
+	private static void insertNote(SQLiteDatabase con) {
+		con.execSQL("INSERT INTO notes (notes_uuid, audit_uuid, contents) VALUES (?, ?, ?)",
+				new Object[] { UUID.randomUUID().toString(), UUID.randomUUID().toString(), "Note" });
+	}
+
+	/**
+	 * Counts the note rows.
+	 * @param con Database connection
+	 * @return Row count
+	 */
+	private static int countNotes(SQLiteDatabase con) {
+		try (Cursor cursor = con.rawQuery("SELECT COUNT(*) FROM notes", null)) {
+			assertTrue(cursor.moveToNext());
+			return cursor.getInt(0);
+		}
+	}
+
+	private static final long WAIT_SECONDS = 10;
+	private static final long MAX_READ_MILLIS = 2000;
+
+	private Context context;
+	private ExecutorService executor;
+}
@@ -0,0 +1,101 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.entities.Product;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Loads product payloads that repeat an id, and checks that the bulk load of an empty table
+ * keeps the last copy as the merge into a filled table does, rather than failing the sync.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class DuplicateProductTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() {
+		context = storage.getContext();
+	}
+
+	@Test
+	public void firstLoadKeepsLastCopy() throws Exception {
+		List<Product> products = new ArrayList<>();
+		products.add(new TestProduct(1, "First"));
+		products.add(new TestProduct(2, "Other"));
+		products.add(new TestProduct(1, "Second"));
+		MergeCounts counts = refresh(products);
+		assertEquals(2, counts.getInserted());
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			assertEquals("Second", db.getProduct(1).getProductName());
+			assertEquals("Other", db.getProduct(2).getProductName());
+		}
+	}
+
+	@Test
+	public void mergeKeepsLastCopy() throws Exception {
+		List<Product> products = new ArrayList<>();
+		products.add(new TestProduct(1, "First"));
+		products.add(new TestProduct(2, "Other"));
+		refresh(products);
+
+		// Repeat an id in the second sync, which merges into the filled table
+		products.add(new TestProduct(2, "Changed"));
+		refresh(products);
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			assertEquals("First", db.getProduct(1).getProductName());
+			assertEquals("Changed", db.getProduct(2).getProductName());
+		}
+	}
+
+	/**
+	 * Applies a product payload as the catalog sync does.
+	 * @param products Products from the web service
+	 * @return Counts of the product rows touched
+	 * @throws Exception Failed to apply the products
+	 */
+	private MergeCounts refresh(List<Product> products) throws Exception {
+		try (StoresDatabase db = new StoresDatabase(context)) {
+			db.beginRefresh();
+			boolean isApplied = false;
+			try {
+				MergeCounts res = db.mergeProducts(products);
+				isApplied = true;
+				return res;
+			} finally {
+				db.endRefresh(isApplied);
+			}
+		}
+	}
+
+	/**
+	 * Product with just an id and name.
+	 */
+	private static class TestProduct extends Product {
+		TestProduct(int id, String name) {
+			setId(id);
+			setProductName(name);
+		}
+	}
+
+	private Context context;
+}
@@ -0,0 +1,130 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Times a parse and format with Iso8601 and with the SimpleDateFormat code it replaced, and
+ * logs both.  The results are for comparing builds on a device, so they are not asserted.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class Iso8601BenchmarkTest {
+
+	@Before
+	public void setUp() {
+		savedZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+	}
+
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(savedZone);
+	}
+
+	@Test
+	public void parseAndFormat() {
+		Random random = new Random(SEED);
+		String[] sources = new String[COUNT];
+		for (int index = 0; index < sources.length; ++index) {
+			long millis = MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+			sources[index] = legacyFormat(new Date(millis));
+		}
+
+		// Warm up both, then time a parse and format of every stamp
+		timeLegacy(sources);
+		timeIso8601(sources);
+		long legacyNanos = timeLegacy(sources);
+		long isoNanos = timeIso8601(sources);
+		Log.i(LOG_TAG, String.format(Locale.US,
+				"Iso8601 parse and format: %d ns/op, SimpleDateFormat: %d ns/op",
+				isoNanos / sources.length, legacyNanos / sources.length));
+	}
+
+	/**
+	 * Times the old parse and format.
+	 * @param sources Time stamps to parse
+	 * @return Elapsed nanoseconds
+	 */
+	private static long timeLegacy(String[] sources) {
+		long check = 0;
+		long start = System.nanoTime();
+		for (String source : sources) {
+			check += legacyFormat(legacyParse(source)).length();
+		}
+		long elapsed = System.nanoTime() - start;
+		assertEquals(sources.length * 28L, check);
+		return elapsed;
+	}
+
+	/**
+	 * Times the new parse and format.
+	 * @param sources Time stamps to parse
+	 * @return Elapsed nanoseconds
+	 */
+	private static long timeIso8601(String[] sources) {
+		long check = 0;
+		long start = System.nanoTime();
+		for (String source : sources) {
+			check += Iso8601.format(Iso8601.parseMillis(source)).length();
+		}
+		long elapsed = System.nanoTime() - start;
+		assertEquals(sources.length * 28L, check);
+		return elapsed;
+	}
+
+	/**
+	 * Parses as BaseDatabase.parseDateTime did before Iso8601.
+	 * @param source Time stamp text
+	 * @return Parsed date or null
+	 */
+	private static Date legacyParse(String source) {
+		if ((source == null) || source.matches("^\\s*$")) {
+			return null;
+		}
+		SimpleDateFormat df = new SimpleDateFormat(LEGACY_PATTERN, Locale.US);
+		ParsePosition pos = new ParsePosition(0);
+		String parse = source.
+				replaceAll("Z$", "+0000").
+				replaceAll("(?<=T\\d\\d:\\d\\d:\\d\\d)\\+", ".000+");
+		return df.parse(parse, pos);
+	}
+
+	/**
+	 * Formats as BaseDatabase.parseDateTime did before Iso8601.
+	 * @param source Date to format
+	 * @return Time stamp text
+	 */
+	private static String legacyFormat(Date source) {
+		SimpleDateFormat df = new SimpleDateFormat(LEGACY_PATTERN, Locale.US);
+		return df.format(source);
+	}
+
+	private static final String LOG_TAG = "Iso8601Benchmark";
+	private static final String LEGACY_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	private static final long SEED = 8601;
+	private static final int COUNT = 100000;
+	private static final long MIN_MILLIS = -2208988800000L; // 1900-01-01
+	private static final long MAX_MILLIS = 4102444800000L; // 2100-01-01
+
+	private TimeZone savedZone;
+}
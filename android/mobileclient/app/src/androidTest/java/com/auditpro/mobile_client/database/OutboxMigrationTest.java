@@ -0,0 +1,82 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Upgrades an audit database written before the outbox, and checks that the audits already
+ * completed are queued for upload while those in progress are not.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class OutboxMigrationTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() {
+		context = storage.getContext();
+	}
+
+	@Test
+	public void queuesCompletedAudits() throws Exception {
+		// Complete every other audit, then take the database back to before the outbox
+		Set<UUID> completed = new HashSet<>();
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			for (int store = 1; store <= AUDITS; ++store) {
+				Audit audit = db.startAudit(USER_ID, store, "Store " + store, 1, null, null);
+				if (store % 2 == 0) {
+					db.completeAudit(audit, null, null, null);
+					completed.add(audit.getId());
+				}
+			}
+			SQLiteDatabase con = db.getCon();
+			con.execSQL("DROP TABLE outbox");
+			con.setVersion(AuditDatabase.DB_VERSION_EPOCH_DATES);
+		}
+		BaseDatabase.closeIdleConnections();
+
+		// The upgrade queues each completed audit once, with its own key
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			assertEquals(AuditDatabase.getVersion(), db.getCon().getVersion());
+			List<OutboxEntry> queued = db.getOutbox(USER_ID, null);
+			assertEquals(completed.size(), queued.size());
+			Set<String> keys = new HashSet<>();
+			for (OutboxEntry entry : queued) {
+				assertTrue(completed.contains(entry.getAudit().getId()));
+				assertTrue(keys.add(entry.getIdempotencyKey()));
+				assertEquals(0, entry.getAttempts());
+				assertEquals(0, entry.getPartsAcked());
+			}
+			assertEquals(completed.size(), db.getCompleteAudits(USER_ID).size());
+		}
+	}
+
+	private static final int USER_ID = 9004;
+	private static final int AUDITS = 10;
+
+	private Context context;
+}
@@ -0,0 +1,141 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.auditpro.mobile_client.IsolatedStorage;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.Product;
+import com.auditpro.mobile_client.entities.Receipt;
+import com.auditpro.mobile_client.entities.ReorderStatus;
+import com.auditpro.mobile_client.entities.Report;
+import com.auditpro.mobile_client.entities.Scan;
+import com.auditpro.mobile_client.security.Security;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Times getAllReports and populateReceipt for stores of 2,500 to 10,000 products, and checks
+ * that the time per product stays flat as the store grows.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ReportScalingBenchmarkTest {
+
+	@Rule
+	public final IsolatedStorage storage = new IsolatedStorage();
+
+	@Before
+	public void setUp() {
+		context = storage.getContext();
+		Security sec = new Security(context);
+		sec.setSetting(Security.SETTING_PRINT_VOIDS, true);
+		sec.setSetting(Security.SETTING_PRINT_CONDITIONS, true);
+	}
+
+	@Test
+	public void scalesLinearly() throws Exception {
+		double[] nanosPerProduct = new double[SIZES.length];
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			for (int index = 0; index < SIZES.length; ++index) {
+				nanosPerProduct[index] = timeStore(db, SIZES[index]);
+				Log.i(LOG_TAG, String.format("%d products: %.0f ns per product",
+						SIZES[index], nanosPerProduct[index]));
+			}
+		}
+
+		// Quadratic merges would take four times as long per product at four times the size
+		double growth = nanosPerProduct[SIZES.length - 1] / nanosPerProduct[0];
+		assertTrue("Time per product grew " + growth + "x", growth < MAX_GROWTH);
+	}
+
+	/**
+	 * Builds an audit for a store and times both calls on it.
+	 * @param db Audit database
+	 * @param size Number of products in the store
+	 * @return Median nanoseconds per product for both calls together
+	 * @throws Exception Database error
+	 */
+	private double timeStore(AuditDatabase db, int size) throws Exception {
+		// Half the products reported, a third scanned and a fifth with conditions
+		List<Product> products = new ArrayList<>(size);
+		for (int id = 1; id <= size; ++id) {
+			products.add(new BenchProduct(id));
+		}
+		Audit audit = db.startAudit(USER_ID, size, "Store " + size, 1, null, null);
+		SQLiteDatabase con = db.getCon();
+		con.beginTransaction();
+		try {
+			for (Product product : products) {
+				int id = product.getId();
+				if (id % 2 == 0) {
+					int status = (id % 4 == 0) ? ReorderStatus.OUT_OF_STOCK.getId() : ReorderStatus.VOID.getId();
+					db.addReport(new Report(audit, product, status));
+				}
+				if (id % 3 == 0) {
+					db.addScan(new Scan(audit, product, null, 1.99, null));
+				}
+				if (id % 5 == 0) {
+					db.updateSelectedSKUConditions(audit, id, new HashSet<>(Arrays.asList(1, 2)));
+				}
+			}
+			con.setTransactionSuccessful();
+		} finally {
+			con.endTransaction();
+		}
+
+		// Check the results once, then time repeated runs
+		assertEquals(size, db.getAllReports(audit, products).size());
+		long[] runs = new long[RUNS];
+		for (int run = -WARMUP_RUNS; run < RUNS; ++run) {
+			long start = System.nanoTime();
+			db.getAllReports(audit, products);
+			db.populateReceipt(new Receipt("Client", "Store", "Now"), audit, products);
+			long elapsed = System.nanoTime() - start;
+			if (run >= 0) {
+				runs[run] = elapsed;
+			}
+		}
+		db.deleteAudit(audit);
+		Arrays.sort(runs);
+		return (double) runs[RUNS / 2] / size;
+	}
+
+	/**
+	 * Product with just the fields the calls read.
+	 */
+	private static class BenchProduct extends Product {
+		BenchProduct(int id) {
+			setId(id);
+			setProductName(String.format("Product %05d", (id * 7919) % 100000));
+			setBrandName("Brand " + (id % 40));
+			setCurrentReorderCode(Integer.toString(100000 + id));
+		}
+	}
+
+	private static final String LOG_TAG = "ReportScalingBenchmark";
+	private static final int[] SIZES = { 2500, 5000, 10000 };
+	private static final int USER_ID = 7;
+	private static final int WARMUP_RUNS = 2;
+	private static final int RUNS = 5;
+	private static final double MAX_GROWTH = 2.5;
+
+	private Context context;
+}
@@ -0,0 +1,191 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Times ProductFacets and the field by field filter test it replaced over a large catalog, and
+ * logs the time per filter.  The results are for comparing builds on a device, so they are not
+ * asserted.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductFacetsBenchmarkTest {
+
+	@Test
+	public void filters() {
+		Random random = new Random(SEED);
+		List<ProductStatus> products = new ArrayList<>(PRODUCTS);
+		for (int id = 1; id <= PRODUCTS; ++id) {
+			BenchProduct product = new BenchProduct(id);
+			product.setProductTypeName(TYPES[random.nextInt(TYPES.length)]);
+			product.setBrandName(BRANDS[random.nextInt(BRANDS.length)]);
+			ProductStatus status = new ProductStatus(product);
+			ReorderStatus reorder = ReorderStatus.Statuses[random.nextInt(ReorderStatus.Statuses.length)];
+			status.setReorderStatus(new AuditItem(id, reorder.getId(), false, null, null, null));
+			products.add(status);
+		}
+		ProductFacets facets = new ProductFacets();
+		facets.addAll(products);
+		Filter[] filters = new Filter[FILTERS];
+		for (int index = 0; index < filters.length; ++index) {
+			filters[index] = new Filter(random);
+		}
+
+		// Warm up both, then time a selection with every filter
+		for (int run = 0; run < WARMUP_RUNS; ++run) {
+			timeFilters(products, null, filters);
+			timeFilters(products, facets, filters);
+		}
+		long filterNanos = timeFilters(products, null, filters);
+		long facetNanos = timeFilters(products, facets, filters);
+		Log.i(LOG_TAG, String.format("%d products, per filter: facets %d us, field tests %d us",
+				products.size(), facetNanos / filters.length / 1000,
+				filterNanos / filters.length / 1000));
+	}
+
+	/**
+	 * Times selecting the products in each filter.
+	 * @param products Products to filter
+	 * @param facets Facets of the products, or null to test every product
+	 * @param filters Filters to apply
+	 * @return Elapsed nanoseconds
+	 */
+	private static long timeFilters(List<ProductStatus> products, ProductFacets facets,
+			Filter[] filters) {
+		long check = 0;
+		long start = System.nanoTime();
+		for (Filter filter : filters) {
+			BitSet selected = (facets == null)
+					? filter.select(products)
+					: facets.select(filter.statuses, filter.types, filter.brands);
+			check += selected.cardinality();
+		}
+		long elapsed = System.nanoTime() - start;
+		assertTrue(check > 0);
+		return elapsed;
+	}
+
+	/**
+	 * Random status, type and brand filter, as set on the product page.
+	 */
+	private static class Filter {
+
+		/**
+		 * Initializes a random filter.  Each facet is left out or a few values.
+		 * @param random Random source
+		 */
+		Filter(Random random) {
+			if (random.nextInt(3) != 0) {
+				List<ReorderStatus> values = new ArrayList<>();
+				for (ReorderStatus status : ReorderStatus.Statuses) {
+					if (random.nextInt(3) == 0) {
+						values.add(status);
+					}
+				}
+				statuses = values.toArray(new ReorderStatus[0]);
+			}
+			if (random.nextInt(3) != 0) {
+				types = randomValues(random, TYPES);
+			}
+			if (random.nextInt(3) != 0) {
+				brands = randomValues(random, BRANDS);
+			}
+		}
+
+		/**
+		 * Selects the products in the filter as the product page did before the facets.
+		 * @param products Products to test
+		 * @return Products in the filter by ordinal
+		 */
+		BitSet select(List<ProductStatus> products) {
+			BitSet res = new BitSet(products.size());
+			for (int ordinal = 0; ordinal < products.size(); ++ordinal) {
+				res.set(ordinal, isInFilter(products.get(ordinal)));
+			}
+			return res;
+		}
+
+		/**
+		 * Tests a product field by field.
+		 * @param product Product to test
+		 * @return In filter flag
+		 */
+		private boolean isInFilter(ProductStatus product) {
+			if (statuses != null) {
+				boolean isInFilter = false;
+				for (ReorderStatus status : statuses) {
+					if (status == product.getReorderStatus()) {
+						isInFilter = true;
+						break;
+					}
+				}
+				if (!isInFilter) {
+					return false;
+				}
+			}
+			if ((types != null) && !types.contains(product.getProductType())) {
+				return false;
+			}
+			return (brands == null) || brands.contains(product.getProduct().getDisplayBrandName());
+		}
+
+		/**
+		 * Picks some values for a facet.
+		 * @param random Random source
+		 * @param values Values products have
+		 * @return Chosen values, possibly none
+		 */
+		private static Collection<String> randomValues(Random random, String[] values) {
+			List<String> res = new ArrayList<>();
+			for (String value : values) {
+				if (random.nextInt(4) == 0) {
+					res.add(value);
+				}
+			}
+			return res;
+		}
+
+		ReorderStatus[] statuses;
+		Collection<String> types;
+		Collection<String> brands;
+	}
+
+	/**
+	 * Product with just the faceted fields.
+	 */
+	private static class BenchProduct extends Product {
+		BenchProduct(int id) {
+			setId(id);
+		}
+	}
+
+	private static final String LOG_TAG = "ProductFacetsBenchmark";
+	private static final long SEED = 25;
+	private static final int PRODUCTS = 20000;
+	private static final int FILTERS = 200;
+	private static final int WARMUP_RUNS = 3;
+	private static final String[] TYPES = {
+			"Grocery", "Dairy", "Frozen", "Beverage", "Snack", "Household"
+	};
+	private static final String[] BRANDS = {
+			"Acme", "Brand A", "Brand B", "Store Brand", "Organic Co", "Fresh Farms", "Value",
+			"Premium"
+	};
+}
@@ -0,0 +1,161 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Times ProductSearchIndex and the Product.hasToken scan it replaced as a search is typed over
+ * a large catalog, and logs the time per keystroke.  The results are for comparing builds on a
+ * device, so they are not asserted.
+ * @author Eric Ruck
+ */
+@RunWith(AndroidJUnit4.class)
+public class ProductSearchIndexBenchmarkTest {
+
+	@Test
+	public void keystrokes() {
+		Random random = new Random(SEED);
+		List<Product> products = new ArrayList<>(PRODUCTS);
+		ProductSearchIndex index = new ProductSearchIndex();
+		for (int id = 1; id <= PRODUCTS; ++id) {
+			Product product = new BenchProduct(random, id);
+			products.add(product);
+			index.add(product);
+		}
+
+		// Search again after each keystroke, as the product page does
+		List<String[]> keystrokes = new ArrayList<>();
+		for (String query : QUERIES) {
+			for (int length = 1; length <= query.length(); ++length) {
+				String typed = query.substring(0, length).trim();
+				if (typed.length() > 0) {
+					keystrokes.add(typed.split("\\s+"));
+				}
+			}
+		}
+
+		// Warm up both, then time the median keystroke
+		for (int run = 0; run < WARMUP_RUNS; ++run) {
+			timeKeystrokes(products, null, keystrokes);
+			timeKeystrokes(products, index, keystrokes);
+		}
+		long[] scanNanos = timeKeystrokes(products, null, keystrokes);
+		long[] indexNanos = timeKeystrokes(products, index, keystrokes);
+		Arrays.sort(scanNanos);
+		Arrays.sort(indexNanos);
+		Log.i(LOG_TAG, String.format("%d products, per keystroke median/max: index %d/%d us, scan %d/%d us",
+				products.size(),
+				indexNanos[indexNanos.length / 2] / 1000, indexNanos[indexNanos.length - 1] / 1000,
+				scanNanos[scanNanos.length / 2] / 1000, scanNanos[scanNanos.length - 1] / 1000));
+	}
+
+	/**
+	 * Times each keystroke's search, and checks the index finds as many products as the scan.
+	 * @param products Products searched
+	 * @param index Index of the products, or null to scan
+	 * @param keystrokes Search tokens after each keystroke
+	 * @return Elapsed nanoseconds per keystroke
+	 */
+	private static long[] timeKeystrokes(List<Product> products, ProductSearchIndex index,
+			List<String[]> keystrokes) {
+		long[] res = new long[keystrokes.size()];
+		for (int stroke = 0; stroke < res.length; ++stroke) {
+			String[] tokens = keystrokes.get(stroke);
+			long start = System.nanoTime();
+			int found = (index == null) ? scan(products, tokens) : index.find(tokens).length;
+			res[stroke] = System.nanoTime() - start;
+			if (index != null) {
+				assertEquals(Arrays.toString(tokens), scan(products, tokens), found);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Counts the products containing every token as the product page did before the index.
+	 * @param products Products to search
+	 * @param tokens Search tokens
+	 * @return Number of matching products
+	 */
+	private static int scan(List<Product> products, String[] tokens) {
+		int res = 0;
+		for (Product product : products) {
+			boolean isMatch = true;
+			for (String token : tokens) {
+				if (!product.hasToken(token)) {
+					isMatch = false;
+					break;
+				}
+			}
+			if (isMatch) {
+				++res;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Product with a random name and codes.
+	 */
+	private static class BenchProduct extends Product {
+		BenchProduct(Random random, int id) {
+			setId(id);
+			StringBuilder name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+			for (int word = random.nextInt(4); word > 0; --word) {
+				name.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			setProductName(name.toString());
+			setUPC(digits(random, 12));
+			setCurrentReorderCode(random.nextInt(3) == 0 ? null : "RC-" + digits(random, 4));
+			setBrandSKU(random.nextInt(2) == 0 ? null : "B" + digits(random, 5));
+			setChainSKU(random.nextInt(2) == 0 ? null : "CH" + digits(random, 6));
+		}
+
+		/**
+		 * Builds random digits.
+		 * @param random Random source
+		 * @param count Number of digits
+		 * @return Digits
+		 */
+		private static String digits(Random random, int count) {
+			StringBuilder res = new StringBuilder(count);
+			for (int index = 0; index < count; ++index) {
+				res.append((char) ('0' + random.nextInt(10)));
+			}
+			return res.toString();
+		}
+	}
+
+	private static final String LOG_TAG = "ProductSearchBenchmark";
+	private static final long SEED = 3;
+	private static final int PRODUCTS = 20000;
+	private static final int WARMUP_RUNS = 3;
+	private static final String[] WORDS = {
+			"Dark", "Milk", "Chocolate", "Bar", "Choc", "Chip", "Cookie", "Oat", "Bran", "Flakes",
+			"Orange", "Juice", "Apple", "Sauce", "Cheddar", "Cheese", "Crackers", "Sea", "Salt",
+			"12oz", "16oz", "2pk", "Family", "Size", "Organic", "Caf\u00e9", "Cr\u00e8me"
+	};
+	private static final String[] QUERIES = {
+			"dark chocolate bar",
+			"12oz juice",
+			"ch",
+			"016",
+			"rc-12",
+			"organic oat bran flakes"
+	};
+}
@@ -87,6 +87,21 @@ public final class Analytics {
 		Answers.getInstance().logCustom(event);
 	}
 
+	/**
+	 * Logs the size of an upload before and after any compression.
+	 * @param descr Upload description
+	 * @param compressed Upload was gzip compressed
+	 * @param rawBytes Payload size
+	 * @param sentBytes Bytes sent in the request body
+	 */
+	public static void upload(String descr, boolean compressed, long rawBytes, long sentBytes) {
+		Answers.getInstance().logCustom(new CustomEvent("Upload").
+				putCustomAttribute("type", descr).
+				putCustomAttribute("compressed", compressed ? 1 : 0).
+				putCustomAttribute("rawBytes", rawBytes).
+				putCustomAttribute("sentBytes", sentBytes));
+	}
+
 	/**
 	 * Logs an action menu event.
 	 * @param type Action type
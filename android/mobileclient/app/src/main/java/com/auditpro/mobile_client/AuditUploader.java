@@ -0,0 +1,309 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.auditpro.mobile_client.api.ApiClient;
+import com.auditpro.mobile_client.api.ApiResult;
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.database.AuditPayload;
+import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Uploads completed audits from the outbox.  Only one upload runs at a time in the process, so
+ * the sync pages and the background job never post the same audit at once.  Each audit is
+ * removed as soon as the server acknowledges it, and a failed audit is retried later with
+ * exponential backoff without holding up the others.
+ * @author Eric Ruck
+ */
+public final class AuditUploader {
+
+	/**
+	 * Static methods only.
+	 */
+	private AuditUploader() { }
+
+	/**
+	 * Uploads the user's queued audits a few at a time.
+	 * @param context Application context
+	 * @param api Authenticated client
+	 * @param userId User whose audits we upload
+	 * @param isForced Wait for any upload in progress and post every queued audit, otherwise
+	 *                 give way to an upload in progress and only post audits that are due
+	 * @return Outcome of the uploads, or null if another upload was in progress
+	 * @throws MobileClientException Failed to read the outbox
+	 * @throws InterruptedException Cancelled
+	 */
+	public static Summary drain(Context context, final ApiClient api, int userId, boolean isForced)
+			throws MobileClientException, InterruptedException {
+		// Only one drain posts at a time
+		if (isForced) {
+			FLIGHT.lockInterruptibly();
+		} else if (!FLIGHT.tryLock()) {
+			// The upload in progress will take care of it
+			return null;
+		}
+		try (final AuditDatabase db = new AuditDatabase(context)) {
+			// Queue the audits to post
+			final PartSpool parts = PartSpool.forUser(context, userId);
+			if (parts != null) {
+				parts.retain(db.getOutbox(userId, null));
+			}
+			List<OutboxEntry> queued = db.getOutbox(userId, isForced ? null : System.currentTimeMillis());
+			Summary res = new Summary(queued.size());
+			if (queued.isEmpty()) {
+				return res;
+			}
+			ExecutorService uploaders = Executors.newFixedThreadPool(
+					Math.min(UPLOAD_THREADS, queued.size()));
+			CompletionService<String> posts = new ExecutorCompletionService<>(uploaders);
+			try {
+				for (final OutboxEntry entry : queued) {
+					posts.submit(new Callable<String>() {
+						@Override
+						public String call() {
+							return post(db, api, entry, parts);
+						}
+					});
+				}
+
+				// Tally the results as they complete
+				for (int pending = queued.size(); pending > 0; --pending) {
+					String failure = posts.take().get();
+					if (failure == null) {
+						++res.posted;
+					} else if (res.failure == null) {
+						res.failure = failure;
+					}
+				}
+			} catch (ExecutionException exc) {
+				// Unexpected uploader failure
+				throw new MobileClientException("Unexpected failure uploading audits", exc);
+			} finally {
+				// Stop any uploads still running if cancelled
+				uploaders.shutdownNow();
+			}
+			return res;
+		} finally {
+			FLIGHT.unlock();
+		}
+	}
+
+	/**
+	 * Uploads one queued audit now, waiting for any upload in progress.
+	 * @param context Application context
+	 * @param api Authenticated client
+	 * @param audit Completed audit
+	 * @return Failure message or null on success, including if the audit was already uploaded
+	 * @throws MobileClientException Failed to read the outbox
+	 * @throws InterruptedException Cancelled
+	 */
+	public static String upload(Context context, ApiClient api, Audit audit)
+			throws MobileClientException, InterruptedException {
+		FLIGHT.lockInterruptibly();
+		try (AuditDatabase db = new AuditDatabase(context)) {
+			PartSpool parts = PartSpool.forUser(context, audit.getUserId());
+			for (OutboxEntry entry : db.getOutbox(audit.getUserId(), null)) {
+				if (entry.getAudit().getId().equals(audit.getId())) {
+					return post(db, api, entry, parts);
+				}
+			}
+
+			// Already uploaded
+			return null;
+		} finally {
+			FLIGHT.unlock();
+		}
+	}
+
+	/**
+	 * Posts one audit and removes it once acknowledged, or defers it on failure.
+	 * @param db Audit database
+	 * @param api Authenticated client
+	 * @param entry Queued audit
+	 * @param parts Spools audits sent in parts, or null to send each audit in one request
+	 * @return Failure message or null on success
+	 */
+	private static String post(AuditDatabase db, ApiClient api, OutboxEntry entry,
+			PartSpool parts) {
+		Audit audit = entry.getAudit();
+		if (Thread.currentThread().isInterrupted()) {
+			// Cancelled, leave the audit queued as is
+			return "Upload cancelled";
+		}
+		String failure;
+		if (parts == null) {
+			// Send the audit in one request
+			ApiResult<Void> posted = api.postPayload(new AuditPayload(db, audit),
+					entry.getIdempotencyKey());
+			failure = posted.isSuccess() ? null : posted.getMessage();
+		} else {
+			// Send the audit in parts
+			failure = postParts(db, api, entry, parts);
+		}
+		if (failure != null) {
+			// Leave the audit for a later attempt
+			Log.w(LOG_TAG, String.format("Failed to post audit %s attempt %s: %s", audit.getId(),
+					entry.getAttempts() + 1, failure));
+			defer(db, entry, failure);
+			return failure;
+		}
+		try {
+			// Remove the posted audit from our cache
+			db.deleteAudit(audit);
+			if (parts != null) {
+				parts.delete(entry);
+			}
+			return null;
+		} catch (MobileClientException exc) {
+			// Posted, the idempotency key covers sending it again
+			Log.e(LOG_TAG, String.format("Failed to remove posted audit %s", audit.getId()), exc);
+			return exc.getMessage();
+		}
+	}
+
+	/**
+	 * Sends an audit in fixed size parts, resuming after the parts the server already
+	 * acknowledged.  The audit is spooled once, so every attempt sends the same bytes, and an
+	 * interrupted connection costs at most one part.
+	 * @param db Audit database
+	 * @param api Authenticated client
+	 * @param entry Queued audit
+	 * @param parts Spools the audit
+	 * @return Failure message or null on success
+	 */
+	private static String postParts(AuditDatabase db, ApiClient api, OutboxEntry entry,
+			PartSpool parts) {
+		String uploadId = entry.getIdempotencyKey();
+		try {
+			// Resume after the acknowledged parts, unless we have to spool again
+			int acked = entry.getPartsAcked();
+			if (parts.prepare(db, entry)) {
+				acked = 0;
+				db.setUploadProgress(entry, acked);
+			}
+
+			// Send the rest of the parts
+			long length = parts.getLength(entry);
+			int count = (int) ((length + PartSpool.PART_SIZE - 1) / PartSpool.PART_SIZE);
+			byte[] buffer = new byte[PartSpool.PART_SIZE];
+			for (int index = acked; index < count; ++index) {
+				if (Thread.currentThread().isInterrupted()) {
+					// Cancelled, the next attempt resumes here
+					return "Upload cancelled";
+				}
+				int partLength = parts.read(entry, index, buffer);
+				ApiResult<Void> sent = api.postPart(uploadId, index, buffer, partLength);
+				if (!sent.isSuccess()) {
+					return sent.getMessage();
+				}
+				db.setUploadProgress(entry, index + 1);
+			}
+
+			// Have the server join the parts
+			ApiResult<Void> completed = api.completeParts(uploadId, count, length,
+					parts.digest(entry), parts.isCompressed(entry));
+			int responseCode = completed.getResponseCode();
+			if ((responseCode == HttpURLConnection.HTTP_NOT_FOUND) ||
+					(responseCode == HttpURLConnection.HTTP_CONFLICT)) {
+				// The server lost or rejected the parts, start over next time
+				db.setUploadProgress(entry, 0);
+			}
+			return completed.isSuccess() ? null : completed.getMessage();
+		} catch (IOException | MobileClientException exc) {
+			// Local failure, the parts sent so far still count
+			Log.e(LOG_TAG, "Failed to spool audit parts", exc);
+			return "Failed to prepare the audit for upload";
+		}
+	}
+
+	/**
+	 * Schedules the next attempt of a failed upload with exponential backoff.
+	 * @param db Audit database
+	 * @param entry Failed upload
+	 * @param error Reason for the failure
+	 */
+	private static void defer(AuditDatabase db, OutboxEntry entry, String error) {
+		long delay = Math.min(BACKOFF_BASE_MS << Math.min(entry.getAttempts(), BACKOFF_MAX_SHIFT),
+				BACKOFF_MAX_MS);
+		try {
+			db.deferUpload(entry, System.currentTimeMillis() + delay, error);
+		} catch (MobileClientException exc) {
+			// Retried right away next time instead
+			Log.e(LOG_TAG, "Failed to defer audit upload", exc);
+		}
+	}
+
+	/**
+	 * Tallies the audits posted by a drain.
+	 */
+	public static final class Summary {
+
+		/**
+		 * Initializes an empty tally.
+		 * @param total Number of audits to post
+		 */
+		private Summary(int total) {
+			this.total = total;
+		}
+
+		/**
+		 * Gets the number of audits there were to post.
+		 * @return Audits queued
+		 */
+		public int getTotal() {
+			return total;
+		}
+
+		/**
+		 * Gets the number of audits posted and removed from the cache.
+		 * @return Audits posted
+		 */
+		public int getPosted() {
+			return posted;
+		}
+
+		/**
+		 * Gets the message of the first failure.
+		 * @return Failure message, or null if none
+		 */
+		public String getFailure() {
+			return failure;
+		}
+
+		private final int total;
+		private int posted;
+		private String failure;
+	}
+
+	/** Held by the one drain allowed to post at a time. */
+	private static final ReentrantLock FLIGHT = new ReentrantLock();
+
+	/** Limits the audits posted at once, to stay friendly to slow mobile links and the server. */
+	private static final int UPLOAD_THREADS = 3;
+
+	/** Backoff after the first failure, doubled for each failure after. */
+	private static final long BACKOFF_BASE_MS = 30 * 1000;
+	private static final int BACKOFF_MAX_SHIFT = 10;
+	private static final long BACKOFF_MAX_MS = 6 * 60 * 60 * 1000;
+
+	/** Identifies our messages in the application log. */
+	private static final String LOG_TAG = "AuditUploader";
+}
@@ -0,0 +1,105 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.content.Context;
+
+import com.auditpro.mobile_client.api.ApiClient;
+import com.auditpro.mobile_client.api.ApiResult;
+import com.auditpro.mobile_client.api.RecordHandler;
+import com.auditpro.mobile_client.database.StoresDatabase;
+import com.auditpro.mobile_client.entities.Product;
+import com.auditpro.mobile_client.entities.Store;
+import com.auditpro.mobile_client.security.Security;
+
+import java.io.File;
+
+
+/**
+ * Applies the stores and products downloaded by a sync to the cache, and keeps the validators
+ * of the applied responses so the next sync only downloads what changed.
+ * @author Eric Ruck
+ */
+public final class CatalogSync {
+
+	/**
+	 * Static methods only.
+	 */
+	private CatalogSync() { }
+
+	/**
+	 * Applies downloaded stores and products to the cache in one refresh, so both or neither
+	 * are applied.  Nothing is applied unless both downloads succeeded.  A download the server
+	 * reported not modified is skipped and its validators kept.  Saves the validators of the
+	 * applied data for the next sync.  Stops without applying anything if the calling thread
+	 * is interrupted.
+	 * @param context Application context
+	 * @param api Client that downloaded the catalog
+	 * @param storesDownload Stores download
+	 * @param productsDownload Products download
+	 * @throws MobileClientException A download failed, or failed to read or apply them
+	 */
+	public static void apply(Context context, ApiClient api, ApiResult<File> storesDownload,
+			ApiResult<File> productsDownload) throws MobileClientException {
+		// Keep the cache as it was if either download failed
+		if (!storesDownload.isSuccess()) {
+			throw new MobileClientException(storesDownload.getMessage());
+		}
+		if (!productsDownload.isSuccess()) {
+			throw new MobileClientException(productsDownload.getMessage());
+		}
+
+		try (final StoresDatabase db = new StoresDatabase(context)) {
+			boolean isRefreshed = false;
+			db.beginRefresh();
+			try {
+				// Merge the stores unless unchanged
+				if (!storesDownload.isNotModified()) {
+					ApiResult<Void> storesRead = api.readStores(storesDownload.getData(),
+							new RecordHandler<Store>() {
+						@Override
+						public void onRecords(Iterable<Store> stores) throws MobileClientException {
+							db.mergeStores(stores);
+						}
+					});
+					if (!storesRead.isSuccess()) {
+						// Failed to read new stores
+						throw new MobileClientException(storesRead.getMessage());
+					}
+				}
+
+				// Merge the products unless unchanged
+				if (!productsDownload.isNotModified()) {
+					ApiResult<Void> productsRead = api.readProducts(productsDownload.getData(),
+							new RecordHandler<Product>() {
+						@Override
+						public void onRecords(Iterable<Product> products) throws MobileClientException {
+							db.mergeProducts(products);
+						}
+					});
+					if (!productsRead.isSuccess()) {
+						// Failed to read new products
+						throw new MobileClientException(productsRead.getMessage());
+					}
+				}
+				isRefreshed = !Thread.currentThread().isInterrupted();
+			} finally {
+				// Apply both or neither
+				db.endRefresh(isRefreshed);
+			}
+		}
+
+		// Keep the validators of the applied data for the next sync
+		if (!Thread.currentThread().isInterrupted()) {
+			Security sec = new Security(context);
+			sec.setCacheValidator(STORES_RESOURCE, storesDownload.getCacheValidator());
+			sec.setCacheValidator(PRODUCTS_RESOURCE, productsDownload.getCacheValidator());
+		}
+	}
+
+	/** Names the synced resources whose cache validators we keep. */
+	public static final String STORES_RESOURCE = "stores";
+	public static final String PRODUCTS_RESOURCE = "products";
+}
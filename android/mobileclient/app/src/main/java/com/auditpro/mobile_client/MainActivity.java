@@ -31,6 +31,7 @@ import android.view.inputmethod.InputMethodManager;
 
 import com.auditpro.mobile_client.api.UserResponse;
 import com.auditpro.mobile_client.dialog.BeginAuditDialog;
+import com.auditpro.mobile_client.entities.ProductFacets;
 import com.auditpro.mobile_client.entities.ProductStatus;
 import com.auditpro.mobile_client.entities.ReorderStatus;
 import com.auditpro.mobile_client.entities.Scan;
@@ -89,11 +90,15 @@ public class MainActivity extends AppCompatActivity implements
 		Security sec = new Security(getApplicationContext());
 		this.sessionToken = sessionToken;
 		sec.setLogin(email, password, isPasswordSaved, userResponse);
+		sec.setSessionToken(sessionToken);
 
 		// Format for analytics
 		Crashlytics.setUserIdentifier(Integer.toString(userResponse.getUserId()));
 		Crashlytics.setUserEmail(email);
 		Crashlytics.setUserName(sec.getUserName());
+
+		// Resume uploading any audits left from an earlier session
+		UploadJobService.schedule(this, sessionToken, userResponse.getUserId());
 	}
 
 	/**
@@ -101,6 +106,8 @@ public class MainActivity extends AppCompatActivity implements
 	 */
 	public void logout() {
 		sessionToken = null;
+		new Security(getApplicationContext()).setSessionToken(null);
+		UploadJobService.cancel(this);
 	}
 
 	/**
@@ -629,6 +636,23 @@ public class MainActivity extends AppCompatActivity implements
 		}
 	}
 
+	/**
+	 * Counts the products for each reorder status, product type and brand.
+	 * @param reorderStatuses Reorder statuses in the filter, or null for all
+	 * @param productTypes Product types in the filter, or null for all
+	 * @param brands Brands in the filter, or null for all
+	 * @return Product counts, or null if not available
+	 */
+	@Override
+	public ProductFacets.Counts getFacetCounts(ReorderStatus[] reorderStatuses,
+			List<String> productTypes, Set<String> brands) {
+		FilterStatusProvider provider = findFilterProvider();
+		if (provider != null) {
+			return provider.getFacetCounts(reorderStatuses, productTypes, brands);
+		}
+		return null;
+	}
+
 	/**
 	 * Finds a page to marshal filter provider requests.
 	 * @return Found provider page or null if none
@@ -0,0 +1,41 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.app.Application;
+import android.content.ComponentCallbacks2;
+
+import com.auditpro.mobile_client.database.BaseDatabase;
+
+
+/**
+ * Owns process wide resources for the application, currently the shared database connections.
+ * @author Eric Ruck
+ */
+public class MobileClientApplication extends Application {
+
+	/**
+	 * Releases idle database connections when the system needs memory back.  Connections in use
+	 * by a page stay open and are reopened on demand after they are closed.
+	 * @param level Memory trim level
+	 */
+	@Override
+	public void onTrimMemory(int level) {
+		super.onTrimMemory(level);
+		if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+			// We are in the background, give back the page caches
+			BaseDatabase.closeIdleConnections();
+		}
+	}
+
+	/**
+	 * Releases idle database connections on low memory.
+	 */
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		BaseDatabase.closeIdleConnections();
+	}
+}
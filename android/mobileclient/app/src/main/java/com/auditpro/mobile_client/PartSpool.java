@@ -0,0 +1,234 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.database.AuditPayload;
+import com.auditpro.mobile_client.entities.OutboxEntry;
+import com.auditpro.mobile_client.security.Security;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Keeps the serialized audits being uploaded in parts, one file per upload named by its
+ * idempotency key.  The file is written once, so a resumed upload sends exactly the bytes the
+ * server acknowledged before, and it is read back a part at a time.
+ * @author Eric Ruck
+ */
+final class PartSpool {
+
+	/**
+	 * Initializes a spool in the passed directory.
+	 * @param dir Directory holding the user's spooled audits
+	 * @param isCompressed Compress newly spooled audits with gzip
+	 */
+	private PartSpool(File dir, boolean isCompressed) {
+		this.dir = dir;
+		this.isCompressed = isCompressed;
+	}
+
+	/**
+	 * Gets the spool for the user's uploads in parts.
+	 * @param context Application context
+	 * @param userId User whose audits are spooled
+	 * @return Spool, or null if the server does not accept uploads in parts
+	 */
+	static PartSpool forUser(Context context, int userId) {
+		Security sec = new Security(context.getApplicationContext());
+		if (!sec.optSettingBool(Security.SETTING_CHUNKED_UPLOAD, false)) {
+			return null;
+		}
+		File dir = new File(new File(context.getFilesDir(), DIR_NAME), Integer.toString(userId));
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			// Fall back to sending each audit in one request
+			Log.w(LOG_TAG, "Failed to create the upload spool directory");
+			return null;
+		}
+		return new PartSpool(dir, sec.optSettingBool(Security.SETTING_GZIP_UPLOAD, false));
+	}
+
+	/**
+	 * Deletes any spooled audit that is no longer queued, for example because it was
+	 * reopened.
+	 * @param queued All of the user's queued uploads
+	 */
+	void retain(List<OutboxEntry> queued) {
+		Set<String> keep = new HashSet<>();
+		for (OutboxEntry entry : queued) {
+			keep.add(entry.getIdempotencyKey() + PLAIN_SUFFIX);
+			keep.add(entry.getIdempotencyKey() + GZIP_SUFFIX);
+		}
+		File[] spooled = dir.listFiles();
+		if (spooled != null) {
+			for (File file : spooled) {
+				if (!keep.contains(file.getName()) && !file.delete()) {
+					Log.w(LOG_TAG, "Failed to delete stale spooled audit " + file.getName());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Spools the audit unless it already is.
+	 * @param db Audit database
+	 * @param entry Queued audit
+	 * @return True if the audit was spooled now, so no parts of it have been sent
+	 * @throws IOException Failed to write the spool
+	 */
+	boolean prepare(AuditDatabase db, OutboxEntry entry) throws IOException {
+		if (getFile(entry) != null) {
+			// Resume with the bytes already sent
+			return false;
+		}
+
+		// Write the audit aside, then move it in place so a partial spool is never used
+		File temp = new File(dir, entry.getIdempotencyKey() + TEMP_SUFFIX);
+		try (OutputStream file = new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE)) {
+			if (isCompressed) {
+				GZIPOutputStream gzip = new GZIPOutputStream(file, BUFFER_SIZE);
+				new AuditPayload(db, entry.getAudit()).writeTo(gzip);
+				gzip.finish();
+			} else {
+				new AuditPayload(db, entry.getAudit()).writeTo(file);
+			}
+		}
+		File spool = new File(dir,
+				entry.getIdempotencyKey() + (isCompressed ? GZIP_SUFFIX : PLAIN_SUFFIX));
+		if (!temp.renameTo(spool)) {
+			throw new IOException("Failed to move spooled audit in place");
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the length of the spooled audit.
+	 * @param entry Queued audit
+	 * @return Spooled bytes
+	 * @throws IOException Audit not spooled
+	 */
+	long getLength(OutboxEntry entry) throws IOException {
+		return requireFile(entry).length();
+	}
+
+	/**
+	 * Indicates that the spooled audit is gzip compressed.
+	 * @param entry Queued audit
+	 * @return Compressed flag
+	 * @throws IOException Audit not spooled
+	 */
+	boolean isCompressed(OutboxEntry entry) throws IOException {
+		return requireFile(entry).getName().endsWith(GZIP_SUFFIX);
+	}
+
+	/**
+	 * Reads one part of the spooled audit.
+	 * @param entry Queued audit
+	 * @param index Zero based part number
+	 * @param buffer Receives the part, at least {@link #PART_SIZE} bytes
+	 * @return Length of the part
+	 * @throws IOException Failed to read the spool
+	 */
+	int read(OutboxEntry entry, int index, byte[] buffer) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(requireFile(entry), "r")) {
+			long offset = (long) index * PART_SIZE;
+			int length = (int) Math.min(PART_SIZE, file.length() - offset);
+			file.seek(offset);
+			file.readFully(buffer, 0, length);
+			return length;
+		}
+	}
+
+	/**
+	 * Computes the SHA-256 digest of the whole spooled audit.
+	 * @param entry Queued audit
+	 * @return Digest bytes
+	 * @throws IOException Failed to read the spool
+	 */
+	byte[] digest(OutboxEntry entry) throws IOException {
+		try (InputStream ins = new FileInputStream(requireFile(entry))) {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int count;
+			while ((count = ins.read(buffer)) >= 0) {
+				sha.update(buffer, 0, count);
+			}
+			return sha.digest();
+		} catch (NoSuchAlgorithmException exc) {
+			// Every platform provides SHA-256
+			throw new IllegalStateException(exc);
+		}
+	}
+
+	/**
+	 * Deletes the spooled audit once it is uploaded.
+	 * @param entry Uploaded audit
+	 */
+	void delete(OutboxEntry entry) {
+		File file = getFile(entry);
+		if ((file != null) && !file.delete()) {
+			Log.w(LOG_TAG, "Failed to delete uploaded spooled audit " + file.getName());
+		}
+	}
+
+	/**
+	 * Gets the spooled audit file, whichever encoding it was written with.
+	 * @param entry Queued audit
+	 * @return Spool file or null if not spooled
+	 */
+	private File getFile(OutboxEntry entry) {
+		File plain = new File(dir, entry.getIdempotencyKey() + PLAIN_SUFFIX);
+		if (plain.isFile()) {
+			return plain;
+		}
+		File gzip = new File(dir, entry.getIdempotencyKey() + GZIP_SUFFIX);
+		return gzip.isFile() ? gzip : null;
+	}
+
+	/**
+	 * Gets the spooled audit file, which must exist.
+	 * @param entry Queued audit
+	 * @return Spool file
+	 * @throws IOException Audit not spooled
+	 */
+	private File requireFile(OutboxEntry entry) throws IOException {
+		File res = getFile(entry);
+		if (res == null) {
+			throw new IOException("Audit is not spooled");
+		}
+		return res;
+	}
+
+	/** Size of each part sent, except the last. */
+	static final int PART_SIZE = 256 * 1024;
+
+	private final File dir;
+	private final boolean isCompressed;
+
+	private static final String DIR_NAME = "uploads";
+	private static final String PLAIN_SUFFIX = ".json";
+	private static final String GZIP_SUFFIX = ".json.gz";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int BUFFER_SIZE = 8192;
+
+	/** Identifies our messages in the application log. */
+	private static final String LOG_TAG = "PartSpool";
+}
@@ -0,0 +1,178 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.auditpro.mobile_client.api.ApiClient;
+import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.security.Security;
+
+
+/**
+ * Uploads the audit outbox in the background when an unmetered network is available, so
+ * completed audits reach the server even if the user leaves the app.  Runs only while the
+ * user has enabled auto sync on Wi-Fi.
+ * @author Eric Ruck
+ */
+public class UploadJobService extends JobService {
+
+	/**
+	 * Schedules the upload job for when the user's next queued audit is due, or cancels it if
+	 * there is nothing to upload or auto sync is off.  Replaces any job already scheduled.  The
+	 * job survives a reboot, and reads the session from {@link Security} when it runs.
+	 * @param context Application context
+	 * @param token Session token, or null if not logged in
+	 * @param userId User whose audits we upload
+	 */
+	public static void schedule(Context context, String token, int userId) {
+		// Is there anything to upload?
+		Context appContext = context.getApplicationContext();
+		Security sec = new Security(appContext);
+		Long nextAt = null;
+		if ((token != null) && sec.optSettingBool(Security.SETTING_AUTOSYNC_WIFI, false)) {
+			try (AuditDatabase db = new AuditDatabase(appContext)) {
+				nextAt = db.getNextUploadAt(userId);
+			} catch (MobileClientException exc) {
+				Log.e(LOG_TAG, "Failed to read upload outbox", exc);
+			}
+		}
+		JobScheduler scheduler = appContext.getSystemService(JobScheduler.class);
+		if (nextAt == null) {
+			// Nothing to do
+			scheduler.cancel(JOB_ID);
+			return;
+		}
+
+		// Upload when the next audit is due and we're on Wi-Fi
+		JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(appContext, UploadJobService.class))
+				.setRequiredNetworkType(JobInfo.NETWORK_TYPE_UNMETERED)
+				.setMinimumLatency(Math.max(0, nextAt - System.currentTimeMillis()))
+				.setBackoffCriteria(JOB_BACKOFF_MS, JobInfo.BACKOFF_POLICY_EXPONENTIAL)
+				.setPersisted(true)
+				.build();
+		scheduler.schedule(job);
+	}
+
+	/**
+	 * Cancels any scheduled upload job, for example on logout.
+	 * @param context Application context
+	 */
+	public static void cancel(Context context) {
+		context.getApplicationContext().getSystemService(JobScheduler.class).cancel(JOB_ID);
+	}
+
+	/**
+	 * Starts draining the outbox on a worker thread.
+	 * @param params Job parameters
+	 * @return True while the work continues on the worker
+	 */
+	@Override
+	public boolean onStartJob(JobParameters params) {
+		drainTask = new DrainTask(this, params);
+		drainTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+		return true;
+	}
+
+	/**
+	 * Stops the drain when the system ends the job, for example when Wi-Fi is lost.
+	 * @param params Job parameters
+	 * @return True to retry the job with backoff
+	 */
+	@Override
+	public boolean onStopJob(JobParameters params) {
+		if (drainTask != null) {
+			drainTask.cancel(true);
+			drainTask = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Drains the outbox on a worker thread.
+	 */
+	private static class DrainTask extends AsyncTask<Void, Void, Boolean> {
+		private UploadJobService service;
+		private JobParameters params;
+		private String token;
+		private int userId;
+
+		/**
+		 * Initialize task to drain the outbox.
+		 * @param service Running job service
+		 * @param params Job parameters
+		 */
+		DrainTask(UploadJobService service, JobParameters params) {
+			this.service = service;
+			this.params = params;
+		}
+
+		/**
+		 * Uploads the audits that are due.
+		 * @param voids Placeholder for no parameters
+		 * @return True to schedule the remaining audits, false if another upload has them
+		 */
+		@Override
+		protected Boolean doInBackground(Void... voids) {
+			// Upload as whoever is logged in now, which may differ from when we were scheduled
+			Security sec = new Security(service.getApplicationContext());
+			token = sec.getSessionToken();
+			userId = sec.getUserId();
+			if (token == null) {
+				// Logged out, the next login schedules the job again
+				return false;
+			}
+			ApiClient api = new ApiClient(token);
+			api.setCompressUploads(sec.optSettingBool(Security.SETTING_GZIP_UPLOAD, false));
+			try {
+				AuditUploader.Summary uploaded = AuditUploader.drain(service.getApplicationContext(),
+						api, userId, false);
+				if (uploaded == null) {
+					// A sync page is uploading and reschedules when done
+					return false;
+				}
+				Log.i(LOG_TAG, String.format("Uploaded %s of %s queued audits", uploaded.getPosted(),
+						uploaded.getTotal()));
+			} catch (MobileClientException exc) {
+				Log.e(LOG_TAG, "Failed to upload audit outbox", exc);
+			} catch (InterruptedException exc) {
+				// Stopped by the system, which retries the job
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Completes the job and schedules it again for any audits left.
+		 * @param isRescheduled Schedule the remaining audits
+		 */
+		@Override
+		protected void onPostExecute(Boolean isRescheduled) {
+			service.jobFinished(params, false);
+			if (isRescheduled) {
+				schedule(service, token, userId);
+			}
+		}
+	}
+
+	/** Drains the outbox for the running job. */
+	private DrainTask drainTask;
+
+	/** Identifies the upload job, so only one is ever scheduled. */
+	private static final int JOB_ID = 1001;
+
+	/** Backoff for retrying a job stopped by the system. */
+	private static final long JOB_BACKOFF_MS = 30 * 1000;
+
+	/** Identifies our messages in the application log. */
+	private static final String LOG_TAG = "UploadJobService";
+}
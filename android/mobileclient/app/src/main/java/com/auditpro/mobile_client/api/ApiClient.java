@@ -5,45 +5,67 @@
 package com.auditpro.mobile_client.api;
 
 import android.annotation.SuppressLint;
+import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
+import com.auditpro.mobile_client.Analytics;
+import com.auditpro.mobile_client.MobileClientException;
 import com.auditpro.mobile_client.entities.Product;
 import com.auditpro.mobile_client.entities.Store;
 import com.crashlytics.android.Crashlytics;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.net.URL;
-import java.util.List;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Scanner;
-
-import javax.net.ssl.HttpsURLConnection;
+import java.util.zip.GZIPOutputStream;
 
 
 /**
  * Provides access to the remote web services in support of this application.
  * Note that this class does not implement any threading.  Callers of this class should only
  * access API functions on a worker thread, and marshal the results back to the UI as
- * necessary.
+ * necessary.  Each call returns its own {@link ApiResult} and connections are taken from the
+ * shared {@link HttpTransport}, so one instance may be used by several workers at once.
  * @author Eric Ruck
  */
 public class ApiClient {
 
-	private static final String SUCCESS_STATUS = "success";
-	private static final String ERROR_STATUS = "error";
+	/**
+	 * Initializes a new client API instance on the default transport.
+	 * @param initToken Initial authentication token, or null if not yet authenticated
+	 */
+	public ApiClient(String initToken) {
+		this(initToken, HttpTransport.getDefault());
+	}
 
 	/**
 	 * Initializes a new client API instance.
 	 * @param initToken Initial authentication token, or null if not yet authenticated
+	 * @param transport Opens connections to the web services
 	 */
-	public ApiClient(String initToken) {
+	public ApiClient(String initToken, HttpTransport transport) {
 		token = initToken;
+		this.transport = transport;
 	}
 
 	/**
@@ -55,22 +77,12 @@ public class ApiClient {
 	}
 
 	/**
-	 * Gets the status returned from the last web service call.
-	 * May be null if there is no completed web service call.
-	 * @return API result status
+	 * Sets whether posted payloads are gzip compressed.  Only enable when the server accepts
+	 * compressed requests.
+	 * @param compressUploads Compress uploads flag
 	 */
-	public String getStatus() {
-		return status;
-	}
-
-	/**
-	 * Gets the message returned from the last web service call.
-	 * May be null if there is no completed web service call, or empty if the last completed
-	 * call was successful.
-	 * @return API result message
-	 */
-	public String getMessage() {
-		return message;
+	public void setCompressUploads(boolean compressUploads) {
+		this.compressUploads = compressUploads;
 	}
 
 	/**
@@ -78,10 +90,10 @@ public class ApiClient {
 	 * that the class can immediately be used for authenticated APIs.
 	 * @param email Identifies the user to authenticate
 	 * @param password Provides the password for authentication
-	 * @return Details of the user logged in or null on failure
+	 * @return Result with the details of the user logged in
 	 */
 	@SuppressLint("DefaultLocale")
-	public UserResponse login(String email, String password) {
+	public ApiResult<UserResponse> login(String email, String password) {
 		// Make sure we really want to do this
 		String loginToken;
 		if (token != null) {
@@ -90,124 +102,226 @@ public class ApiClient {
 		}
 
 		// Login the user
-		String loginEndpoint = String.format("%slogin/%s/%s", baseUrl, email, password);
-		JSONObject data = (JSONObject) openClient(loginEndpoint, "login", false);
-		if (data == null) {
+		String loginEndpoint = String.format("%slogin/%s/%s", transport.getBaseUrl(), email, password);
+		ApiResult<JSONObject> login = openClient(loginEndpoint, "login");
+		if (!login.isSuccess()) {
 			// Login web service failed
-			if (responseCode != 200) {
+			if (login.getResponseCode() != 200) {
 				// Replace generic error message with specific login message
-				message = String.format("Invalid user name or password (%d)", responseCode);
+				return ApiResult.failure(login.getStatus(), String.format(
+						"Invalid user name or password (%d)", login.getResponseCode()),
+						login.getResponseCode());
 			}
-			return null;
+			return ApiResult.failure(login.getStatus(), login.getMessage(), login.getResponseCode());
 		}
-		loginToken = data.optString("session_id");
+		loginToken = (login.getData() == null) ? null : login.getData().optString("session_id");
 		if (loginToken == null) {
-			status = ERROR_STATUS;
-			message = "Unexpected missing login token";
-			return null;
+			return ApiResult.failure(null, "Unexpected missing login token", login.getResponseCode());
 		}
 
 		// Get the user details
-		String userEndpoint = String.format("%suser/%s", baseUrl, loginToken);
-		data = (JSONObject) openClient(userEndpoint, "get user", false);
-		if (data == null) {
+		String userEndpoint = String.format("%suser/%s", transport.getBaseUrl(), loginToken);
+		ApiResult<JSONObject> user = openClient(userEndpoint, "get user");
+		if (!user.isSuccess()) {
 			// Get user web service failed
-			return null;
+			return ApiResult.failure(user.getStatus(), user.getMessage(), user.getResponseCode());
 		}
 
 		// Parse the user data
-		UserResponse res = new UserResponse(data);
-		if (!res.isValid()) {
-			status = ERROR_STATUS;
-			message = "Invalid user data received";
-			return null;
+		UserResponse res = (user.getData() == null) ? null : new UserResponse(user.getData());
+		if ((res == null) || !res.isValid()) {
+			return ApiResult.failure(null, "Invalid user data received", user.getResponseCode());
 		}
 
 		// Success
 		token = loginToken;
-		return res;
+		return ApiResult.success(res, null);
 	}
 
 	/**
-	 * Gets the stores where the authenticated user can conduct audits.
-	 * @return List of stores or null on failure
+	 * Downloads the stores where the authenticated user can conduct audits to a local spool
+	 * file, to be read later with {@link #readStores(File, RecordHandler)}.  Downloads may run
+	 * concurrently.  If the stores are unchanged since the passed validators were returned,
+	 * nothing is written and the result is not modified.
+	 * @param validator Validators from the last applied response, or null for a full request
+	 * @param spool Receives the response
+	 * @return Result with the spool file, or no data if not modified
 	 */
-	public List<Store> getStores() {
+	public ApiResult<File> downloadStores(CacheValidator validator, File spool) {
 		// Verify that we have authenticated
-		if (token == null) {
+		String authToken = token;
+		if (authToken == null) {
 			// Required authentication
-			status = ERROR_STATUS;
-			message = AUTH_MESSAGE;
-			return null;
+			return ApiResult.failure(null, AUTH_MESSAGE, 0);
 		}
 
-		// Get the stores from the web service
-		String endpoint = baseUrl + "stores/" + token;
-		JSONArray data = (JSONArray) openClient(endpoint, "get stores", true);
-		if (data == null) {
-			return null;
-		}
-		List<Store> res = StoreResponse.fromJSON(data);
-		if ((res == null) || (res.size() == 0)) {
-			status = ERROR_STATUS;
-			message = "No valid stores received from web service";
-			return null;
-		}
+		// Spool the stores from the web service
+		return downloadClient(transport.getBaseUrl() + "stores/" + authToken, "get stores",
+				validator, spool);
+	}
 
-		// Return results
-		return res;
+	/**
+	 * Reads the stores downloaded by {@link #downloadStores(CacheValidator, File)}, passing them
+	 * to the handler as they are read from the spool.
+	 * @param spool Downloaded response
+	 * @param handler Consumes the stores
+	 * @return Result, failed if the response had an error status or no valid stores
+	 * @throws MobileClientException Handler failed to process the stores
+	 */
+	public ApiResult<Void> readStores(File spool, RecordHandler<Store> handler)
+			throws MobileClientException {
+		return readClient(spool, "get stores", "stores", StoreResponse.READER, handler);
 	}
 
 	/**
-	 * Gets the products on which  authenticated user can conduct audits.
-	 * @return Products results
+	 * Downloads the products on which authenticated user can conduct audits to a local spool
+	 * file, to be read later with {@link #readProducts(File, RecordHandler)}.  Downloads may run
+	 * concurrently.  If the products are unchanged since the passed validators were returned,
+	 * nothing is written and the result is not modified.
+	 * @param validator Validators from the last applied response, or null for a full request
+	 * @param spool Receives the response
+	 * @return Result with the spool file, or no data if not modified
 	 */
-	public List<Product> getProducts() {
+	public ApiResult<File> downloadProducts(CacheValidator validator, File spool) {
 		// Verify that we have authenticated
-		if (token == null) {
+		String authToken = token;
+		if (authToken == null) {
 			// Required authentication
-			status = ERROR_STATUS;
-			message = AUTH_MESSAGE;
-			return null;
+			return ApiResult.failure(null, AUTH_MESSAGE, 0);
 		}
 
-		// Execute the products query
-		String endpoint = baseUrl + "products/" + token;
-		JSONArray data = (JSONArray) openClient(endpoint, "get products", true);
-		if (data == null) {
-			return null;
-		}
-		List<Product> res = ProductResponse.fromJSON(data);
-		if ((res == null) || (res.size() == 0)) {
-			status = ERROR_STATUS;
-			message = "No valid products received from web service";
-			return null;
-		}
+		// Spool the products from the web service
+		return downloadClient(transport.getBaseUrl() + "products/" + authToken, "get products",
+				validator, spool);
+	}
 
-		// Return results
-		return res;
+	/**
+	 * Reads the products downloaded by {@link #downloadProducts(CacheValidator, File)}, passing
+	 * them to the handler as they are read from the spool.
+	 * @param spool Downloaded response
+	 * @param handler Consumes the products
+	 * @return Result, failed if the response had an error status or no valid products
+	 * @throws MobileClientException Handler failed to process the products
+	 */
+	public ApiResult<Void> readProducts(File spool, RecordHandler<Product> handler)
+			throws MobileClientException {
+		return readClient(spool, "get products", "products", ProductResponse.READER, handler);
 	}
 
 	/**
 	 * Posts a payload containing the details of an audit that will be processed by the
-	 * back end system.
-	 * @param auditJson Audit JSON to post to the server
-	 * @return Success flag
+	 * back end system.  The audit JSON is streamed to the server as it is written.  The
+	 * idempotency key lets the server recognize a retry of a post it already processed.
+	 * @param auditJson Writes the audit JSON to post to the server
+	 * @param idempotencyKey Identifies the audit upload across retries, or null if none
+	 * @return Result
 	 */
-	@SuppressWarnings("BooleanMethodIsAlwaysInverted")
-	public boolean postPayload(String auditJson) {
+	public ApiResult<Void> postPayload(PayloadSource auditJson, String idempotencyKey) {
 		// Verify that we have authenticated
 		if (token == null) {
 			// Required authentication
-			status = ERROR_STATUS;
-			message = AUTH_MESSAGE;
-			return false;
+			return ApiResult.failure(null, AUTH_MESSAGE, 0);
 		}
 
 		// Send the payload to the web service
 		// TODO Apply token when implemented on the server side
-		String endpoint = baseUrl + "payload/v1/";
-		return postClient(endpoint, auditJson, "audit");
+		String endpoint = transport.getBaseUrl() + "payload/v1/";
+		Map<String, String> headers = (idempotencyKey == null)
+				? Collections.<String, String>emptyMap()
+				: Collections.singletonMap(IDEMPOTENCY_KEY_HEADER, idempotencyKey);
+		return postClient("POST", endpoint, JSON_CONTENT_TYPE, headers, auditJson, -1,
+				compressUploads, "audit");
+	}
+
+	/**
+	 * Sends one part of a payload uploaded in parts.  The part carries a SHA-256 digest so the
+	 * server can reject a corrupted part, and parts already acknowledged need not be sent again
+	 * if the upload is interrupted.
+	 * @param uploadId Identifies the upload across retries
+	 * @param index Zero based part number
+	 * @param data Part contents
+	 * @param length Number of bytes of data in the part
+	 * @return Result, successful once the server has stored the part
+	 */
+	public ApiResult<Void> postPart(String uploadId, int index, final byte[] data, final int length) {
+		// Verify that we have authenticated
+		if (token == null) {
+			// Required authentication
+			return ApiResult.failure(null, AUTH_MESSAGE, 0);
+		}
+
+		// Send the part with its digest
+		String endpoint = transport.getBaseUrl() + "payload/v1/parts/" + uploadId + "/" + index;
+		Map<String, String> headers = Collections.singletonMap(DIGEST_HEADER,
+				digestHeader(data, 0, length));
+		return postClient("PUT", endpoint, PART_CONTENT_TYPE, headers, new PayloadSource() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write(data, 0, length);
+			}
+		}, length, false, "audit part");
+	}
+
+	/**
+	 * Completes a payload uploaded in parts.  The server joins the parts, checks the result
+	 * against the digest, and processes it like a payload sent with
+	 * {@link #postPayload(PayloadSource, String)}.
+	 * @param uploadId Identifies the upload across retries
+	 * @param count Number of parts sent
+	 * @param length Total length of the parts
+	 * @param digest SHA-256 digest of the joined parts
+	 * @param isCompressed The joined parts are gzip compressed
+	 * @return Result
+	 */
+	public ApiResult<Void> completeParts(String uploadId, int count, long length, byte[] digest,
+			boolean isCompressed) {
+		// Verify that we have authenticated
+		if (token == null) {
+			// Required authentication
+			return ApiResult.failure(null, AUTH_MESSAGE, 0);
+		}
+
+		// Describe the joined parts
+		final byte[] body;
+		try {
+			JSONObject manifest = new JSONObject();
+			manifest.put("parts", count);
+			manifest.put("length", length);
+			manifest.put("digest", DIGEST_PREFIX + Base64.encodeToString(digest, Base64.NO_WRAP));
+			manifest.put("encoding", isCompressed ? "gzip" : "identity");
+			body = manifest.toString().getBytes(StandardCharsets.UTF_8);
+		} catch (JSONException excJSON) {
+			// Not expected with simple values
+			return ApiResult.failure(null, "Failed to describe the audit parts", 0);
+		}
+
+		// Ask the server to join them
+		String endpoint = transport.getBaseUrl() + "payload/v1/parts/" + uploadId + "/complete";
+		return postClient("POST", endpoint, JSON_CONTENT_TYPE,
+				Collections.singletonMap(IDEMPOTENCY_KEY_HEADER, uploadId), new PayloadSource() {
+			@Override
+			public void writeTo(OutputStream out) throws IOException {
+				out.write(body);
+			}
+		}, body.length, false, "audit parts");
+	}
+
+	/**
+	 * Formats a Digest header value for the passed bytes.
+	 * @param data Source bytes
+	 * @param offset Offset of the first byte
+	 * @param length Number of bytes
+	 * @return SHA-256 digest header value
+	 */
+	private static String digestHeader(byte[] data, int offset, int length) {
+		try {
+			MessageDigest sha = MessageDigest.getInstance("SHA-256");
+			sha.update(data, offset, length);
+			return DIGEST_PREFIX + Base64.encodeToString(sha.digest(), Base64.NO_WRAP);
+		} catch (NoSuchAlgorithmException exc) {
+			// Every platform provides SHA-256
+			throw new IllegalStateException(exc);
+		}
 	}
 
 	/**
@@ -227,94 +341,247 @@ public class ApiClient {
 	 * Generally call the web service.
 	 * @param endpoint Web service endopoint
 	 * @param descr Service description for messages
-	 * @param isArray Response type is array (vs object)
-	 * @return Parsed response data or null on error
+	 * @return Result with the parsed response data
 	 */
 	@SuppressLint("DefaultLocale")
-	private Object openClient(String endpoint, String descr, boolean isArray) {
+	private ApiResult<JSONObject> openClient(String endpoint, String descr) {
+		HttpURLConnection client = null;
 		InputStream ins = null;
-		Object res = null;
+		boolean isReusable = true;
+		int responseCode = 0;
 		try {
 			// Execute the web service call
-			URL endpointURL = new URL(endpoint);
-			client = (HttpsURLConnection) endpointURL.openConnection();
+			client = transport.open(endpoint);
 			responseCode = client.getResponseCode();
 			if (responseCode != 200) {
 				// Report failure
 				Log.e(LOG_TAG, String.format("Unexpected error response from %s %d: %s",
 						descr, responseCode, client.getResponseMessage()));
-				status = ERROR_STATUS;
-				message = String.format("Server error (%d) trying to %s", responseCode, descr);
-			} else {
-				// Read and convert the results
-				ins = client.getInputStream();
-				Scanner scanner = new Scanner(ins).useDelimiter("\\A");
-				String raw = scanner.hasNext() ? scanner.next() : null;
-				if (raw == null) {
-					// No response body
-					status = ERROR_STATUS;
-					message = "No response to login request";
-				} else {
-					// Parse the body as JSON
-					JSONObject parsed = new JSONObject(raw);
-					status = parsed.optString("status");
-					message = parsed.optString("message");
-					if (!Objects.equals(status, SUCCESS_STATUS)) {
-						// Non success status received
-						status = (status == null) ? ERROR_STATUS : status;
-						message = (message == null) ? status : message;
-					} else if (isArray) {
-						// Get the data array
-						res = parsed.getJSONArray("data");
-					} else {
-						// Get the data object
-						res = parsed.optJSONObject("data");
-					}
-				}
+				ins = client.getErrorStream();
+				return ApiResult.failure(null,
+						String.format("Server error (%d) trying to %s", responseCode, descr),
+						responseCode);
+			}
+
+			// Read and convert the results
+			ins = client.getInputStream();
+			Scanner scanner = new Scanner(ins).useDelimiter("\\A");
+			String raw = scanner.hasNext() ? scanner.next() : null;
+			if (raw == null) {
+				// No response body
+				return ApiResult.failure(null, "No response to login request", responseCode);
+			}
+
+			// Parse the body as JSON
+			JSONObject parsed = new JSONObject(raw);
+			String status = parsed.optString("status");
+			if (!Objects.equals(status, ApiResult.SUCCESS_STATUS)) {
+				// Non success status received
+				return ApiResult.failure(status, parsed.optString("message"), responseCode);
 			}
+
+			// Get the data object
+			return ApiResult.success(parsed.optJSONObject("data"), null);
 		} catch (JSONException excJSON) {
 			// Failed to parse login response
-			status = ERROR_STATUS;
-			message = String.format("Failed to understand %s response from the server", descr);
+			String message = String.format("Failed to understand %s response from the server", descr);
 			Log.e(LOG_TAG, message, excJSON);
+			return ApiResult.failure(null, message, responseCode);
 		} catch (Exception exc) {
 			// Probably net/IO exception fetching login
-			status = ERROR_STATUS;
-			message = String.format("Failed to contact server for %s", descr);
+			isReusable = false;
+			String message = String.format("Failed to contact server for %s", descr);
 			Log.e(LOG_TAG, message, exc);
+			return ApiResult.failure(null, message, responseCode);
 		} finally {
 			// Cleanup
-			closeClient(ins);
+			transport.release(client, ins, isReusable);
 		}
+	}
+
+	/**
+	 * Calls a web service and copies the response to a local file without parsing it, so the
+	 * call holds no more than a buffer in memory and can overlap with other calls.  The request
+	 * is conditional if validators are passed, and nothing is written if the server responds
+	 * that the resource is unchanged.  Stops with a failure if the calling thread is
+	 * interrupted.
+	 * @param endpoint Web service endopoint
+	 * @param descr Service description for messages
+	 * @param validator Validators for a conditional request or null
+	 * @param spool Receives the response
+	 * @return Result with the spool file and the validators received
+	 */
+	@SuppressLint("DefaultLocale")
+	private ApiResult<File> downloadClient(String endpoint, String descr, CacheValidator validator,
+			File spool) {
+		HttpURLConnection client = null;
+		InputStream ins = null;
+		boolean isReusable = false;
+		int responseCode = 0;
+		try {
+			// Execute the web service call
+			client = transport.open(endpoint);
+			if (validator != null) {
+				// Only send the records if they changed
+				if (validator.getETag() != null) {
+					client.setRequestProperty("If-None-Match", validator.getETag());
+				}
+				if (validator.getLastModified() != null) {
+					client.setRequestProperty("If-Modified-Since", validator.getLastModified());
+				}
+			}
+			responseCode = client.getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				// Nothing changed since the records were last applied
+				Log.i(LOG_TAG, String.format("Server reports no change for %s since last sync", descr));
+				isReusable = true;
+				return ApiResult.notModified(validator);
+			} else if (responseCode != 200) {
+				// Report failure
+				Log.e(LOG_TAG, String.format("Unexpected error response from %s %d: %s",
+						descr, responseCode, client.getResponseMessage()));
+				ins = client.getErrorStream();
+				isReusable = true;
+				return ApiResult.failure(null,
+						String.format("Server error (%d) trying to %s", responseCode, descr),
+						responseCode);
+			}
 
-		// Return the result
-		return res;
+			// Copy the response to the spool
+			ins = client.getInputStream();
+			try (OutputStream outs = new FileOutputStream(spool)) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int count;
+				while ((count = ins.read(buffer)) >= 0) {
+					if (Thread.currentThread().isInterrupted()) {
+						// Abandon the download, leaving the caller to see the cancel
+						throw new InterruptedIOException("Download cancelled");
+					}
+					outs.write(buffer, 0, count);
+				}
+			}
+			isReusable = true;
+
+			// Keep the validators to save once the records are applied
+			CacheValidator received = new CacheValidator(client.getHeaderField("ETag"),
+					client.getHeaderField("Last-Modified"));
+			return ApiResult.success(spool, received.isEmpty() ? null : received);
+		} catch (IOException exc) {
+			// Probably net/IO exception or cancelled
+			String message = String.format("Failed to read %s response from the server", descr);
+			Log.e(LOG_TAG, message, exc);
+			return ApiResult.failure(null, message, responseCode);
+		} finally {
+			// Cleanup, dropping the connection if the download stopped mid response
+			transport.release(client, ins, isReusable);
+		}
 	}
 
 	/**
-	 * Post to the web service.
+	 * Reads a spooled response containing an array of records, and passes the records to the
+	 * handler as they are parsed.  The response is never held in memory, and it is read only as
+	 * fast as the handler consumes it.
+	 * @param spool Response copied by {@link #downloadClient}
+	 * @param descr Service description for messages
+	 * @param noun Plural name of the records for messages
+	 * @param records Parses the records
+	 * @param handler Consumes the records
+	 * @param <T> Record type
+	 * @return Result, failed if the response had an error status or no valid records
+	 * @throws MobileClientException Handler failed to process the records
+	 */
+	@SuppressLint("DefaultLocale")
+	private static <T> ApiResult<Void> readClient(File spool, String descr, String noun,
+			JsonRecordReader<T> records, RecordHandler<T> handler) throws MobileClientException {
+		try (InputStream ins = new BufferedInputStream(new FileInputStream(spool), BUFFER_SIZE)) {
+			// Read the response envelope, streaming the data array to the handler
+			JsonReader reader = new JsonReader(new InputStreamReader(ins, StandardCharsets.UTF_8));
+			int count = 0;
+			String status = null;
+			String message = "";
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				if ("status".equals(name)) {
+					status = JsonRecordReader.nextString(reader);
+				} else if ("message".equals(name)) {
+					message = JsonRecordReader.nextString(reader);
+				} else if ("data".equals(name) && (reader.peek() == JsonToken.BEGIN_ARRAY)) {
+					count = records.stream(reader, handler);
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+
+			// Check the results
+			if (!Objects.equals(status, ApiResult.SUCCESS_STATUS)) {
+				// Non success status received
+				return ApiResult.failure(status, message, 200);
+			} else if (count == 0) {
+				// Nothing usable received
+				return ApiResult.failure(null,
+						String.format("No valid %s received from web service", noun), 200);
+			}
+
+			// Winner
+			return ApiResult.success(null, null);
+		} catch (IOException | IllegalStateException | NumberFormatException exc) {
+			// Probably malformed response
+			String message = String.format("Failed to understand %s response from the server", descr);
+			Log.e(LOG_TAG, message, exc);
+			return ApiResult.failure(null, message, 200);
+		}
+	}
+
+	/**
+	 * Send a request body to the web service, streaming the payload with gzip compression if
+	 * enabled.  Logs the payload and transfer sizes.
+	 * @param method HTTP request method
 	 * @param endpoint Web service endopoint
-	 * @param payload Payload to send to service
+	 * @param contentType Payload content type
+	 * @param headers Additional request headers
+	 * @param payload Writes the payload to send to service
+	 * @param length Exact length of an uncompressed payload, or -1 to send with chunked
+	 *               transfer encoding
+	 * @param isCompressed Compress the payload with gzip
 	 * @param descr Service description for messages
-	 * @return Success flag
+	 * @return Result
 	 */
 	@SuppressLint("DefaultLocale")
-	private boolean postClient(String endpoint, String payload,
-		   @SuppressWarnings("SameParameterValue") String descr) {
+	private ApiResult<Void> postClient(String method, String endpoint, String contentType,
+			Map<String, String> headers, PayloadSource payload, long length, boolean isCompressed,
+			String descr) {
+		HttpURLConnection client = null;
 		InputStream ins = null;
 		OutputStream outs = null;
-		boolean isSuccess = false;
+		boolean isReusable = true;
+		int responseCode = 0;
 		try {
 			// Execute the web service call
-			URL endpointURL = new URL(endpoint);
-			client = (HttpsURLConnection) endpointURL.openConnection();
+			client = transport.open(endpoint);
 			client.setDoOutput(true);
-			client.setRequestMethod("POST");
-			client.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-			outs = client.getOutputStream();
-			outs.write(payload.getBytes("UTF-8"));
-			outs.flush();
+			client.setRequestMethod(method);
+			client.setRequestProperty("Content-Type", contentType);
+			for (Map.Entry<String, String> header : headers.entrySet()) {
+				client.setRequestProperty(header.getKey(), header.getValue());
+			}
+			if (isCompressed) {
+				client.setRequestProperty("Content-Encoding", "gzip");
+			}
+			if (length < 0) {
+				client.setChunkedStreamingMode(0);
+			} else {
+				client.setFixedLengthStreamingMode(length);
+			}
+			CountingOutputStream sent = new CountingOutputStream(client.getOutputStream());
+			CountingOutputStream written = new CountingOutputStream(isCompressed
+					? new GZIPOutputStream(sent, BUFFER_SIZE)
+					: sent);
+			outs = new BufferedOutputStream(written, BUFFER_SIZE);
+			payload.writeTo(outs);
 			outs.close();
+			logUpload(descr, isCompressed, written.getCount(), sent.getCount());
 			responseCode = client.getResponseCode();
 			if (responseCode != 200) {
 				// Log error details
@@ -326,53 +593,52 @@ public class ApiClient {
 				}
 				Log.e(LOG_TAG, logMsg);
 
-				// Format generic readable message
-				status = ERROR_STATUS;
-				message = String.format("Server error (%d) trying to %s", responseCode, descr);
-
 				// Log extra information to Crashlytics for remote debugging
-				try (InputStream ers = client.getErrorStream()) {
-					Scanner scanner = new Scanner(ers).useDelimiter("\\A");
+				ins = client.getErrorStream();
+				if (ins != null) {
+					Scanner scanner = new Scanner(ins).useDelimiter("\\A");
 					String errorBody = scanner.hasNext() ? scanner.next() : null;
 					logMsg += "; " + errorBody;
-				} catch (Exception exc) {
-					// Failed to read error body
+				} else {
+					// No error body to read
 					logMsg += "; Failed to read error body";
 				}
 				Crashlytics.log(logMsg);
-			} else {
-				// Read and convert the results
-				ins = client.getInputStream();
-				Scanner scanner = new Scanner(ins).useDelimiter("\\A");
-				String raw = scanner.hasNext() ? scanner.next() : null;
-				if (raw == null) {
-					// No response body
-					status = ERROR_STATUS;
-					message = "No response to login request";
-				} else {
-					JSONObject parsed = new JSONObject(raw);
-					status = parsed.optString("status");
-					message = parsed.optString("message");
-					if (!Objects.equals(status, SUCCESS_STATUS)) {
-						// Non success status received
-						status = (status == null) ? ERROR_STATUS : status;
-						message = (message == null) ? status : message;
-					} else {
-						// Winner
-						isSuccess = true;
-					}
-				}
+
+				// Format generic readable message
+				return ApiResult.failure(null,
+						String.format("Server error (%d) trying to %s", responseCode, descr),
+						responseCode);
+			}
+
+			// Read and convert the results
+			ins = client.getInputStream();
+			Scanner scanner = new Scanner(ins).useDelimiter("\\A");
+			String raw = scanner.hasNext() ? scanner.next() : null;
+			if (raw == null) {
+				// No response body
+				return ApiResult.failure(null, "No response to login request", responseCode);
+			}
+			JSONObject parsed = new JSONObject(raw);
+			String status = parsed.optString("status");
+			if (!Objects.equals(status, ApiResult.SUCCESS_STATUS)) {
+				// Non success status received
+				return ApiResult.failure(status, parsed.optString("message"), responseCode);
 			}
+
+			// Winner
+			return ApiResult.success(null, null);
 		} catch (JSONException excJSON) {
 			// Failed to parse server response
-			status = ERROR_STATUS;
-			message = String.format("Failed to understand %s response from the server", descr);
+			String message = String.format("Failed to understand %s response from the server", descr);
 			Log.e(LOG_TAG, message, excJSON);
+			return ApiResult.failure(null, message, responseCode);
 		} catch (Exception exc) {
 			// Probably net/IO exception fetching response
-			status = ERROR_STATUS;
-			message = String.format("Failed to contact server for %s", descr);
+			isReusable = false;
+			String message = String.format("Failed to contact server for %s", descr);
 			Log.e(LOG_TAG, message, exc);
+			return ApiResult.failure(null, message, responseCode);
 		} finally {
 			// Cleanup
 			if (outs != null) {
@@ -380,52 +646,45 @@ public class ApiClient {
 					outs.close();
 				} catch(IOException excIO) {
 					Log.w(LOG_TAG, "Unexpected error closing output stream", excIO);
+					isReusable = false;
 				}
 			}
-			closeClient(ins);
+			transport.release(client, ins, isReusable);
 		}
-
-		// Return the result
-		return isSuccess;
 	}
 
 	/**
-	 * Cleanup after a client transaction.
-	 * @param ins Input stream or null
+	 * Reports the size of an uploaded payload before and after compression.  Package private
+	 * so tests against a stand-in server can check the sizes reported.
+	 * @param descr Service description for messages
+	 * @param isCompressed Payload was gzip compressed
+	 * @param rawBytes Payload size
+	 * @param sentBytes Bytes sent in the request body
 	 */
-	private void closeClient(InputStream ins) {
-		if (ins != null) {
-			try {
-				// Close the input stream
-				ins.close();
-			} catch (IOException exc) {
-				// Unexpected error closing the input stream
-				Log.w(LOG_TAG, "Unexpected exception closing socket input stream");
-			}
-		}
-
-		// Now close the client
-		client.disconnect();
-		client = null;
+	@SuppressLint("DefaultLocale")
+	void logUpload(String descr, boolean isCompressed, long rawBytes, long sentBytes) {
+		Log.i(LOG_TAG, String.format("Uploaded %s %d bytes as %d bytes%s", descr, rawBytes,
+				sentBytes, isCompressed ? " gzip" : ""));
+		Analytics.upload(descr, isCompressed, rawBytes, sentBytes);
 	}
 
-	/** References current client side connection to the remote web service. */
-	private HttpsURLConnection client;
+	/** Opens and releases connections to the remote web service. */
+	private final HttpTransport transport;
 
 	/** Provides our security token, null if not authenticated. */
-	private String token;
-
-	/** Provides the status of the most recent API call. */
-	private String status;
+	private volatile String token;
 
-	/** Provides a descriptive message of the most recent API call failure, or null on success. */
-	private String message;
+	/** Indicates that posted payloads are gzip compressed. */
+	private volatile boolean compressUploads;
 
-	/** Provides the HTTP response code from the most recent API call, or 0 if no call. */
-	private int responseCode;
+	private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+	private static final String PART_CONTENT_TYPE = "application/octet-stream";
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	private static final String DIGEST_HEADER = "Digest";
+	private static final String DIGEST_PREFIX = "SHA-256=";
 
-	/** Provides the base URL for our web services. */
-	private static final String baseUrl = "https://api.auditpro.io/api/";
+	/** Size of the upload stream buffers. */
+	private static final int BUFFER_SIZE = 8192;
 
 	/**
 	 * Provides shared missing authentication message.
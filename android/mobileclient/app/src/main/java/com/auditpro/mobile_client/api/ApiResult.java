@@ -0,0 +1,140 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+
+/**
+ * Holds the outcome of one web service call.  Results are immutable, so calls can run
+ * concurrently on the same client and each caller sees only its own outcome.
+ * @param <T> Type of data returned by the call
+ * @author Eric Ruck
+ */
+public final class ApiResult<T> {
+
+	/**
+	 * Initializes a new instance.
+	 * @param success Success flag
+	 * @param status Status returned by the web service
+	 * @param message Failure message, empty on success
+	 * @param responseCode HTTP response code, or 0 if there was no response
+	 * @param data Data returned by the call or null
+	 * @param notModified Conditional request found the resource unchanged
+	 * @param cacheValidator Validators returned with the resource or null
+	 */
+	private ApiResult(boolean success, String status, String message, int responseCode, T data,
+			boolean notModified, CacheValidator cacheValidator) {
+		this.success = success;
+		this.status = status;
+		this.message = message;
+		this.responseCode = responseCode;
+		this.data = data;
+		this.notModified = notModified;
+		this.cacheValidator = cacheValidator;
+	}
+
+	/**
+	 * Creates a successful result.
+	 * @param data Data returned by the call or null
+	 * @param cacheValidator Validators returned with the resource or null
+	 * @param <T> Type of data returned by the call
+	 * @return New result
+	 */
+	static <T> ApiResult<T> success(T data, CacheValidator cacheValidator) {
+		return new ApiResult<>(true, SUCCESS_STATUS, "", 200, data, false, cacheValidator);
+	}
+
+	/**
+	 * Creates a successful result for a conditional request whose resource is unchanged.
+	 * @param cacheValidator Validators sent with the request
+	 * @param <T> Type of data returned by the call
+	 * @return New result
+	 */
+	static <T> ApiResult<T> notModified(CacheValidator cacheValidator) {
+		return new ApiResult<>(true, SUCCESS_STATUS, "", 304, null, true, cacheValidator);
+	}
+
+	/**
+	 * Creates a failed result.
+	 * @param status Status returned by the web service, or null for a generic error
+	 * @param message Readable failure message, or null to use the status
+	 * @param responseCode HTTP response code, or 0 if there was no response
+	 * @param <T> Type of data returned by the call
+	 * @return New result
+	 */
+	static <T> ApiResult<T> failure(String status, String message, int responseCode) {
+		String resStatus = (status == null) ? ERROR_STATUS : status;
+		return new ApiResult<>(false, resStatus, (message == null) ? resStatus : message,
+				responseCode, null, false, null);
+	}
+
+	/**
+	 * Indicates that the call succeeded.
+	 * @return Success flag
+	 */
+	public boolean isSuccess() {
+		return success;
+	}
+
+	/**
+	 * Gets the status returned by the web service.
+	 * @return API result status
+	 */
+	public String getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the readable failure message.
+	 * @return Failure message, empty on success
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Gets the HTTP response code.
+	 * @return Response code, or 0 if the server was not reached
+	 */
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	/**
+	 * Gets the data returned by the call.
+	 * @return Data or null if none or failed
+	 */
+	public T getData() {
+		return data;
+	}
+
+	/**
+	 * Indicates that a conditional request found the resource unchanged, so no records were
+	 * passed to the handler.
+	 * @return Not modified flag
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	/**
+	 * Gets the cache validators for the resource, to keep for the next conditional request
+	 * once the records have been applied.
+	 * @return Validators or null if the server sent none
+	 */
+	public CacheValidator getCacheValidator() {
+		return cacheValidator;
+	}
+
+	private final boolean success;
+	private final String status;
+	private final String message;
+	private final int responseCode;
+	private final T data;
+	private final boolean notModified;
+	private final CacheValidator cacheValidator;
+
+	static final String SUCCESS_STATUS = "success";
+	static final String ERROR_STATUS = "error";
+}
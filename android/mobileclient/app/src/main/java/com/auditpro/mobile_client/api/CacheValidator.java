@@ -0,0 +1,51 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+
+/**
+ * Holds the validators the server returned with a response, so a later request for the same
+ * resource can be made conditional and skipped when nothing changed.
+ * @author Eric Ruck
+ */
+public class CacheValidator {
+
+	/**
+	 * Initializes a new instance.
+	 * @param eTag Entity tag header value or null
+	 * @param lastModified Last modified header value or null
+	 */
+	public CacheValidator(String eTag, String lastModified) {
+		this.eTag = eTag;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Gets the entity tag, sent back as If-None-Match.
+	 * @return Entity tag or null
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+	/**
+	 * Gets the last modified time, sent back as If-Modified-Since.
+	 * @return Last modified time as sent by the server or null
+	 */
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Indicates that there is nothing to validate with.
+	 * @return Empty flag
+	 */
+	public boolean isEmpty() {
+		return (eTag == null) && (lastModified == null);
+	}
+
+	private final String eTag;
+	private final String lastModified;
+}
@@ -0,0 +1,48 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Counts the bytes written through to another output stream.
+ * @author Eric Ruck
+ */
+class CountingOutputStream extends FilterOutputStream {
+
+	/**
+	 * Initializes a new instance.
+	 * @param out Receives the counted bytes
+	 */
+	CountingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Gets the number of bytes written so far.
+	 * @return Byte count
+	 */
+	long getCount() {
+		return count;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		++count;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		// Pass blocks through rather than one byte at a time
+		out.write(b, off, len);
+		count += len;
+	}
+
+	private long count;
+}
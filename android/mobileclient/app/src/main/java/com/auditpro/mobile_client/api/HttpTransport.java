@@ -0,0 +1,136 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+
+/**
+ * Opens and releases connections to the web services.  Connections are released by reading
+ * and closing their streams rather than disconnecting, so the platform keeps the socket alive
+ * in its connection pool and the next call to the same host skips the TCP and TLS handshakes.
+ * All connections share one socket factory, so TLS sessions are resumed as well.  Instances
+ * are immutable and safe to share across threads.
+ * @author Eric Ruck
+ */
+public final class HttpTransport {
+
+	/**
+	 * Initializes a transport with the passed timeouts.
+	 * @param connectTimeoutMs Time allowed to establish a connection, in milliseconds
+	 * @param readTimeoutMs Time allowed to wait for data from the server, in milliseconds
+	 */
+	public HttpTransport(int connectTimeoutMs, int readTimeoutMs) {
+		this(BASE_URL, connectTimeoutMs, readTimeoutMs);
+	}
+
+	/**
+	 * Initializes a transport to another host, such as a local stand-in server for tests.
+	 * @param baseUrl Base URL of the web services, ending with a slash
+	 * @param connectTimeoutMs Time allowed to establish a connection, in milliseconds
+	 * @param readTimeoutMs Time allowed to wait for data from the server, in milliseconds
+	 */
+	HttpTransport(String baseUrl, int connectTimeoutMs, int readTimeoutMs) {
+		this.baseUrl = baseUrl;
+		this.connectTimeoutMs = connectTimeoutMs;
+		this.readTimeoutMs = readTimeoutMs;
+	}
+
+	/**
+	 * Gets the transport shared by default by every client.
+	 * @return Shared transport
+	 */
+	public static HttpTransport getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Gets the base URL of the web services reached through this transport.
+	 * @return Base URL ending with a slash
+	 */
+	String getBaseUrl() {
+		return baseUrl;
+	}
+
+	/**
+	 * Opens a configured connection to the passed endpoint.
+	 * @param endpoint Web service endpoint
+	 * @return Unconnected connection ready for request properties
+	 * @throws IOException Invalid endpoint
+	 */
+	HttpURLConnection open(String endpoint) throws IOException {
+		HttpURLConnection res = (HttpURLConnection) new URL(endpoint).openConnection();
+		if (res instanceof HttpsURLConnection) {
+			((HttpsURLConnection) res).setSSLSocketFactory(SOCKET_FACTORY);
+		}
+		res.setConnectTimeout(connectTimeoutMs);
+		res.setReadTimeout(readTimeoutMs);
+		res.setUseCaches(false);
+		return res;
+	}
+
+	/**
+	 * Releases a connection after a call.  Reads off any unread response so the connection
+	 * can be reused, or disconnects if that is not possible.
+	 * @param connection Connection to release, or null
+	 * @param ins Response stream or null if not opened
+	 * @param isReusable False to disconnect, for example after a failed read
+	 */
+	void release(HttpURLConnection connection, InputStream ins, boolean isReusable) {
+		if (connection == null) {
+			return;
+		}
+		if (ins != null) {
+			try {
+				// Read off the remainder so the connection can go back to the pool
+				if (isReusable) {
+					byte[] discard = new byte[DRAIN_BUFFER_SIZE];
+					long drained = 0;
+					int count;
+					while ((drained < MAX_DRAIN_BYTES) && ((count = ins.read(discard)) >= 0)) {
+						drained += count;
+					}
+					isReusable = drained < MAX_DRAIN_BYTES;
+				}
+				ins.close();
+			} catch (IOException exc) {
+				// The connection is no good to anyone
+				Log.w(LOG_TAG, "Unexpected exception closing socket input stream");
+				isReusable = false;
+			}
+		}
+		if (!isReusable) {
+			// Close the socket rather than pool it
+			connection.disconnect();
+		}
+	}
+
+	private final String baseUrl;
+	private final int connectTimeoutMs;
+	private final int readTimeoutMs;
+
+	/** Provides the base URL for our web services. */
+	private static final String BASE_URL = "https://api.auditpro.io/api/";
+
+	/** Shared by every connection so TLS sessions are cached and resumed. */
+	private static final SSLSocketFactory SOCKET_FACTORY =
+			HttpsURLConnection.getDefaultSSLSocketFactory();
+
+	private static final HttpTransport DEFAULT = new HttpTransport(15000, 60000);
+
+	/** Unread response larger than this is cheaper to drop than to read off. */
+	private static final long MAX_DRAIN_BYTES = 64 * 1024;
+	private static final int DRAIN_BUFFER_SIZE = 4096;
+
+	private static final String LOG_TAG = "HttpTransport";
+}
@@ -0,0 +1,258 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import android.util.JsonReader;
+
+import com.auditpro.mobile_client.MobileClientException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * Reads the records of a JSON array response one at a time, so a response of any size can
+ * be handled without holding it in memory.
+ * @param <T> Record type
+ * @author Eric Ruck
+ */
+abstract class JsonRecordReader<T> {
+
+	/**
+	 * Reads the next record object from the array.
+	 * @param reader Positioned at the record value
+	 * @param index Index of the record in the array for messages
+	 * @return Parsed record, or null if the record is invalid and should be skipped
+	 * @throws IOException Failed to read the response
+	 */
+	abstract T read(JsonReader reader, int index) throws IOException;
+
+	/**
+	 * Passes the records of the array to the handler as they are read, then skips any that the
+	 * handler did not read.
+	 * @param reader Positioned at the start of the array
+	 * @param handler Consumes the records
+	 * @return Number of valid records read by the handler
+	 * @throws IOException Failed to read the response
+	 * @throws MobileClientException Handler failed to process the records
+	 */
+	int stream(JsonReader reader, RecordHandler<T> handler)
+			throws IOException, MobileClientException {
+		reader.beginArray();
+		final Records records = new Records(reader);
+		try {
+			handler.onRecords(new Iterable<T>() {
+				@Override
+				public Iterator<T> iterator() {
+					return records;
+				}
+			});
+		} catch (ReadException exc) {
+			// Surface the read failure from the iterator
+			throw exc.getCause();
+		}
+
+		// Skip whatever the handler did not read
+		while (reader.hasNext()) {
+			reader.skipValue();
+		}
+		reader.endArray();
+		return records.count;
+	}
+
+	/**
+	 * Reads a string, also accepting numbers and booleans as their text.
+	 * @param reader Positioned at the value
+	 * @return String value or null
+	 * @throws IOException Failed to read the response
+	 */
+	static String nextString(JsonReader reader) throws IOException {
+		switch (reader.peek()) {
+			case NULL:
+				reader.nextNull();
+				return null;
+			case BOOLEAN:
+				return Boolean.toString(reader.nextBoolean());
+			case STRING:
+			case NUMBER:
+				return reader.nextString();
+			default:
+				reader.skipValue();
+				return null;
+		}
+	}
+
+	/**
+	 * Reads a number, also accepting numeric strings.
+	 * @param reader Positioned at the value
+	 * @return Number value or null if null or not a number
+	 * @throws IOException Failed to read the response
+	 */
+	static Double nextDouble(JsonReader reader) throws IOException {
+		String value = nextString(reader);
+		if (value == null) {
+			return null;
+		}
+		try {
+			double res = Double.parseDouble(value);
+			return (Double.isNaN(res) || Double.isInfinite(res)) ? null : res;
+		} catch (NumberFormatException exc) {
+			// Not a number
+			return null;
+		}
+	}
+
+	/**
+	 * Reads an integer, truncating fractions and accepting numeric strings.
+	 * @param reader Positioned at the value
+	 * @return Integer value or zero if null or not a number
+	 * @throws IOException Failed to read the response
+	 */
+	static int nextInt(JsonReader reader) throws IOException {
+		Double value = nextDouble(reader);
+		return (value == null) ? 0 : value.intValue();
+	}
+
+	/**
+	 * Reads a boolean, also accepting the strings true and false.
+	 * @param reader Positioned at the value
+	 * @return Boolean value or false if null or not a boolean
+	 * @throws IOException Failed to read the response
+	 */
+	static boolean nextBoolean(JsonReader reader) throws IOException {
+		return "true".equalsIgnoreCase(nextString(reader));
+	}
+
+	/**
+	 * Reads one object value into a JSON object, for records small enough to hold and parsed by
+	 * existing object code.
+	 * @param reader Positioned at the object
+	 * @return Parsed object
+	 * @throws IOException Failed to read the response
+	 * @throws JSONException Invalid object
+	 */
+	static JSONObject nextObject(JsonReader reader) throws IOException, JSONException {
+		JSONObject res = new JSONObject();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			res.put(name, nextValue(reader));
+		}
+		reader.endObject();
+		return res;
+	}
+
+	/**
+	 * Reads any value as it would be parsed by the JSON object classes.
+	 * @param reader Positioned at the value
+	 * @return Parsed value
+	 * @throws IOException Failed to read the response
+	 * @throws JSONException Invalid value
+	 */
+	private static Object nextValue(JsonReader reader) throws IOException, JSONException {
+		switch (reader.peek()) {
+			case BEGIN_OBJECT:
+				return nextObject(reader);
+			case BEGIN_ARRAY:
+				JSONArray array = new JSONArray();
+				reader.beginArray();
+				while (reader.hasNext()) {
+					array.put(nextValue(reader));
+				}
+				reader.endArray();
+				return array;
+			case NUMBER:
+				String number = reader.nextString();
+				try {
+					return Long.parseLong(number);
+				} catch (NumberFormatException exc) {
+					// Not an integer
+					return Double.parseDouble(number);
+				}
+			case BOOLEAN:
+				return reader.nextBoolean();
+			case NULL:
+				reader.nextNull();
+				return JSONObject.NULL;
+			default:
+				return reader.nextString();
+		}
+	}
+
+	/**
+	 * Iterates the valid records of the array as they are read.
+	 */
+	private class Records implements Iterator<T> {
+
+		/**
+		 * Initializes a new instance.
+		 * @param reader Positioned inside the array
+		 */
+		Records(JsonReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				// Read ahead to the next valid record
+				while ((next == null) && reader.hasNext()) {
+					next = read(reader, index++);
+				}
+				return next != null;
+			} catch (IOException exc) {
+				// Iterators cannot throw checked exceptions
+				throw new ReadException(exc);
+			}
+		}
+
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			T res = next;
+			next = null;
+			++count;
+			return res;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private final JsonReader reader;
+		private T next;
+		private int index;
+		private int count;
+	}
+
+	/**
+	 * Carries a read failure out of the record iterator.
+	 */
+	private static class ReadException extends RuntimeException {
+
+		/**
+		 * Initializes a new instance.
+		 * @param cause Read failure
+		 */
+		ReadException(IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public synchronized IOException getCause() {
+			return (IOException) super.getCause();
+		}
+
+		private static final long serialVersionUID = 1L;
+	}
+}
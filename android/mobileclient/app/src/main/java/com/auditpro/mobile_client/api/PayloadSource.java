@@ -0,0 +1,24 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Writes a request body directly to the connection output stream, so that large payloads
+ * can be posted with chunked transfer encoding without first being built in memory.
+ * @author Eric Ruck
+ */
+public interface PayloadSource {
+
+	/**
+	 * Writes the payload to the request.  Implementations should not close the stream.
+	 * @param out Request body output stream
+	 * @throws IOException Failed to produce or write the payload
+	 */
+	void writeTo(OutputStream out) throws IOException;
+}
@@ -4,17 +4,15 @@
  */
 package com.auditpro.mobile_client.api;
 
+import android.annotation.SuppressLint;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import com.auditpro.mobile_client.database.BaseDatabase;
 import com.auditpro.mobile_client.entities.Product;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 
 /**
@@ -24,36 +22,97 @@ import java.util.List;
 class ProductResponse extends Product {
 
 	/**
-	 * Initialize store from a JSON source.
-	 * @param source Initial data
+	 * Initialize product from the next object in a JSON stream.
+	 * @param reader Positioned at the product object
+	 * @throws IOException Failed to read the response
 	 */
-	private ProductResponse(JSONObject source) {
+	private ProductResponse(JsonReader reader) throws IOException {
 		super();
-		setId(source.optInt("chain_x_product_id"));
-		setClientId(source.optInt("client_id"));
-		setChainId(source.optInt("chain_id"));
-		setGlobalProductId(source.optInt("product_id"));
-		setBrandName(ApiClient.jsonString(source,"brand_name"));
-		setBrandNameShort(ApiClient.jsonString(source,"brand_name_short"));
-		setProductName(ApiClient.jsonString(source,"product_name"));
-		setUPC(ApiClient.jsonString(source,"upc"));
-		setMSRP(source.isNull("msrp") ? null : source.optDouble("msrp"));
-		setRandomWeight(source.optBoolean("is_random_weight"));
-		setRetailPriceMin(source.isNull("retail_price_min") ? null : source.optDouble("retail_price_min"));
-		setRetailPriceMax(source.isNull("retail_price_max") ? null : source.optDouble("retail_price_max"));
-		setRetailPriceAverage(source.isNull("retail_price_average") ? null : source.optDouble("retail_price_average"));
-		setCategoryName(ApiClient.jsonString(source,"category_name"));
-		setSubcategoryName(ApiClient.jsonString(source,"subcategory_name"));
-		setProductTypeName(ApiClient.jsonString(source,"product_type_name"));
-		setCurrentReorderCode(ApiClient.jsonString(source,"current_reorder_code"));
-		setPreviousReorderCode(ApiClient.jsonString(source,"previous_reorder_code"));
-		setBrandSKU(ApiClient.jsonString(source,"brand_sku"));
-		setLastScannedAt(BaseDatabase.parseDateTime(ApiClient.jsonString(source,"last_scanned_at")));
-		setLastScannedPrice(source.isNull("last_scanned_price") ? null : source.optDouble("last_scanned_price"));
-		setLastScanWasSale(source.optBoolean("last_scan_was_sale"));
-		setChainSKU(ApiClient.jsonString(source, "chain_sku"));
-		setInStockPriceMin(source.isNull("in_stock_price_min") ? null : source.optDouble("in_stock_price_min"));
-		setInStockPriceMax(source.isNull("in_stock_price_max") ? null : source.optDouble("in_stock_price_max"));
+		reader.beginObject();
+		while (reader.hasNext()) {
+			switch (reader.nextName()) {
+				case "chain_x_product_id":
+					setId(JsonRecordReader.nextInt(reader));
+					break;
+				case "client_id":
+					setClientId(JsonRecordReader.nextInt(reader));
+					break;
+				case "chain_id":
+					setChainId(JsonRecordReader.nextInt(reader));
+					break;
+				case "product_id":
+					setGlobalProductId(JsonRecordReader.nextInt(reader));
+					break;
+				case "brand_name":
+					setBrandName(JsonRecordReader.nextString(reader));
+					break;
+				case "brand_name_short":
+					setBrandNameShort(JsonRecordReader.nextString(reader));
+					break;
+				case "product_name":
+					setProductName(JsonRecordReader.nextString(reader));
+					break;
+				case "upc":
+					setUPC(JsonRecordReader.nextString(reader));
+					break;
+				case "msrp":
+					setMSRP(JsonRecordReader.nextDouble(reader));
+					break;
+				case "is_random_weight":
+					setRandomWeight(JsonRecordReader.nextBoolean(reader));
+					break;
+				case "retail_price_min":
+					setRetailPriceMin(JsonRecordReader.nextDouble(reader));
+					break;
+				case "retail_price_max":
+					setRetailPriceMax(JsonRecordReader.nextDouble(reader));
+					break;
+				case "retail_price_average":
+					setRetailPriceAverage(JsonRecordReader.nextDouble(reader));
+					break;
+				case "category_name":
+					setCategoryName(JsonRecordReader.nextString(reader));
+					break;
+				case "subcategory_name":
+					setSubcategoryName(JsonRecordReader.nextString(reader));
+					break;
+				case "product_type_name":
+					setProductTypeName(JsonRecordReader.nextString(reader));
+					break;
+				case "current_reorder_code":
+					setCurrentReorderCode(JsonRecordReader.nextString(reader));
+					break;
+				case "previous_reorder_code":
+					setPreviousReorderCode(JsonRecordReader.nextString(reader));
+					break;
+				case "brand_sku":
+					setBrandSKU(JsonRecordReader.nextString(reader));
+					break;
+				case "last_scanned_at":
+					setLastScannedAt(BaseDatabase.parseDateTime(JsonRecordReader.nextString(reader)));
+					break;
+				case "last_scanned_price":
+					setLastScannedPrice(JsonRecordReader.nextDouble(reader));
+					break;
+				case "last_scan_was_sale":
+					setLastScanWasSale(JsonRecordReader.nextBoolean(reader));
+					break;
+				case "chain_sku":
+					setChainSKU(JsonRecordReader.nextString(reader));
+					break;
+				case "in_stock_price_min":
+					setInStockPriceMin(JsonRecordReader.nextDouble(reader));
+					break;
+				case "in_stock_price_max":
+					setInStockPriceMax(JsonRecordReader.nextDouble(reader));
+					break;
+				default:
+					// Ignore fields we do not use
+					reader.skipValue();
+					break;
+			}
+		}
+		reader.endObject();
 	}
 
 	/**
@@ -67,39 +126,30 @@ class ProductResponse extends Product {
 	}
 
 	/**
-	 * Parses the array response from the web service.
-	 * @param source Array from the web service
-	 * @return Parsed results
+	 * Streams the products from the array response of the web service, skipping any that are
+	 * invalid.
 	 */
-	static List<Product> fromJSON(JSONArray source) {
-		// Parse the individual objects out of the store
-		List<Product> res = new ArrayList<>();
-		ProductResponse product = null;
-		for (int index = 0; index < source.length(); ++index) {
-			try {
-				// Parse the current index
-				product = new ProductResponse(source.getJSONObject(index));
-				if (!product.isValid()) {
-					// Invalid data in the product
-					String name = product.getProductName();
-					Log.w(LOG_TAG, String.format("Invalid product %d %s at %d",
-							product.getId(), (name == null) ? "(null)" : name, index));
-				} else {
-					// Add the store to the result
-					res.add(product);
-				}
-			} catch (JSONException excJSON) {
-				// Failed to parse the current store index
-				String id = (product == null) ? "(null)" : Integer.toString(product.getId());
-				String name = (product == null) ? null : product.getProductName();
-				Log.w(LOG_TAG, String.format("Failed to parse product %s %s at %d",
-						id, (name == null) ? "(null)" : name, index));
+	static final JsonRecordReader<Product> READER = new JsonRecordReader<Product>() {
+		@SuppressLint("DefaultLocale")
+		@Override
+		Product read(JsonReader reader, int index) throws IOException {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				// Null or other value where a product belongs
+				Log.w(LOG_TAG, String.format("Skipped %s in place of product at %d", reader.peek(), index));
+				reader.skipValue();
+				return null;
 			}
+			ProductResponse product = new ProductResponse(reader);
+			if (!product.isValid()) {
+				// Invalid data in the product
+				String name = product.getProductName();
+				Log.w(LOG_TAG, String.format("Invalid product %d %s at %d",
+						product.getId(), (name == null) ? "(null)" : name, index));
+				return null;
+			}
+			return product;
 		}
+	};
 
-		// Return the stores
-		return res;
-	}
-
-	private static final String LOG_TAG = "StoreResponse";
+	private static final String LOG_TAG = "ProductResponse";
 }
@@ -0,0 +1,25 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.api;
+
+import com.auditpro.mobile_client.MobileClientException;
+
+
+/**
+ * Receives the records of a web service response while the response is still being read.
+ * @param <T> Record type
+ * @author Eric Ruck
+ */
+public interface RecordHandler<T> {
+
+	/**
+	 * Consumes the records.  The records can only be iterated once, and each is parsed from the
+	 * network as it is requested, so the handler should process them one at a time rather than
+	 * keep them.  Records the handler does not read are skipped.
+	 * @param records Valid records in response order
+	 * @throws MobileClientException Failed to process the records
+	 */
+	void onRecords(Iterable<T> records) throws MobileClientException;
+}
@@ -4,6 +4,9 @@
  */
 package com.auditpro.mobile_client.api;
 
+import android.annotation.SuppressLint;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import com.auditpro.mobile_client.MobileClientException;
@@ -14,8 +17,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
 
 
 /**
@@ -96,39 +98,38 @@ public class StoreResponse extends Store {
 	}
 
 	/**
-	 * Parses the array response from the web service.
-	 * @param source Array from the web service
-	 * @return Parsed results
+	 * Streams the stores from the array response of the web service, skipping any that are
+	 * invalid.  Each store is small, so it is read into an object and parsed as before.
 	 */
-	static List<Store> fromJSON(JSONArray source) {
-		// Parse the individual objects out of the store
-		List<Store> res = new ArrayList<>();
-		StoreResponse store = null;
-		for (int index = 0; index < source.length(); ++index) {
+	static final JsonRecordReader<Store> READER = new JsonRecordReader<Store>() {
+		@SuppressLint("DefaultLocale")
+		@Override
+		Store read(JsonReader reader, int index) throws IOException {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				// Null or other value where a store belongs
+				Log.w(LOG_TAG, String.format("Skipped %s in place of store at %d", reader.peek(), index));
+				reader.skipValue();
+				return null;
+			}
+			StoreResponse store;
 			try {
 				// Parse the current index
-				store = new StoreResponse(source.getJSONObject(index));
-				if (!store.isValid()) {
-					// Invalid data in store
-					String storeName = store.getStoreName();
-					Log.w(LOG_TAG, String.format("Invalid store %d %s at %d",
-							store.getStoreId(), (storeName == null) ? "(null)" : storeName, index));
-				} else {
-					// Add the store to the result
-					res.add(store);
-				}
+				store = new StoreResponse(nextObject(reader));
 			} catch (JSONException excJSON) {
 				// Failed to parse the current store index
-				String storeId = (store == null) ? "(null)" : Integer.toString(store.getStoreId());
-				String storeName = (store == null) ? null : store.getStoreName();
-				Log.w(LOG_TAG, String.format("Failed to parse store %s %s at %d",
-						storeId, (storeName == null) ? "(null)" : storeName, index));
+				Log.w(LOG_TAG, String.format("Failed to parse store at %d", index));
+				return null;
+			}
+			if (!store.isValid()) {
+				// Invalid data in store
+				String storeName = store.getStoreName();
+				Log.w(LOG_TAG, String.format("Invalid store %d %s at %d",
+						store.getStoreId(), (storeName == null) ? "(null)" : storeName, index));
+				return null;
 			}
+			return store;
 		}
-
-		// Return the stores
-		return res;
-	}
+	};
 
 	public static Store fromJSON(String source) {
 		try {
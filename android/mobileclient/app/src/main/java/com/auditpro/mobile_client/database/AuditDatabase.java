@@ -7,10 +7,14 @@ package com.auditpro.mobile_client.database;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.util.JsonWriter;
+import android.util.SparseArray;
 
 import com.auditpro.mobile_client.MobileClientException;
 import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.AuditItem;
 import com.auditpro.mobile_client.entities.Notes;
+import com.auditpro.mobile_client.entities.OutboxEntry;
 import com.auditpro.mobile_client.entities.Product;
 import com.auditpro.mobile_client.entities.Receipt;
 import com.auditpro.mobile_client.entities.ReorderStatus;
@@ -18,15 +22,17 @@ import com.auditpro.mobile_client.entities.Report;
 import com.auditpro.mobile_client.entities.Scan;
 import com.auditpro.mobile_client.security.Security;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -56,6 +62,7 @@ public class AuditDatabase extends BaseDatabase {
 		ReportRecord.createTable(db);
 		NotesRecord.createTable(db);
 		ConditionsRecord.createTable(db);
+		OutboxRecord.createTable(db);
 	}
 
 	/**
@@ -70,6 +77,7 @@ public class AuditDatabase extends BaseDatabase {
 		ReportRecord.updateTable(db, lastVersion);
 		NotesRecord.updateTable(db, lastVersion);
 		ConditionsRecord.updateTable(db, lastVersion);
+		OutboxRecord.updateTable(db, lastVersion);
 	}
 
 	/**
@@ -148,7 +156,7 @@ public class AuditDatabase extends BaseDatabase {
 	}
 
 	/**
-	 * Completes the audit in progress.
+	 * Completes the audit in progress and queues it for upload.
 	 * @param audit Audit in progress
 	 * @param latitute Final latitude or null
 	 * @param longitude Final longitude or null
@@ -157,16 +165,23 @@ public class AuditDatabase extends BaseDatabase {
 	 */
 	public void completeAudit(Audit audit, Double latitute, Double longitude, Date endTime)
 		throws MobileClientException {
+		SQLiteDatabase db = getCon();
 		try {
-			// Update record
+			// Update record and queue the upload atomically
+			db.beginTransaction();
 			AuditRecord complete = new AuditRecord(audit);
 			complete.endAudit(latitute, longitude, endTime);
-			complete.update(getCon());
+			complete.update(db);
+			OutboxRecord.enqueue(db, audit);
+			db.setTransactionSuccessful();
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
 					"Failed to update completed audit in database",
 					excSql);
+		} finally {
+			// Complete transaction
+			db.endTransaction();
 		}
 	}
 
@@ -178,17 +193,24 @@ public class AuditDatabase extends BaseDatabase {
 	 */
 	public Audit reopenAudit(Audit audit)
 			throws MobileClientException {
+		SQLiteDatabase db = getCon();
 		try {
-			// Update record
+			// Update record and withdraw the upload atomically
+			db.beginTransaction();
 			AuditRecord reopen = new AuditRecord(audit);
 			reopen.reopenAudit();
-			reopen.update(getCon());
+			reopen.update(db);
+			OutboxRecord.deleteFor(db, audit);
+			db.setTransactionSuccessful();
 			return new Audit(reopen);
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
 					"Failed to update completed audit in database",
 					excSql);
+		} finally {
+			// Complete transaction
+			db.endTransaction();
 		}
 	}
 
@@ -199,8 +221,8 @@ public class AuditDatabase extends BaseDatabase {
 	 */
 	public void addScan(Scan scan) throws MobileClientException {
 		try {
-			// Create the new record
-			new ScanRecord(scan).insert(getCon());
+			// Create the new record, or replace the product's existing scan
+			new ScanRecord(scan).upsert(getCon());
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
@@ -217,7 +239,7 @@ public class AuditDatabase extends BaseDatabase {
 	public void updateScan(Scan scan) throws MobileClientException {
 		try {
 			// Apply the update to the database
-			new ScanRecord(scan).update(getCon());
+			new ScanRecord(scan).upsert(getCon());
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
@@ -273,9 +295,8 @@ public class AuditDatabase extends BaseDatabase {
 	 */
 	public void addReport(Report report) throws MobileClientException {
 		try {
-			// Create the new report
-			ReportRecord rec = new ReportRecord(report);
-			rec.insert(getCon());
+			// Create the new report, or update the product's existing report
+			new ReportRecord(report).upsert(getCon());
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
@@ -285,19 +306,15 @@ public class AuditDatabase extends BaseDatabase {
 	}
 
 	/**
-	 * Updates a report in the audit in progress.
+	 * Updates a report in the audit in progress.  Implicit reports (no id) are created, and
+	 * the report is matched by audit and product, so callers need not read it first.
 	 * @param report Report to update
 	 * @throws MobileClientException Database or state error
 	 */
 	public void updateReport(Report report) throws MobileClientException {
-		if (report.getId() == null) {
-			// The source report is implicit, we actually need to add
-			addReport(report);
-		}
 		try {
-			// Create the new report
-			ReportRecord rec = new ReportRecord(report);
-			rec.update(getCon());
+			// Insert or update the report in one statement
+			new ReportRecord(report).upsert(getCon());
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
@@ -325,38 +342,29 @@ public class AuditDatabase extends BaseDatabase {
 				return reports;
 			}
 
+			// Index the reported products
+			SparseArray<Report> reported = new SparseArray<>(reports.size() + products.size());
+			for (Report report : reports) {
+				reported.put(report.getProductId(), report);
+			}
+
 			// Merge with scans
-			List<ScanRecord> scans = ScanRecord.getScans(getCon(), audit);
-			List<Report> append = new ArrayList<>();
-			for(ScanRecord scan : scans) {
-				Report found = null;
-				for(Report seek : reports) {
-					if (seek.getProductId() == scan.getProductId()) {
-						found = seek;
-						break;
-					}
-				}
-				if (found == null) {
-					append.add(new Report(scan));
+			for (ScanRecord scan : ScanRecord.getScans(getCon(), audit)) {
+				if (reported.get(scan.getProductId()) == null) {
+					Report report = new Report(scan);
+					reported.put(report.getProductId(), report);
+					reports.add(report);
 				}
 			}
-			reports.addAll(append);
 
 			// Merge with products
-			append = new ArrayList<>();
 			for (Product prod : products) {
-				Report found = null;
-				for (Report seek : reports) {
-					if (seek.getProductId() == prod.getId()) {
-						found = seek;
-						break;
-					}
-				}
-				if (found == null) {
-					append.add(new Report(audit, prod, null));
+				if (reported.get(prod.getId()) == null) {
+					Report report = new Report(audit, prod, null);
+					reported.put(prod.getId(), report);
+					reports.add(report);
 				}
 			}
-			reports.addAll(append);
 			return reports;
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
@@ -366,6 +374,23 @@ public class AuditDatabase extends BaseDatabase {
 		}
 	}
 
+	/**
+	 * Gets what has been recorded for each reported product in the audit in one query.
+	 * @param audit Current audit
+	 * @return Audit items keyed by product id
+	 * @throws MobileClientException Database error
+	 */
+	public SparseArray<AuditItem> getAuditItems(Audit audit) throws MobileClientException {
+		try {
+			return ReportRecord.getItems(getCon(), audit);
+		} catch (SQLiteException excSql) {
+			// Unexpected database error
+			throw new MobileClientException(
+					"Failed to get reports for audit in database",
+					excSql);
+		}
+	}
+
 	/**
 	 * Populates the passed receipt with the out of stock items in the passed audit.
 	 * @param receipt Receipt to populate
@@ -376,8 +401,12 @@ public class AuditDatabase extends BaseDatabase {
 	public void populateReceipt(Receipt receipt, Audit audit, List<Product> products)
 			throws MobileClientException {
 		try {
-			// Start with the actual reports
-			List<Report> reports = ReportRecord.getReports(getCon(), audit);
+			// Index the actual reports by product
+			List<Report> reportList = ReportRecord.getReports(getCon(), audit);
+			SparseArray<Report> reports = new SparseArray<>(reportList.size());
+			for (Report report : reportList) {
+				reports.put(report.getProductId(), report);
+			}
 
 			// Sort products for output
 			ArrayList<Product> sortedProducts = new ArrayList<>(products);
@@ -395,23 +424,23 @@ public class AuditDatabase extends BaseDatabase {
 			boolean printNotes =
 					sec.optSettingBool(Security.SETTING_AUDIT_STORE_NOTES, false) &&
 					sec.optSettingBool(Security.SETTING_PRINT_STORE_NOTES, false);
+			SparseArray<Set<Integer>> conditions = printConditions
+					? ConditionsRecord.getConditionsByProduct(getCon(), audit)
+					: null;
 			for(Product product : sortedProducts) {
 				// Should we include the current product on the receipt?
-				for (Report report : reports) {
-					if (report.getProductId() == product.getId()) {
-						if (report.getReorderStatusId() == ReorderStatus.OUT_OF_STOCK.getId()) {
-							receipt.addOutOfStockItem(product.getDisplayReorderCode(), product.getProductName());
-						} else if (printVoids && (report.getReorderStatusId() == ReorderStatus.VOID.getId())) {
-							receipt.addVoidItem(product.getDisplayReorderCode(), product.getProductName());
-						}
-						break;
+				Report report = reports.get(product.getId());
+				if (report != null) {
+					if (report.getReorderStatusId() == ReorderStatus.OUT_OF_STOCK.getId()) {
+						receipt.addOutOfStockItem(product.getDisplayReorderCode(), product.getProductName());
+					} else if (printVoids && (report.getReorderStatusId() == ReorderStatus.VOID.getId())) {
+						receipt.addVoidItem(product.getDisplayReorderCode(), product.getProductName());
 					}
 				}
-				if (printConditions) {
+				if (conditions != null) {
 					// Check for SKU conditions
-					receipt.addSKUConditions(sec.getSKUConditions(), getSelectedSKUConditions(audit, product.getId()),
+					receipt.addSKUConditions(sec.getSKUConditions(), conditions.get(product.getId()),
 							product.getDisplayReorderCode(), product.getProductName());
-
 				}
 			}
 
@@ -522,49 +551,51 @@ public class AuditDatabase extends BaseDatabase {
 	}
 
 	/**
-	 * Serialize a completed audit to a JSON formatted string.
+	 * Streams a completed audit as JSON to the passed output, reading scans, reports and
+	 * conditions straight from their cursors so memory use does not grow with the audit size.
+	 * The output is flushed but not closed.
 	 * @param audit Audit to serialize
-	 * @return Serialized audit
-	 * @throws MobileClientException Database or serialization fault
+	 * @param out Receives the UTF-8 encoded JSON
+	 * @throws MobileClientException Database fault
+	 * @throws IOException Failed to write to the output
 	 */
-	public String serializeAudit(Audit audit) throws MobileClientException {
+	public void writeAudit(Audit audit, OutputStream out) throws MobileClientException, IOException {
 		try {
-			// Get the related scans and reports
-			JSONArray scans = ScanRecord.getJSON(getCon(), audit);
-			JSONArray reports = ReportRecord.getJSON(getCon(), audit);
-			JSONArray skuConditions = ConditionsRecord.getJSON(getCon(), audit);
-
-			// Get our notes
+			// Get our notes and user info
 			Notes notes = getNotes(audit.getId());
-
-			// Get the user info
-			JSONObject user = new JSONObject();
 			Security sec = new Security(ctx);
-			user.put("userId", sec.getUserId());
-			user.put("clientId", sec.getClientId());
-
-			// Generate the result
-			JSONObject res = new JSONObject();
-			res.put("id", audit.getId().toString());
-			res.put("storeId", audit.getStoreId());
-			res.put("auditStartedAt", BaseDatabase.parseDateTime(audit.getAuditStartedAt()));
-			res.put("auditEndedAt", BaseDatabase.parseDateTime(audit.getAuditEndedAt()));
-			res.put("latitudeAtStart", audit.getLatitudeAtStart());
-			res.put("longitudeAtStart", audit.getLongitudeAtStart());
-			res.put("latitudeAtEnd", audit.getLatitudeAtEnd());
-			res.put("longitudeAtEnd", audit.getLongitudeAtEnd());
-			res.put("user", user);
-			res.put("scans", scans);
-			res.put("reports", reports);
-			res.put("skuConditions", skuConditions);
-			res.put("notes", notes.getContents());
-			res.put("audit_store_note", notes.getStore());
-			return res.toString();
-		} catch (JSONException excJSON) {
-			// Unexpected sieralization error
-			throw new MobileClientException(
-					"Failed to serialized details for requested audit",
-					excJSON);
+
+			// Write the audit
+			JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+			writer.beginObject();
+			writer.name("id").value(audit.getId().toString());
+			writer.name("storeId").value(audit.getStoreId());
+			BaseDatabase.writeString(writer, "auditStartedAt",
+					BaseDatabase.parseDateTime(audit.getAuditStartedAt()));
+			BaseDatabase.writeString(writer, "auditEndedAt",
+					BaseDatabase.parseDateTime(audit.getAuditEndedAt()));
+			BaseDatabase.writeDouble(writer, "latitudeAtStart", audit.getLatitudeAtStart());
+			BaseDatabase.writeDouble(writer, "longitudeAtStart", audit.getLongitudeAtStart());
+			BaseDatabase.writeDouble(writer, "latitudeAtEnd", audit.getLatitudeAtEnd());
+			BaseDatabase.writeDouble(writer, "longitudeAtEnd", audit.getLongitudeAtEnd());
+			writer.name("user").beginObject();
+			writer.name("userId").value(sec.getUserId());
+			writer.name("clientId").value(sec.getClientId());
+			writer.endObject();
+
+			// Stream the related records
+			writer.name("scans");
+			ScanRecord.writeJSON(getCon(), audit, writer);
+			writer.name("reports");
+			ReportRecord.writeJSON(getCon(), audit, writer);
+			writer.name("skuConditions");
+			ConditionsRecord.writeJSON(getCon(), audit, writer);
+
+			// Finish with the notes
+			BaseDatabase.writeString(writer, "notes", notes.getContents());
+			BaseDatabase.writeString(writer, "audit_store_note", notes.getStore());
+			writer.endObject();
+			writer.flush();
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
 			throw new MobileClientException(
@@ -587,6 +618,7 @@ public class AuditDatabase extends BaseDatabase {
 			ReportRecord.deleteFor(getCon(), audit);
 			AuditRecord.deleteFor(getCon(), audit);
 			ConditionsRecord.deleteFor(getCon(), audit);
+			OutboxRecord.deleteFor(getCon(), audit);
 			db.setTransactionSuccessful();
 		} catch (SQLiteException excSql) {
 			// Unexpected database error
@@ -601,6 +633,92 @@ public class AuditDatabase extends BaseDatabase {
 		}
 	}
 
+	/**
+	 * Gets the user's completed audits waiting in the upload outbox, those that have failed
+	 * the fewest times first.
+	 * @param userId User whose uploads we want
+	 * @param dueBy Only include uploads due by this epoch time, or null for all
+	 * @return Queued uploads, may be empty
+	 * @throws MobileClientException Database error
+	 */
+	public List<OutboxEntry> getOutbox(int userId, Long dueBy) throws MobileClientException {
+		try {
+			// Match the queued uploads to their audits
+			Map<UUID, Audit> completed = new HashMap<>();
+			for (Audit audit : AuditRecord.getCompleteAudits(getCon(), userId)) {
+				completed.put(audit.getId(), audit);
+			}
+			List<OutboxEntry> res = new ArrayList<>();
+			for (OutboxRecord queued : OutboxRecord.getQueued(getCon(), userId, dueBy)) {
+				Audit audit = completed.get(queued.getAuditId());
+				if (audit != null) {
+					res.add(new OutboxEntry(audit, queued.getIdempotencyKey(), queued.getAttempts(),
+							queued.getPartsAcked()));
+				}
+			}
+			return res;
+		} catch (SQLiteException excSql) {
+			// Unexpected database error
+			throw new MobileClientException(
+					"Failed to read upload outbox from database",
+					excSql);
+		}
+	}
+
+	/**
+	 * Gets the time the user's next queued upload is due.
+	 * @param userId User whose uploads we want
+	 * @return Epoch time of the next upload, or null if the outbox is empty
+	 * @throws MobileClientException Database error
+	 */
+	public Long getNextUploadAt(int userId) throws MobileClientException {
+		try {
+			return OutboxRecord.getNextAttemptAt(getCon(), userId);
+		} catch (SQLiteException excSql) {
+			// Unexpected database error
+			throw new MobileClientException(
+					"Failed to read upload outbox from database",
+					excSql);
+		}
+	}
+
+	/**
+	 * Records a failed upload so it is retried later.
+	 * @param entry Upload that failed
+	 * @param nextAttemptAt Epoch time to try again
+	 * @param error Reason for the failure
+	 * @throws MobileClientException Database error
+	 */
+	public void deferUpload(OutboxEntry entry, long nextAttemptAt, String error)
+			throws MobileClientException {
+		try {
+			OutboxRecord.defer(getCon(), entry.getAudit(), entry.getAttempts() + 1, nextAttemptAt,
+					error);
+		} catch (SQLiteException excSql) {
+			// Unexpected database error
+			throw new MobileClientException(
+					"Failed to update upload outbox in database",
+					excSql);
+		}
+	}
+
+	/**
+	 * Records the parts of an upload the server has acknowledged.
+	 * @param entry Upload in progress
+	 * @param partsAcked Parts acknowledged so far
+	 * @throws MobileClientException Database error
+	 */
+	public void setUploadProgress(OutboxEntry entry, int partsAcked) throws MobileClientException {
+		try {
+			OutboxRecord.setPartsAcked(getCon(), entry.getAudit(), partsAcked);
+		} catch (SQLiteException excSql) {
+			// Unexpected database error
+			throw new MobileClientException(
+					"Failed to update upload outbox in database",
+					excSql);
+		}
+	}
+
 	/**
 	 * Gets the current version of this database.
 	 * @return Current version code
@@ -613,5 +731,9 @@ public class AuditDatabase extends BaseDatabase {
 	public static final int DB_VERSION_INIT = 1;
 	public static final int DB_VERSION_16 = 2; // Build 16 store notes
 	static final int DB_VERSION_18 = 3; // Build 18 SKU conditions
-	private static final int DB_VERSION_CURRENT = DB_VERSION_18;
+	static final int DB_VERSION_AUDIT_INDEXES = 4; // Indexes on audit and product lookups
+	static final int DB_VERSION_EPOCH_DATES = 5; // Epoch millisecond timestamps
+	static final int DB_VERSION_OUTBOX = 6; // Upload outbox
+	static final int DB_VERSION_UPLOAD_PARTS = 7; // Resumable uploads in parts
+	private static final int DB_VERSION_CURRENT = DB_VERSION_UPLOAD_PARTS;
 }
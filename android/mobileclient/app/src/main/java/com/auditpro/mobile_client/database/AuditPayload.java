@@ -0,0 +1,49 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.api.PayloadSource;
+import com.auditpro.mobile_client.entities.Audit;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+
+/**
+ * Streams a completed audit from the database as the body of an upload request.  The
+ * database must stay open until the request completes.
+ * @author Eric Ruck
+ */
+public class AuditPayload implements PayloadSource {
+
+	/**
+	 * Initializes a new instance.
+	 * @param db Open database containing the audit
+	 * @param audit Audit to upload
+	 */
+	public AuditPayload(AuditDatabase db, Audit audit) {
+		this.db = db;
+		this.audit = audit;
+	}
+
+	/**
+	 * Writes the audit JSON to the request.
+	 * @param out Request body output stream
+	 * @throws IOException Failed to read or write the audit
+	 */
+	@Override
+	public void writeTo(OutputStream out) throws IOException {
+		try {
+			db.writeAudit(audit, out);
+		} catch (MobileClientException exc) {
+			// Report the database failure through the stream
+			throw new IOException(exc.getMessage(), exc);
+		}
+	}
+
+	private final AuditDatabase db;
+	private final Audit audit;
+}
@@ -92,7 +92,7 @@ public class AuditRecord {
 		setUserId(cursor.getInt(cursor.getColumnIndex(COL_USER_ID)));
 		setStoreId(cursor.getInt(cursor.getColumnIndex(COL_STORE_ID)));
 		setStoreDescr(cursor.getString(cursor.getColumnIndex(COL_STORE_DESCR)));
-		setAuditStartedAt(BaseDatabase.parseDateTime(cursor.getString(cursor.getColumnIndex(COL_AUDIT_STARTED_AT))));
+		setAuditStartedAt(BaseDatabase.getNullableDate(cursor, COL_AUDIT_STARTED_AT));
 		setAuditEndedAt(BaseDatabase.getNullableDate(cursor, COL_AUDIT_ENDED_AT));
 		setAuditTypeId(cursor.getInt(cursor.getColumnIndex(COL_AUDIT_TYPE_ID)));
 		setLatitudeAtStart(BaseDatabase.getNullableDouble(cursor, COL_LATITUDE_AT_START));
@@ -111,8 +111,8 @@ public class AuditRecord {
 				COL_USER_ID + " INTEGER, " +
 				COL_STORE_ID + " INTEGER, " +
 				COL_STORE_DESCR + " TEXT, " +
-				COL_AUDIT_STARTED_AT + " TEXT, " +
-				COL_AUDIT_ENDED_AT + " TEXT, " +
+				COL_AUDIT_STARTED_AT + " INTEGER, " +
+				COL_AUDIT_ENDED_AT + " INTEGER, " +
 				COL_AUDIT_TYPE_ID + " INTEGER, " +
 				COL_LATITUDE_AT_START + " DOUBLE, " +
 				COL_LONGITUDE_AT_START + " DOUBLE, " +
@@ -121,6 +121,16 @@ public class AuditRecord {
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes for our table.
+	 * @param db Database in which to create our indexes
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_USER_ENDED + " ON " + TABLE_NAME +
+				" (" + COL_USER_ID + ", " + COL_AUDIT_ENDED_AT + ")");
 	}
 
 	/**
@@ -128,9 +138,15 @@ public class AuditRecord {
 	 * @param db Connected database
 	 * @param lastVersion Last version of our database
 	 */
-	@SuppressWarnings("unused")
 	static void updateTable(SQLiteDatabase db, int lastVersion) {
-		// No updates as of now
+		if (lastVersion < AuditDatabase.DB_VERSION_EPOCH_DATES) {
+			// Store timestamps as epoch milliseconds and index lookups by user and completion
+			BaseDatabase.migrateDateColumns(db, TABLE_NAME,
+					new String[] { COL_LEGACY_AUDIT_STARTED_AT, COL_LEGACY_AUDIT_ENDED_AT },
+					new String[] { COL_AUDIT_STARTED_AT, COL_AUDIT_ENDED_AT });
+			db.execSQL("DROP INDEX IF EXISTS " + INDEX_USER_ENDED);
+			createIndexes(db);
+		}
 	}
 
 	/**
@@ -143,8 +159,8 @@ public class AuditRecord {
 		record.put(COL_USER_ID, getUserId());
 		record.put(COL_STORE_ID, getStoreId());
 		record.put(COL_STORE_DESCR, getStoreDescr());
-		record.put(COL_AUDIT_STARTED_AT, BaseDatabase.parseDateTime(getAuditStartedAt()));
-		record.put(COL_AUDIT_ENDED_AT, BaseDatabase.parseDateTime(getAuditEndedAt()));
+		record.put(COL_AUDIT_STARTED_AT, BaseDatabase.toEpoch(getAuditStartedAt()));
+		record.put(COL_AUDIT_ENDED_AT, BaseDatabase.toEpoch(getAuditEndedAt()));
 		record.put(COL_AUDIT_TYPE_ID, getAuditTypeId());
 		record.put(COL_LATITUDE_AT_START, getLatitudeAtStart());
 		record.put(COL_LONGITUDE_AT_START, getLongitudeAtStart());
@@ -160,8 +176,8 @@ public class AuditRecord {
 	 * @return Count of copmleted audits for user
 	 */
 	static int getCount(SQLiteDatabase db, int userId, boolean completed) {
-		String query = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE user_id=? AND audit_ended_at IS " +
-				(completed ? "NOT NULL" : "NULL");
+		String query = "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE " + COL_USER_ID + "=? AND " +
+				COL_AUDIT_ENDED_AT + " IS " + (completed ? "NOT NULL" : "NULL");
 		Cursor cursor = db.rawQuery(query, new String[] { Integer.toString(userId) });
 		int count = cursor.moveToNext() ? cursor.getInt(0) : 0;
 		cursor.close();
@@ -176,7 +192,8 @@ public class AuditRecord {
 	 */
 	static List<Audit> getCompleteAudits(SQLiteDatabase db, int userId) {
 		// Query the database for the audits
-		String query = "SELECT * FROM " + TABLE_NAME + " WHERE user_id=? AND audit_ended_at IS NOT NULL";
+		String query = "SELECT * FROM " + TABLE_NAME + " WHERE " + COL_USER_ID + "=? AND " +
+				COL_AUDIT_ENDED_AT + " IS NOT NULL";
 		Cursor cursor = db.rawQuery(query, new String[] { Integer.toString(userId) });
 
 		// Accumulate the results
@@ -214,7 +231,7 @@ public class AuditRecord {
 			record.setUserId(cursor.getInt(idxUserId));
 			record.setStoreId(cursor.getInt(idxStoreId));
 			record.setStoreDescr(cursor.getString(idxStoreDescr));
-			record.setAuditStartedAt(BaseDatabase.parseDateTime(cursor.getString(idxAuditStartedAt)));
+			record.setAuditStartedAt(BaseDatabase.getNullableDate(cursor, idxAuditStartedAt));
 			record.setAuditEndedAt(BaseDatabase.getNullableDate(cursor, idxAuditEndedAt));
 			record.setAuditTypeId(cursor.getInt(idxAuditTypeId));
 			record.setLatitudeAtStart(BaseDatabase.getNullableDouble(cursor, idxLatitudeAtStart));
@@ -237,7 +254,8 @@ public class AuditRecord {
 	 */
 	static Audit getAudit(SQLiteDatabase db, int userId) {
 		// Query for the audit
-		String query = "SELECT * FROM audits WHERE " + COL_USER_ID + "=? AND audit_ended_at IS NULL";
+		String query = "SELECT * FROM " + TABLE_NAME + " WHERE " + COL_USER_ID + "=? AND " +
+				COL_AUDIT_ENDED_AT + " IS NULL";
 		Cursor cursor = db.rawQuery(query, new String[] { Integer.toString(userId )});
 		Audit res = cursor.moveToNext()
 				? new Audit(new AuditRecord(cursor))
@@ -305,7 +323,7 @@ public class AuditRecord {
 	 */
 	void update(SQLiteDatabase db) {
 		ContentValues update = new ContentValues();
-		update.put(COL_AUDIT_ENDED_AT, BaseDatabase.parseDateTime(getAuditEndedAt()));
+		update.put(COL_AUDIT_ENDED_AT, BaseDatabase.toEpoch(getAuditEndedAt()));
 		update.put(COL_LATITUDE_AT_END, getLatitudeAtEnd());
 		update.put(COL_LONGITUDE_AT_END, getLongitudeAtEnd());
 		db.update(TABLE_NAME, update, COL_ID + "=?", new String[] { getId().toString() });
@@ -399,13 +417,16 @@ public class AuditRecord {
 		longitudeAtEnd = value;
 	}
 
-	private static final String TABLE_NAME = "audits";
-	private static final String COL_ID = "audit_uuid";
-	private static final String COL_USER_ID ="user_id";
+	private static final String INDEX_USER_ENDED = "audits_user_ended_idx";
+	static final String TABLE_NAME = "audits";
+	static final String COL_ID = "audit_uuid";
+	static final String COL_USER_ID ="user_id";
 	private static final String COL_STORE_ID = "store_id";
 	private static final String COL_STORE_DESCR = "store_descr";
-	private static final String COL_AUDIT_STARTED_AT = "audit_started_at";
-	private static final String COL_AUDIT_ENDED_AT = "audit_ended_at";
+	private static final String COL_AUDIT_STARTED_AT = "audit_started_ms";
+	static final String COL_AUDIT_ENDED_AT = "audit_ended_ms";
+	private static final String COL_LEGACY_AUDIT_STARTED_AT = "audit_started_at";
+	private static final String COL_LEGACY_AUDIT_ENDED_AT = "audit_ended_at";
 	private static final String COL_AUDIT_TYPE_ID = "audit_type_id";
 	private static final String COL_LATITUDE_AT_START = "latitude_at_start";
 	private static final String COL_LONGITUDE_AT_START = "longitude_at_start";
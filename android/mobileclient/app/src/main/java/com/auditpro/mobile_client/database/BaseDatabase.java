@@ -4,17 +4,24 @@
  */
 package com.auditpro.mobile_client.database;
 
+import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.JsonWriter;
 import android.util.Log;
+import android.util.SparseArray;
 
+import java.io.IOException;
 import java.text.DateFormat;
-import java.text.ParsePosition;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.Locale;
+import java.util.List;
 import java.util.UUID;
 
 
@@ -25,14 +32,14 @@ import java.util.UUID;
 abstract public class BaseDatabase implements AutoCloseable {
 
 	/**
-	 * Initializes a connection to a database.
+	 * Leases the shared connection to a database, opening it on first use.
 	 * @param context Application context
 	 * @param name Database base name
 	 * @param version Database version number
 	 */
 	BaseDatabase(Context context, String name, int version) {
-		BaseHelper helper = new BaseHelper(context, name, version);
-		this.con = helper.getWritableDatabase();
+		this.shared = SharedConnection.acquire(context, this, name, version);
+		this.con = shared.getCon();
 		this.ctx = context.getApplicationContext();
 	}
 
@@ -45,14 +52,52 @@ abstract public class BaseDatabase implements AutoCloseable {
 	}
 
 	/**
-	 * Releases the database resource associated with this instance.
+	 * Releases this instance's lease on the shared connection.  The connection itself stays
+	 * open for the next caller.
 	 */
 	public void close() {
-		con.close();
+		if (shared != null) {
+			SharedConnection.release(shared);
+			shared = null;
+		}
+	}
+
+	/**
+	 * Runs maintenance on our database after bulk changes.
+	 */
+	void maintain() {
+		maintain(con);
 	}
 
 	/**
-	 * Gets a nullable date from the database.
+	 * Refreshes the query planner statistics and folds the write ahead log back into the
+	 * database file so it does not keep growing.  Failures only cost performance, so they are
+	 * logged and ignored.
+	 * @param db Database to maintain
+	 */
+	static void maintain(SQLiteDatabase db) {
+		try {
+			// Both pragmas may return a row, so run them as queries
+			for (String pragma : MAINTENANCE_PRAGMAS) {
+				Cursor cursor = db.rawQuery(pragma, null);
+				cursor.moveToNext();
+				cursor.close();
+			}
+		} catch (SQLiteException exc) {
+			Log.w(LOG_TAG, "Database maintenance failed", exc);
+		}
+	}
+
+	/**
+	 * Closes the shared connections that are not currently leased.  Called by the application
+	 * when the system asks us to give back memory.
+	 */
+	public static void closeIdleConnections() {
+		SharedConnection.closeIdle();
+	}
+
+	/**
+	 * Gets a nullable date stored as epoch milliseconds from the database.
 	 * @param cursor Database cursor
 	 * @param columnName Column name to get
 	 * @return Date or null
@@ -62,7 +107,7 @@ abstract public class BaseDatabase implements AutoCloseable {
 	}
 
 	/**
-	 * Gets a nullable date from the database
+	 * Gets a nullable date stored as epoch milliseconds from the database.
 	 * @param cursor Database cursor
 	 * @param idxColumn Column index to get
 	 * @return Date or null
@@ -73,8 +118,132 @@ abstract public class BaseDatabase implements AutoCloseable {
 			return null;
 		}
 
-		// Convert non null field
-		return parseDateTime(cursor.getString(idxColumn));
+		// Convert non null epoch milliseconds
+		return new Date(cursor.getLong(idxColumn));
+	}
+
+	/**
+	 * Writes a named string value, omitting the name when the value is null.
+	 * @param writer Receives the value
+	 * @param name Name of the value
+	 * @param value Value to write or null
+	 * @throws IOException Failed to write to the output
+	 */
+	static void writeString(JsonWriter writer, String name, String value) throws IOException {
+		if (value != null) {
+			writer.name(name).value(value);
+		}
+	}
+
+	/**
+	 * Writes a named nullable double, omitting the name when the value is null.
+	 * @param writer Receives the value
+	 * @param name Name of the value
+	 * @param value Value to write or null
+	 * @throws IOException Failed to write to the output
+	 */
+	static void writeDouble(JsonWriter writer, String name, Double value) throws IOException {
+		if (value != null) {
+			writeNumber(writer.name(name), value);
+		}
+	}
+
+	/**
+	 * Writes a nullable double column as a named value, omitting the name when null.
+	 * @param writer Receives the value
+	 * @param name Name of the value
+	 * @param cursor Database cursor
+	 * @param idxColumn Column index to write
+	 * @throws IOException Failed to write to the output
+	 */
+	static void writeDouble(JsonWriter writer, String name, Cursor cursor, int idxColumn)
+			throws IOException {
+		if (!cursor.isNull(idxColumn)) {
+			writeNumber(writer.name(name), cursor.getDouble(idxColumn));
+		}
+	}
+
+	/**
+	 * Writes a double as JSONObject did, with no fraction when the value is integral, so a
+	 * price of 3 is sent as 3 rather than 3.0.
+	 * @param writer Receives the value
+	 * @param value Value to write
+	 * @throws IOException Failed to write to the output
+	 */
+	private static void writeNumber(JsonWriter writer, double value) throws IOException {
+		long integral = (long) value;
+		if (value == (double) integral) {
+			writer.value(integral);
+		} else {
+			writer.value(value);
+		}
+	}
+
+	/**
+	 * Writes a nullable epoch milliseconds column as a named ISO 8601 time stamp, omitting the
+	 * name when null.
+	 * @param writer Receives the value
+	 * @param name Name of the value
+	 * @param cursor Database cursor
+	 * @param idxColumn Column index to write
+	 * @throws IOException Failed to write to the output
+	 */
+	static void writeDate(JsonWriter writer, String name, Cursor cursor, int idxColumn)
+			throws IOException {
+		if (!cursor.isNull(idxColumn)) {
+			writer.name(name).value(Iso8601.format(cursor.getLong(idxColumn)));
+		}
+	}
+
+	/**
+	 * Converts a nullable date to epoch milliseconds for storage.
+	 * @param source Date to convert
+	 * @return Epoch milliseconds or null
+	 */
+	static Long toEpoch(Date source) {
+		return (source == null) ? null : source.getTime();
+	}
+
+	/**
+	 * Adds INTEGER epoch millisecond columns to a table and fills them from the ISO 8601 text
+	 * columns they replace.  The text columns are left in place but are no longer read or
+	 * written.  Called from table upgrades.
+	 * @param db Database to update
+	 * @param table Table name
+	 * @param textColumns Existing ISO 8601 text columns
+	 * @param epochColumns New epoch columns, in the same order as the text columns
+	 */
+	static void migrateDateColumns(SQLiteDatabase db, String table,
+			String[] textColumns, String[] epochColumns) {
+		// Add the new columns
+		StringBuilder sets = new StringBuilder();
+		StringBuilder texts = new StringBuilder("rowid");
+		for (int index = 0; index < epochColumns.length; ++index) {
+			db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + epochColumns[index] + " INTEGER");
+			sets.append((index == 0) ? "" : ", ").append(epochColumns[index]).append("=?");
+			texts.append(", ").append(textColumns[index]);
+		}
+
+		// Convert each existing row once
+		SQLiteStatement update = db.compileStatement(
+				"UPDATE " + table + " SET " + sets + " WHERE rowid=?");
+		Cursor cursor = db.rawQuery("SELECT " + texts + " FROM " + table, null);
+		try {
+			Object[] values = new Object[textColumns.length + 1];
+			while (cursor.moveToNext()) {
+				for (int index = 0; index < textColumns.length; ++index) {
+					values[index] = cursor.isNull(index + 1)
+							? null
+							: toEpoch(parseDateTime(cursor.getString(index + 1)));
+				}
+				values[textColumns.length] = cursor.getLong(0);
+				bindRow(update, values);
+				update.executeUpdateDelete();
+			}
+		} finally {
+			cursor.close();
+			update.close();
+		}
 	}
 
 	/**
@@ -169,7 +338,351 @@ abstract public class BaseDatabase implements AutoCloseable {
 		return cursor.getString(idxColumn);
 	}
 
-	private static final String DATE_ISO8601 = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	/**
+	 * Inserts a row, or updates the existing row with the same key.  Uses a single native
+	 * INSERT ... ON CONFLICT DO UPDATE statement when the platform SQLite supports it, otherwise
+	 * updates by key and only inserts when no row was updated.  The table must have a unique
+	 * index over the key columns.
+	 * @param db Database to receive the row
+	 * @param table Table name
+	 * @param key Values of the unique key columns
+	 * @param insertOnly Values only written when the row is inserted, e.g. id and created time
+	 * @param update Values written on both insert and update
+	 */
+	static void upsert(SQLiteDatabase db, String table, ContentValues key,
+			ContentValues insertOnly, ContentValues update) {
+		if (isUpsertSupported(db)) {
+			// Build the native upsert
+			StringBuilder cols = new StringBuilder();
+			StringBuilder keys = new StringBuilder();
+			StringBuilder sets = new StringBuilder();
+			List<Object> args = new ArrayList<>();
+			appendColumns(cols, args, key);
+			appendColumns(keys, null, key);
+			appendColumns(cols, args, insertOnly);
+			appendColumns(cols, args, update);
+			for (String col : update.keySet()) {
+				sets.append((sets.length() == 0) ? "" : ", ").append(col).append("=excluded.").append(col);
+			}
+			String sql = "INSERT INTO " + table + " (" + cols + ") VALUES (" +
+					placeholders(args.size()) + ") ON CONFLICT (" + keys + ") DO UPDATE SET " + sets;
+			executeBound(db, sql, args);
+			return;
+		}
+
+		// Fall back to update then insert
+		StringBuilder sets = new StringBuilder();
+		StringBuilder where = new StringBuilder();
+		List<Object> args = new ArrayList<>();
+		for (String col : update.keySet()) {
+			sets.append((sets.length() == 0) ? "" : ", ").append(col).append("=?");
+			args.add(update.get(col));
+		}
+		for (String col : key.keySet()) {
+			where.append((where.length() == 0) ? "" : " AND ").append(col).append("=?");
+			args.add(key.get(col));
+		}
+		if (executeBound(db, "UPDATE " + table + " SET " + sets + " WHERE " + where, args) == 0) {
+			// Nothing to update, insert a new row
+			StringBuilder cols = new StringBuilder();
+			args.clear();
+			appendColumns(cols, args, key);
+			appendColumns(cols, args, insertOnly);
+			appendColumns(cols, args, update);
+			executeBound(db, "INSERT INTO " + table + " (" + cols + ") VALUES (" +
+					placeholders(args.size()) + ")", args);
+		}
+	}
+
+	/**
+	 * Indicates if the platform SQLite supports native UPSERT, available from SQLite 3.24.
+	 * @param db Open database
+	 * @return Native upsert flag
+	 */
+	private static boolean isUpsertSupported(SQLiteDatabase db) {
+		if (upsertSupported == null) {
+			// Check the library version once for the process
+			String version = DatabaseUtils.stringForQuery(db, "SELECT sqlite_version()", null);
+			int packed = 0;
+			String[] parts = version.split("\\.");
+			for (int index = 0; index < 3; ++index) {
+				packed *= 1000;
+				if (index < parts.length) {
+					try {
+						packed += Integer.parseInt(parts[index]);
+					} catch (NumberFormatException exc) {
+						// Ignore unexpected version suffix
+					}
+				}
+			}
+			upsertSupported = packed >= SQLITE_UPSERT_VERSION;
+		}
+		return upsertSupported;
+	}
+
+	/**
+	 * Appends comma separated column names and optionally collects their values.
+	 * @param cols Receives the column names
+	 * @param args Receives the values in column order, or null
+	 * @param values Columns and values to append
+	 */
+	private static void appendColumns(StringBuilder cols, List<Object> args, ContentValues values) {
+		for (String col : values.keySet()) {
+			cols.append((cols.length() == 0) ? "" : ", ").append(col);
+			if (args != null) {
+				args.add(values.get(col));
+			}
+		}
+	}
+
+	/**
+	 * Builds a comma separated list of statement parameters.
+	 * @param count Number of parameters
+	 * @return Parameter placeholders
+	 */
+	private static String placeholders(int count) {
+		StringBuilder res = new StringBuilder();
+		for (int index = 0; index < count; ++index) {
+			res.append((index == 0) ? "?" : ", ?");
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Compiles and executes a statement with bound arguments.
+	 * @param db Database to modify
+	 * @param sql Statement to execute
+	 * @param args Arguments to bind in order
+	 * @return Number of rows changed
+	 */
+	private static int executeBound(SQLiteDatabase db, String sql, List<Object> args) {
+		SQLiteStatement statement = db.compileStatement(sql);
+		try {
+			for (int index = 0; index < args.size(); ++index) {
+				bindValue(statement, index + 1, args.get(index));
+			}
+			return statement.executeUpdateDelete();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Builds a parameterized insert statement for compiling once and binding per row.
+	 * @param table Table name
+	 * @param columns Columns to insert, bound in this order
+	 * @return Insert statement SQL
+	 */
+	static String insertStatement(String table, String... columns) {
+		StringBuilder cols = new StringBuilder();
+		for (String col : columns) {
+			cols.append((cols.length() == 0) ? "" : ", ").append(col);
+		}
+		return "INSERT INTO " + table + " (" + cols + ") VALUES (" + placeholders(columns.length) + ")";
+	}
+
+	/**
+	 * Builds a parameterized insert statement that replaces any row with the same key.
+	 * @param table Table name
+	 * @param columns Columns to insert, bound in this order
+	 * @return Insert or replace statement SQL
+	 */
+	static String replaceStatement(String table, String... columns) {
+		return insertStatement(table, columns).replaceFirst("^INSERT", "INSERT OR REPLACE");
+	}
+
+	/**
+	 * Computes a 64 bit FNV-1a hash over row values, used to detect changed rows without
+	 * comparing every column.
+	 * @param values Row values, may contain nulls
+	 * @param count Number of leading values to hash
+	 * @return Content hash
+	 */
+	static long rowHash(Object[] values, int count) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int index = 0; index < count; ++index) {
+			Object value = values[index];
+			if (value != null) {
+				String text = value.toString();
+				for (int pos = 0; pos < text.length(); ++pos) {
+					hash = (hash ^ text.charAt(pos)) * FNV_PRIME;
+				}
+			}
+
+			// Separate fields, and distinguish null from empty
+			hash = (hash ^ ((value == null) ? 0 : 0x1f)) * FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Loads the content hash of every row in a table, keyed by its integer primary key.
+	 * @param db Database to query
+	 * @param table Table name
+	 * @param keyColumn Integer primary key column
+	 * @param hashColumn Content hash column
+	 * @return Hashes by key, null for rows without a hash
+	 */
+	static SparseArray<Long> loadRowHashes(SQLiteDatabase db, String table, String keyColumn,
+			String hashColumn) {
+		SparseArray<Long> res = new SparseArray<>();
+		try (Cursor cursor = db.rawQuery("SELECT " + keyColumn + ", " + hashColumn + " FROM " + table, null)) {
+			while (cursor.moveToNext()) {
+				res.put(cursor.getInt(0), cursor.isNull(1) ? null : cursor.getLong(1));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Inserts rows into a table with one compiled statement, setting the content hash of each
+	 * row.  A row with the same key as an earlier row replaces it, as in
+	 * {@link #mergeRows(SQLiteDatabase, String, String[], Iterable, RowValues)}, so a payload
+	 * that repeats an id does not abort the load.  Should be called inside a transaction.
+	 * @param db Database to update
+	 * @param table Table name
+	 * @param columns Columns in value order; the last is the content hash
+	 * @param rows New entities for the table
+	 * @param values Converts each entity to its row values
+	 * @param <T> Entity type
+	 * @return Number of rows written, including any that replaced an earlier row
+	 */
+	static <T> int insertRows(SQLiteDatabase db, String table, String[] columns,
+			Iterable<T> rows, RowValues<T> values) {
+		SQLiteStatement insert = db.compileStatement(replaceStatement(table, columns));
+		int count = 0;
+		try {
+			int hashIndex = columns.length - 1;
+			for (T row : rows) {
+				// Insert the current row
+				Object[] rowValues = values.toValues(row);
+				rowValues[hashIndex] = rowHash(rowValues, hashIndex);
+				bindRow(insert, rowValues);
+				insert.executeInsert();
+				++count;
+			}
+		} finally {
+			insert.close();
+		}
+		return count;
+	}
+
+	/**
+	 * Merges new rows into a table by primary key and content hash.  Unchanged rows are not
+	 * written, new and changed rows are written with one compiled statement, and rows that are
+	 * missing from the new data are deleted.  The rows are read once, in order, so they may be
+	 * streamed.  Should be called inside a transaction.
+	 * @param db Database to update
+	 * @param table Table name
+	 * @param columns Columns in value order; the first is the integer key, the last the hash
+	 * @param rows New entities for the table
+	 * @param values Converts each entity to its row values
+	 * @param <T> Entity type
+	 * @return Counts of the rows touched
+	 */
+	static <T> MergeCounts mergeRows(SQLiteDatabase db, String table, String[] columns,
+			Iterable<T> rows, RowValues<T> values) {
+		// Get the current state of the table
+		MergeCounts counts = new MergeCounts();
+		String keyColumn = columns[0];
+		int hashIndex = columns.length - 1;
+		SparseArray<Long> existing = loadRowHashes(db, table, keyColumn, columns[hashIndex]);
+		boolean[] seen = new boolean[existing.size()];
+
+		// Write new and changed rows
+		SQLiteStatement write = db.compileStatement(
+				replaceStatement(table, columns));
+		try {
+			for (T row : rows) {
+				Object[] rowValues = values.toValues(row);
+				long hash = rowHash(rowValues, hashIndex);
+				rowValues[hashIndex] = hash;
+				int key = ((Number) rowValues[0]).intValue();
+				int pos = existing.indexOfKey(key);
+				if (pos >= 0) {
+					seen[pos] = true;
+					Long oldHash = existing.valueAt(pos);
+					if ((oldHash != null) && (oldHash == hash)) {
+						// Nothing changed
+						++counts.unchanged;
+						continue;
+					}
+					++counts.updated;
+				} else {
+					++counts.inserted;
+				}
+				bindRow(write, rowValues);
+				write.executeInsert();
+			}
+		} finally {
+			write.close();
+		}
+
+		// Delete rows that are no longer present
+		SQLiteStatement delete = db.compileStatement(
+				"DELETE FROM " + table + " WHERE " + keyColumn + "=?");
+		try {
+			for (int pos = 0; pos < seen.length; ++pos) {
+				if (!seen[pos]) {
+					delete.bindLong(1, existing.keyAt(pos));
+					delete.executeUpdateDelete();
+					++counts.deleted;
+				}
+			}
+		} finally {
+			delete.close();
+		}
+		return counts;
+	}
+
+	/**
+	 * Converts an entity to the column values of its table row.
+	 * @param <T> Entity type
+	 */
+	interface RowValues<T> {
+		/**
+		 * Gets the row values for an entity.
+		 * @param row Entity to convert
+		 * @return New array of values in column order
+		 */
+		Object[] toValues(T row);
+	}
+
+	/**
+	 * Replaces the bindings of a compiled statement with the passed values.
+	 * @param statement Compiled statement
+	 * @param values Values to bind in parameter order
+	 */
+	private static void bindRow(SQLiteStatement statement, Object[] values) {
+		statement.clearBindings();
+		for (int index = 0; index < values.length; ++index) {
+			bindValue(statement, index + 1, values[index]);
+		}
+	}
+
+	/**
+	 * Binds a value of any supported type to a compiled statement.
+	 * @param statement Compiled statement
+	 * @param index One based parameter index
+	 * @param value Value to bind, may be null
+	 */
+	static void bindValue(SQLiteStatement statement, int index, Object value) {
+		if (value == null) {
+			statement.bindNull(index);
+		} else if (value instanceof String) {
+			statement.bindString(index, (String) value);
+		} else if ((value instanceof Double) || (value instanceof Float)) {
+			statement.bindDouble(index, ((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			statement.bindLong(index, ((Number) value).longValue());
+		} else if (value instanceof Boolean) {
+			statement.bindLong(index, ((Boolean) value) ? 1 : 0);
+		} else if (value instanceof byte[]) {
+			statement.bindBlob(index, (byte[]) value);
+		} else {
+			statement.bindString(index, value.toString());
+		}
+	}
 
 	/**
 	 * Parses the ISO 8601 timestamp encoded as a string to a system object.
@@ -179,17 +692,12 @@ abstract public class BaseDatabase implements AutoCloseable {
 	 */
 	public static Date parseDateTime(String source) {
 		// Trivial case
-		if ((source == null) || source.matches("^\\s*$")) {
+		if ((source == null) || (TextUtils.getTrimmedLength(source) == 0)) {
 			return null;
 		}
 
 		// Parse to the structure
-		SimpleDateFormat df = new SimpleDateFormat(DATE_ISO8601, Locale.US);
-		ParsePosition pos = new ParsePosition(0);
-		String parse = source.
-				replaceAll("Z$", "+0000").
-				replaceAll("(?<=T\\d\\d:\\d\\d:\\d\\d)\\+", ".000+");
-		Date res = df.parse(parse, pos);
+		Date res = Iso8601.parse(source);
 		if (res == null) {
 			Log.w(LOG_TAG, String.format("Attempted to parse invalid time stamp \"%s\"", source));
 		}
@@ -204,15 +712,7 @@ abstract public class BaseDatabase implements AutoCloseable {
 	 * @return 8601 time string or null
 	 */
 	public static String parseDateTime(Date source) {
-		// Trivial case
-		if (source == null) {
-			// No date/time
-			return null;
-		}
-
-		// Format in ISO 8601
-		SimpleDateFormat df = new SimpleDateFormat(DATE_ISO8601, Locale.US);
-		return df.format(source);
+		return Iso8601.format(source);
 	}
 
 	/**
@@ -246,32 +746,75 @@ abstract public class BaseDatabase implements AutoCloseable {
 	abstract protected void onUpdateDb(SQLiteDatabase db, int lastVersion);
 
 	/**
-	 * Implements a database helper to make accessing SQLite easier.
+	 * Implements a database helper to make accessing SQLite easier.  The helper is shared by
+	 * every instance of the database, so it only refers to the instance that opened it until the
+	 * open completes.
 	 */
-	class BaseHelper extends SQLiteOpenHelper {
+	static class BaseHelper extends SQLiteOpenHelper {
 
-		BaseHelper(Context context, String name, int version) {
+		BaseHelper(Context context, BaseDatabase schema, String name, int version) {
 			super(context, name + ".db", null, version);
+			this.schema = schema;
+		}
+
+		@Override
+		public void onConfigure(SQLiteDatabase db) {
+			// Let readers run alongside a writer, then only sync the log at checkpoints
+			db.enableWriteAheadLogging();
+			db.execSQL("PRAGMA synchronous=NORMAL");
+			db.execSQL("PRAGMA cache_size=" + CACHE_SIZE_KIB);
 		}
 
 		@Override
 		public void onCreate(SQLiteDatabase sqLiteDatabase) {
-			onCreateDb(sqLiteDatabase);
+			schema.onCreateDb(sqLiteDatabase);
 		}
 
 		@Override
 		public void onUpgrade(SQLiteDatabase sqLiteDatabase, int i, int i1) {
 			// Nothing to do for now
-			onUpdateDb(sqLiteDatabase, i);
+			schema.onUpdateDb(sqLiteDatabase, i);
 		}
+
+		/**
+		 * Drops the reference to the opening instance once create and upgrade are done.
+		 */
+		void detachSchema() {
+			schema = null;
+		}
+
+		/** Database instance that handles create and upgrade while opening. */
+		private BaseDatabase schema;
 	}
 
+	/** Provides the lease on the shared connection, null once closed. */
+	private SharedConnection shared;
+
 	/** Provides the connection to the database. */
 	private SQLiteDatabase con;
 
 	/** Provides the application context. */
 	Context ctx;
 
+	/** Caches whether the platform SQLite supports native upsert, null until checked. */
+	private static Boolean upsertSupported;
+
+	/** FNV-1a 64 bit hash parameters. */
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** Page cache for the primary connection, negative to size it in KiB rather than pages. */
+	private static final int CACHE_SIZE_KIB = -4096;
+
+	/** Statements run by maintain, in order. */
+	private static final String[] MAINTENANCE_PRAGMAS = {
+			"PRAGMA optimize",
+			"PRAGMA wal_checkpoint(TRUNCATE)"
+	};
+
+	/** First SQLite version with INSERT ... ON CONFLICT DO UPDATE, packed as major/minor/patch. */
+	private static final int SQLITE_UPSERT_VERSION = 3024000;
+
 	/**
 	 * Identifies log message source.
 	 */
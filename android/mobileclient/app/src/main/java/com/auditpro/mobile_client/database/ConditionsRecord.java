@@ -7,20 +7,24 @@ package com.auditpro.mobile_client.database;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.auditpro.mobile_client.entities.Audit;
 
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
 import static com.auditpro.mobile_client.database.AuditDatabase.DB_VERSION_18;
+import static com.auditpro.mobile_client.database.AuditDatabase.DB_VERSION_AUDIT_INDEXES;
+import static com.auditpro.mobile_client.database.AuditDatabase.DB_VERSION_EPOCH_DATES;
 
 
 /**
@@ -77,14 +81,28 @@ public class ConditionsRecord {
 	static void createTable(SQLiteDatabase db) {
 		// Build a create table statement
 		String st = "CREATE TABLE " + TABLE_NAME + " (" + COL_ID + " TEXT PRIMARY KEY, " +
-				COL_CREATED_AT + " TEXT, " +
-				COL_UPDATED_AT + " TEXT, " +
+				COL_CREATED_AT + " INTEGER, " +
+				COL_UPDATED_AT + " INTEGER, " +
 				COL_AUDIT_ID + " TEXT, " +
 				COL_PRODUCT_ID + " INTEGER, " +
 				COL_CONDITIONS + " TEXT)";
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes for our table, removing duplicate products in an audit first so the
+	 * unique index can be applied to existing data.  Keeps the first row inserted, which is the
+	 * row the lookups have always read and updated.
+	 * @param db Database in which to create our indexes
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE rowid NOT IN (SELECT MIN(rowid) FROM " +
+				TABLE_NAME + " GROUP BY " + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
+		db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_AUDIT_PRODUCT + " ON " + TABLE_NAME +
+				" (" + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
 	}
 
 	/**
@@ -96,6 +114,17 @@ public class ConditionsRecord {
 		if (lastVersion < DB_VERSION_18) {
 			// Create our table as of this version
 			createTable(db);
+		} else {
+			if (lastVersion < DB_VERSION_AUDIT_INDEXES) {
+				// Index lookups by audit and product
+				createIndexes(db);
+			}
+			if (lastVersion < DB_VERSION_EPOCH_DATES) {
+				// Store timestamps as epoch milliseconds
+				BaseDatabase.migrateDateColumns(db, TABLE_NAME,
+						new String[] { COL_LEGACY_CREATED_AT, COL_LEGACY_UPDATED_AT },
+						new String[] { COL_CREATED_AT, COL_UPDATED_AT });
+			}
 		}
 	}
 
@@ -120,6 +149,30 @@ public class ConditionsRecord {
 		return res;
 	}
 
+	/**
+	 * Gets the conditions for every product in an audit in one query.
+	 * @param db Database hold conditions records
+	 * @param audit Audit whose conditions we want
+	 * @return Condition IDs keyed by product id, only for products with conditions
+	 */
+	static SparseArray<Set<Integer>> getConditionsByProduct(SQLiteDatabase db, Audit audit) {
+		// Query for the conditions
+		String query = "SELECT " + COL_PRODUCT_ID + ", " + COL_CONDITIONS + " FROM " + TABLE_NAME +
+				" WHERE " + COL_AUDIT_ID + "=?";
+		Cursor cursor = db.rawQuery(query, new String[] { audit.getId().toString() });
+
+		// Index the results by product
+		SparseArray<Set<Integer>> res = new SparseArray<>(cursor.getCount());
+		while (cursor.moveToNext()) {
+			Set<Integer> conditions = parseConditions(cursor.getString(1));
+			if (conditions != null) {
+				res.put(cursor.getInt(0), conditions);
+			}
+		}
+		cursor.close();
+		return res;
+	}
+
 	/**
 	 * Sets the conditions associated with the product in an audit.
 	 * @param db Database holds conditions records
@@ -132,19 +185,8 @@ public class ConditionsRecord {
 			// No conditions
 			deleteFor(db, audit, productId);
 		} else {
-			// Is there an existing record?
-			ConditionsRecord rec = getConditions(db, audit, productId);
-			if (rec == null) {
-				// Insert new record
-				rec = new ConditionsRecord(audit, productId, conditions);
-			} else {
-				// Update existing record
-				rec.setUpdatedAt(new Date());
-				rec.setConditions(conditions);
-			}
-
-			// Persist the record
-			rec.save(db);
+			// Insert or update the record in one statement
+			new ConditionsRecord(audit, productId, conditions).upsert(db);
 		}
 	}
 
@@ -169,60 +211,60 @@ public class ConditionsRecord {
 	}
 
 	/**
-	 * Serializes the conditions for every product in an audit to JSON.
-	 * @param db Database contains reports
-	 * @param audit Audit whose reports we want
-	 * @return Serialized reports
-	 * @throws JSONException Unexpected serialization error
+	 * Streams the conditions for every product in an audit as a JSON array straight from the
+	 * cursor.
+	 * @param db Database contains conditions
+	 * @param audit Audit whose conditions we want
+	 * @param writer Receives the serialized conditions
+	 * @throws IOException Failed to write to the output
 	 */
-	static JSONArray getJSON(SQLiteDatabase db, Audit audit) throws JSONException {
+	static void writeJSON(SQLiteDatabase db, Audit audit, JsonWriter writer) throws IOException {
 		// Query for the conditions
-		String query = "SELECT * FROM " + TABLE_NAME + " WHERE " + COL_AUDIT_ID + "=?";
+		String query = "SELECT " + COL_PRODUCT_ID + ", " + COL_CONDITIONS + " FROM " + TABLE_NAME +
+				" WHERE " + COL_AUDIT_ID + "=?";
 		Cursor cursor = db.rawQuery(query, new String[] { audit.getId().toString() });
-
-		// Build the results
-		JSONArray res = new JSONArray();
-		while (cursor.moveToNext()) {
-			// Build a new selected SKU conditions object
-			ConditionsRecord current = new ConditionsRecord(cursor);
-			JSONArray conditionIds = new JSONArray();
-			for (Integer conditionId : current.getConditions()) {
-				conditionIds.put(conditionId);
+		try {
+			// Serialize the selected SKU conditions for each product
+			writer.beginArray();
+			while (cursor.moveToNext()) {
+				writer.beginObject();
+				writer.name("chainXProductId").value(cursor.getInt(0));
+				writer.name("skuConditionIds").beginArray();
+				Set<Integer> conditionIds = parseConditions(cursor.getString(1));
+				if (conditionIds != null) {
+					for (Integer conditionId : conditionIds) {
+						writer.value(conditionId);
+					}
+				}
+				writer.endArray();
+				writer.endObject();
 			}
-			JSONObject forProduct = new JSONObject();
-			forProduct.put("chainXProductId", current.getProductId());
-			forProduct.put("skuConditionIds", conditionIds);
-			res.put(forProduct);
+			writer.endArray();
+		} finally {
+			cursor.close();
 		}
-
-		// Return results
-		cursor.close();
-		return res;
 	}
 
 	/**
-	 * Saves this record to the database, inserting or updating as necessary
+	 * Saves this record to the database, inserting or updating the conditions for the same
+	 * product in the audit as necessary.
 	 * @param db Access our database
 	 */
-	private void save(SQLiteDatabase db) {
+	private void upsert(SQLiteDatabase db) {
 		// Prepare to save
-		ContentValues cols = new ContentValues();
 		if (getId() == null) {
-			// Insert a new record
 			setId(UUID.randomUUID());
-			cols.put(COL_ID, getId().toString());
-			cols.put(COL_CREATED_AT, BaseDatabase.parseDateTime(getCreatedAt()));
-			cols.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
-			cols.put(COL_AUDIT_ID, getAuditId().toString());
-			cols.put(COL_PRODUCT_ID, getProductId());
-			cols.put(COL_CONDITIONS, conditions);
-			db.insert(TABLE_NAME, null, cols);
-		} else {
-			// Update the existing record
-			cols.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
-			cols.put(COL_CONDITIONS, conditions);
-			db.update(TABLE_NAME, cols, COL_ID + "=?", new String[] { getId().toString() });
 		}
+		ContentValues key = new ContentValues();
+		key.put(COL_AUDIT_ID, getAuditId().toString());
+		key.put(COL_PRODUCT_ID, getProductId());
+		ContentValues insertOnly = new ContentValues();
+		insertOnly.put(COL_ID, getId().toString());
+		insertOnly.put(COL_CREATED_AT, BaseDatabase.toEpoch(getCreatedAt()));
+		ContentValues update = new ContentValues();
+		update.put(COL_UPDATED_AT, BaseDatabase.toEpoch(getUpdatedAt()));
+		update.put(COL_CONDITIONS, conditions);
+		BaseDatabase.upsert(db, TABLE_NAME, key, insertOnly, update);
 	}
 
 	/**
@@ -310,6 +352,15 @@ public class ConditionsRecord {
 	 * @return Conditions IDs for product in audit
 	 */
 	public Set<Integer> getConditions() {
+		return parseConditions(conditions);
+	}
+
+	/**
+	 * Parses conditions serialized to a JSON string.
+	 * @param conditions Condition IDs serialized to JSON or null
+	 * @return Condition IDs or null if none
+	 */
+	static Set<Integer> parseConditions(String conditions) {
 		// Do we have any conditions?
 		if (conditions == null) {
 			// No conditions
@@ -358,13 +409,16 @@ public class ConditionsRecord {
 
 	private static final String LOG_TAG = "ConditionsRecord";
 
-	private static final String TABLE_NAME = "conditions";
+	private static final String INDEX_AUDIT_PRODUCT = "conditions_audit_product_idx";
+	static final String TABLE_NAME = "conditions";
 	private static final String COL_ID = "conditions_uuid";
-	private static final String COL_CREATED_AT = "created_at";
-	private static final String COL_UPDATED_AT = "updated_at";
-	private static final String COL_AUDIT_ID = "audit_uuid";
-	private static final String COL_PRODUCT_ID = "chain_x_product_id";
-	private static final String COL_CONDITIONS = "reorder_status_id"; // TODO Rename to conditions_array, update script
+	private static final String COL_CREATED_AT = "created_ms";
+	private static final String COL_UPDATED_AT = "updated_ms";
+	private static final String COL_LEGACY_CREATED_AT = "created_at";
+	private static final String COL_LEGACY_UPDATED_AT = "updated_at";
+	static final String COL_AUDIT_ID = "audit_uuid";
+	static final String COL_PRODUCT_ID = "chain_x_product_id";
+	static final String COL_CONDITIONS = "reorder_status_id"; // TODO Rename to conditions_array, update script
 
 	private UUID id;
 	private Date createdAt;
@@ -0,0 +1,266 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+
+/**
+ * Parses and formats ISO 8601 time stamps without regular expressions or formatter objects,
+ * so it is safe to call from any thread on hot paths.
+ * <p>
+ * Formats as {@code yyyy-MM-ddTHH:mm:ss.SSS+hhmm} in the device time zone, exactly as the
+ * lenient {@code SimpleDateFormat} pattern {@code yyyy-MM-dd'T'HH:mm:ss.SSSZ} did before.
+ * Parses {@code yyyy-MM-ddTHH:mm:ss[.digits](Z|+hhmm)} the same way that pattern did: the
+ * digits after the point are a count of milliseconds, so {@code .5} is 5 ms, and fields out
+ * of range roll over, so February 30 is March 2 and hour 24 is midnight of the next day.
+ * Text after a numeric offset is ignored, but {@code Z} must end the text.
+ * <p>
+ * These differences from the old parser are deliberate:
+ * <ul>
+ *     <li>A time stamp without a fraction may have a negative offset, and an offset may be
+ *     written {@code +hh:mm}.  The old parser rejected both.</li>
+ *     <li>Every field must be written with its full number of digits and no spaces, and the
+ *     offset must be numeric, so forms like {@code 2018-6-1} or {@code GMT+05:00} that the old
+ *     parser tolerated are rejected.  Fractions of more than 18 digits are rejected.</li>
+ *     <li>Dates use the proleptic Gregorian calendar, where the old parser switched to the
+ *     Julian calendar before October 1582.  Years outside 0000-9999 are not supported.</li>
+ * </ul>
+ * @author Eric Ruck
+ */
+public final class Iso8601 {
+
+	/**
+	 * Prevents instantiation of this utility class.
+	 */
+	private Iso8601() {
+	}
+
+	/**
+	 * Parses an ISO 8601 time stamp.
+	 * @param source Time stamp text
+	 * @return Parsed date or null if the text is not a valid time stamp
+	 */
+	public static Date parse(CharSequence source) {
+		long millis = parseMillis(source);
+		return (millis == INVALID) ? null : new Date(millis);
+	}
+
+	/**
+	 * Parses an ISO 8601 time stamp to epoch milliseconds.  Characters after a numeric offset
+	 * are ignored.
+	 * @param source Time stamp text
+	 * @return Epoch milliseconds or {@link #INVALID} if the text is not a valid time stamp
+	 */
+	public static long parseMillis(CharSequence source) {
+		// Check the fixed length date and time fields
+		if ((source == null) || (source.length() < MIN_LENGTH)) {
+			return INVALID;
+		}
+		int year = digits(source, 0, 4);
+		int month = digits(source, 5, 2);
+		int day = digits(source, 8, 2);
+		int hour = digits(source, 11, 2);
+		int minute = digits(source, 14, 2);
+		int second = digits(source, 17, 2);
+		if ((year < 0) || (month < 0) || (day < 0) || (hour < 0) || (minute < 0) || (second < 0) ||
+				(source.charAt(4) != '-') || (source.charAt(7) != '-') ||
+				(source.charAt(10) != 'T') || (source.charAt(13) != ':') ||
+				(source.charAt(16) != ':')) {
+			return INVALID;
+		}
+
+		// Optional count of milliseconds
+		int length = source.length();
+		int pos = 19;
+		long millis = 0;
+		if (source.charAt(pos) == '.') {
+			int start = ++pos;
+			while ((pos < length) && isDigit(source.charAt(pos))) {
+				millis = millis * 10 + (source.charAt(pos) - '0');
+				++pos;
+			}
+			if ((pos == start) || (pos - start > MAX_FRACTION_DIGITS) || (pos == length)) {
+				// Empty or oversized fraction, or no offset
+				return INVALID;
+			}
+		}
+
+		// Like the old parser, keep only the low 32 bits of a long count
+		millis = (int) millis;
+
+		// Required offset from UTC
+		int offsetMinutes;
+		char sign = source.charAt(pos);
+		if ((sign == 'Z') && (pos == length - 1)) {
+			offsetMinutes = 0;
+		} else if ((sign == '+') || (sign == '-')) {
+			int offsetHours = digits(source, pos + 1, 2);
+			pos += 3;
+			if ((pos < length) && (source.charAt(pos) == ':')) {
+				++pos;
+			}
+			int offsetMins = digits(source, pos, 2);
+			if ((offsetHours < 0) || (offsetHours > 23) || (offsetMins < 0) || (offsetMins > 59)) {
+				return INVALID;
+			}
+			offsetMinutes = offsetHours * 60 + offsetMins;
+			if (sign == '-') {
+				offsetMinutes = -offsetMinutes;
+			}
+		} else {
+			return INVALID;
+		}
+
+		// Combine the fields, rolling over any out of range month first
+		if (month == 0) {
+			--year;
+			month = 12;
+		} else {
+			year += (month - 1) / 12;
+			month = (month - 1) % 12 + 1;
+		}
+		long days = daysFromCivil(year, month, 1) + day - 1;
+		long minutes = (days * 24 + hour) * 60 + minute - offsetMinutes;
+		return (minutes * 60 + second) * 1000 + millis;
+	}
+
+	/**
+	 * Formats a date as an ISO 8601 time stamp in the device time zone.
+	 * @param source Date to format
+	 * @return Formatted time stamp or null if the date is null
+	 */
+	public static String format(Date source) {
+		return (source == null) ? null : format(source.getTime());
+	}
+
+	/**
+	 * Formats epoch milliseconds as an ISO 8601 time stamp in the device time zone.
+	 * @param millis Epoch milliseconds
+	 * @return Formatted time stamp
+	 */
+	public static String format(long millis) {
+		// Shift to local time and split into days and time of day
+		int offsetMillis = TimeZone.getDefault().getOffset(millis);
+		int offsetMinutes = offsetMillis / 60000;
+		long local = millis + offsetMillis;
+		long days = local / MILLIS_PER_DAY;
+		long timeOfDay = local % MILLIS_PER_DAY;
+		if (timeOfDay < 0) {
+			// Floor for times before the epoch
+			--days;
+			timeOfDay += MILLIS_PER_DAY;
+		}
+
+		// Convert the day number to the civil date
+		long shifted = days + 719468;
+		long era = ((shifted >= 0) ? shifted : (shifted - 146096)) / 146097;
+		int dayOfEra = (int) (shifted - era * 146097);
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int monthIndex = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+		int month = (monthIndex < 10) ? (monthIndex + 3) : (monthIndex - 9);
+		int year = (int) (yearOfEra + era * 400) + ((month <= 2) ? 1 : 0);
+
+		// Write the fields
+		int time = (int) timeOfDay;
+		char[] out = new char[FORMAT_LENGTH];
+		putDigits(out, 0, year, 4);
+		out[4] = '-';
+		putDigits(out, 5, month, 2);
+		out[7] = '-';
+		putDigits(out, 8, day, 2);
+		out[10] = 'T';
+		putDigits(out, 11, time / 3600000, 2);
+		out[13] = ':';
+		putDigits(out, 14, (time / 60000) % 60, 2);
+		out[16] = ':';
+		putDigits(out, 17, (time / 1000) % 60, 2);
+		out[19] = '.';
+		putDigits(out, 20, time % 1000, 3);
+		out[23] = (offsetMinutes < 0) ? '-' : '+';
+		int offset = Math.abs(offsetMinutes);
+		putDigits(out, 24, offset / 60, 2);
+		putDigits(out, 26, offset % 60, 2);
+		return new String(out);
+	}
+
+	/**
+	 * Reads a fixed width unsigned decimal field.
+	 * @param source Text to read
+	 * @param start Index of first digit
+	 * @param count Number of digits
+	 * @return Field value or -1 if the field is missing or not all digits
+	 */
+	private static int digits(CharSequence source, int start, int count) {
+		if (start + count > source.length()) {
+			return -1;
+		}
+		int res = 0;
+		for (int index = start; index < start + count; ++index) {
+			char ch = source.charAt(index);
+			if (!isDigit(ch)) {
+				return -1;
+			}
+			res = res * 10 + (ch - '0');
+		}
+		return res;
+	}
+
+	/**
+	 * Writes a fixed width zero padded decimal field.
+	 * @param out Output buffer
+	 * @param start Index of first digit
+	 * @param value Value to write
+	 * @param count Number of digits
+	 */
+	private static void putDigits(char[] out, int start, int value, int count) {
+		for (int index = start + count - 1; index >= start; --index) {
+			out[index] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	/**
+	 * Tests for an ASCII decimal digit.
+	 * @param ch Character to test
+	 * @return Digit flag
+	 */
+	private static boolean isDigit(char ch) {
+		return (ch >= '0') && (ch <= '9');
+	}
+
+	/**
+	 * Gets the number of days since the epoch for a civil date.
+	 * @param year Full year
+	 * @param month Month, 1 to 12
+	 * @param day Day of month
+	 * @return Days since 1970-01-01
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		int y = (month <= 2) ? (year - 1) : year;
+		int era = ((y >= 0) ? y : (y - 399)) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * ((month > 2) ? (month - 3) : (month + 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097L + dayOfEra - 719468;
+	}
+
+	/** Returned by {@link #parseMillis(CharSequence)} for text that is not a time stamp. */
+	public static final long INVALID = Long.MIN_VALUE;
+
+	/** Shortest valid time stamp, yyyy-MM-ddTHH:mm:ssZ. */
+	private static final int MIN_LENGTH = 20;
+
+	/** Longest fraction read, so the millisecond count cannot overflow. */
+	private static final int MAX_FRACTION_DIGITS = 18;
+
+	/** Length of a formatted time stamp, yyyy-MM-ddTHH:mm:ss.SSS+hhmm. */
+	private static final int FORMAT_LENGTH = 28;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+}
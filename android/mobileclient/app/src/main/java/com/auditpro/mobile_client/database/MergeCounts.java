@@ -0,0 +1,75 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+
+/**
+ * Counts the rows touched when refreshed data is merged into a cached table.
+ * @author Eric Ruck
+ */
+public class MergeCounts {
+
+	/**
+	 * Initializes empty counts.
+	 */
+	MergeCounts() {
+		inserted = 0;
+		updated = 0;
+		deleted = 0;
+		unchanged = 0;
+	}
+
+	/**
+	 * Adds the passed counts to our own.
+	 * @param other Counts to add
+	 * @return This instance for chaining
+	 */
+	MergeCounts add(MergeCounts other) {
+		inserted += other.inserted;
+		updated += other.updated;
+		deleted += other.deleted;
+		unchanged += other.unchanged;
+		return this;
+	}
+
+	/**
+	 * Gets the number of rows that changed in any way.
+	 * @return Inserted, updated and deleted rows
+	 */
+	public int getChanged() {
+		return inserted + updated + deleted;
+	}
+
+	public int getInserted() {
+		return inserted;
+	}
+
+	public int getUpdated() {
+		return updated;
+	}
+
+	public int getDeleted() {
+		return deleted;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	/**
+	 * Renders the counts for the log.
+	 * @return Readable counts
+	 */
+	@Override
+	public String toString() {
+		return inserted + " inserted, " + updated + " updated, " + deleted + " deleted, " +
+				unchanged + " unchanged";
+	}
+
+	int inserted;
+	int updated;
+	int deleted;
+	int unchanged;
+}
@@ -57,6 +57,16 @@ public class NotesRecord {
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes for our table.
+	 * @param db Database in which to create our indexes
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_AUDIT + " ON " + TABLE_NAME +
+				" (" + COL_AUDIT_ID + ")");
 	}
 
 	/**
@@ -64,11 +74,14 @@ public class NotesRecord {
 	 * @param db Connected database
 	 * @param lastVersion Last version of our database
 	 */
-	@SuppressWarnings("unused")
 	static void updateTable(SQLiteDatabase db, int lastVersion) {
 		if (lastVersion < AuditDatabase.DB_VERSION_16) {
 			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD " + COL_STORE + " TEXT");
 		}
+		if (lastVersion < AuditDatabase.DB_VERSION_AUDIT_INDEXES) {
+			// Index lookups by audit
+			createIndexes(db);
+		}
 	}
 
 	/**
@@ -117,6 +130,7 @@ public class NotesRecord {
 		}
 	}
 
+	private static final String INDEX_AUDIT = "notes_audit_idx";
 	private static final String TABLE_NAME = "notes";
 	private static final String COL_ID = "notes_uuid";
 	private static final String COL_AUDIT_ID = "audit_uuid";
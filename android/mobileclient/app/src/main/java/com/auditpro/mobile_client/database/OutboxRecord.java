@@ -0,0 +1,203 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.auditpro.mobile_client.entities.Audit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+
+/**
+ * Records a completed audit waiting to be uploaded.  Rows are added when an audit is
+ * completed and removed when the server acknowledges it, so uploads survive the process and
+ * are retried with backoff until they succeed.
+ * @author Eric Ruck
+ */
+public class OutboxRecord {
+
+	/**
+	 * Initializes an instance from a database cursor.
+	 * @param cursor Cursor positioned on an outbox row
+	 */
+	private OutboxRecord(Cursor cursor) {
+		auditId = UUID.fromString(cursor.getString(cursor.getColumnIndex(COL_AUDIT_ID)));
+		idempotencyKey = cursor.getString(cursor.getColumnIndex(COL_IDEMPOTENCY_KEY));
+		attempts = cursor.getInt(cursor.getColumnIndex(COL_ATTEMPTS));
+		partsAcked = cursor.getInt(cursor.getColumnIndex(COL_PARTS_ACKED));
+	}
+
+	/**
+	 * Create our table in the passed database.
+	 * @param db Database in which to create our table
+	 */
+	static void createTable(SQLiteDatabase db) {
+		// Build a create table statement
+		String st = "CREATE TABLE " + TABLE_NAME + " (" + COL_AUDIT_ID + " TEXT PRIMARY KEY, " +
+				COL_USER_ID + " INTEGER, " +
+				COL_IDEMPOTENCY_KEY + " TEXT, " +
+				COL_ATTEMPTS + " INTEGER DEFAULT 0, " +
+				COL_NEXT_ATTEMPT_AT + " INTEGER DEFAULT 0, " +
+				COL_LAST_ERROR + " TEXT, " +
+				COL_PARTS_ACKED + " INTEGER DEFAULT 0)";
+
+		// Execute it
+		db.execSQL(st);
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_USER_NEXT + " ON " + TABLE_NAME +
+				" (" + COL_USER_ID + ", " + COL_NEXT_ATTEMPT_AT + ")");
+	}
+
+	/**
+	 * Updates our table to the current version if becessary
+	 * @param db Connected database
+	 * @param lastVersion Last version of our database
+	 */
+	static void updateTable(SQLiteDatabase db, int lastVersion) {
+		if (lastVersion < AuditDatabase.DB_VERSION_OUTBOX) {
+			// Create the outbox and queue the audits already completed
+			createTable(db);
+			db.execSQL("INSERT INTO " + TABLE_NAME + " (" + COL_AUDIT_ID + ", " + COL_USER_ID +
+					", " + COL_IDEMPOTENCY_KEY + ") SELECT " + AuditRecord.COL_ID + ", " +
+					AuditRecord.COL_USER_ID + ", lower(hex(randomblob(16))) FROM " +
+					AuditRecord.TABLE_NAME + " WHERE " + AuditRecord.COL_AUDIT_ENDED_AT +
+					" IS NOT NULL");
+		} else if (lastVersion < AuditDatabase.DB_VERSION_UPLOAD_PARTS) {
+			// Track the progress of uploads sent in parts
+			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD " + COL_PARTS_ACKED +
+					" INTEGER DEFAULT 0");
+		}
+	}
+
+	/**
+	 * Queues a completed audit for upload with a new idempotency key, replacing any earlier
+	 * entry for the audit.
+	 * @param db Database that holds the outbox
+	 * @param audit Completed audit
+	 */
+	static void enqueue(SQLiteDatabase db, Audit audit) {
+		ContentValues record = new ContentValues();
+		record.put(COL_AUDIT_ID, audit.getId().toString());
+		record.put(COL_USER_ID, audit.getUserId());
+		record.put(COL_IDEMPOTENCY_KEY, UUID.randomUUID().toString());
+		record.put(COL_ATTEMPTS, 0);
+		record.put(COL_NEXT_ATTEMPT_AT, 0);
+		record.put(COL_PARTS_ACKED, 0);
+		db.insertWithOnConflict(TABLE_NAME, null, record, SQLiteDatabase.CONFLICT_REPLACE);
+	}
+
+	/**
+	 * Gets the user's queued uploads.
+	 * @param db Database that holds the outbox
+	 * @param userId User whose uploads we want
+	 * @param dueBy Only include uploads due by this epoch time, or null for all
+	 * @return Queued uploads, may be empty
+	 */
+	static List<OutboxRecord> getQueued(SQLiteDatabase db, int userId, Long dueBy) {
+		// Query for the queued uploads, oldest failures last
+		String query = "SELECT " + COL_AUDIT_ID + ", " + COL_IDEMPOTENCY_KEY + ", " + COL_ATTEMPTS +
+				", " + COL_PARTS_ACKED + " FROM " + TABLE_NAME + " WHERE " + COL_USER_ID + "=?" +
+				((dueBy == null) ? "" : " AND " + COL_NEXT_ATTEMPT_AT + "<=?") +
+				" ORDER BY " + COL_ATTEMPTS;
+		String[] args = (dueBy == null)
+				? new String[] { Integer.toString(userId) }
+				: new String[] { Integer.toString(userId), Long.toString(dueBy) };
+		List<OutboxRecord> res = new ArrayList<>();
+		try (Cursor cursor = db.rawQuery(query, args)) {
+			while (cursor.moveToNext()) {
+				res.add(new OutboxRecord(cursor));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Gets the time the user's next queued upload is due.
+	 * @param db Database that holds the outbox
+	 * @param userId User whose uploads we want
+	 * @return Epoch time of the next upload, or null if none are queued
+	 */
+	static Long getNextAttemptAt(SQLiteDatabase db, int userId) {
+		String query = "SELECT MIN(" + COL_NEXT_ATTEMPT_AT + ") FROM " + TABLE_NAME +
+				" WHERE " + COL_USER_ID + "=?";
+		try (Cursor cursor = db.rawQuery(query, new String[] { Integer.toString(userId) })) {
+			return (cursor.moveToNext() && !cursor.isNull(0)) ? cursor.getLong(0) : null;
+		}
+	}
+
+	/**
+	 * Records a failed upload attempt and when to try again.
+	 * @param db Database that holds the outbox
+	 * @param audit Audit that failed to upload
+	 * @param attempts Failed attempts including this one
+	 * @param nextAttemptAt Epoch time to try again
+	 * @param error Reason for the failure
+	 */
+	static void defer(SQLiteDatabase db, Audit audit, int attempts, long nextAttemptAt,
+			String error) {
+		ContentValues update = new ContentValues();
+		update.put(COL_ATTEMPTS, attempts);
+		update.put(COL_NEXT_ATTEMPT_AT, nextAttemptAt);
+		update.put(COL_LAST_ERROR, error);
+		db.update(TABLE_NAME, update, COL_AUDIT_ID + "=?", new String[] { audit.getId().toString() });
+	}
+
+	/**
+	 * Records the number of parts of an upload the server has acknowledged, so an interrupted
+	 * upload resumes after them.
+	 * @param db Database that holds the outbox
+	 * @param audit Audit being uploaded
+	 * @param partsAcked Parts acknowledged so far
+	 */
+	static void setPartsAcked(SQLiteDatabase db, Audit audit, int partsAcked) {
+		ContentValues update = new ContentValues();
+		update.put(COL_PARTS_ACKED, partsAcked);
+		db.update(TABLE_NAME, update, COL_AUDIT_ID + "=?", new String[] { audit.getId().toString() });
+	}
+
+	/**
+	 * Removes the passed audit from the outbox.
+	 * @param db Database that holds the outbox
+	 * @param audit Audit to remove
+	 */
+	static void deleteFor(SQLiteDatabase db, Audit audit) {
+		db.delete(TABLE_NAME, COL_AUDIT_ID + "=?", new String[] { audit.getId().toString() });
+	}
+
+	UUID getAuditId() {
+		return auditId;
+	}
+
+	String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	int getAttempts() {
+		return attempts;
+	}
+
+	int getPartsAcked() {
+		return partsAcked;
+	}
+
+	private static final String INDEX_USER_NEXT = "outbox_user_next_idx";
+	private static final String TABLE_NAME = "outbox";
+	private static final String COL_AUDIT_ID = "audit_uuid";
+	private static final String COL_USER_ID = "user_id";
+	private static final String COL_IDEMPOTENCY_KEY = "idempotency_key";
+	private static final String COL_ATTEMPTS = "attempts";
+	private static final String COL_NEXT_ATTEMPT_AT = "next_attempt_ms";
+	private static final String COL_LAST_ERROR = "last_error";
+	private static final String COL_PARTS_ACKED = "parts_acked";
+
+	private final UUID auditId;
+	private final String idempotencyKey;
+	private final int attempts;
+	private final int partsAcked;
+}
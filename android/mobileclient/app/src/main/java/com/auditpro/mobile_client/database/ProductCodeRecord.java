@@ -0,0 +1,155 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.auditpro.mobile_client.entities.ProductCode;
+import com.auditpro.mobile_client.entities.Store;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Records the normalized codes that identify each product, so a scanned barcode or shelf tag
+ * is found with an index lookup.  Codes include the UPC and its variants, the current and
+ * previous reorder codes, and the brand and chain SKUs.  Rebuilt from the products table
+ * whenever a refresh changes the products.
+ * @author Eric Ruck
+ */
+class ProductCodeRecord {
+
+	/**
+	 * Create our table in the passed database.
+	 * @param db Database in which to create our table
+	 */
+	static void createTable(SQLiteDatabase db) {
+		db.execSQL("CREATE TABLE " + TABLE_NAME + " (" + COL_CODE + " TEXT NOT NULL, " +
+				COL_PRODUCT_ID + " INTEGER NOT NULL, " +
+				COL_RANK + " INTEGER NOT NULL)");
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the lookup index for our table.
+	 * @param db Database in which to create our index
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_CODE + " ON " + TABLE_NAME +
+				" (" + COL_CODE + ", " + COL_RANK + ")");
+	}
+
+	/**
+	 * Updates our table to the current version if becessary
+	 * @param db Connected database
+	 * @param lastVersion Last version of our database
+	 */
+	static void updateTable(SQLiteDatabase db, int lastVersion) {
+		if (lastVersion < StoresDatabase.DB_VERSION_PRODUCT_CODES) {
+			// Index the codes of the products already cached
+			createTable(db);
+			rebuild(db);
+		}
+	}
+
+	/**
+	 * Replaces our rows with the codes of every product.  Should be called inside the
+	 * transaction that changed the products.
+	 * @param db Database to update
+	 * @return Number of codes written
+	 */
+	static int rebuild(SQLiteDatabase db) {
+		// Wipe the codes and load without the index
+		db.delete(TABLE_NAME, null, null);
+		db.execSQL("DROP INDEX IF EXISTS " + INDEX_CODE);
+		String query = "SELECT " + ProductRecord.COL_ID + ", " + ProductRecord.COL_UPC + ", " +
+				ProductRecord.COL_CURRENT_REORDER_CODE + ", " +
+				ProductRecord.COL_PREVIOUS_REORDER_CODE + ", " + ProductRecord.COL_BRAND_SKU +
+				", " + ProductRecord.COL_CHAIN_SKU + " FROM " + ProductRecord.TABLE_NAME;
+		SQLiteStatement insert = db.compileStatement(
+				BaseDatabase.insertStatement(TABLE_NAME, COL_CODE, COL_PRODUCT_ID, COL_RANK));
+		int res = 0;
+		try (Cursor cursor = db.rawQuery(query, null)) {
+			while (cursor.moveToNext()) {
+				// The UPC first, then the other codes in column order, so a code ranks the same
+				// kind and variant alike across products
+				for (int column = 1; column < cursor.getColumnCount(); ++column) {
+					List<String> keys = ProductCode.getKeys(cursor.getString(column), column == 1);
+					for (int variant = 0; variant < keys.size(); ++variant) {
+						insert.bindString(1, keys.get(variant));
+						insert.bindLong(2, cursor.getInt(0));
+						insert.bindLong(3, ProductCode.getRank(column - 1, variant));
+						insert.executeInsert();
+						++res;
+					}
+				}
+			}
+		} finally {
+			insert.close();
+		}
+		createIndexes(db);
+		return res;
+	}
+
+	/**
+	 * Gets the codes of a store's products.  Where products share a code, the product with the
+	 * code in its best rank is kept.
+	 * @param db Database contains the codes
+	 * @param store Store whose product codes we want
+	 * @return Product ids by code
+	 */
+	static Map<String, Integer> getCodes(SQLiteDatabase db, Store store) {
+		String query = "SELECT c." + COL_CODE + ", c." + COL_PRODUCT_ID + " FROM " + TABLE_NAME +
+				" c JOIN " + ProductRecord.TABLE_NAME + " p ON p." + ProductRecord.COL_ID +
+				"=c." + COL_PRODUCT_ID + " WHERE p." + ProductRecord.COL_CLIENT_ID + "=? AND p." +
+				ProductRecord.COL_CHAIN_ID + "=? ORDER BY c." + COL_RANK;
+		String[] args = { Integer.toString(store.getClientId()), Integer.toString(store.getChainId()) };
+		try (Cursor cursor = db.rawQuery(query, args)) {
+			Map<String, Integer> res = new HashMap<>(cursor.getCount() * 2);
+			while (cursor.moveToNext()) {
+				String code = cursor.getString(0);
+				if (!res.containsKey(code)) {
+					res.put(code, cursor.getInt(1));
+				}
+			}
+			return res;
+		}
+	}
+
+	/**
+	 * Finds the product of a store identified by a scanned barcode or shelf tag.
+	 * @param db Database contains the codes
+	 * @param store Store whose products to search
+	 * @param barcode Scanned code
+	 * @return Product id or null if not found
+	 */
+	static Integer findProductId(SQLiteDatabase db, Store store, String barcode) {
+		String query = "SELECT c." + COL_PRODUCT_ID + " FROM " + TABLE_NAME + " c JOIN " +
+				ProductRecord.TABLE_NAME + " p ON p." + ProductRecord.COL_ID + "=c." +
+				COL_PRODUCT_ID + " WHERE c." + COL_CODE + "=? AND p." +
+				ProductRecord.COL_CLIENT_ID + "=? AND p." + ProductRecord.COL_CHAIN_ID +
+				"=? ORDER BY c." + COL_RANK + " LIMIT 1";
+		for (String key : ProductCode.getKeys(barcode, true)) {
+			String[] args = { key, Integer.toString(store.getClientId()),
+					Integer.toString(store.getChainId()) };
+			try (Cursor cursor = db.rawQuery(query, args)) {
+				if (cursor.moveToNext()) {
+					return cursor.getInt(0);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static final String TABLE_NAME = "product_codes";
+	private static final String INDEX_CODE = "product_codes_code_idx";
+	private static final String COL_CODE = "code";
+	private static final String COL_PRODUCT_ID = "chain_x_product_id";
+	private static final String COL_RANK = "rank";
+}
@@ -5,8 +5,8 @@
 package com.auditpro.mobile_client.database;
 
 import android.annotation.SuppressLint;
-import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.auditpro.mobile_client.entities.Product;
@@ -52,6 +52,7 @@ public class ProductRecord {
 		setChainSKU(null);
 		setInStockPriceMin(null);
 		setInStockPriceMax(null);
+		setSummary(false);
 	}
 
 	/**
@@ -79,16 +80,36 @@ public class ProductRecord {
 				COL_CURRENT_REORDER_CODE + " TEXT, " +
 				COL_PREVIOUS_REORDER_CODE + " TEXT, " +
 				COL_BRAND_SKU + " TEXT, " +
-				COL_LAST_SCANNED_AT + " TEXT, " +
+				COL_LAST_SCANNED_AT + " INTEGER, " +
 				COL_LAST_SCANNED_PRICE + " DOUBLE, " +
 				COL_LAST_SCAN_WAS_SALE + " TINYINT, " +
 				COL_CHAIN_SKU + " TEXT, " +
 				COL_IN_STOCK_PRICE_MIN + " DOUBLE, " +
-				COL_IN_STOCK_PRICE_MAX + " DOUBLE" +
+				COL_IN_STOCK_PRICE_MAX + " DOUBLE, " +
+				COL_ROW_HASH + " INTEGER" +
 				")";
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the secondary indexes for our table.
+	 * @param db Database in which to create our indexes
+	 */
+	static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_CLIENT_CHAIN_NAME + " ON " + TABLE_NAME +
+				" (" + COL_CLIENT_ID + ", " + COL_CHAIN_ID + ", " + COL_PRODUCT_NAME + ")");
+	}
+
+	/**
+	 * Drops the secondary indexes for our table, so a bulk load does not maintain them row by
+	 * row.  Call createIndexes when the load is complete.
+	 * @param db Database from which to drop our indexes
+	 */
+	static void dropIndexes(SQLiteDatabase db) {
+		db.execSQL("DROP INDEX IF EXISTS " + INDEX_CLIENT_CHAIN_NAME);
 	}
 
 	/**
@@ -103,6 +124,25 @@ public class ProductRecord {
 			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COL_IN_STOCK_PRICE_MIN + " DOUBLE;");
 			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COL_IN_STOCK_PRICE_MAX + " DOUBLE;");
 		}
+		if (lastVersion < StoresDatabase.DB_VERSION_PRODUCT_INDEX) {
+			// Index lookups by client and chain
+			createIndexes(db);
+		}
+		if (lastVersion < StoresDatabase.DB_VERSION_ROW_HASHES) {
+			// Add content hash for merging refreshes
+			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COL_ROW_HASH + " INTEGER;");
+		}
+		if (lastVersion < StoresDatabase.DB_VERSION_EPOCH_DATES) {
+			// Store last scanned time as epoch milliseconds
+			BaseDatabase.migrateDateColumns(db, TABLE_NAME,
+					new String[] { COL_LEGACY_LAST_SCANNED_AT },
+					new String[] { COL_LAST_SCANNED_AT });
+		}
+		if (lastVersion < StoresDatabase.DB_VERSION_PRODUCT_NAME_INDEX) {
+			// Replace the client and chain index with one that also orders by name
+			db.execSQL("DROP INDEX IF EXISTS " + INDEX_LEGACY_CLIENT_CHAIN);
+			createIndexes(db);
+		}
 	}
 
 	/**
@@ -116,8 +156,80 @@ public class ProductRecord {
 		@SuppressLint("DefaultLocale")
 		String query = String.format("SELECT * FROM %s WHERE %s=%d AND %s=%d",
 				TABLE_NAME, COL_CLIENT_ID, store.getClientId(), COL_CHAIN_ID, store.getChainId());
-		Cursor cursor = db.rawQuery(query, null);
+		return readProducts(db.rawQuery(query, null));
+	}
+
+	/**
+	 * Gets the full details of one product.
+	 * @param db Database contains products
+	 * @param productId Identifies the product
+	 * @return The product or null if not found
+	 */
+	static Product getProduct(SQLiteDatabase db, int productId) {
+		String query = "SELECT * FROM " + TABLE_NAME + " WHERE " + COL_ID + "=?";
+		List<Product> res = readProducts(db.rawQuery(query, new String[] { Integer.toString(productId) }));
+		return res.isEmpty() ? null : res.get(0);
+	}
+
+	/**
+	 * Gets the next page of product summaries for a store, in product name order.  Summaries
+	 * only carry the fields needed to list, search and filter products; use getProduct for
+	 * the rest.
+	 * @param db Database contains products
+	 * @param store Store whose products we want
+	 * @param after Last summary of the previous page, or null for the first page
+	 * @param limit Maximum number of summaries to return
+	 * @return Next page of summaries, empty after the last page
+	 */
+	static List<Product> getProductSummaries(SQLiteDatabase db, Store store, Product after, int limit) {
+		// Continue from the last name and id, so each page is an index range scan
+		StringBuilder query = new StringBuilder("SELECT ");
+		for (int index = 0; index < SUMMARY_COLUMNS.length; ++index) {
+			query.append((index == 0) ? "" : ", ").append(SUMMARY_COLUMNS[index]);
+		}
+		query.append(" FROM ").append(TABLE_NAME).append(" WHERE ").
+				append(COL_CLIENT_ID).append("=? AND ").append(COL_CHAIN_ID).append("=?");
+		List<String> args = new ArrayList<>();
+		args.add(Integer.toString(store.getClientId()));
+		args.add(Integer.toString(store.getChainId()));
+		if (after != null) {
+			query.append(" AND ").append(COL_PRODUCT_NAME).append(">=? AND (").
+					append(COL_PRODUCT_NAME).append(">? OR ").append(COL_ID).append(">?)");
+			args.add(after.getProductName());
+			args.add(after.getProductName());
+			args.add(Integer.toString(after.getId()));
+		}
+		query.append(" ORDER BY ").append(COL_PRODUCT_NAME).append(", ").append(COL_ID).
+				append(" LIMIT ").append(limit);
+		Cursor cursor = db.rawQuery(query.toString(), args.toArray(new String[0]));
 
+		// Extract the summaries in SUMMARY_COLUMNS order
+		List<Product> res = new ArrayList<>(cursor.getCount());
+		while (cursor.moveToNext()) {
+			ProductRecord record = new ProductRecord();
+			record.setId(cursor.getInt(0));
+			record.setBrandName(cursor.getString(1));
+			record.setBrandNameShort(cursor.getString(2));
+			record.setProductName(cursor.getString(3));
+			record.setUPC(cursor.getString(4));
+			record.setRandomWeight(cursor.getInt(5) != 0);
+			record.setProductTypeName(cursor.getString(6));
+			record.setCurrentReorderCode(cursor.getString(7));
+			record.setBrandSKU(cursor.getString(8));
+			record.setChainSKU(cursor.getString(9));
+			record.setSummary(true);
+			res.add(new Product(record));
+		}
+		cursor.close();
+		return res;
+	}
+
+	/**
+	 * Reads all of the products from a cursor over every column, and closes it.
+	 * @param cursor Query results
+	 * @return The products
+	 */
+	private static List<Product> readProducts(Cursor cursor) {
 		// Extract the results
 		int idxId = -1;
 		int idxClientId = -1;
@@ -196,7 +308,7 @@ public class ProductRecord {
 			record.setCurrentReorderCode(cursor.getString(idxCurrentReorderCode));
 			record.setPreviousReorderCode(cursor.getString(idxPreviousReorderCode));
 			record.setBrandSKU(cursor.getString(idxBrandSKU));
-			record.setLastScannedAt(BaseDatabase.parseDateTime(cursor.getString(idxLastScannedAt)));
+			record.setLastScannedAt(BaseDatabase.getNullableDate(cursor, idxLastScannedAt));
 			record.setLastScannedPrice(cursor.getDouble(idxLastScannedPrice));
 			record.setLastScanWasSale(cursor.getInt(idxLastScanWasSale) != 0);
 			if ((idxChainSKU >= 0) && !cursor.isNull(idxChainSKU)) {
@@ -219,45 +331,87 @@ public class ProductRecord {
 	}
 
 	/**
-	 * Replaces all of the store records with the passed data.
+	 * Replaces all of the product records with the passed data.  Compiles the insert once and
+	 * binds each row, and rebuilds the secondary indexes once after the load.  Should be called
+	 * inside a transaction.
 	 * @param db Database to replace
-	 * @param products Products to save to database
+	 * @param products Products to save to database, read once in order; a repeated id keeps
+	 *                 the last copy
+	 * @return Number of distinct products inserted
 	 */
-	static void replaceWith(SQLiteDatabase db, List<Product> products) {
+	private static int replaceWith(SQLiteDatabase db, Iterable<Product> products) {
 		// Wipe all the records
 		db.delete(TABLE_NAME, null, null);
-		for(Product product : products) {
-			// Insert the current record
-			ContentValues record = new ContentValues();
-			record.put(COL_ID, product.getId());
-			record.put(COL_CLIENT_ID, product.getClientId());
-			record.put(COL_CHAIN_ID, product.getChainId());
-			record.put(COL_PRODUCT_ID, product.getGlobalProductId());
-			record.put(COL_BRAND_NAME, product.getBrandName());
-			record.put(COL_BRAND_NAME_SHORT, product.getBrandNameShort());
-			record.put(COL_PRODUCT_NAME, product.getProductName());
-			record.put(COL_UPC, product.getUPC());
-			record.put(COL_MSRP, product.getMSRP());
-			record.put(COL_RANDOM_WEIGHT, product.isRandomWeight());
-			record.put(COL_RETAIL_PRICE_MIN, product.getRetailPriceMin());
-			record.put(COL_RETAIL_PRICE_MAX, product.getRetailPriceMax());
-			record.put(COL_RETAIL_PRICE_AVERAGE, product.getRetailPriceAverage());
-			record.put(COL_CATEGORY_NAME, product.getCategoryName());
-			record.put(COL_SUBCATEGORY_NAME, product.getSubcategoryName());
-			record.put(COL_PRODUCT_TYPE_NAME, product.getProductTypeName());
-			record.put(COL_CURRENT_REORDER_CODE, product.getCurrentReorderCode());
-			record.put(COL_PREVIOUS_REORDER_CODE, product.getPreviousReorderCode());
-			record.put(COL_BRAND_SKU, product.getBrandSKU());
-			record.put(COL_LAST_SCANNED_AT, BaseDatabase.parseDateTime(product.getLastScannedAt()));
-			record.put(COL_LAST_SCANNED_PRICE, product.getLastScannedPrice());
-			record.put(COL_LAST_SCAN_WAS_SALE, product.isLastScanWasSale());
-			record.put(COL_CHAIN_SKU, product.getChainSKU());
-			record.put(COL_IN_STOCK_PRICE_MIN, product.getInStockPriceMin());
-			record.put(COL_IN_STOCK_PRICE_MAX, product.getInStockPriceMax());
-			db.insert(TABLE_NAME, null, record);
+		dropIndexes(db);
+		BaseDatabase.insertRows(db, TABLE_NAME, WRITE_COLUMNS, products, ROW_VALUES);
+		createIndexes(db);
+
+		// Count what was kept, since a repeated id replaces the earlier row
+		return (int) DatabaseUtils.queryNumEntries(db, TABLE_NAME);
+	}
+
+	/**
+	 * Merges the passed products into the table, writing only new and changed products and
+	 * deleting products that are no longer present.  Loads an empty table without indexes, which
+	 * is faster for the first sync.  The product codes are rebuilt if any product changed.
+	 * Should be called inside a transaction.
+	 * @param db Database to update
+	 * @param products Complete set of products from the web service, read once in order
+	 * @return Counts of the rows touched
+	 */
+	static MergeCounts mergeWith(SQLiteDatabase db, Iterable<Product> products) {
+		MergeCounts res;
+		if (DatabaseUtils.queryNumEntries(db, TABLE_NAME) == 0) {
+			// Nothing to merge with
+			res = new MergeCounts();
+			res.inserted = replaceWith(db, products);
+		} else {
+			res = BaseDatabase.mergeRows(db, TABLE_NAME, WRITE_COLUMNS, products, ROW_VALUES);
+		}
+		if (res.getChanged() > 0) {
+			// Index the codes of the changed products
+			ProductCodeRecord.rebuild(db);
 		}
+		return res;
 	}
 
+	/**
+	 * Converts a product to its row values in WRITE_COLUMNS order, leaving the hash empty.
+	 */
+	private static final BaseDatabase.RowValues<Product> ROW_VALUES = new BaseDatabase.RowValues<Product>() {
+		@Override
+		public Object[] toValues(Product product) {
+			return new Object[] {
+					product.getId(),
+					product.getClientId(),
+					product.getChainId(),
+					product.getGlobalProductId(),
+					product.getBrandName(),
+					product.getBrandNameShort(),
+					product.getProductName(),
+					product.getUPC(),
+					product.getMSRP(),
+					product.isRandomWeight(),
+					product.getRetailPriceMin(),
+					product.getRetailPriceMax(),
+					product.getRetailPriceAverage(),
+					product.getCategoryName(),
+					product.getSubcategoryName(),
+					product.getProductTypeName(),
+					product.getCurrentReorderCode(),
+					product.getPreviousReorderCode(),
+					product.getBrandSKU(),
+					BaseDatabase.toEpoch(product.getLastScannedAt()),
+					product.getLastScannedPrice(),
+					product.isLastScanWasSale(),
+					product.getChainSKU(),
+					product.getInStockPriceMin(),
+					product.getInStockPriceMax(),
+					null
+			};
+		}
+	};
+
 	public int getId() {
 		return id;
 	}
@@ -338,6 +492,14 @@ public class ProductRecord {
 		randomWeight = value;
 	}
 
+	public boolean isSummary() {
+		return summary;
+	}
+
+	private void setSummary(boolean value) {
+		summary = value;
+	}
+
 	public Double getRetailPriceMin() {
 		return retailPriceMin;
 	}
@@ -446,15 +608,17 @@ public class ProductRecord {
 
 	private void setInStockPriceMax(Double value) { inStockPriceMax = value; }
 
-	private static final String TABLE_NAME = "products";
-	private static final String COL_ID = "chain_x_product_id";
-	private static final String COL_CLIENT_ID = "client_id";
-	private static final String COL_CHAIN_ID = "chain_id";
+	private static final String INDEX_LEGACY_CLIENT_CHAIN = "products_client_chain_idx";
+	private static final String INDEX_CLIENT_CHAIN_NAME = "products_client_chain_name_idx";
+	static final String TABLE_NAME = "products";
+	static final String COL_ID = "chain_x_product_id";
+	static final String COL_CLIENT_ID = "client_id";
+	static final String COL_CHAIN_ID = "chain_id";
 	private static final String COL_PRODUCT_ID = "product_id";
 	private static final String COL_BRAND_NAME = "brand_name";
 	private static final String COL_BRAND_NAME_SHORT = "brand_name_short";
 	private static final String COL_PRODUCT_NAME = "product_name";
-	private static final String COL_UPC = "upc";
+	static final String COL_UPC = "upc";
 	private static final String COL_MSRP = "msrp";
 	private static final String COL_RANDOM_WEIGHT = "is_random_weight";
 	private static final String COL_RETAIL_PRICE_MIN = "retail_price_min";
@@ -463,15 +627,35 @@ public class ProductRecord {
 	private static final String COL_CATEGORY_NAME = "category_name";
 	private static final String COL_SUBCATEGORY_NAME = "subcategory_name";
 	private static final String COL_PRODUCT_TYPE_NAME = "product_type_name";
-	private static final String COL_CURRENT_REORDER_CODE = "current_reorder_code";
-	private static final String COL_PREVIOUS_REORDER_CODE = "previous_reorder_code";
-	private static final String COL_BRAND_SKU = "brand_sku";
-	private static final String COL_LAST_SCANNED_AT = "last_scanned_at";
+	static final String COL_CURRENT_REORDER_CODE = "current_reorder_code";
+	static final String COL_PREVIOUS_REORDER_CODE = "previous_reorder_code";
+	static final String COL_BRAND_SKU = "brand_sku";
+	private static final String COL_LAST_SCANNED_AT = "last_scanned_ms";
+	private static final String COL_LEGACY_LAST_SCANNED_AT = "last_scanned_at";
 	private static final String COL_LAST_SCANNED_PRICE = "last_scanned_price";
 	private static final String COL_LAST_SCAN_WAS_SALE = "last_scan_was_sale";
-	private static final String COL_CHAIN_SKU = "chain_sku";
+	static final String COL_CHAIN_SKU = "chain_sku";
 	private static final String COL_IN_STOCK_PRICE_MIN = "in_stock_price_min";
 	private static final String COL_IN_STOCK_PRICE_MAX = "in_stock_price_max";
+	private static final String COL_ROW_HASH = "row_hash";
+
+	/** Columns read for product summaries, in the order getProductSummaries reads them. */
+	private static final String[] SUMMARY_COLUMNS = {
+			COL_ID, COL_BRAND_NAME, COL_BRAND_NAME_SHORT, COL_PRODUCT_NAME, COL_UPC,
+			COL_RANDOM_WEIGHT, COL_PRODUCT_TYPE_NAME, COL_CURRENT_REORDER_CODE, COL_BRAND_SKU,
+			COL_CHAIN_SKU
+	};
+
+	/** Columns written on refresh, key first and content hash last. */
+	private static final String[] WRITE_COLUMNS = {
+			COL_ID, COL_CLIENT_ID, COL_CHAIN_ID, COL_PRODUCT_ID, COL_BRAND_NAME,
+			COL_BRAND_NAME_SHORT, COL_PRODUCT_NAME, COL_UPC, COL_MSRP, COL_RANDOM_WEIGHT,
+			COL_RETAIL_PRICE_MIN, COL_RETAIL_PRICE_MAX, COL_RETAIL_PRICE_AVERAGE,
+			COL_CATEGORY_NAME, COL_SUBCATEGORY_NAME, COL_PRODUCT_TYPE_NAME,
+			COL_CURRENT_REORDER_CODE, COL_PREVIOUS_REORDER_CODE, COL_BRAND_SKU,
+			COL_LAST_SCANNED_AT, COL_LAST_SCANNED_PRICE, COL_LAST_SCAN_WAS_SALE,
+			COL_CHAIN_SKU, COL_IN_STOCK_PRICE_MIN, COL_IN_STOCK_PRICE_MAX, COL_ROW_HASH
+	};
 
 	private int id;
 	private int clientId;
@@ -483,6 +667,7 @@ public class ProductRecord {
 	private String upc;
 	private Double msrp;
 	private boolean randomWeight;
+	private boolean summary;
 	private Double retailPriceMin;
 	private Double retailPriceMax;
 	private Double retailPriceAverage;
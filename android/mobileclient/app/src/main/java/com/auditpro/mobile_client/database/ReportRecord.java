@@ -7,14 +7,14 @@ package com.auditpro.mobile_client.database;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
+import android.util.SparseArray;
 
 import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.AuditItem;
 import com.auditpro.mobile_client.entities.Report;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -78,8 +78,8 @@ public class ReportRecord {
 	static void createTable(SQLiteDatabase db) {
 		// Build a create table statement
 		String st = "CREATE TABLE " + TABLE_NAME + " (" + COL_ID + " TEXT PRIMARY KEY, " +
-				COL_CREATED_AT + " TEXT, " +
-				COL_UPDATED_AT + " TEXT, " +
+				COL_CREATED_AT + " INTEGER, " +
+				COL_UPDATED_AT + " INTEGER, " +
 				COL_AUDIT_ID + " TEXT, " +
 				COL_SCAN_ID + " TEXT, " +
 				COL_PRODUCT_ID + " INTEGER, " +
@@ -87,6 +87,20 @@ public class ReportRecord {
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes for our table, removing duplicate products in an audit first so the
+	 * unique index can be applied to existing data.  Keeps the first row inserted, which is the
+	 * row the lookups have always read and updated.
+	 * @param db Database in which to create our indexes
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE rowid NOT IN (SELECT MIN(rowid) FROM " +
+				TABLE_NAME + " GROUP BY " + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
+		db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_AUDIT_PRODUCT + " ON " + TABLE_NAME +
+				" (" + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
 	}
 
 	/**
@@ -94,9 +108,17 @@ public class ReportRecord {
 	 * @param db Connected database
 	 * @param lastVersion Last version of our database
 	 */
-	@SuppressWarnings("unused")
 	static void updateTable(SQLiteDatabase db, int lastVersion) {
-		// No updates as of now
+		if (lastVersion < AuditDatabase.DB_VERSION_AUDIT_INDEXES) {
+			// Index lookups by audit and product
+			createIndexes(db);
+		}
+		if (lastVersion < AuditDatabase.DB_VERSION_EPOCH_DATES) {
+			// Store timestamps as epoch milliseconds
+			BaseDatabase.migrateDateColumns(db, TABLE_NAME,
+					new String[] { COL_LEGACY_CREATED_AT, COL_LEGACY_UPDATED_AT },
+					new String[] { COL_CREATED_AT, COL_UPDATED_AT });
+		}
 	}
 
 	/**
@@ -143,35 +165,71 @@ public class ReportRecord {
 	}
 
 	/**
-	 * Serializes the reports for an audit to JSON.
+	 * Gets what has been recorded for each reported product in an audit, joining each report
+	 * with its scan and SKU conditions in a single query.
 	 * @param db Database contains reports
-	 * @param audit Audit whose reports we want
-	 * @return Serialized reports
-	 * @throws JSONException Unexpected serialization error
+	 * @param audit Audit whose items we want
+	 * @return Audit items keyed by product id
 	 */
-	static JSONArray getJSON(SQLiteDatabase db, Audit audit) throws JSONException {
-		// Get the scans from the database
-		List<Report> reports = getReports(db, audit);
-
-		// Serialize the reports
-		JSONArray res = new JSONArray();
-		for (Report record : reports) {
-			// Serialize the current report
-			JSONObject json = new JSONObject();
-			UUID scanId = record.getScanId();
-			json.put("reportId", record.getId().toString());
-			json.put("createdAt", BaseDatabase.parseDateTime(record.getCreatedAt()));
-			json.put("updatedAt", BaseDatabase.parseDateTime(record.getUpdatedAt()));
-			json.put("scanId", (scanId == null) ? null : scanId.toString());
-			json.put("chainXProductId", record.getProductId());
-			json.put("reorderStatusId", record.getReorderStatusId());
-			res.put(json);
+	static SparseArray<AuditItem> getItems(SQLiteDatabase db, Audit audit) {
+		// Query for the reports and their related records
+		String query = "SELECT r." + COL_PRODUCT_ID + ", r." + COL_REORDER_STATUS_ID + ", s." +
+				ScanRecord.COL_ID + ", s." + ScanRecord.COL_RETAIL_PRICE + ", s." +
+				ScanRecord.COL_SALE_PRICE + ", c." + ConditionsRecord.COL_CONDITIONS +
+				" FROM " + TABLE_NAME + " r LEFT JOIN " + ScanRecord.TABLE_NAME + " s ON s." +
+				ScanRecord.COL_AUDIT_ID + "=r." + COL_AUDIT_ID + " AND s." +
+				ScanRecord.COL_PRODUCT_ID + "=r." + COL_PRODUCT_ID + " LEFT JOIN " +
+				ConditionsRecord.TABLE_NAME + " c ON c." + ConditionsRecord.COL_AUDIT_ID + "=r." +
+				COL_AUDIT_ID + " AND c." + ConditionsRecord.COL_PRODUCT_ID + "=r." + COL_PRODUCT_ID +
+				" WHERE r." + COL_AUDIT_ID + "=?";
+		Cursor cursor = db.rawQuery(query, new String[] { audit.getId().toString() });
+
+		// Build the results
+		SparseArray<AuditItem> res = new SparseArray<>(cursor.getCount());
+		while (cursor.moveToNext()) {
+			int productId = cursor.getInt(0);
+			res.put(productId, new AuditItem(productId, cursor.getInt(1), !cursor.isNull(2),
+					BaseDatabase.getNullableDouble(cursor, 3), BaseDatabase.getNullableDouble(cursor, 4),
+					ConditionsRecord.parseConditions(cursor.getString(5))));
 		}
 
-		// Return the serialized reports
+		// Return results
+		cursor.close();
 		return res;
 	}
 
+	/**
+	 * Streams the reports for an audit as a JSON array straight from the cursor.
+	 * @param db Database contains reports
+	 * @param audit Audit whose reports we want
+	 * @param writer Receives the serialized reports
+	 * @throws IOException Failed to write to the output
+	 */
+	static void writeJSON(SQLiteDatabase db, Audit audit, JsonWriter writer) throws IOException {
+		// Query for the serialized columns only
+		String query = "SELECT " + COL_ID + ", " + COL_CREATED_AT + ", " + COL_UPDATED_AT + ", " +
+				COL_SCAN_ID + ", " + COL_PRODUCT_ID + ", " + COL_REORDER_STATUS_ID + " FROM " +
+				TABLE_NAME + " WHERE " + COL_AUDIT_ID + "=?";
+		Cursor cursor = db.rawQuery(query, new String[] { audit.getId().toString() });
+		try {
+			// Serialize the reports
+			writer.beginArray();
+			while (cursor.moveToNext()) {
+				writer.beginObject();
+				writer.name("reportId").value(cursor.getString(0));
+				BaseDatabase.writeDate(writer, "createdAt", cursor, 1);
+				BaseDatabase.writeDate(writer, "updatedAt", cursor, 2);
+				BaseDatabase.writeString(writer, "scanId", cursor.getString(3));
+				writer.name("chainXProductId").value(cursor.getInt(4));
+				writer.name("reorderStatusId").value(cursor.getInt(5));
+				writer.endObject();
+			}
+			writer.endArray();
+		} finally {
+			cursor.close();
+		}
+	}
+
 	/**
 	 * Deletes the reports associated with the passed audit.
 	 * @param db Database from which to delete reports
@@ -182,32 +240,22 @@ public class ReportRecord {
 	}
 
 	/**
-	 * Inserts this record into the passed database.
-	 * @param db Database to receive record
-	 */
-	void insert(SQLiteDatabase db) {
-		ContentValues insert = new ContentValues();
-		insert.put(COL_ID, getId().toString());
-		insert.put(COL_CREATED_AT, BaseDatabase.parseDateTime(getCreatedAt()));
-		insert.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
-		insert.put(COL_AUDIT_ID, getAuditId().toString());
-		insert.put(COL_SCAN_ID, getScanIdString());
-		insert.put(COL_PRODUCT_ID, getProductId());
-		insert.put(COL_REORDER_STATUS_ID, getReorderStatusId());
-		db.insert(TABLE_NAME, null, insert);
-	}
-
-	/**
-	 * Updates this record into the passed database.
+	 * Inserts this record into the passed database, or updates the existing report for the same
+	 * product in the audit.  An existing report keeps its id and creation time.
 	 * @param db Database to receive record
 	 */
-	void update(SQLiteDatabase db) {
+	void upsert(SQLiteDatabase db) {
+		ContentValues key = new ContentValues();
+		key.put(COL_AUDIT_ID, getAuditId().toString());
+		key.put(COL_PRODUCT_ID, getProductId());
+		ContentValues insertOnly = new ContentValues();
+		insertOnly.put(COL_ID, getId().toString());
+		insertOnly.put(COL_CREATED_AT, BaseDatabase.toEpoch(getCreatedAt()));
 		ContentValues update = new ContentValues();
-		update.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
+		update.put(COL_UPDATED_AT, BaseDatabase.toEpoch(getUpdatedAt()));
 		update.put(COL_SCAN_ID, getScanIdString());
-		update.put(COL_PRODUCT_ID, getProductId());
 		update.put(COL_REORDER_STATUS_ID, getReorderStatusId());
-		db.update(TABLE_NAME, update, COL_ID + "=?", new String[] { getId().toString() });
+		BaseDatabase.upsert(db, TABLE_NAME, key, insertOnly, update);
 	}
 
 	/**
@@ -330,10 +378,13 @@ public class ReportRecord {
 		reorderStatusId = value;
 	}
 
+	private static final String INDEX_AUDIT_PRODUCT = "reports_audit_product_idx";
 	private static final String TABLE_NAME = "reports";
 	private static final String COL_ID = "audit_report_uuid";
-	private static final String COL_CREATED_AT = "created_at";
-	private static final String COL_UPDATED_AT = "updated_at";
+	private static final String COL_CREATED_AT = "created_ms";
+	private static final String COL_UPDATED_AT = "updated_ms";
+	private static final String COL_LEGACY_CREATED_AT = "created_at";
+	private static final String COL_LEGACY_UPDATED_AT = "updated_at";
 	private static final String COL_AUDIT_ID = "audit_uuid";
 	private static final String COL_SCAN_ID = "audit_scan_uuid";
 	private static final String COL_PRODUCT_ID = "chain_x_product_id";
@@ -7,14 +7,12 @@ package com.auditpro.mobile_client.database;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
 
 import com.auditpro.mobile_client.entities.Audit;
 import com.auditpro.mobile_client.entities.Scan;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -90,8 +88,8 @@ public class ScanRecord {
 		// Build a create table statement
 		String st = "CREATE TABLE " + TABLE_NAME + " (" + COL_ID + " TEXT PRIMARY KEY, " +
 				COL_AUDIT_ID + " TEXT, " +
-				COL_CREATED_AT + " TEXT, " +
-				COL_UPDATED_AT + " TEXT, " +
+				COL_CREATED_AT + " INTEGER, " +
+				COL_UPDATED_AT + " INTEGER, " +
 				COL_PRODUCT_ID + " INTEGER, " +
 				COL_RETAIL_PRICE + " DOUBLE, " +
 				COL_SALE_PRICE + " DOUBLE, " +
@@ -102,6 +100,20 @@ public class ScanRecord {
 
 		// Execute it
 		db.execSQL(st);
+		createIndexes(db);
+	}
+
+	/**
+	 * Creates the indexes for our table, removing duplicate products in an audit first so the
+	 * unique index can be applied to existing data.  Keeps the first row inserted, which is the
+	 * row the lookups have always read and updated.
+	 * @param db Database in which to create our indexes
+	 */
+	private static void createIndexes(SQLiteDatabase db) {
+		db.execSQL("DELETE FROM " + TABLE_NAME + " WHERE rowid NOT IN (SELECT MIN(rowid) FROM " +
+				TABLE_NAME + " GROUP BY " + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
+		db.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS " + INDEX_AUDIT_PRODUCT + " ON " + TABLE_NAME +
+				" (" + COL_AUDIT_ID + ", " + COL_PRODUCT_ID + ")");
 	}
 
 	/**
@@ -109,9 +121,17 @@ public class ScanRecord {
 	 * @param db Connected database
 	 * @param lastVersion Last version of our database
 	 */
-	@SuppressWarnings("unused")
 	static void updateTable(SQLiteDatabase db, int lastVersion) {
-		// No updates as of now
+		if (lastVersion < AuditDatabase.DB_VERSION_AUDIT_INDEXES) {
+			// Index lookups by audit and product
+			createIndexes(db);
+		}
+		if (lastVersion < AuditDatabase.DB_VERSION_EPOCH_DATES) {
+			// Store timestamps as epoch milliseconds
+			BaseDatabase.migrateDateColumns(db, TABLE_NAME,
+					new String[] { COL_LEGACY_CREATED_AT, COL_LEGACY_UPDATED_AT },
+					new String[] { COL_CREATED_AT, COL_UPDATED_AT });
+		}
 	}
 
 	/**
@@ -156,35 +176,40 @@ public class ScanRecord {
 	}
 
 	/**
-	 * Serializes the scans for an audit to JSON.
+	 * Streams the scans for an audit as a JSON array straight from the cursor.
 	 * @param db Database contains scans
 	 * @param audit Audit whose scans we want
-	 * @return Serialized scans
-	 * @throws JSONException Unexpected serialization error
+	 * @param writer Receives the serialized scans
+	 * @throws IOException Failed to write to the output
 	 */
-	static JSONArray getJSON(SQLiteDatabase db, Audit audit) throws JSONException {
-		// Get the scans from the database
-		List<ScanRecord> scans = getScans(db, audit);
-
-		// Serialize the scans
-		JSONArray res = new JSONArray();
-		for(ScanRecord record : scans) {
-			JSONObject json = new JSONObject();
-			json.put("scanId", record.getId().toString());
-			json.put("createdAt", BaseDatabase.parseDateTime(record.getCreatedAt()));
-			json.put("updatedAt", BaseDatabase.parseDateTime(record.getUpdatedAt()));
-			json.put("chainXProductId", record.getProductId());
-			json.put("retailPrice", record.getRetailPrice());
-			json.put("salePrice", record.getSalePrice());
-			json.put("scanData", record.getScanData());
-			json.put("scanTypeId", record.getScanTypeId());
-			json.put("productName", record.getProductName());
-			json.put("brandName", record.getBrandName());
-			res.put(json);
+	static void writeJSON(SQLiteDatabase db, Audit audit, JsonWriter writer) throws IOException {
+		// Query for the serialized columns only
+		String query = "SELECT " + COL_ID + ", " + COL_CREATED_AT + ", " + COL_UPDATED_AT + ", " +
+				COL_PRODUCT_ID + ", " + COL_RETAIL_PRICE + ", " + COL_SALE_PRICE + ", " +
+				COL_SCAN_DATA + ", " + COL_SCAN_TYPE_ID + ", " + COL_PRODUCT_NAME + ", " +
+				COL_BRAND_NAME + " FROM " + TABLE_NAME + " WHERE " + COL_AUDIT_ID + "=?";
+		Cursor cursor = db.rawQuery(query, new String[] { audit.getId().toString() });
+		try {
+			// Serialize the scans
+			writer.beginArray();
+			while (cursor.moveToNext()) {
+				writer.beginObject();
+				writer.name("scanId").value(cursor.getString(0));
+				BaseDatabase.writeDate(writer, "createdAt", cursor, 1);
+				BaseDatabase.writeDate(writer, "updatedAt", cursor, 2);
+				writer.name("chainXProductId").value(cursor.getInt(3));
+				BaseDatabase.writeDouble(writer, "retailPrice", cursor, 4);
+				BaseDatabase.writeDouble(writer, "salePrice", cursor, 5);
+				BaseDatabase.writeString(writer, "scanData", cursor.getString(6));
+				writer.name("scanTypeId").value(cursor.getInt(7));
+				BaseDatabase.writeString(writer, "productName", cursor.getString(8));
+				BaseDatabase.writeString(writer, "brandName", cursor.getString(9));
+				writer.endObject();
+			}
+			writer.endArray();
+		} finally {
+			cursor.close();
 		}
-
-		// Return the serialized result
-		return res;
 	}
 
 	/**
@@ -197,42 +222,26 @@ public class ScanRecord {
 	}
 
 	/**
-	 * Inserts ourself into the passed database.
+	 * Inserts ourself into the passed database, or updates the existing scan for the same
+	 * product in the audit.  An existing scan keeps its id so reports still refer to it.
 	 * @param db Database to receive record
 	 */
-	void insert(SQLiteDatabase db) {
-		ContentValues insert = new ContentValues();
-		insert.put(COL_ID, getId().toString());
-		insert.put(COL_AUDIT_ID, getAuditId().toString());
-		insert.put(COL_CREATED_AT, BaseDatabase.parseDateTime(getCreatedAt()));
-		insert.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
-		insert.put(COL_PRODUCT_ID, getProductId());
-		insert.put(COL_RETAIL_PRICE, getRetailPrice());
-		insert.put(COL_SALE_PRICE, getSalePrice());
-		insert.put(COL_SCAN_DATA, getScanData());
-		insert.put(COL_SCAN_TYPE_ID, getScanTypeId());
-		insert.put(COL_PRODUCT_NAME, getProductName());
-		insert.put(COL_BRAND_NAME, getBrandName());
-		db.insert(TABLE_NAME, null, insert);
-	}
-
-	/**
-	 * Updates our record in the passed database.
-	 * @param db Database to update
-	 */
-	void update(SQLiteDatabase db) {
+	void upsert(SQLiteDatabase db) {
+		ContentValues key = new ContentValues();
+		key.put(COL_AUDIT_ID, getAuditId().toString());
+		key.put(COL_PRODUCT_ID, getProductId());
+		ContentValues insertOnly = new ContentValues();
+		insertOnly.put(COL_ID, getId().toString());
 		ContentValues update = new ContentValues();
-		update.put(COL_AUDIT_ID, getAuditId().toString());
-		update.put(COL_CREATED_AT, BaseDatabase.parseDateTime(getCreatedAt()));
-		update.put(COL_UPDATED_AT, BaseDatabase.parseDateTime(getUpdatedAt()));
-		update.put(COL_PRODUCT_ID, getProductId());
+		update.put(COL_CREATED_AT, BaseDatabase.toEpoch(getCreatedAt()));
+		update.put(COL_UPDATED_AT, BaseDatabase.toEpoch(getUpdatedAt()));
 		update.put(COL_RETAIL_PRICE, getRetailPrice());
 		update.put(COL_SALE_PRICE, getSalePrice());
 		update.put(COL_SCAN_DATA, getScanData());
 		update.put(COL_SCAN_TYPE_ID, getScanTypeId());
 		update.put(COL_PRODUCT_NAME, getProductName());
 		update.put(COL_BRAND_NAME, getBrandName());
-		db.update(TABLE_NAME, update, COL_ID + "=?", new String[] { getId().toString() });
+		BaseDatabase.upsert(db, TABLE_NAME, key, insertOnly, update);
 	}
 
 	public UUID getId() {
@@ -323,14 +332,17 @@ public class ScanRecord {
 		brandName = value;
 	}
 
-	private static final String TABLE_NAME = "scans";
-	private static final String COL_ID = "audit_scan_uuid";
-	private static final String COL_AUDIT_ID = "audit_uuid";
-	private static final String COL_CREATED_AT = "created_at";
-	private static final String COL_UPDATED_AT = "updated_at";
-	private static final String COL_PRODUCT_ID = "chain_x_product_id";
-	private static final String COL_RETAIL_PRICE = "retail_price";
-	private static final String COL_SALE_PRICE = "sale_price";
+	private static final String INDEX_AUDIT_PRODUCT = "scans_audit_product_idx";
+	static final String TABLE_NAME = "scans";
+	static final String COL_ID = "audit_scan_uuid";
+	static final String COL_AUDIT_ID = "audit_uuid";
+	private static final String COL_CREATED_AT = "created_ms";
+	private static final String COL_UPDATED_AT = "updated_ms";
+	private static final String COL_LEGACY_CREATED_AT = "created_at";
+	private static final String COL_LEGACY_UPDATED_AT = "updated_at";
+	static final String COL_PRODUCT_ID = "chain_x_product_id";
+	static final String COL_RETAIL_PRICE = "retail_price";
+	static final String COL_SALE_PRICE = "sale_price";
 	private static final String COL_SCAN_DATA = "scan_data";
 	private static final String COL_SCAN_TYPE_ID = "scan_type_id";
 	private static final String COL_PRODUCT_NAME = "product_name";
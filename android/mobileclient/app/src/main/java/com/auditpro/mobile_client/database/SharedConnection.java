@@ -0,0 +1,116 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+
+/**
+ * Maintains one reference counted connection per database file for the whole process.
+ * <p>
+ * Each {@link BaseDatabase} instance leases the shared connection when it is constructed and
+ * returns the lease when it is closed.  The connection itself stays open while idle so that the
+ * schema check and page cache are paid for once, and is only closed when the application asks us
+ * to release idle connections (see {@link com.auditpro.mobile_client.MobileClientApplication}).
+ * @author Eric Ruck
+ */
+final class SharedConnection {
+
+	/**
+	 * Initializes a new connection for a database file.
+	 * @param helper Opens and upgrades the database
+	 */
+	private SharedConnection(BaseDatabase.BaseHelper helper) {
+		this.helper = helper;
+		this.con = helper.getWritableDatabase();
+		this.leases = 0;
+	}
+
+	/**
+	 * Leases the shared connection to the named database, opening it if necessary.
+	 * @param context Application context
+	 * @param schema Database whose callbacks create or upgrade the tables on first open
+	 * @param name Database base name
+	 * @param version Database version number
+	 * @return Leased connection, must be released
+	 */
+	static synchronized SharedConnection acquire(Context context, BaseDatabase schema,
+			String name, int version) {
+		// Key by file so a context with its own database directory gets its own connection
+		String path = context.getDatabasePath(name + ".db").getPath();
+		SharedConnection shared = connections.get(path);
+		if ((shared == null) || !shared.con.isOpen()) {
+			// First use of this database in the process
+			BaseDatabase.BaseHelper helper =
+					new BaseDatabase.BaseHelper(context.getApplicationContext(), schema, name, version);
+			shared = new SharedConnection(helper);
+			helper.detachSchema();
+			connections.put(path, shared);
+		}
+
+		// Count the new lease
+		++shared.leases;
+		return shared;
+	}
+
+	/**
+	 * Returns a lease on a shared connection.  The connection remains open for reuse.
+	 * @param shared Connection previously returned from acquire
+	 */
+	static synchronized void release(SharedConnection shared) {
+		if (shared.leases <= 0) {
+			// Unbalanced release, should not happen
+			Log.w(LOG_TAG, "Released a shared connection with no outstanding leases");
+			return;
+		}
+		--shared.leases;
+	}
+
+	/**
+	 * Closes every connection that has no outstanding leases.  Connections in use are left
+	 * open and will be closed by a later call once they are released.
+	 */
+	static synchronized void closeIdle() {
+		Iterator<Map.Entry<String, SharedConnection>> it = connections.entrySet().iterator();
+		while (it.hasNext()) {
+			SharedConnection shared = it.next().getValue();
+			if (shared.leases == 0) {
+				// Nobody is using this connection, tidy up and close it
+				BaseDatabase.maintain(shared.con);
+				shared.helper.close();
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Gets the shared database connection.
+	 * @return Open database connection
+	 */
+	SQLiteDatabase getCon() {
+		return con;
+	}
+
+	/** Maps database file paths to their shared connections. */
+	private static final Map<String, SharedConnection> connections = new HashMap<>();
+
+	/** Owns the connection and handles create and upgrade. */
+	private final BaseDatabase.BaseHelper helper;
+
+	/** Provides the open connection to the database. */
+	private final SQLiteDatabase con;
+
+	/** Number of database instances currently using this connection. */
+	private int leases;
+
+	/** Identifies log message source. */
+	private static final String LOG_TAG = "SharedConnection";
+}
@@ -5,10 +5,10 @@
 package com.auditpro.mobile_client.database;
 
 import android.annotation.SuppressLint;
-import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.text.TextUtils;
 
 import com.auditpro.mobile_client.MobileClientException;
 import com.auditpro.mobile_client.entities.AuditHistory;
@@ -66,10 +66,23 @@ public class StoreRecord {
 				COL_STORE_ZIP + " TEXT, " +
 				COL_STORE_LAT + " DOUBLE, " +
 				COL_STORE_LONG + " DOUBLE, " +
-				COL_HISTORY + " TEXT" +
+				COL_HISTORY + " TEXT, " +
+				COL_ROW_HASH + " INTEGER" +
 				")";
 		// Execute it
 		db.execSQL(st);
+		createSearchTable(db);
+	}
+
+	/**
+	 * Creates the full text search table over our searchable columns.  The search table holds
+	 * only the index, its content is read from our table by store id.  The unicode61 tokenizer
+	 * folds case and accents beyond ASCII, in both the index and the query.
+	 * @param db Database in which to create the search table
+	 */
+	private static void createSearchTable(SQLiteDatabase db) {
+		db.execSQL("CREATE VIRTUAL TABLE " + SEARCH_TABLE_NAME + " USING fts4(content=\"" +
+				TABLE_NAME + "\", " + TextUtils.join(", ", SEARCH_COLUMNS) + ", tokenize=unicode61)");
 	}
 
 	/**
@@ -83,6 +96,17 @@ public class StoreRecord {
 			// Add history field
 			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD " + COL_HISTORY +  " TEXT");
 		}
+		if (lastVersion < StoresDatabase.DB_VERSION_ROW_HASHES) {
+			// Add content hash for merging refreshes
+			db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD " + COL_ROW_HASH + " INTEGER");
+		}
+		if (lastVersion < StoresDatabase.DB_VERSION_STORE_SEARCH_UNICODE) {
+			// Add full text search over the stores already cached, or replace the search that
+			// folded ASCII only
+			db.execSQL("DROP TABLE IF EXISTS " + SEARCH_TABLE_NAME);
+			createSearchTable(db);
+			rebuildSearch(db);
+		}
 	}
 
 	/**
@@ -205,6 +229,52 @@ public class StoreRecord {
 		return getStores(db, 0, -1);
 	}
 
+	/**
+	 * Searches the stores for words that start with each of the passed words.
+	 * @param db Database contains stores
+	 * @param words Lower case words to find, letters and digits only
+	 * @param chainId Limit results to this chain, or zero for all chains
+	 * @return Ids of the matching stores, in no particular order
+	 * @throws MobileClientException Readable database exception
+	 */
+	static List<Integer> searchStores(SQLiteDatabase db, String[] words, int chainId)
+			throws MobileClientException {
+		// Build the prefix query over all the fields
+		StringBuilder match = new StringBuilder();
+		for (String word : words) {
+			match.append(word).append("* ");
+		}
+		String query = "SELECT s." + COL_STORE_ID + " FROM " + SEARCH_TABLE_NAME +
+				" JOIN " + TABLE_NAME + " s ON s." + COL_STORE_ID + "=" + SEARCH_TABLE_NAME + ".docid" +
+				" WHERE " + SEARCH_TABLE_NAME + " MATCH ?";
+		List<String> args = new ArrayList<>();
+		args.add(match.toString().trim());
+		if (chainId > 0) {
+			query += " AND s." + COL_CHAIN_ID + "=?";
+			args.add(Integer.toString(chainId));
+		}
+
+		// Execute the query
+		try (Cursor cursor = db.rawQuery(query, args.toArray(new String[0]))) {
+			List<Integer> res = new ArrayList<>(cursor.getCount());
+			while (cursor.moveToNext()) {
+				res.add(cursor.getInt(0));
+			}
+			return res;
+		} catch (SQLiteException exc) {
+			throw new MobileClientException("Failed to search stores in the database", exc);
+		}
+	}
+
+	/**
+	 * Rebuilds the full text search index from our table.  Should be called inside the
+	 * transaction that changed the stores.
+	 * @param db Database to update
+	 */
+	static void rebuildSearch(SQLiteDatabase db) {
+		db.execSQL("INSERT INTO " + SEARCH_TABLE_NAME + "(" + SEARCH_TABLE_NAME + ") VALUES('rebuild')");
+	}
+
 	/**
 	 * Gets the unique chains for which we have stores in our database.
 	 * @param db Database contains stores (and their chains)
@@ -231,14 +301,27 @@ public class StoreRecord {
 	}
 
 	/**
-	 * Replaces all of the store records with the passed data.
-	 * @param db Database to replace
-	 * @param stores Stores to save to database
+	 * Merges the passed stores into the table, writing only new and changed stores and
+	 * deleting stores that are no longer present.  The search index is rebuilt if any store
+	 * changed.  Should be called inside a transaction.
+	 * @param db Database to update
+	 * @param stores Complete set of stores from the web service, read once in order
+	 * @return Counts of the rows touched
+	 */
+	static MergeCounts mergeWith(SQLiteDatabase db, Iterable<Store> stores) {
+		MergeCounts res = BaseDatabase.mergeRows(db, TABLE_NAME, WRITE_COLUMNS, stores, ROW_VALUES);
+		if (res.getChanged() > 0) {
+			rebuildSearch(db);
+		}
+		return res;
+	}
+
+	/**
+	 * Converts a store to its row values in WRITE_COLUMNS order, leaving the hash empty.
 	 */
-	static void replaceWith(SQLiteDatabase db, List<Store> stores) {
-		// Wipe all the records
-		db.delete(TABLE_NAME, null, null);
-		for(Store store : stores) {
+	private static final BaseDatabase.RowValues<Store> ROW_VALUES = new BaseDatabase.RowValues<Store>() {
+		@Override
+		public Object[] toValues(Store store) {
 			String history;
 			try {
 				// Convert the history for the database
@@ -246,26 +329,25 @@ public class StoreRecord {
 			} catch (MobileClientException e) {
 				history = "";
 			}
-
-			// Insert the current record
-			ContentValues record = new ContentValues();
-			record.put(COL_STORE_ID, store.getStoreId());
-			record.put(COL_CLIENT_ID, store.getClientId());
-			record.put(COL_CHAIN_ID, store.getChainId());
-			record.put(COL_CHAIN_NAME, store.getChainName());
-			record.put(COL_CHAIN_CODE, store.getChainCode());
-			record.put(COL_STORE_NAME, store.getStoreName());
-			record.put(COL_STORE_IDENTIFIER, store.getStoreIdentifier());
-			record.put(COL_STORE_ADDR, store.getStoreAddress());
-			record.put(COL_STORE_ADDR2, store.getStoreAddress2());
-			record.put(COL_STORE_CITY, store.getStoreCity());
-			record.put(COL_STORE_ZIP, store.getStoreZip());
-			record.put(COL_STORE_LAT, store.getStoreLat());
-			record.put(COL_STORE_LONG, store.getStoreLon());
-			record.put(COL_HISTORY, history);
-			db.insert(TABLE_NAME, null, record);
+			return new Object[] {
+					store.getStoreId(),
+					store.getClientId(),
+					store.getChainId(),
+					store.getChainName(),
+					store.getChainCode(),
+					store.getStoreName(),
+					store.getStoreIdentifier(),
+					store.getStoreAddress(),
+					store.getStoreAddress2(),
+					store.getStoreCity(),
+					store.getStoreZip(),
+					store.getStoreLat(),
+					store.getStoreLon(),
+					history,
+					null
+			};
 		}
-	}
+	};
 
 	public int getStoreId() {
 		return storeId;
@@ -409,4 +491,20 @@ public class StoreRecord {
 	private static final String COL_STORE_LAT = "store_lat";
 	private static final String COL_STORE_LONG = "store_lon";
 	private static final String COL_HISTORY = "history";
+	private static final String COL_ROW_HASH = "row_hash";
+	private static final String SEARCH_TABLE_NAME = "stores_search";
+
+	/** Columns indexed for full text search. */
+	private static final String[] SEARCH_COLUMNS = {
+			COL_STORE_NAME, COL_STORE_IDENTIFIER, COL_STORE_ADDR, COL_STORE_ADDR2,
+			COL_STORE_CITY, COL_STORE_ZIP
+	};
+
+	/** Columns written on refresh, key first and content hash last. */
+	private static final String[] WRITE_COLUMNS = {
+			COL_STORE_ID, COL_CLIENT_ID, COL_CHAIN_ID, COL_CHAIN_NAME, COL_CHAIN_CODE,
+			COL_STORE_NAME, COL_STORE_IDENTIFIER, COL_STORE_ADDR, COL_STORE_ADDR2,
+			COL_STORE_CITY, COL_STORE_ZIP, COL_STORE_LAT, COL_STORE_LONG, COL_HISTORY,
+			COL_ROW_HASH
+	};
 }
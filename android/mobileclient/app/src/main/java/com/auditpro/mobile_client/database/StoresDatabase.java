@@ -4,9 +4,12 @@
  */
 package com.auditpro.mobile_client.database;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.auditpro.mobile_client.MobileClientException;
 import com.auditpro.mobile_client.entities.Chain;
@@ -15,6 +18,7 @@ import com.auditpro.mobile_client.entities.Store;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -38,6 +42,7 @@ public class StoresDatabase extends BaseDatabase {
 	protected void onCreateDb(SQLiteDatabase db) {
 		StoreRecord.createTable(db);
 		ProductRecord.createTable(db);
+		ProductCodeRecord.createTable(db);
 	}
 
 	/**
@@ -48,6 +53,7 @@ public class StoresDatabase extends BaseDatabase {
 	protected void onUpdateDb(SQLiteDatabase db, int lastVersion) {
 		StoreRecord.updateTable(db, lastVersion);
 		ProductRecord.updateTable(db, lastVersion);
+		ProductCodeRecord.updateTable(db, lastVersion);
 	}
 
 	/**
@@ -60,27 +66,84 @@ public class StoresDatabase extends BaseDatabase {
 	}
 
 	/**
-	 * Replaces the local data with results from the web service.
-	 * @param stores New stores from the web service
-	 * @param products New products from the web service
+	 * Starts a refresh from the web service.  The stores and products are then merged with
+	 * {@link #mergeStores(Iterable)} and {@link #mergeProducts(Iterable)} as they are received,
+	 * and applied atomically by {@link #endRefresh(boolean)}.  Readers on other threads continue
+	 * to see the previous data until the refresh is applied.
+	 * @throws MobileClientException Readable database exception
 	 */
-	public void applyRefresh(List<Store> stores, List<Product> products) throws MobileClientException {
-		SQLiteDatabase db = getCon();
+	public void beginRefresh() throws MobileClientException {
 		try {
-			// Replace stores
-			db.beginTransaction();
-			StoreRecord.replaceWith(db, stores);
-			ProductRecord.replaceWith(db, products);
-			db.setTransactionSuccessful();
+			getCon().beginTransaction();
 		} catch (SQLiteException sqlExc) {
 			// Transform the exception
+			throw new MobileClientException("Failed to start refresh of local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Merges the stores from the web service into the local data as they are read, so only new,
+	 * changed and removed stores are written.  Must be called between {@link #beginRefresh()}
+	 * and {@link #endRefresh(boolean)}.
+	 * @param stores Complete set of stores from the web service, read once in order
+	 * @return Counts of the store rows touched
+	 * @throws MobileClientException Readable database exception
+	 */
+	@SuppressLint("DefaultLocale")
+	public MergeCounts mergeStores(Iterable<Store> stores) throws MobileClientException {
+		try {
+			long started = SystemClock.elapsedRealtime();
+			MergeCounts res = StoreRecord.mergeWith(getCon(), stores);
+			Log.i(LOG_TAG, String.format("Merged stores (%s) in %d ms",
+					res, SystemClock.elapsedRealtime() - started));
+			return res;
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to merge stores in local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Merges the products from the web service into the local data as they are read, so only
+	 * new, changed and removed products are written.  Must be called between
+	 * {@link #beginRefresh()} and {@link #endRefresh(boolean)}.
+	 * @param products Complete set of products from the web service, read once in order
+	 * @return Counts of the product rows touched
+	 * @throws MobileClientException Readable database exception
+	 */
+	@SuppressLint("DefaultLocale")
+	public MergeCounts mergeProducts(Iterable<Product> products) throws MobileClientException {
+		try {
+			long started = SystemClock.elapsedRealtime();
+			MergeCounts res = ProductRecord.mergeWith(getCon(), products);
+			Log.i(LOG_TAG, String.format("Merged products (%s) in %d ms",
+					res, SystemClock.elapsedRealtime() - started));
+			return res;
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to merge products in local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Completes a refresh started with {@link #beginRefresh()}.  Call from a finally block so
+	 * an incomplete refresh is always rolled back.
+	 * @param successful Apply the merged data, otherwise restore the previous data
+	 * @throws MobileClientException Readable database exception
+	 */
+	public void endRefresh(boolean successful) throws MobileClientException {
+		SQLiteDatabase db = getCon();
+		try {
+			if (successful) {
+				db.setTransactionSuccessful();
+			}
 			db.endTransaction();
-			throw new MobileClientException(
-					"Failed to replace stores in local cache.",
-					sqlExc);
-		} finally {
-			// Complete transaction
-			db.endTransaction();
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to apply refresh to local cache.", sqlExc);
+		}
+		if (successful) {
+			maintain();
 		}
 	}
 
@@ -93,6 +156,18 @@ public class StoresDatabase extends BaseDatabase {
 		return StoreRecord.getStores(getCon());
 	}
 
+	/**
+	 * Searches the stores by name, identifier, address, city and ZIP for words starting with
+	 * each of the passed words.  Case and accents are ignored.
+	 * @param words Lower case words to find, letters and digits only
+	 * @param chainId Limit results to this chain, or zero for all chains
+	 * @return Ids of the matching stores, in no particular order
+	 * @throws MobileClientException Readable database exception
+	 */
+	public List<Integer> searchStores(String[] words, int chainId) throws MobileClientException {
+		return StoreRecord.searchStores(getCon(), words, chainId);
+	}
+
 	/**
 	 * Gets the identified store.
 	 * @param storeId Identifies the stores to get
@@ -130,6 +205,71 @@ public class StoresDatabase extends BaseDatabase {
 		return ProductRecord.getProducts(getCon(), store);
 	}
 
+	/**
+	 * Gets the next page of product summaries for a store, in product name order.
+	 * @param store Store whose products we want
+	 * @param after Last summary of the previous page, or null for the first page
+	 * @param limit Maximum number of summaries to return
+	 * @return Next page of summaries, empty after the last page
+	 * @throws MobileClientException Readable database exception
+	 */
+	public List<Product> getProductSummaries(Store store, Product after, int limit)
+			throws MobileClientException {
+		try {
+			return ProductRecord.getProductSummaries(getCon(), store, after, limit);
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to read products from local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Gets the full details of a product.
+	 * @param productId Identifies the product
+	 * @return The product or null if not found
+	 * @throws MobileClientException Readable database exception
+	 */
+	public Product getProduct(int productId) throws MobileClientException {
+		try {
+			return ProductRecord.getProduct(getCon(), productId);
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to read product from local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Gets the normalized codes of a store's products, for lookup with ProductCode.find.
+	 * @param store Store whose product codes we want
+	 * @return Product ids by code
+	 * @throws MobileClientException Readable database exception
+	 */
+	public Map<String, Integer> getProductCodes(Store store) throws MobileClientException {
+		try {
+			return ProductCodeRecord.getCodes(getCon(), store);
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to read product codes from local cache.", sqlExc);
+		}
+	}
+
+	/**
+	 * Finds the product of a store identified by a scanned barcode or shelf tag, matching the
+	 * UPC in any of its printed forms, the reorder codes and the SKUs.
+	 * @param store Store whose products to search
+	 * @param barcode Scanned code
+	 * @return Product id or null if not found
+	 * @throws MobileClientException Readable database exception
+	 */
+	public Integer findProductId(Store store, String barcode) throws MobileClientException {
+		try {
+			return ProductCodeRecord.findProductId(getCon(), store, barcode);
+		} catch (SQLiteException sqlExc) {
+			// Transform the exception
+			throw new MobileClientException("Failed to find product in local cache.", sqlExc);
+		}
+	}
+
 	/**
 	 * Gets the chains.
 	 * @return The chains
@@ -151,5 +291,16 @@ public class StoresDatabase extends BaseDatabase {
 	public static final int DB_VERSION_INIT = 1; // Initial version
 	public static final int DB_VERSION_11 = 2; // Build 11, Client SKU and In Store Min/Max for products
 	public static final int DB_VERSION_15 = 3; // Build 15 Added store history
-	private static final int DB_VERSION_CURRENT = DB_VERSION_15;
+	static final int DB_VERSION_PRODUCT_INDEX = 4; // Product index on client and chain
+	static final int DB_VERSION_ROW_HASHES = 5; // Row hashes for merged refresh
+	static final int DB_VERSION_EPOCH_DATES = 6; // Epoch millisecond timestamps
+	static final int DB_VERSION_PRODUCT_NAME_INDEX = 7; // Product index ordered by name
+	@SuppressWarnings("unused")
+	static final int DB_VERSION_STORE_SEARCH = 8; // Full text search of stores
+	static final int DB_VERSION_PRODUCT_CODES = 9; // Normalized product codes
+	static final int DB_VERSION_STORE_SEARCH_UNICODE = 10; // Store search folds case and accents
+	private static final int DB_VERSION_CURRENT = DB_VERSION_STORE_SEARCH_UNICODE;
+
+	/** Identifies log message source. */
+	private static final String LOG_TAG = "StoresDatabase";
 }
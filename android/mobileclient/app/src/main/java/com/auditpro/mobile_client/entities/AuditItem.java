@@ -0,0 +1,66 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import java.util.Set;
+
+
+/**
+ * Summarizes what has been recorded for one product in an audit: its reported status, the
+ * prices from its scan if any, and its selected SKU conditions.
+ * @author Eric Ruck
+ */
+public class AuditItem {
+
+	/**
+	 * Initializes a new instance.
+	 * @param productId Identifies the product
+	 * @param reorderStatusId Reported reorder status
+	 * @param hasScan Flags that the product was scanned
+	 * @param retailPrice Scanned retail price or null
+	 * @param salePrice Scanned sale price or null
+	 * @param conditions Selected SKU conditions or null if none
+	 */
+	public AuditItem(int productId, int reorderStatusId, boolean hasScan, Double retailPrice,
+			Double salePrice, Set<Integer> conditions) {
+		this.productId = productId;
+		this.reorderStatusId = reorderStatusId;
+		this.hasScan = hasScan;
+		this.retailPrice = retailPrice;
+		this.salePrice = salePrice;
+		this.conditions = conditions;
+	}
+
+	public int getProductId() {
+		return productId;
+	}
+
+	public int getReorderStatusId() {
+		return reorderStatusId;
+	}
+
+	public boolean hasScan() {
+		return hasScan;
+	}
+
+	public Double getRetailPrice() {
+		return retailPrice;
+	}
+
+	public Double getSalePrice() {
+		return salePrice;
+	}
+
+	public Set<Integer> getConditions() {
+		return conditions;
+	}
+
+	private final int productId;
+	private final int reorderStatusId;
+	private final boolean hasScan;
+	private final Double retailPrice;
+	private final Double salePrice;
+	private final Set<Integer> conditions;
+}
@@ -0,0 +1,64 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+
+/**
+ * Describes a completed audit waiting in the upload outbox.
+ * @author Eric Ruck
+ */
+public class OutboxEntry {
+
+	/**
+	 * Initializes a new instance with specific field values.
+	 * @param audit Completed audit to upload
+	 * @param idempotencyKey Identifies this upload to the server across retries
+	 * @param attempts Number of failed upload attempts so far
+	 * @param partsAcked Number of parts the server has acknowledged for an upload in parts
+	 */
+	public OutboxEntry(Audit audit, String idempotencyKey, int attempts, int partsAcked) {
+		this.audit = audit;
+		this.idempotencyKey = idempotencyKey;
+		this.attempts = attempts;
+		this.partsAcked = partsAcked;
+	}
+
+	/**
+	 * Gets the completed audit to upload.
+	 * @return Audit
+	 */
+	public Audit getAudit() {
+		return audit;
+	}
+
+	/**
+	 * Gets the key that lets the server recognize a repeated upload of this audit.
+	 * @return Idempotency key
+	 */
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	/**
+	 * Gets the number of failed upload attempts so far.
+	 * @return Failed attempts
+	 */
+	public int getAttempts() {
+		return attempts;
+	}
+
+	/**
+	 * Gets the number of parts the server has acknowledged, to resume an upload in parts.
+	 * @return Parts acknowledged
+	 */
+	public int getPartsAcked() {
+		return partsAcked;
+	}
+
+	private final Audit audit;
+	private final String idempotencyKey;
+	private final int attempts;
+	private final int partsAcked;
+}
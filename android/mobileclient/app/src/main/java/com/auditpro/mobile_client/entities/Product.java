@@ -49,6 +49,7 @@ public class Product implements Parcelable {
 		setChainSKU(source.getChainSKU());
 		setInStockPriceMin(source.getInStockPriceMin());
 		setInStockPriceMax(source.getInStockPriceMax());
+		summary = source.isSummary();
 	}
 
 
@@ -84,6 +85,7 @@ public class Product implements Parcelable {
 		parcel.writeString(chainSku);
 		parcel.writeValue(inStockPriceMin);
 		parcel.writeValue(inStockPriceMax);
+		parcel.writeInt(summary ? 1 : 0);
 	}
 
 	public static final Parcelable.Creator<Product> CREATOR = new Parcelable.Creator<Product>() {
@@ -116,6 +118,7 @@ public class Product implements Parcelable {
 			product.chainSku = parcel.readString();
 			product.inStockPriceMin = (Double) parcel.readValue(null);
 			product.inStockPriceMax = (Double) parcel.readValue(null);
+			product.summary = parcel.readInt() != 0;
 			return product;
 		}
 
@@ -148,6 +151,22 @@ public class Product implements Parcelable {
 		;
 	}
 
+	/**
+	 * Gets our searchable fields in lower case, one per line, so that a token without line
+	 * breaks found in the text is found in one of the fields just as with hasToken.
+	 * @return Searchable text
+	 */
+	String getSearchText() {
+		StringBuilder text = new StringBuilder();
+		String[] fields = { upc, currentReorderCode, productName, brandSku, chainSku };
+		for (String field : fields) {
+			if (field != null) {
+				text.append(field.toLowerCase()).append('\n');
+			}
+		}
+		return text.toString();
+	}
+
 	public int getId() {
 		return id;
 	}
@@ -340,6 +359,13 @@ public class Product implements Parcelable {
 
 	protected void setInStockPriceMax(Double value) { inStockPriceMax = value; }
 
+	/**
+	 * Indicates that this product only carries the fields needed to list, search and filter
+	 * products, and the full details must be loaded before it is displayed or updated.
+	 * @return Summary flag
+	 */
+	public boolean isSummary() { return summary; }
+
 
 	/**
 	 * Renders object as just its product name.
@@ -390,4 +416,5 @@ public class Product implements Parcelable {
 	private String chainSku;
 	private Double inStockPriceMin;
 	private Double inStockPriceMax;
+	private boolean summary;
 }
@@ -0,0 +1,215 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Normalizes product codes so a scan matches a product however the code was printed or
+ * stored.  Keys are upper case letters and digits without leading zeros, so UPC-A, EAN-13 and
+ * GTIN-14 forms of the same number share a key.  Barcodes also get keys without a valid check
+ * digit, and with an 8 digit UPC-E expanded to UPC-A.
+ * @author Eric Ruck
+ */
+public final class ProductCode {
+
+	/**
+	 * Prevents instantiation of this utility class.
+	 */
+	private ProductCode() {
+	}
+
+	/**
+	 * Gets the lookup keys for a code, the exact form first.
+	 * @param code Code to normalize, may be null
+	 * @param isBarcode Add the barcode check digit and UPC-E variants
+	 * @return Distinct keys, empty if the code has no letters or digits
+	 */
+	public static List<String> getKeys(String code, boolean isBarcode) {
+		List<String> keys = new ArrayList<>();
+		String clean = clean(code);
+		if (clean.length() == 0) {
+			// Nothing to match
+			return keys;
+		}
+		addKey(keys, clean);
+		if (isBarcode && isDigits(clean)) {
+			// Add the barcode variants
+			addWithoutCheck(keys, clean);
+			String expanded = expandUpcE(clean);
+			if (expanded != null) {
+				addKey(keys, expanded);
+				addWithoutCheck(keys, expanded);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Finds a scanned barcode in a map of keys, trying the exact form first.
+	 * @param codes Product ids or ordinals by key
+	 * @param barcode Scanned barcode
+	 * @return Mapped value for the best key found, or null if none
+	 */
+	public static Integer find(Map<String, Integer> codes, String barcode) {
+		for (String key : getKeys(barcode, true)) {
+			Integer found = codes.get(key);
+			if (found != null) {
+				return found;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Ranks a key of one of a product's codes, so that a code ranks the same kind and variant
+	 * alike across products.  Lower ranks are better matches.
+	 * @param codeIndex Position of the code among the product's codes, the UPC first
+	 * @param variant Position of the key in {@link #getKeys(String, boolean)}
+	 * @return Rank of the key
+	 */
+	public static int getRank(int codeIndex, int variant) {
+		return codeIndex * MAX_VARIANTS + variant;
+	}
+
+	/**
+	 * Gets the digits of a numeric code as printed, ignoring spaces and dashes.
+	 * @param code Code to read, may be null
+	 * @return Digits, or null if the code has no digits or has other characters
+	 */
+	public static String getDigits(String code) {
+		StringBuilder res = new StringBuilder();
+		if (code != null) {
+			for (int index = 0; index < code.length(); ++index) {
+				char ch = code.charAt(index);
+				if ((ch >= '0') && (ch <= '9')) {
+					res.append(ch);
+				} else if ((ch != ' ') && (ch != '-')) {
+					// Not a numeric code
+					return null;
+				}
+			}
+		}
+		return (res.length() == 0) ? null : res.toString();
+	}
+
+	/**
+	 * Keeps only the letters and digits of a code, in upper case.
+	 * @param code Raw code, may be null
+	 * @return Cleaned code, empty if none
+	 */
+	private static String clean(String code) {
+		StringBuilder res = new StringBuilder();
+		if (code != null) {
+			for (int index = 0; index < code.length(); ++index) {
+				char ch = Character.toUpperCase(code.charAt(index));
+				if (((ch >= '0') && (ch <= '9')) || ((ch >= 'A') && (ch <= 'Z'))) {
+					res.append(ch);
+				}
+			}
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Adds the key for a cleaned code, without leading zeros, if it is new.
+	 * @param keys Keys found so far
+	 * @param clean Cleaned code
+	 */
+	private static void addKey(List<String> keys, String clean) {
+		int start = 0;
+		while ((start < clean.length() - 1) && (clean.charAt(start) == '0')) {
+			++start;
+		}
+		String key = clean.substring(start);
+		if (!keys.contains(key)) {
+			keys.add(key);
+		}
+	}
+
+	/**
+	 * Adds the key for a barcode without its check digit, if the check digit is valid.
+	 * @param keys Keys found so far
+	 * @param digits Barcode digits
+	 */
+	private static void addWithoutCheck(List<String> keys, String digits) {
+		if ((digits.length() >= MIN_CHECKED_LENGTH) && isCheckValid(digits)) {
+			addKey(keys, digits.substring(0, digits.length() - 1));
+		}
+	}
+
+	/**
+	 * Determines if a code is all digits.
+	 * @param code Code to test
+	 * @return Digits flag
+	 */
+	private static boolean isDigits(String code) {
+		for (int index = 0; index < code.length(); ++index) {
+			char ch = code.charAt(index);
+			if ((ch < '0') || (ch > '9')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if the last digit is the GS1 check digit of the others.
+	 * @param digits Barcode digits
+	 * @return Valid check digit flag
+	 */
+	private static boolean isCheckValid(String digits) {
+		int sum = 0;
+		int last = digits.length() - 1;
+		for (int index = last - 1; index >= 0; --index) {
+			int digit = digits.charAt(index) - '0';
+			sum += ((last - index) % 2 == 1) ? digit * 3 : digit;
+		}
+		return (10 - sum % 10) % 10 == digits.charAt(last) - '0';
+	}
+
+	/**
+	 * Expands an 8 digit UPC-E barcode to its UPC-A form.
+	 * @param digits Barcode digits
+	 * @return UPC-A digits, or null if the barcode is not a valid UPC-E
+	 */
+	private static String expandUpcE(String digits) {
+		if ((digits.length() != 8) || ((digits.charAt(0) != '0') && (digits.charAt(0) != '1'))) {
+			// Not UPC-E
+			return null;
+		}
+
+		// Expand by the last digit of the compressed number
+		String body = digits.substring(1, 7);
+		String expanded;
+		switch (body.charAt(5)) {
+			case '0':
+			case '1':
+			case '2':
+				expanded = body.substring(0, 2) + body.charAt(5) + "0000" + body.substring(2, 5);
+				break;
+			case '3':
+				expanded = body.substring(0, 3) + "00000" + body.substring(3, 5);
+				break;
+			case '4':
+				expanded = body.substring(0, 4) + "00000" + body.charAt(4);
+				break;
+			default:
+				expanded = body.substring(0, 5) + "0000" + body.charAt(5);
+				break;
+		}
+		expanded = digits.charAt(0) + expanded + digits.charAt(7);
+		return isCheckValid(expanded) ? expanded : null;
+	}
+
+	/** Most keys getKeys returns for one code. */
+	static final int MAX_VARIANTS = 4;
+
+	/** Shortest barcode (EAN-8 and UPC-E) that carries a check digit. */
+	private static final int MIN_CHECKED_LENGTH = 8;
+}
@@ -0,0 +1,263 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Finds products by the first or last digits of their numeric codes, for labels that are torn
+ * or hard to read.  Codes are kept in two digit tries, one read forward without leading zeros
+ * and one read backward, so a lookup walks the typed digits and then collects the codes below.
+ * Products are identified by their ordinal, the order in which they were added.  Not thread
+ * safe.
+ * @author Eric Ruck
+ */
+public class ProductCodeTrie {
+
+	/**
+	 * Initializes an empty trie.
+	 */
+	public ProductCodeTrie() {
+		starts = new Trie();
+		ends = new Trie();
+		matches = new Matches();
+	}
+
+	/**
+	 * Adds the next product to the trie.  The UPC ranks ahead of the SKUs and reorder code.
+	 * @param product Product to add
+	 * @return Ordinal assigned to the product
+	 */
+	public int add(Product product) {
+		int ordinal = count++;
+		String[] codes = {
+				product.getUPC(), product.getBrandSKU(), product.getChainSKU(),
+				product.getCurrentReorderCode()
+		};
+		for (int rank = 0; rank < codes.length; ++rank) {
+			String digits = ProductCode.getDigits(codes[rank]);
+			if (digits != null) {
+				starts.add(stripZeros(digits), ordinal, rank);
+				ends.add(new StringBuilder(digits).reverse().toString(), ordinal, rank);
+			}
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Adds the next products to the trie.
+	 * @param statuses Products to add
+	 */
+	public void addAll(List<ProductStatus> statuses) {
+		for (ProductStatus status : statuses) {
+			add(status.getProduct());
+		}
+	}
+
+	/**
+	 * Finds the products with a code that starts or ends with the passed digits.  Candidates
+	 * closest to a complete code come first, then by the rank of the code, then in the order
+	 * they were added.
+	 * @param digits Digits typed by the user
+	 * @return Matching ordinals in rank order
+	 */
+	public int[] find(String digits) {
+		// Collect the best score for each product
+		matches.ensureCapacity(count);
+		String leading = stripZeros(digits);
+		if (leading.length() > 0) {
+			starts.collect(leading, matches);
+		}
+		ends.collect(new StringBuilder(digits).reverse().toString(), matches);
+
+		// Order by score, then ordinal
+		long[] ranked = new long[matches.found];
+		for (int index = 0; index < ranked.length; ++index) {
+			int ordinal = matches.ordinals[index];
+			ranked[index] = ((long) matches.scores[ordinal] << 32) | ordinal;
+		}
+		matches.clear();
+		Arrays.sort(ranked);
+		int[] res = new int[ranked.length];
+		for (int index = 0; index < res.length; ++index) {
+			res[index] = (int) ranked[index];
+		}
+		return res;
+	}
+
+	/**
+	 * Removes the leading zeros from digits.
+	 * @param digits Digits to strip
+	 * @return Digits without leading zeros, possibly empty
+	 */
+	private static String stripZeros(String digits) {
+		int start = 0;
+		while ((start < digits.length()) && (digits.charAt(start) == '0')) {
+			++start;
+		}
+		return digits.substring(start);
+	}
+
+	/**
+	 * Best score found for each product in a lookup, lower is better.  Kept between lookups
+	 * and cleared by the products found, so a lookup costs its hits rather than the catalog.
+	 */
+	private static class Matches {
+
+		/**
+		 * Grows the arrays to hold every product in the trie.
+		 * @param count Number of products in the trie
+		 */
+		void ensureCapacity(int count) {
+			if (count > scores.length) {
+				int size = Math.max(count, scores.length * 2);
+				int oldSize = scores.length;
+				scores = Arrays.copyOf(scores, size);
+				ordinals = Arrays.copyOf(ordinals, size);
+				Arrays.fill(scores, oldSize, size, Integer.MAX_VALUE);
+			}
+		}
+
+		/**
+		 * Forgets the products found, ready for the next lookup.
+		 */
+		void clear() {
+			for (int index = 0; index < found; ++index) {
+				scores[ordinals[index]] = Integer.MAX_VALUE;
+			}
+			found = 0;
+		}
+
+		/**
+		 * Records a product's score if it is the best so far.
+		 * @param ordinal Product ordinal
+		 * @param score Match score
+		 */
+		void add(int ordinal, int score) {
+			if (scores[ordinal] == Integer.MAX_VALUE) {
+				ordinals[found++] = ordinal;
+			}
+			if (score < scores[ordinal]) {
+				scores[ordinal] = score;
+			}
+		}
+
+		private int[] scores = new int[0];
+		private int[] ordinals = new int[0];
+		private int found = 0;
+	}
+
+	/**
+	 * Digit trie with its nodes and entries in parallel arrays.  Node zero is the root, and a
+	 * child index of zero means no child.
+	 */
+	private static class Trie {
+
+		/**
+		 * Adds a code to the trie.
+		 * @param digits Code digits in trie order
+		 * @param ordinal Product ordinal
+		 * @param rank Rank of the code within the product
+		 */
+		void add(String digits, int ordinal, int rank) {
+			// Walk down, adding nodes as needed
+			int node = 0;
+			for (int index = 0; index < digits.length(); ++index) {
+				int slot = node * RADIX + (digits.charAt(index) - '0');
+				if (children[slot] == 0) {
+					children[slot] = newNode();
+				}
+				node = children[slot];
+			}
+
+			// Add the entry at the last node
+			if (entryCount == entryOrdinals.length) {
+				int size = entryCount * 2;
+				entryOrdinals = Arrays.copyOf(entryOrdinals, size);
+				entryScores = Arrays.copyOf(entryScores, size);
+				entryNext = Arrays.copyOf(entryNext, size);
+			}
+			entryOrdinals[entryCount] = ordinal;
+			entryScores[entryCount] = digits.length() * RANKS + rank;
+			entryNext[entryCount] = firstEntry[node];
+			firstEntry[node] = ++entryCount;
+		}
+
+		/**
+		 * Collects the entries for every code that begins with the passed digits.
+		 * @param digits Digits in trie order
+		 * @param matches Receives the best score for each ordinal
+		 */
+		void collect(String digits, Matches matches) {
+			// Walk down to the node for the digits
+			int node = 0;
+			for (int index = 0; index < digits.length(); ++index) {
+				char ch = digits.charAt(index);
+				if ((ch < '0') || (ch > '9')) {
+					// Not a digit, no match
+					return;
+				}
+				node = children[node * RADIX + (ch - '0')];
+				if (node == 0) {
+					// No code has these digits
+					return;
+				}
+			}
+
+			// Visit every node below
+			int matched = digits.length() * RANKS;
+			int[] stack = new int[64];
+			int depth = 0;
+			stack[depth++] = node;
+			while (depth > 0) {
+				node = stack[--depth];
+				for (int entry = firstEntry[node]; entry != 0; entry = entryNext[entry - 1]) {
+					matches.add(entryOrdinals[entry - 1], entryScores[entry - 1] - matched);
+				}
+				for (int digit = RADIX - 1; digit >= 0; --digit) {
+					int child = children[node * RADIX + digit];
+					if (child != 0) {
+						if (depth == stack.length) {
+							stack = Arrays.copyOf(stack, depth * 2);
+						}
+						stack[depth++] = child;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Allocates a new node with no children or entries.
+		 * @return Index of the new node
+		 */
+		private int newNode() {
+			if (nodeCount == firstEntry.length) {
+				int size = nodeCount * 2;
+				firstEntry = Arrays.copyOf(firstEntry, size);
+				children = Arrays.copyOf(children, size * RADIX);
+			}
+			return nodeCount++;
+		}
+
+		private int[] children = new int[INITIAL_NODES * RADIX];
+		private int[] firstEntry = new int[INITIAL_NODES];
+		private int nodeCount = 1;
+		private int[] entryOrdinals = new int[INITIAL_NODES];
+		private int[] entryScores = new int[INITIAL_NODES];
+		private int[] entryNext = new int[INITIAL_NODES];
+		private int entryCount = 0;
+	}
+
+	private static final int RADIX = 10;
+	private static final int RANKS = 4;
+	private static final int INITIAL_NODES = 256;
+
+	private final Trie starts;
+	private final Trie ends;
+	private final Matches matches;
+	private int count = 0;
+}
@@ -0,0 +1,238 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Keeps a bit set of products for each reorder status, product type and brand, so the product
+ * filters are a few word operations and can count the products for every value.  A filter
+ * selects products with any of the chosen values within a facet and all of the facets.
+ * Products are identified by their ordinal, the order in which they were added.  Not thread
+ * safe.
+ * @author Eric Ruck
+ */
+public class ProductFacets {
+
+	/**
+	 * Adds the next product with its current reorder status.
+	 * @param status Product to add
+	 * @return Ordinal assigned to the product
+	 */
+	public int add(ProductStatus status) {
+		int ordinal = statuses.size();
+		statuses.add(status.getReorderStatus());
+		bitsFor(statusBits, status.getReorderStatus()).set(ordinal);
+		bitsFor(typeBits, status.getProductType()).set(ordinal);
+		bitsFor(brandBits, status.getProduct().getDisplayBrandName()).set(ordinal);
+		return ordinal;
+	}
+
+	/**
+	 * Adds the next products.
+	 * @param products Products to add
+	 */
+	public void addAll(List<ProductStatus> products) {
+		for (ProductStatus product : products) {
+			add(product);
+		}
+	}
+
+	/**
+	 * Moves a product to a new reorder status.
+	 * @param ordinal Product ordinal
+	 * @param status New reorder status
+	 */
+	public void setStatus(int ordinal, ReorderStatus status) {
+		ReorderStatus last = statuses.get(ordinal);
+		if (last == status) {
+			// No change
+			return;
+		}
+		bitsFor(statusBits, last).clear(ordinal);
+		bitsFor(statusBits, status).set(ordinal);
+		statuses.set(ordinal, status);
+	}
+
+	/**
+	 * Brings the reorder status of every product up to date, after products were updated in
+	 * bulk.
+	 * @param products Products in ordinal order
+	 */
+	public void syncStatuses(List<ProductStatus> products) {
+		for (int ordinal = 0; (ordinal < products.size()) && (ordinal < statuses.size()); ++ordinal) {
+			setStatus(ordinal, products.get(ordinal).getReorderStatus());
+		}
+	}
+
+	/**
+	 * Gets the number of products.
+	 * @return Count of products
+	 */
+	public int size() {
+		return statuses.size();
+	}
+
+	/**
+	 * Selects the products in the filter.
+	 * @param reorderStatuses Reorder statuses in the filter, or null for all
+	 * @param productTypes Product types in the filter, or null for all
+	 * @param brands Brands in the filter, or null for all
+	 * @return Products in the filter by ordinal
+	 */
+	public BitSet select(ReorderStatus[] reorderStatuses, Collection<String> productTypes,
+						 Collection<String> brands) {
+		BitSet res = new BitSet(size());
+		res.set(0, size());
+		if (reorderStatuses != null) {
+			List<ReorderStatus> values = new ArrayList<>();
+			for (ReorderStatus status : reorderStatuses) {
+				values.add(status);
+			}
+			res.and(union(statusBits, values));
+		}
+		if (productTypes != null) {
+			res.and(union(typeBits, productTypes));
+		}
+		if (brands != null) {
+			res.and(union(brandBits, brands));
+		}
+		return res;
+	}
+
+	/**
+	 * Counts the products for every value of every facet.  Each facet is counted within the
+	 * filters on the other facets, so a count is how many products selecting that value shows.
+	 * @param within Products to count, such as those matching a search, or null for all
+	 * @param reorderStatuses Reorder statuses in the filter, or null for all
+	 * @param productTypes Product types in the filter, or null for all
+	 * @param brands Brands in the filter, or null for all
+	 * @return Counts by facet value
+	 */
+	public Counts count(BitSet within, ReorderStatus[] reorderStatuses,
+						Collection<String> productTypes, Collection<String> brands) {
+		Counts res = new Counts();
+		res.statuses = countValues(statusBits, within, select(null, productTypes, brands));
+		res.types = countValues(typeBits, within, select(reorderStatuses, null, brands));
+		res.brands = countValues(brandBits, within, select(reorderStatuses, productTypes, null));
+		return res;
+	}
+
+	/**
+	 * Gets the bit set for a facet value, adding it if necessary.
+	 * @param facet Bit sets by value
+	 * @param value Facet value
+	 * @param <T> Facet value type
+	 * @return Bit set for the value
+	 */
+	private static <T> BitSet bitsFor(Map<T, BitSet> facet, T value) {
+		BitSet bits = facet.get(value);
+		if (bits == null) {
+			bits = new BitSet();
+			facet.put(value, bits);
+		}
+		return bits;
+	}
+
+	/**
+	 * Gets the products with any of the passed values in a facet.
+	 * @param facet Bit sets by value
+	 * @param values Selected values
+	 * @param <T> Facet value type
+	 * @return Union of the value bit sets
+	 */
+	private static <T> BitSet union(Map<T, BitSet> facet, Collection<T> values) {
+		BitSet res = new BitSet();
+		for (T value : values) {
+			BitSet bits = facet.get(value);
+			if (bits != null) {
+				res.or(bits);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Counts the products for each value in a facet.
+	 * @param facet Bit sets by value
+	 * @param within Products to count, or null for all
+	 * @param others Products within the filters on the other facets
+	 * @param <T> Facet value type
+	 * @return Counts by value
+	 */
+	private static <T> Map<T, Integer> countValues(Map<T, BitSet> facet, BitSet within,
+												   BitSet others) {
+		if (within != null) {
+			others.and(within);
+		}
+		Map<T, Integer> res = new HashMap<>();
+		for (Map.Entry<T, BitSet> entry : facet.entrySet()) {
+			BitSet bits = (BitSet) entry.getValue().clone();
+			bits.and(others);
+			res.put(entry.getKey(), bits.cardinality());
+		}
+		return res;
+	}
+
+	/**
+	 * Product counts for the values of each facet.
+	 */
+	public static class Counts {
+
+		/**
+		 * Gets the number of products with a reorder status.
+		 * @param status Reorder status
+		 * @return Product count
+		 */
+		public int getStatusCount(ReorderStatus status) {
+			return getCount(statuses, status);
+		}
+
+		/**
+		 * Gets the number of products of a product type.
+		 * @param type Product type name
+		 * @return Product count
+		 */
+		public int getTypeCount(String type) {
+			return getCount(types, type);
+		}
+
+		/**
+		 * Gets the number of products of a brand.
+		 * @param brand Brand display name
+		 * @return Product count
+		 */
+		public int getBrandCount(String brand) {
+			return getCount(brands, brand);
+		}
+
+		/**
+		 * Gets a count from a facet, zero if the value is unknown.
+		 * @param counts Counts by value
+		 * @param value Facet value
+		 * @param <T> Facet value type
+		 * @return Product count
+		 */
+		private static <T> int getCount(Map<T, Integer> counts, T value) {
+			Integer res = counts.get(value);
+			return (res == null) ? 0 : res;
+		}
+
+		private Map<ReorderStatus, Integer> statuses;
+		private Map<String, Integer> types;
+		private Map<String, Integer> brands;
+	}
+
+	private final List<ReorderStatus> statuses = new ArrayList<>();
+	private final Map<ReorderStatus, BitSet> statusBits = new HashMap<>();
+	private final Map<String, BitSet> typeBits = new HashMap<>();
+	private final Map<String, BitSet> brandBits = new HashMap<>();
+}
@@ -0,0 +1,274 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Indexes the searchable text of products by trigram so search tokens can be matched without
+ * scanning every product.  Products are identified by their ordinal, the order in which they
+ * were added.  Matching is the same case insensitive substring test as Product.hasToken; the
+ * trigram postings only narrow the candidates, which are then verified against the text.
+ * Tokens shorter than a trigram are matched by scanning the text.  Not thread safe.
+ * @author Eric Ruck
+ */
+public class ProductSearchIndex {
+
+	/**
+	 * Adds the next product to the index.
+	 * @param product Product to add
+	 * @return Ordinal assigned to the product
+	 */
+	public int add(Product product) {
+		// Keep the text for verification
+		int ordinal = texts.size();
+		String text = product.getSearchText();
+		texts.add(text);
+		products.add(product);
+
+		// Post each distinct trigram once
+		for (int index = 0; index + TRIGRAM <= text.length(); ++index) {
+			long key = trigramKey(text, index);
+			if (key == NO_KEY) {
+				// Spans fields
+				continue;
+			}
+			Postings postings = trigrams.get(key);
+			if (postings == null) {
+				postings = new Postings();
+				trigrams.put(key, postings);
+			}
+			postings.add(ordinal);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Adds the next products to the index.
+	 * @param statuses Products to add
+	 */
+	public void addAll(List<ProductStatus> statuses) {
+		for (ProductStatus status : statuses) {
+			add(status.getProduct());
+		}
+	}
+
+	/**
+	 * Gets the number of products in the index.
+	 * @return Count of products
+	 */
+	public int size() {
+		return texts.size();
+	}
+
+	/**
+	 * Finds the products that contain every token.
+	 * @param tokens Search tokens
+	 * @return Matching ordinals in ascending order
+	 */
+	public int[] find(String[] tokens) {
+		return find(tokens, 0);
+	}
+
+	/**
+	 * Finds the products at or after an ordinal that contain every token.
+	 * @param tokens Search tokens
+	 * @param from First ordinal to consider
+	 * @return Matching ordinals in ascending order
+	 */
+	public int[] find(String[] tokens, int from) {
+		// Match longer tokens first, they narrow the candidates the most
+		String[] ordered = Arrays.copyOf(tokens, tokens.length);
+		Arrays.sort(ordered, new Comparator<String>() {
+			@Override
+			public int compare(String o1, String o2) {
+				return Integer.compare(o2.length(), o1.length());
+			}
+		});
+		int[] candidates = null;
+		for (String token : ordered) {
+			if ((token == null) || (token.length() == 0)) {
+				// Matches nothing, as with hasToken
+				return new int[0];
+			}
+			String caseToken = token.toLowerCase();
+			if (caseToken.indexOf('\n') >= 0) {
+				// Could span fields, verify against the product itself
+				candidates = verify(allFrom(candidates, from), token, true);
+			} else if (caseToken.length() < TRIGRAM) {
+				// Too short to index, scan the candidates
+				candidates = verify(allFrom(candidates, from), caseToken, false);
+			} else {
+				// Narrow with the postings then confirm the substring
+				int[] posted = intersect(caseToken, from);
+				if (candidates != null) {
+					posted = intersect(candidates, posted, posted.length);
+				}
+				candidates = verify(posted, caseToken, false);
+			}
+			if (candidates.length == 0) {
+				// Nothing left to narrow
+				break;
+			}
+		}
+		return (candidates == null) ? allFrom(null, from) : candidates;
+	}
+
+	/**
+	 * Intersects the postings of every trigram in a token.
+	 * @param caseToken Lower case token of at least one trigram
+	 * @param from First ordinal to consider
+	 * @return Ordinals that contain every trigram
+	 */
+	private int[] intersect(String caseToken, int from) {
+		// Gather the postings, smallest first
+		List<Postings> lists = new ArrayList<>();
+		for (int index = 0; index + TRIGRAM <= caseToken.length(); ++index) {
+			Postings postings = trigrams.get(trigramKey(caseToken, index));
+			if (postings == null) {
+				// Trigram appears nowhere
+				return new int[0];
+			}
+			lists.add(postings);
+		}
+		Postings[] sorted = lists.toArray(new Postings[0]);
+		Arrays.sort(sorted, new Comparator<Postings>() {
+			@Override
+			public int compare(Postings o1, Postings o2) {
+				return Integer.compare(o1.count, o2.count);
+			}
+		});
+
+		// Start from the smallest list at the first ordinal considered
+		Postings first = sorted[0];
+		int start = Arrays.binarySearch(first.ordinals, 0, first.count, from);
+		if (start < 0) {
+			start = -start - 1;
+		}
+		int[] result = Arrays.copyOfRange(first.ordinals, start, first.count);
+		for (int index = 1; (index < sorted.length) && (result.length > 0); ++index) {
+			result = intersect(result, sorted[index].ordinals, sorted[index].count);
+		}
+		return result;
+	}
+
+	/**
+	 * Intersects two ascending ordinal lists.
+	 * @param left First list
+	 * @param right Second list
+	 * @param rightCount Number of ordinals used in the second list
+	 * @return Ordinals in both lists
+	 */
+	private static int[] intersect(int[] left, int[] right, int rightCount) {
+		int[] result = new int[Math.min(left.length, rightCount)];
+		int count = 0;
+		int leftIndex = 0;
+		int rightIndex = 0;
+		while ((leftIndex < left.length) && (rightIndex < rightCount)) {
+			if (left[leftIndex] < right[rightIndex]) {
+				++leftIndex;
+			} else if (left[leftIndex] > right[rightIndex]) {
+				++rightIndex;
+			} else {
+				result[count++] = left[leftIndex];
+				++leftIndex;
+				++rightIndex;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Gets the candidates, or every ordinal from the first considered if there are none yet.
+	 * @param candidates Current candidates or null
+	 * @param from First ordinal to consider
+	 * @return Ordinals to verify
+	 */
+	private int[] allFrom(int[] candidates, int from) {
+		if (candidates != null) {
+			return candidates;
+		}
+		int[] all = new int[Math.max(0, texts.size() - from)];
+		for (int index = 0; index < all.length; ++index) {
+			all[index] = from + index;
+		}
+		return all;
+	}
+
+	/**
+	 * Keeps only the candidates that contain the token.
+	 * @param candidates Ordinals to verify
+	 * @param token Token to find
+	 * @param isRaw Verify with hasToken instead of the indexed text
+	 * @return Verified ordinals
+	 */
+	private int[] verify(int[] candidates, String token, boolean isRaw) {
+		int[] result = new int[candidates.length];
+		int count = 0;
+		for (int ordinal : candidates) {
+			boolean isFound = isRaw
+					? products.get(ordinal).hasToken(token)
+					: texts.get(ordinal).contains(token);
+			if (isFound) {
+				result[count++] = ordinal;
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+
+	/**
+	 * Packs the trigram at a position into a key.
+	 * @param text Source text
+	 * @param index Position of the trigram
+	 * @return Trigram key, or NO_KEY if the trigram spans fields
+	 */
+	private static long trigramKey(String text, int index) {
+		long key = 0;
+		for (int offset = 0; offset < TRIGRAM; ++offset) {
+			char ch = text.charAt(index + offset);
+			if (ch == '\n') {
+				return NO_KEY;
+			}
+			key = (key << 16) | ch;
+		}
+		return key;
+	}
+
+	/**
+	 * Ascending ordinals of the products that contain a trigram.
+	 */
+	private static class Postings {
+		private int[] ordinals = new int[4];
+		private int count = 0;
+
+		/**
+		 * Appends an ordinal, ignoring a repeat of the last one.
+		 * @param ordinal Product ordinal
+		 */
+		void add(int ordinal) {
+			if ((count > 0) && (ordinals[count - 1] == ordinal)) {
+				// Already posted for this product
+				return;
+			}
+			if (count == ordinals.length) {
+				ordinals = Arrays.copyOf(ordinals, count * 2);
+			}
+			ordinals[count++] = ordinal;
+		}
+	}
+
+	private static final int TRIGRAM = 3;
+	private static final long NO_KEY = -1;
+
+	private final Map<Long, Postings> trigrams = new HashMap<>();
+	private final List<String> texts = new ArrayList<>();
+	private final List<Product> products = new ArrayList<>();
+}
@@ -105,10 +105,11 @@ public class ProductStatus implements Parcelable {
 	}
 
 	/**
-	 * Sets the product associated with this status.
+	 * Sets the product associated with this status, for example to replace a summary with the
+	 * full product details.
 	 * @param value Product to set
 	 */
-	private void setProduct(Product value) {
+	public void setProduct(Product value) {
 		product = value;
 	}
 
@@ -215,6 +216,23 @@ public class ProductStatus implements Parcelable {
 		setDisplayPrice(scan);
 	}
 
+	/**
+	 * Sets the reorder status and, for in or out of stock items with a scan, the display price
+	 * from what has been recorded for the product in the audit.
+	 * @param item Recorded audit item for this product
+	 */
+	public void setReorderStatus(AuditItem item) {
+		reorderStatus = ReorderStatus.fromId(item.getReorderStatusId());
+		if (item.hasScan() &&
+				((reorderStatus == ReorderStatus.IN_STOCK) || (reorderStatus == ReorderStatus.OUT_OF_STOCK))) {
+			// Update the display price from the scan
+			displayPrice = item.getSalePrice();
+			if (displayPrice == null) {
+				displayPrice = item.getRetailPrice();
+			}
+		}
+	}
+
 	/**
 	 * Provides the product name.
 	 * @return The name of the product
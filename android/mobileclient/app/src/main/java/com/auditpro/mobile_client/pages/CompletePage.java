@@ -22,6 +22,7 @@ import android.widget.Toast;
 import com.auditpro.mobile_client.Analytics;
 import com.auditpro.mobile_client.MainActivity;
 import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.UploadJobService;
 import com.auditpro.mobile_client.actions.PrintReceiptAction;
 import com.auditpro.mobile_client.controls.BatteryIcon;
 import com.auditpro.mobile_client.database.AuditDatabase;
@@ -366,6 +367,8 @@ public class CompletePage extends BasePage {
 			Double latitude = (lastLocation == null) ? null : lastLocation.getLatitude();
 			Double longitude = (lastLocation == null) ? null : lastLocation.getLongitude();
 			db.completeAudit(audit, latitude, longitude, completeTime);
+			UploadJobService.schedule(getContext(), ((MainActivity) getActivity()).getSessionToken(),
+					audit.getUserId());
 
 			// Leave the audit user interface
 			IPageParent parent = getParent();
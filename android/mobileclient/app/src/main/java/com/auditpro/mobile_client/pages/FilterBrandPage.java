@@ -18,6 +18,7 @@ import android.widget.TextView;
 
 import com.auditpro.mobile_client.controls.CustomFontHelper;
 import com.auditpro.mobile_client.controls.CustomTextView;
+import com.auditpro.mobile_client.entities.ProductFacets;
 import com.auditpro.mobile_client.test.R;
 
 import java.util.ArrayList;
@@ -101,6 +102,10 @@ public class FilterBrandPage extends BasePage {
 		if (filteredBrands == null) {
 			filteredBrands = new HashSet<>(allBrands);
 		}
+
+		// Count the products of each brand within the status and product type filters
+		ProductFacets.Counts counts = provider.getFacetCounts(provider.getFilterReorderStatus(),
+				provider.getFilterProductTypes(), null);
 		for (String brand : allBrands) {
 			// Create the group for brand
 			LinearLayout.LayoutParams parentParams = new LinearLayout.LayoutParams(
@@ -133,7 +138,9 @@ public class FilterBrandPage extends BasePage {
 			CustomTextView labelView = new CustomTextView(getContext());
 			labelView.setLayoutParams(new ViewGroup.LayoutParams(
 					ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
-			labelView.setText(viewBrand);
+			labelView.setText((counts == null)
+					? viewBrand
+					: getString(R.string.message_filter_count, viewBrand, counts.getBrandCount(viewBrand)));
 			labelView.setPadding(paddingStart, 0, 0, 0);
 			CustomFontHelper.setCustomFont(labelView, "hero.otf", getContext());
 			labelView.setTextColor(textColor);
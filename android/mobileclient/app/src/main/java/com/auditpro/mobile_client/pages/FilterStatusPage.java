@@ -19,6 +19,7 @@ import android.widget.TextView;
 
 import com.auditpro.mobile_client.controls.CustomFontHelper;
 import com.auditpro.mobile_client.controls.CustomTextView;
+import com.auditpro.mobile_client.entities.ProductFacets;
 import com.auditpro.mobile_client.entities.ReorderStatus;
 import com.auditpro.mobile_client.test.R;
 
@@ -26,8 +27,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Dictionary;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -82,6 +85,16 @@ public class FilterStatusPage extends BasePage {
 		map.put(ReorderStatus.IN_STOCK, (Switch) view.findViewById(R.id.inStockSwitch));
 		map.put(ReorderStatus.OUT_OF_STOCK, (Switch) view.findViewById(R.id.outOfStockSwitch));
 		map.put(ReorderStatus.VOID, (Switch) view.findViewById(R.id.voidSwitch));
+		statusLabels = new Hashtable<>();
+		statusLabels.put(ReorderStatus.NONE, noneText);
+		statusLabels.put(ReorderStatus.IN_STOCK, (TextView) view.findViewById(R.id.inStockText));
+		statusLabels.put(ReorderStatus.OUT_OF_STOCK, (TextView) view.findViewById(R.id.outOfStockText));
+		statusLabels.put(ReorderStatus.VOID, (TextView) view.findViewById(R.id.voidText));
+		labelNames = new HashMap<>();
+		for (Enumeration<TextView> e = statusLabels.elements(); e.hasMoreElements(); ) {
+			TextView label = e.nextElement();
+			labelNames.put(label, label.getText());
+		}
 		if (savedInstanceState == null) {
 			// Initialize from provider
 			ReorderStatus[] current = provider.getFilterReorderStatus();
@@ -103,9 +116,19 @@ public class FilterStatusPage extends BasePage {
 				map.get(status).setChecked(savedInstanceState.getBoolean(status.getCode(), false));
 			}
 		}
+		CompoundButton.OnCheckedChangeListener statusListener = new CompoundButton.OnCheckedChangeListener() {
+			@Override
+			public void onCheckedChanged(CompoundButton view, boolean isChecked) {
+				updateCounts();
+			}
+		};
+		for (Enumeration<Switch> e = map.elements(); e.hasMoreElements(); ) {
+			e.nextElement().setOnCheckedChangeListener(statusListener);
+		}
 
 		// Do we have a product type filter?
 		allProductTypes = provider.getAllProductTypes();
+		typeLabels = new HashMap<>();
 		if (!hasProductTypeFilter()) {
 			// No, hide the option
 			view.findViewById(R.id.productTypeText).setVisibility(View.GONE);
@@ -152,6 +175,7 @@ public class FilterStatusPage extends BasePage {
 						} else {
 							filteredProductTypes.remove(viewType);
 						}
+						updateCounts();
 					}
 				});
 				parentLayout.addView(switchView);
@@ -166,11 +190,16 @@ public class FilterStatusPage extends BasePage {
 				labelView.setTextColor(noneText.getCurrentTextColor());
 				labelView.setTextSize(TypedValue.COMPLEX_UNIT_PX, noneText.getTextSize());
 				parentLayout.addView(labelView);
+				typeLabels.put(viewType, labelView);
+				labelNames.put(labelView, viewType);
 
 				// Add the parent to the filter layout
 				filterLayout.addView(parentLayout);
 			}
 		}
+
+		// Show the product counts for the initial selections
+		updateCounts();
 	}
 
 	/**
@@ -260,6 +289,54 @@ public class FilterStatusPage extends BasePage {
 		provider.setFilterStatus(save.toArray(new ReorderStatus[] {}), updateProductTypes);
 	}
 
+	/**
+	 * Shows the number of products for each option within the pending selections.
+	 */
+	private void updateCounts() {
+		// Gather the pending selections, null where everything is selected
+		List<ReorderStatus> statuses = new ArrayList<>();
+		for (Enumeration<ReorderStatus> e = map.keys(); e.hasMoreElements(); ) {
+			ReorderStatus status = e.nextElement();
+			if (map.get(status).isChecked()) {
+				statuses.add(status);
+			}
+		}
+		ReorderStatus[] reorderStatuses = (statuses.size() == map.size())
+				? null
+				: statuses.toArray(new ReorderStatus[0]);
+		List<String> productTypes = null;
+		if (hasProductTypeFilter() && (filteredProductTypes.size() != 0) && (allProductTypes.size() != filteredProductTypes.size())) {
+			productTypes = filteredProductTypes;
+		}
+
+		// Get the counts
+		ProductFacets.Counts counts = (provider == null)
+				? null
+				: provider.getFacetCounts(reorderStatuses, productTypes, provider.getFilterBrands());
+		if (counts == null) {
+			// Not available, leave the plain labels
+			return;
+		}
+
+		// Update the labels
+		for (Enumeration<ReorderStatus> e = statusLabels.keys(); e.hasMoreElements(); ) {
+			ReorderStatus status = e.nextElement();
+			showCount(statusLabels.get(status), counts.getStatusCount(status));
+		}
+		for (Map.Entry<String, TextView> entry : typeLabels.entrySet()) {
+			showCount(entry.getValue(), counts.getTypeCount(entry.getKey()));
+		}
+	}
+
+	/**
+	 * Shows a product count after an option label.
+	 * @param label Option label
+	 * @param count Number of products
+	 */
+	private void showCount(TextView label, int count) {
+		label.setText(getString(R.string.message_filter_count, labelNames.get(label), count));
+	}
+
 	/**
 	 * Should we show a product type filter?
 	 * @return Show product type filter flag
@@ -282,4 +359,13 @@ public class FilterStatusPage extends BasePage {
 
 	/** Provides the current product types in the filter. */
 	private ArrayList<String> filteredProductTypes;
+
+	/** Maps the reorder status labels to their reorder status. */
+	private Dictionary<ReorderStatus, TextView> statusLabels;
+
+	/** Maps the product type labels to their product type. */
+	private Map<String, TextView> typeLabels;
+
+	/** Names of the option labels without counts. */
+	private Map<TextView, CharSequence> labelNames;
 }
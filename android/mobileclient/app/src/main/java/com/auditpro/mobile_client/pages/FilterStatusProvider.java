@@ -4,6 +4,7 @@
  */
 package com.auditpro.mobile_client.pages;
 
+import com.auditpro.mobile_client.entities.ProductFacets;
 import com.auditpro.mobile_client.entities.ReorderStatus;
 
 import java.util.ArrayList;
@@ -59,4 +60,15 @@ public interface FilterStatusProvider {
 	 * @param value New list of products in filter
 	 */
 	void setFilterBrands(Set<String> value);
+
+	/**
+	 * Counts the products matching the current search for each reorder status, product type
+	 * and brand.  Each is counted within the passed filters on the others.
+	 * @param reorderStatuses Reorder statuses in the filter, or null for all
+	 * @param productTypes Product types in the filter, or null for all
+	 * @param brands Brands in the filter, or null for all
+	 * @return Product counts, or null if not available
+	 */
+	ProductFacets.Counts getFacetCounts(ReorderStatus[] reorderStatuses, List<String> productTypes,
+			Set<String> brands);
 }
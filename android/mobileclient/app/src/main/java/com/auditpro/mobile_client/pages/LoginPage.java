@@ -24,6 +24,7 @@ import android.widget.Toast;
 
 import com.auditpro.mobile_client.MainActivity;
 import com.auditpro.mobile_client.api.ApiClient;
+import com.auditpro.mobile_client.api.ApiResult;
 import com.auditpro.mobile_client.api.UserResponse;
 import com.auditpro.mobile_client.security.Security;
 import com.auditpro.mobile_client.test.R;
@@ -216,7 +217,7 @@ public class LoginPage extends BasePage {
 	/**
 	 * Provides reference-safe async task to login on a worker thread.
 	 */
-	private static class ConnectedLoginTask extends AsyncTask<Void, Void, UserResponse> {
+	private static class ConnectedLoginTask extends AsyncTask<Void, Void, ApiResult<UserResponse>> {
 		private String email;
 		private String password;
 		private boolean isPasswordSaved;
@@ -252,18 +253,18 @@ public class LoginPage extends BasePage {
 		 * @return Web service result
 		 */
 		@Override
-		protected UserResponse doInBackground(Void... voids) {
+		protected ApiResult<UserResponse> doInBackground(Void... voids) {
 			api = new ApiClient(null);
 			return api.login(email, password);
 		}
 
 		/**
 		 * Handles the web service result in the user interface.
-		 * @param userResponse Web service result
+		 * @param result Web service result
 		 */
 		@Override
-		protected void onPostExecute(UserResponse userResponse) {
-			super.onPostExecute(userResponse);
+		protected void onPostExecute(ApiResult<UserResponse> result) {
+			super.onPostExecute(result);
 			LoginPage self = host.get();
 			IPageParent parent = (self == null) ? null : self.getParent();
 			if (parent == null) {
@@ -271,12 +272,12 @@ public class LoginPage extends BasePage {
 				return;
 			}
 			parent.setActivity(false);
-			if (userResponse == null) {
+			if (!result.isSuccess()) {
 				// Failed to login, show error toast
-				Toast.makeText(self.getContext(), api.getMessage(), Toast.LENGTH_LONG).show();
+				Toast.makeText(self.getContext(), result.getMessage(), Toast.LENGTH_LONG).show();
 			} else {
 				// Complete login
-				((MainActivity) self.getActivity()).setLogin(api.getToken(), email, password, isPasswordSaved, userResponse);
+				((MainActivity) self.getActivity()).setLogin(api.getToken(), email, password, isPasswordSaved, result.getData());
 				if (self.sessionFlag) {
 					// Return to the calling page
 					parent.popPage();
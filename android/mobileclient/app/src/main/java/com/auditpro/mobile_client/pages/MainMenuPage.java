@@ -20,22 +20,31 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.auditpro.mobile_client.Analytics;
+import com.auditpro.mobile_client.AuditUploader;
+import com.auditpro.mobile_client.CatalogSync;
 import com.auditpro.mobile_client.MainActivity;
 import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.UploadJobService;
 import com.auditpro.mobile_client.api.ApiClient;
+import com.auditpro.mobile_client.api.ApiResult;
+import com.auditpro.mobile_client.api.CacheValidator;
 import com.auditpro.mobile_client.database.AuditDatabase;
 import com.auditpro.mobile_client.database.BaseDatabase;
 import com.auditpro.mobile_client.database.StoresDatabase;
 import com.auditpro.mobile_client.entities.Audit;
 import com.auditpro.mobile_client.entities.Notes;
-import com.auditpro.mobile_client.entities.Product;
-import com.auditpro.mobile_client.entities.Store;
 import com.auditpro.mobile_client.security.Security;
 import com.auditpro.mobile_client.test.R;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.util.Date;
-import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -266,6 +275,8 @@ public class MainMenuPage extends BasePage {
 			Double latitude = (lastLocation == null) ? null : lastLocation.getLatitude();
 			Double longitude = (lastLocation == null) ? null : lastLocation.getLongitude();
 			db.completeAudit(openAudit, latitude, longitude, new Date());
+			UploadJobService.schedule(getContext(), ((MainActivity) getActivity()).getSessionToken(),
+					openAudit.getUserId());
 
 			// Now request a new audit
 			onAudit(AuditStatus.Request);
@@ -337,23 +348,6 @@ public class MainMenuPage extends BasePage {
 		return true;
 	}
 
-	/**
-	 * Handles attach event by determining whether we should auto-sync.
-	 * @param context Application context
-	 */
-	@Override
-	public void onAttach(Context context) {
-		super.onAttach(context);
-
-		// Do we have any Internet connection?
-		Security sec = new Security(context.getApplicationContext());
-		boolean autoSync = sec.optSettingBool(Security.SETTING_AUTOSYNC_WIFI, false);
-		if (autoSync && ((MainActivity) context).isWifiConnected()) {
-			// Once we're showing offer sync now
-			initSync = InitSyncOption.Sync;
-		}
-	}
-
 	/**
 	 * Updates UI when the page appears.
 	 */
@@ -505,6 +499,7 @@ public class MainMenuPage extends BasePage {
 		private WeakReference<MainMenuPage> host;
 		private String token;
 		private int userId;
+		private boolean compressUploads;
 		private ApiClient api;
 
 		/**
@@ -516,6 +511,7 @@ public class MainMenuPage extends BasePage {
 			this.host = new WeakReference<>(host);
 			this.token = ((MainActivity) host.getActivity()).getSessionToken();
 			this.userId = sec.getUserId();
+			this.compressUploads = sec.optSettingBool(Security.SETTING_GZIP_UPLOAD, false);
 		}
 
 		/**
@@ -531,58 +527,128 @@ public class MainMenuPage extends BasePage {
 		}
 
 		/**
-		 * Execute remove login web service
+		 * Executes the sync.  The audit uploads and the stores and products downloads run
+		 * concurrently on a bounded pool, and the downloads are applied to the cache together
+		 * once both succeed.  Cancelling the task interrupts the workers.
 		 * @param voids Placeholder for no parameters
 		 * @return Error message or null on success
 		 */
 		@Override
 		protected String doInBackground(Void... voids) {
 			api = new ApiClient(token);
+			api.setCompressUploads(compressUploads);
+			final Context context = host.get().getContext().getApplicationContext();
+			ExecutorService workers = Executors.newFixedThreadPool(SYNC_THREADS);
+			File storesSpool = null;
+			File productsSpool = null;
 			try {
-				// Send pending audits
-				Context context = host.get().getContext();
-				try (AuditDatabase db = new AuditDatabase(context)) {
-					// Cycle through the completed audits
-					List<Audit> completed = db.getCompleteAudits(userId);
-					for (Audit audit : completed) {
-						// Post the current audit
-						String json = db.serializeAudit(audit);
-						if (!api.postPayload(json)) {
-							// Failed to post the audit
-							throw new MobileClientException(api.getMessage());
-						}
-
-						// Remove the posted audit from our cache
-						db.deleteAudit(audit);
-					}
+				// Only ask for changes if we have a cache to keep
+				Security sec = new Security(context);
+				boolean isCached;
+				try (StoresDatabase db = new StoresDatabase(context)) {
+					isCached = !db.isEmpty();
 				}
-
-				// Get new stores for this user
-				List<Store> stores  = api.getStores();
-				if (stores == null) {
-					// Failed to get new stores
-					throw new MobileClientException(api.getMessage());
+				final CacheValidator storesCached = isCached
+						? sec.getCacheValidator(CatalogSync.STORES_RESOURCE) : null;
+				final CacheValidator productsCached = isCached
+						? sec.getCacheValidator(CatalogSync.PRODUCTS_RESOURCE) : null;
+				storesSpool = File.createTempFile(CatalogSync.STORES_RESOURCE, ".json",
+						context.getCacheDir());
+				productsSpool = File.createTempFile(CatalogSync.PRODUCTS_RESOURCE, ".json",
+						context.getCacheDir());
+				final File storesTarget = storesSpool;
+				final File productsTarget = productsSpool;
+
+				// Send pending audits while the catalog downloads
+				Future<AuditUploader.Summary> uploads = workers.submit(
+						new Callable<AuditUploader.Summary>() {
+					@Override
+					public AuditUploader.Summary call()
+							throws MobileClientException, InterruptedException {
+						return AuditUploader.drain(context, api, userId, true);
+					}
+				});
+				Future<ApiResult<File>> stores = workers.submit(new Callable<ApiResult<File>>() {
+					@Override
+					public ApiResult<File> call() {
+						return api.downloadStores(storesCached, storesTarget);
+					}
+				});
+				Future<ApiResult<File>> products = workers.submit(new Callable<ApiResult<File>>() {
+					@Override
+					public ApiResult<File> call() {
+						return api.downloadProducts(productsCached, productsTarget);
+					}
+				});
+
+				// Apply the catalog only if both downloads succeeded
+				ApiResult<File> storesResult = stores.get();
+				ApiResult<File> productsResult = products.get();
+				String catalogError = null;
+				if (!isCancelled()) {
+					try {
+						CatalogSync.apply(context, api, storesResult, productsResult);
+					} catch (MobileClientException exc) {
+						// Leave the uploads to finish
+						catalogError = exc.getMessage();
+					}
 				}
 
-				// Get new products for this user
-				List<Product> products = api.getProducts();
-				if (products == null) {
-					// Failed tp get new products
-					throw new MobileClientException(api.getMessage());
+				// Report upload failures first, the audits are what the user is waiting on
+				AuditUploader.Summary uploaded;
+				try {
+					uploaded = uploads.get();
+				} catch (ExecutionException exc) {
+					if (exc.getCause() instanceof MobileClientException) {
+						return exc.getCause().getMessage();
+					}
+					throw exc;
+				} finally {
+					// Leave anything that failed to the background upload
+					UploadJobService.schedule(context, token, userId);
 				}
-
-				// Cache the stores and products locally
-				try (StoresDatabase db = new StoresDatabase(context)) {
-					// Update our cache
-					db.applyRefresh(stores, products);
+				if (uploaded.getPosted() < uploaded.getTotal()) {
+					return context.getString(R.string.message_sync_upload_partial,
+							uploaded.getPosted(), uploaded.getTotal(), uploaded.getFailure());
 				}
-
-				// Indicate success
-				return null;
-			}
-			catch (MobileClientException exc) {
+				return catalogError;
+			} catch (MobileClientException exc) {
 				// Failed to sync
 				return exc.getMessage();
+			} catch (IOException exc) {
+				// Failed to create the spool files
+				Log.e(LOG_TAG, "Failed to create sync spool files", exc);
+				return "Not enough storage available to sync";
+			} catch (InterruptedException exc) {
+				// Cancelled, the result is ignored
+				return null;
+			} catch (ExecutionException exc) {
+				// Unexpected worker failure
+				Log.e(LOG_TAG, "Unexpected sync worker failure", exc.getCause());
+				return exc.getCause().getMessage();
+			} finally {
+				// Stop any workers still running and discard the downloads
+				workers.shutdownNow();
+				if ((storesSpool != null) && !storesSpool.delete()) {
+					Log.w(LOG_TAG, "Failed to delete stores spool file");
+				}
+				if ((productsSpool != null) && !productsSpool.delete()) {
+					Log.w(LOG_TAG, "Failed to delete products spool file");
+				}
+			}
+		}
+
+		/**
+		 * Clears the activity spinner if the page is still around when cancelled.
+		 * @param errorMessage Ignored result
+		 */
+		@Override
+		protected void onCancelled(String errorMessage) {
+			super.onCancelled(errorMessage);
+			MainMenuPage self = host.get();
+			IPageParent parent = (self == null) ? null : self.getParent();
+			if (parent != null) {
+				parent.setActivity(false);
 			}
 		}
 
@@ -629,4 +695,7 @@ public class MainMenuPage extends BasePage {
 
 	/** Identifies page messages in the application log. */
 	private static final String LOG_TAG = "MainMenuPage";
+
+	/** Runs the audit uploads and the stores and products downloads side by side. */
+	private static final int SYNC_THREADS = 3;
 }
@@ -28,8 +28,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.auditpro.mobile_client.Analytics;
+import com.auditpro.mobile_client.AuditUploader;
 import com.auditpro.mobile_client.MainActivity;
 import com.auditpro.mobile_client.MobileClientException;
+import com.auditpro.mobile_client.UploadJobService;
 import com.auditpro.mobile_client.api.ApiClient;
 import com.auditpro.mobile_client.database.AuditDatabase;
 import com.auditpro.mobile_client.entities.Audit;
@@ -37,10 +39,12 @@ import com.auditpro.mobile_client.security.Security;
 import com.auditpro.mobile_client.test.R;
 import com.crashlytics.android.Crashlytics;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.FileOutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
@@ -268,6 +272,7 @@ public class ReviewPage extends BasePage {
 		private WeakReference<ReviewPage> host;
 		private Audit audit;
 		private String token;
+		private boolean compressUploads;
 		private ApiClient api;
 
 		/**
@@ -278,6 +283,8 @@ public class ReviewPage extends BasePage {
 			this.host = new WeakReference<>(host);
 			this.audit = audit;
 			this.token = ((MainActivity) host.getActivity()).getSessionToken();
+			Security sec = new Security(host.getContext().getApplicationContext());
+			this.compressUploads = sec.optSettingBool(Security.SETTING_GZIP_UPLOAD, false);
 		}
 
 		/**
@@ -300,27 +307,21 @@ public class ReviewPage extends BasePage {
 		@Override
 		protected String doInBackground(Void... voids) {
 			api = new ApiClient(token);
+			api.setCompressUploads(compressUploads);
+			Context context = host.get().getContext().getApplicationContext();
 			try {
-				// Send pending audits
-				Context context = host.get().getContext();
-				try (AuditDatabase db = new AuditDatabase(context)) {
-					// Post the current audit
-					String json = db.serializeAudit(audit);
-					if (!api.postPayload(json)) {
-						// Failed to post the audit
-						throw new MobileClientException(api.getMessage());
-					}
-
-					// Remove the posted audit from our cache
-					db.deleteAudit(audit);
-				}
-
-				// Indicate success
-				return null;
+				// Post the audit from the outbox, unless the background upload already did
+				return AuditUploader.upload(context, api, audit);
 			}
 			catch (MobileClientException exc) {
 				// Failed to sync
 				return exc.getMessage();
+			} catch (InterruptedException exc) {
+				// Cancelled, the result is ignored
+				return null;
+			} finally {
+				// Leave a failed upload to the background upload
+				UploadJobService.schedule(context, token, audit.getUserId());
 			}
 		}
 
@@ -419,24 +420,6 @@ public class ReviewPage extends BasePage {
 	 * @param audit Audit to e-mail
 	 */
 	private void onEmail(Audit audit) {
-		// Access the database to serialize the audit
-		byte[] payload;
-		try (AuditDatabase db = new AuditDatabase(getContext())) {
-			// Serialize the audit
-			String json = db.serializeAudit(audit);
-			payload = json.getBytes("UTF-8");
-		} catch (MobileClientException exc) {
-			// Failed to serialize audit
-			showError(R.string.message_review_error_serialize);
-			return;
-		} catch (UnsupportedEncodingException exc) {
-			// Failed to encode audit
-			Crashlytics.log(Log.ERROR, LOG_TAG, String.format("Failed to encode audit %s: %s",
-					audit.toString(), exc.getMessage()));
-			showError(R.string.message_review_error_encoding);
-			return;
-		}
-
 		// Prepare to write attachment to app cache
 		File cacheFile = getContext().getCacheDir();
 
@@ -460,10 +443,19 @@ public class ReviewPage extends BasePage {
 		File attachmentFile = new File(cacheFile, String.format(
 				"audit-%s.json", stamp
 		));
-		try (FileOutputStream outs = new FileOutputStream(attachmentFile)) {
-			outs.write(payload);
-		} catch (Exception exc) {
-			Log.w(LOG_TAG, "Failed to write completed audit JSON for attachment", exc);
+		try (AuditDatabase db = new AuditDatabase(getContext());
+				OutputStream outs = new BufferedOutputStream(new FileOutputStream(attachmentFile))) {
+			// Stream the serialized audit to the attachment
+			db.writeAudit(audit, outs);
+		} catch (MobileClientException exc) {
+			// Failed to serialize audit
+			showError(R.string.message_review_error_serialize);
+			return;
+		} catch (IOException exc) {
+			// Failed to write the attachment
+			Crashlytics.log(Log.ERROR, LOG_TAG, String.format("Failed to write audit %s: %s",
+					audit.toString(), exc.getMessage()));
+			showError(R.string.message_review_error_attachment);
 			return;
 		}
 
@@ -15,9 +15,12 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
 import android.support.v7.app.AlertDialog;
 import android.text.Editable;
+import android.text.InputType;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -40,7 +43,12 @@ import com.auditpro.mobile_client.database.AuditDatabase;
 import com.auditpro.mobile_client.database.StoresDatabase;
 import com.auditpro.mobile_client.dialog.BeginAuditDialog;
 import com.auditpro.mobile_client.entities.Audit;
+import com.auditpro.mobile_client.entities.AuditItem;
 import com.auditpro.mobile_client.entities.Product;
+import com.auditpro.mobile_client.entities.ProductCode;
+import com.auditpro.mobile_client.entities.ProductCodeTrie;
+import com.auditpro.mobile_client.entities.ProductFacets;
+import com.auditpro.mobile_client.entities.ProductSearchIndex;
 import com.auditpro.mobile_client.entities.ProductStatus;
 import com.auditpro.mobile_client.entities.ReorderStatus;
 import com.auditpro.mobile_client.entities.Report;
@@ -53,9 +61,12 @@ import java.lang.ref.WeakReference;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.SortedSet;
@@ -177,6 +188,8 @@ public class SelectProductPage extends BasePage implements
 			// Restore from state
 			String filterSearch = savedInstanceState.getString(STATE_FILTER_SEARCH);
 			int filterReorderStatusIds[] = savedInstanceState.getIntArray(STATE_FILTER_REORDER_STATUS);
+			isKeypadLookup = savedInstanceState.getBoolean(STATE_KEYPAD_LOOKUP);
+			updateSearchInput();
 			searchEdit.setText((filterSearch == null) ? "" : filterSearch);
 			filterProductTypes = savedInstanceState.getStringArrayList(STATE_FILTER_PRODUCT_TYPES);
 			if ((filterReorderStatusIds == null) || (filterReorderStatusIds.length == 0)) {
@@ -201,23 +214,25 @@ public class SelectProductPage extends BasePage implements
 	@Override
 	public void onStart() {
 		super.onStart();
-		if ((allProducts == null) || (allProducts.size() == 0)) {
+		if (!isLoading && ((allProducts == null) || (allProducts.size() == 0))) {
 			// Load the products et al on a worker thread
+			isLoading = true;
 			new LoadProducts(this).execute();
 		}
 	}
 
 	/**
-	 * Loads the products and related data on a worker thread.
+	 * Loads the products and related data on a worker thread.  Product summaries are read a
+	 * page at a time in name order, and each page is shown as soon as it is read.
 	 */
-	private static class LoadProducts extends AsyncTask<Void, Void, String> {
+	private static class LoadProducts extends AsyncTask<Void, List<ProductStatus>, String> {
 
 		private WeakReference<SelectProductPage> pageRef;
 		private Audit audit;
-		private List<ProductStatus> loadedProducts;
 		private List<String> loadedProductTypes;
 		private SortedSet<String> loadedBrands;
-		private boolean unscannedShowing = true;
+		private Map<String, Integer> loadedCodes;
+		private boolean unscannedShowing = false;
 
 		/**
 		 * Initializes to display the results on the passed page.
@@ -240,8 +255,9 @@ public class SelectProductPage extends BasePage implements
 		/**
 		 * Executes the load on the worker thread.
 		 * @param voids Ignored
-		 * @return Ignored
+		 * @return Error message or null on success
 		 */
+		@SuppressWarnings("unchecked")
 		@Override
 		protected String doInBackground(Void... voids) {
 			// Get the context
@@ -252,51 +268,69 @@ public class SelectProductPage extends BasePage implements
 			}
 
 			// Load product data
-			try (StoresDatabase db = new StoresDatabase(context)) {
-				// Cache the list of products
-				Product[] loaded = db.
-						getProductsForStore(audit.getStoreId()).toArray(new Product[0]);
-				Arrays.sort(loaded, new Comparator<Product>() {
-					@Override
-					public int compare(Product product, Product t1) {
-						return product.getProductName().compareTo(t1.getProductName());
-					}
-				});
+			try (StoresDatabase db = new StoresDatabase(context);
+					AuditDatabase adb = new AuditDatabase(context)) {
+				// Get what has already been recorded in the audit by product
+				SparseArray<AuditItem> items = adb.getAuditItems(audit);
 
-				// Convert to product status
+				// Read the product summaries a page at a time
+				Store store = db.getStore(audit.getStoreId());
 				Set<String> uniqueTypes = new HashSet<>();
-				loadedProducts = new ArrayList<>();
 				loadedBrands = new TreeSet<>(new Comparator<String>() {
 					@Override
 					public int compare(String o1, String o2) {
 						return o1.compareTo(o2);
 					}
 				});
-				for(Product product : loaded) {
-					// Add the current product to all products and types
-					loadedProducts.add(new ProductStatus(product));
-					uniqueTypes.add(product.getProductTypeName());
-
-					// Do we have a brand name?
-					String brandName = product.getDisplayBrandName();
-					if (brandName != null) {
-						loadedBrands.add(brandName);
+				SparseIntArray ordinals = new SparseIntArray();
+				Product last = null;
+				int pageSize = FIRST_PAGE_SIZE;
+				while ((store != null) && !isCancelled()) {
+					List<Product> loaded = db.getProductSummaries(store, last, pageSize);
+					if (loaded.isEmpty()) {
+						// No more products
+						break;
+					}
+
+					// Convert to product status
+					List<ProductStatus> loadedProducts = new ArrayList<>(loaded.size());
+					for (Product product : loaded) {
+						// Apply any existing report to the product status
+						ProductStatus ps = new ProductStatus(product);
+						AuditItem item = items.get(product.getId());
+						if (item != null) {
+							ps.setReorderStatus(item);
+						}
+						if (ps.getReorderStatus() == ReorderStatus.NONE) {
+							// Found an unscanned product
+							unscannedShowing = true;
+						}
+
+						// Add the current product to all products and types
+						ordinals.put(product.getId(), ordinals.size());
+						loadedProducts.add(ps);
+						uniqueTypes.add(product.getProductTypeName());
+
+						// Do we have a brand name?
+						String brandName = product.getDisplayBrandName();
+						if (brandName != null) {
+							loadedBrands.add(brandName);
+						}
 					}
+
+					// Show this page and move on to the next
+					publishProgress(loadedProducts);
+					last = loaded.get(loaded.size() - 1);
+					pageSize = PAGE_SIZE;
 				}
 
-				// Apply any existing reports to the product status
-				try (AuditDatabase adb = new AuditDatabase(context)) {
-					for (Report report : adb.getAllReports(audit, null)) {
-						for (ProductStatus ps : loadedProducts) {
-							if (ps.getProduct().getId() == report.getProductId()) {
-								Scan scan =
-										(report.getReorderStatusId() == ReorderStatus.IN_STOCK.getId()) ||
-												(report.getReorderStatusId() == ReorderStatus.OUT_OF_STOCK.getId())
-												? adb.getScan(audit, ps.getProduct().getId())
-												: null;
-								ps.setReorderStatus(report, scan);
-								break;
-							}
+				// Map the product codes to the order the products were shown
+				if ((store != null) && !isCancelled()) {
+					loadedCodes = new HashMap<>();
+					for (Map.Entry<String, Integer> code : db.getProductCodes(store).entrySet()) {
+						int ordinal = ordinals.get(code.getValue(), -1);
+						if (ordinal >= 0) {
+							loadedCodes.put(code.getKey(), ordinal);
 						}
 					}
 				}
@@ -306,18 +340,6 @@ public class SelectProductPage extends BasePage implements
 				Arrays.sort(typesArray);
 				loadedProductTypes = new ArrayList<>(Arrays.asList(typesArray));
 
-				// Check for any unscanned products
-				// Are there any unscanned products?
-				unscannedShowing = false;
-				for (ProductStatus test : loadedProducts) {
-					// Is the current product unscanned?
-					if (test.getReorderStatus() == ReorderStatus.NONE) {
-						// Found
-						unscannedShowing = true;
-						break;
-					}
-				}
-
 				// Report success
 				return null;
 			} catch (MobileClientException exc) {
@@ -325,6 +347,20 @@ public class SelectProductPage extends BasePage implements
 			}
 		}
 
+		/**
+		 * Displays a page of products on the main thread.
+		 * @param pages Page of products just loaded
+		 */
+		@SafeVarargs
+		@Override
+		protected final void onProgressUpdate(List<ProductStatus>... pages) {
+			super.onProgressUpdate(pages);
+			SelectProductPage page = pageRef.get();
+			if (page != null) {
+				page.appendLoad(pages[0]);
+			}
+		}
+
 		/**
 		 * Displays the results on the main thread.
 		 * @param message Error message or null on success
@@ -341,6 +377,7 @@ public class SelectProductPage extends BasePage implements
 			}
 
 			// Did we succeed?
+			page.isLoading = false;
 			if (message != null) {
 				// No, show toast
 				Toast.makeText(page.getContext(), message, Toast.LENGTH_SHORT).show();
@@ -348,20 +385,75 @@ public class SelectProductPage extends BasePage implements
 			}
 
 			// Update the user interface
-			page.completeLoad(loadedProducts, loadedProductTypes, loadedBrands, unscannedShowing);
+			page.completeLoad(loadedProductTypes, loadedBrands, loadedCodes, unscannedShowing);
 		}
 	}
 
 	/**
-	 * Displays products once the load is completed.
-	 * @param loadedProducts Products loaded from the database
+	 * Displays the next page of products as they load.  Pages arrive in product name order,
+	 * so products in the current filter are appended to the list in place.
+	 * @param loadedProducts Page of products loaded from the database
+	 */
+	void appendLoad(List<ProductStatus> loadedProducts) {
+		// Make sure the user didn't dismiss while we were loading
+		View view = getView();
+		if (view == null) {
+			// Dismissed
+			return;
+		}
+
+		// Is this the first page?
+		if (productStatusAdapter == null) {
+			// Show the list with the first page
+			allProducts = new ArrayList<>(loadedProducts);
+			productIndex = new ProductSearchIndex();
+			productIndex.addAll(loadedProducts);
+			codeTrie = new ProductCodeTrie();
+			codeTrie.addAll(loadedProducts);
+			productFacets = new ProductFacets();
+			productFacets.addAll(loadedProducts);
+			productOrdinals = new SparseIntArray();
+			addOrdinals(loadedProducts, 0);
+			createProductList(view);
+			applyFilter(true);
+			return;
+		}
+
+		// Append the products in the filter
+		int from = allProducts.size();
+		allProducts.addAll(loadedProducts);
+		productIndex.addAll(loadedProducts);
+		codeTrie.addAll(loadedProducts);
+		productFacets.addAll(loadedProducts);
+		addOrdinals(loadedProducts, from);
+		if (getKeypadDigits() != null) {
+			// Ranked candidates may move as products load, show them all again
+			showProducts(getFilteredProducts(getSearchTokens(), 0));
+		} else {
+			productStatusAdapter.addAll(getFilteredProducts(getSearchTokens(), from));
+		}
+	}
+
+	/**
+	 * Records the ordinals of loaded products by product id.
+	 * @param loadedProducts Products just added to all products
+	 * @param from Ordinal of the first loaded product
+	 */
+	private void addOrdinals(List<ProductStatus> loadedProducts, int from) {
+		for (int index = 0; index < loadedProducts.size(); ++index) {
+			productOrdinals.put(loadedProducts.get(index).getProduct().getId(), from + index);
+		}
+	}
+
+	/**
+	 * Completes the display once all products are loaded.
 	 * @param loadedProductTypes Distinct product types identified
 	 * @param loadedBrands Distinct brands identified
+	 * @param loadedCodes Product ordinals by normalized code, or null if not loaded
 	 * @param unscannedShowing Flags one or more unscanned product
 	 */
-	@SuppressWarnings("ConstantConditions")
-	void completeLoad(List<ProductStatus> loadedProducts, List<String> loadedProductTypes,
-					  SortedSet<String> loadedBrands, boolean unscannedShowing) {
+	void completeLoad(List<String> loadedProductTypes, SortedSet<String> loadedBrands,
+					  Map<String, Integer> loadedCodes, boolean unscannedShowing) {
 		// Make sure the user didn't dismiss while we were loading
 		View view = getView();
 		if (view == null) {
@@ -370,11 +462,46 @@ public class SelectProductPage extends BasePage implements
 		}
 
 		// Keep the passed loaded data
-		allProducts = loadedProducts;
 		allProductTypes = loadedProductTypes;
 		allBrands = loadedBrands;
+		productCodes = loadedCodes;
+		if (productStatusAdapter == null) {
+			// No products at all
+			allProducts = new ArrayList<>();
+			productIndex = new ProductSearchIndex();
+			codeTrie = new ProductCodeTrie();
+			productFacets = new ProductFacets();
+			productOrdinals = new SparseIntArray();
+			createProductList(view);
+			applyFilter(true);
+		}
 
-		// Update the user interface
+		// Can we show the brands?
+		if (allBrands.size() > 1) {
+			// Handle brands button
+			brandsButton.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					onBrands();
+				}
+			});
+		} else {
+			// Not enough brands to select
+			brandsButton.setVisibility(View.GONE);
+		}
+
+		// Are there unscanned products?
+		if (!unscannedShowing && (unscannedMenuItem != null)) {
+			// Hide unscanned
+			unscannedMenuItem.setVisible(false);
+		}
+	}
+
+	/**
+	 * Creates the adapter for the product list.
+	 * @param view Our page view
+	 */
+	private void createProductList(View view) {
 		ListView productStatusList = view.findViewById(R.id.productList);
 		productStatusList.setOnItemClickListener(new AdapterView.OnItemClickListener() {
 			@Override
@@ -388,23 +515,20 @@ public class SelectProductPage extends BasePage implements
 				// Default view creation
 				View res = super.getView(position, convertView, parent);
 
-				// Determine the initial reorder status by looking up the product
-				TextView productView = res.findViewById(R.id.productText);
-				String productName = productView.getText().toString();
+				// Determine the reorder status from the product at this position
+				ProductStatus productStatus = getItem(position);
 				String statusName = ReorderStatus.NONE.getCode();
-				for (ProductStatus productStatus : allProducts) {
-					if (productStatus.getProductName().equals(productName)) {
-						ReorderStatus showStatus = productStatus.getReorderStatus();
-						statusName = showStatus.getCode();
-						if (((showStatus == ReorderStatus.IN_STOCK) || (showStatus == ReorderStatus.OUT_OF_STOCK))
-								&& productStatus.hasDisplayPrice()) {
-							// Append display price
-							statusName += String.format(" %s",
-									NumberFormat.getCurrencyInstance().format(productStatus.getDisplayPrice()));
-						}
-						break;
+				if (productStatus != null) {
+					ReorderStatus showStatus = productStatus.getReorderStatus();
+					statusName = showStatus.getCode();
+					if (((showStatus == ReorderStatus.IN_STOCK) || (showStatus == ReorderStatus.OUT_OF_STOCK))
+							&& productStatus.hasDisplayPrice()) {
+						// Append display price
+						statusName += String.format(" %s",
+								NumberFormat.getCurrencyInstance().format(productStatus.getDisplayPrice()));
 					}
 				}
+
 				// Set the reorder button
 				TextView reorderButton = res.findViewById(R.id.itemReorderStatusButton);
 				reorderButton.setOnClickListener(new View.OnClickListener() {
@@ -419,36 +543,7 @@ public class SelectProductPage extends BasePage implements
 				return res;
 			}
 		};
-		productStatusAdapter.sort(new Comparator<ProductStatus>() {
-			@Override
-			public int compare(ProductStatus t0, ProductStatus t1) {
-				return t0.getProductName().compareTo(t1.getProductName());
-			}
-		});
 		productStatusList.setAdapter(productStatusAdapter);
-
-		// Can we show the brands?
-		if (allBrands.size() > 1) {
-			// Handle brands button
-			brandsButton.setOnClickListener(new View.OnClickListener() {
-				@Override
-				public void onClick(View v) {
-					onBrands();
-				}
-			});
-		} else {
-			// Not enough brands to select
-			brandsButton.setVisibility(View.GONE);
-		}
-
-		// Are there unscanned products?
-		if (!unscannedShowing && (unscannedMenuItem != null)) {
-			// Hide unscanned
-			unscannedMenuItem.setVisible(false);
-		}
-
-		// Update UI for current filters
-		applyFilter(true);
 	}
 
 	/**
@@ -459,6 +554,7 @@ public class SelectProductPage extends BasePage implements
 	public void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
 		outState.putString(STATE_FILTER_SEARCH, searchEdit.getText().toString());
+		outState.putBoolean(STATE_KEYPAD_LOOKUP, isKeypadLookup);
 		outState.putStringArrayList(STATE_FILTER_PRODUCT_TYPES, filterProductTypes);
 		if ((filterReorderStatus != null) && (filterReorderStatus.length > 0)) {
 			int filterReorderStatusIds[] = new int[filterReorderStatus.length];
@@ -562,6 +658,8 @@ public class SelectProductPage extends BasePage implements
 		barcodeMenuItem = menu.findItem(R.id.action_barcode_status);
 		setBarcodeState(BarcodeState.UNCHANGED);
 		unscannedMenuItem = menu.findItem(R.id.action_set_unscanned);
+		keypadMenuItem = menu.findItem(R.id.action_keypad_lookup);
+		keypadMenuItem.setChecked(isKeypadLookup);
 		MenuItem batteryItem = menu.findItem(R.id.action_barcode_battery);
 		if (battery == null) {
 			// Create new battery control
@@ -605,6 +703,16 @@ public class SelectProductPage extends BasePage implements
 			Toast.makeText(getContext(), battery.describeState(getContext()), Toast.LENGTH_SHORT).show();
 			return true;
 		}
+		if (id == R.id.action_keypad_lookup) {
+			// Switch between text search and code digits
+			isKeypadLookup = !isKeypadLookup;
+			Analytics.menuAction("Keypad Lookup", isKeypadLookup ? "on" : "off");
+			item.setChecked(isKeypadLookup);
+			updateSearchInput();
+			searchEdit.setText("");
+			searchEdit.requestFocus();
+			return true;
+		}
 		if (id == R.id.action_store_history) {
 			// Show the store history
 			Analytics.menuAction("Store History");
@@ -745,6 +853,23 @@ public class SelectProductPage extends BasePage implements
 		applyFilter(false);
 	}
 
+	/**
+	 * Counts the products matching the current search for each facet value.
+	 * @param reorderStatuses Reorder statuses in the filter, or null for all
+	 * @param productTypes Product types in the filter, or null for all
+	 * @param brands Brands in the filter, or null for all
+	 * @return Product counts, or null if products are not loaded
+	 */
+	@Override
+	public ProductFacets.Counts getFacetCounts(ReorderStatus[] reorderStatuses,
+			List<String> productTypes, Set<String> brands) {
+		if (productFacets == null) {
+			// Not loaded yet
+			return null;
+		}
+		return productFacets.count(getSearchMatches(), reorderStatuses, productTypes, brands);
+	}
+
 	/**
 	 * Handles update to the passed product.
 	 * @param updated Updated product
@@ -752,33 +877,26 @@ public class SelectProductPage extends BasePage implements
 	 */
 	@Override
 	public void onProductUpdated(ProductStatus updated, Scan scan) {
+		// Find our instance of the product
+		// Note: because of parceling the updated product will be a different instance than the
+		//   product in the the list adapter.
+		int ordinal = (productOrdinals == null) ? -1 : productOrdinals.get(updated.getProduct().getId(), -1);
+		if (ordinal < 0) {
+			// Not loaded
+			return;
+		}
+		ProductStatus actual = allProducts.get(ordinal);
+		actual.updateFrom(updated, scan);
+
 		// Check to make sure the product is still in the filter
-		if (filterReorderStatus != null) {
-			boolean isInFilter = false;
-			for (ReorderStatus test : filterReorderStatus) {
-				if (test == updated.getReorderStatus()) {
-					isInFilter = true;
-					break;
-				}
-			}
-			if (!isInFilter) {
-				// The product is now outside the filter, remove
-				productStatusAdapter.remove(updated);
-				return;
-			}
+		if (!updateFacets(actual)) {
+			// The product is now outside the filter, remove
+			productStatusAdapter.remove(actual);
+			return;
 		}
 
 		// Make sure the status display is up to date
-		// Note: because of parceling the updated product will be a different instance than the
-		//   product in the the list adapter.
-		int pos = productStatusAdapter.getPosition(updated);
-		ProductStatus actual = ((pos >= 0) && (pos < productStatusAdapter.getCount()))
-			? productStatusAdapter.getItem(pos)
-			: null;
-		if (actual != null) {
-			actual.updateFrom(updated, scan);
-			productStatusAdapter.notifyDataSetChanged();
-		}
+		productStatusAdapter.notifyDataSetChanged();
 	}
 
 	/**
@@ -837,26 +955,105 @@ public class SelectProductPage extends BasePage implements
 					// Update the battery state
 					battery.setValue(barcodeReader.GetBatteryLevel());
 				}
-				try {
-					// Find the product
-					for (ProductStatus productStatus : allProducts) {
-						if (productStatus.getProduct().getUPC().equals(barcode)) {
-							// Found, show the update screen
-							onSelectProduct(productStatus, barcode);
-							return;
-						}
-					}
-
-					// Product not found
-					String message = getString(R.string.message_prods_barcode_not_found, barcode);
-					Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
-				} catch (IllegalStateException exc) {
-					Log.w(LOG_TAG, "Application likely lost focus after scan received", exc);
-				}
+				findScanned(barcode);
 			}
 		});
 	}
 
+	/**
+	 * Shows the product identified by a scanned code, or tells the user it was not found.
+	 * @param productStatus Scanned product, or null if not found
+	 * @param barcode Scanned code
+	 */
+	private void showScanned(ProductStatus productStatus, String barcode) {
+		try {
+			if (productStatus != null) {
+				// Found, show the update screen
+				onSelectProduct(productStatus, barcode);
+				return;
+			}
+
+			// Product not found
+			String message = getString(R.string.message_prods_barcode_not_found, barcode);
+			Toast.makeText(getContext(), message, Toast.LENGTH_SHORT).show();
+		} catch (IllegalStateException exc) {
+			Log.w(LOG_TAG, "Application likely lost focus after scan received", exc);
+		}
+	}
+
+	/**
+	 * Finds and shows the product identified by a scanned barcode or shelf tag.  Once products
+	 * are loaded the code is found in memory, before then it is looked up in the database on a
+	 * worker thread.
+	 * @param barcode Scanned code
+	 */
+	private void findScanned(String barcode) {
+		// Have the codes been loaded?
+		if (productCodes != null) {
+			Integer ordinal = ProductCode.find(productCodes, barcode);
+			showScanned((ordinal == null) ? null : allProducts.get(ordinal), barcode);
+		} else if (allProducts == null) {
+			// Nothing loaded yet
+			showScanned(null, barcode);
+		} else {
+			// Look up the code for the products loaded so far
+			new FindScannedTask(this, audit.getStoreId(), barcode).execute();
+		}
+	}
+
+	/**
+	 * Shows the product found by a database lookup of a scanned code, if it has been loaded.
+	 * @param productId Id of the scanned product, or null if not found
+	 * @param barcode Scanned code
+	 */
+	void completedFindScanned(Integer productId, String barcode) {
+		int ordinal = ((productId == null) || (productOrdinals == null))
+				? -1 : productOrdinals.get(productId, -1);
+		showScanned((ordinal < 0) ? null : allProducts.get(ordinal), barcode);
+	}
+
+	/**
+	 * Looks up a scanned code in the database on a worker thread, before the codes are loaded.
+	 */
+	private static class FindScannedTask extends AsyncTask<Void, Void, Integer> {
+
+		private WeakReference<SelectProductPage> pageRef;
+		private int storeId;
+		private String barcode;
+
+		FindScannedTask(SelectProductPage page, int storeId, String barcode) {
+			pageRef = new WeakReference<>(page);
+			this.storeId = storeId;
+			this.barcode = barcode;
+		}
+
+		@Override
+		protected Integer doInBackground(Void... voids) {
+			// Get our page
+			SelectProductPage page = pageRef.get();
+			Context context = (page == null) ? null : page.getContext();
+			if (context == null) {
+				return null;
+			}
+			try (StoresDatabase db = new StoresDatabase(context.getApplicationContext())) {
+				Store store = db.getStore(storeId);
+				return (store == null) ? null : db.findProductId(store, barcode);
+			} catch (MobileClientException exc) {
+				Log.w(LOG_TAG, "Failed to look up scanned code", exc);
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Integer productId) {
+			super.onPostExecute(productId);
+			SelectProductPage page = pageRef.get();
+			if ((page != null) && (page.getContext() != null)) {
+				page.completedFindScanned(productId, barcode);
+			}
+		}
+	}
+
 	/**
 	 * Attempts to connect to the barcode reader.
 	 */
@@ -979,19 +1176,15 @@ public class SelectProductPage extends BasePage implements
 	 * @param buttonView Clicked button
 	 */
 	private void onItemReorderStatus(final View buttonView) {
-		// We need to find the product based on the button
-		// Note: assumes product name is unique, we may have to revisit
-		ProductStatus update = null;
-		ViewGroup rowView = (ViewGroup) buttonView.getParent();
-		TextView productNameView = rowView.findViewById(R.id.productText);
-		String productName = productNameView.getText().toString();
-		for (ProductStatus find : allProducts) {
-			if (find.getProductName().equals(productName)) {
-				// Found
-				update = find;
-				break;
-			}
-		}
+		// We need to find the product based on the button's row
+		View view = getView();
+		ListView productStatusList = (view == null) ? null : (ListView) view.findViewById(R.id.productList);
+		int position = (productStatusList == null)
+				? AdapterView.INVALID_POSITION
+				: productStatusList.getPositionForView(buttonView);
+		ProductStatus update = ((position >= 0) && (position < productStatusAdapter.getCount()))
+				? productStatusAdapter.getItem(position)
+				: null;
 		if (update == null) {
 			// Unexpected, not found
 			Toast.makeText(getContext(), R.string.message_prods_not_found, Toast.LENGTH_SHORT).show();
@@ -1055,17 +1248,8 @@ public class SelectProductPage extends BasePage implements
 		}
 
 		try (AuditDatabase db = new AuditDatabase(getContext())) {
-			// Check for existing record to update
-			Report report = db.getReport(audit, update.getProduct().getId());
-			if (report == null) {
-				// New report
-				report = new Report(audit, update.getProduct(), selectedStatus.getId());
-			} else {
-				// Update existing report
-				report = new Report(report, null, selectedStatus.getId());
-			}
-
-			// Update the record
+			// Insert or update the record, matched on the product in the audit
+			Report report = new Report(audit, update.getProduct(), selectedStatus.getId());
 			db.updateReport(report);
 
 			// Do we need to get the scan?
@@ -1083,13 +1267,7 @@ public class SelectProductPage extends BasePage implements
 		}
 
 		// Is the updated status in the filter?
-		boolean isInFilter = filterReorderStatus == null;
-		for (int index = 0; !isInFilter && (index < filterReorderStatus.length); ++index) {
-			if (update.getReorderStatus() == filterReorderStatus[index]) {
-				isInFilter = true;
-			}
-		}
-		if (isInFilter) {
+		if (updateFacets(update)) {
 			// Update the filter status on the button
 			ReorderStatus displayStatus = update.getReorderStatus();
 			String statusName = displayStatus.getCode();
@@ -1136,80 +1314,21 @@ public class SelectProductPage extends BasePage implements
 
 		// Check for trivial case, no filter
 		String searchText = searchEdit.getText().toString();
-		boolean isSearchTextEmpty = searchText.matches("^\\s*$");
+		String[] tokens = getSearchTokens();
+		boolean isSearchTextEmpty = tokens == null;
 		searchButton.setImageResource(isSearchTextEmpty
 			? android.R.drawable.ic_search_category_default
 			: android.R.drawable.ic_menu_close_clear_cancel);
-		String[] tokens = isSearchTextEmpty
-				? null
-				: TextUtils.split(searchText, "\\s+");
 		if ((tokens == null) && (filterReorderStatus == null) && (filterProductTypes == null) && (filterBrands == null)) {
 			// Simple case, all products
-			productStatusAdapter.clear();
-			productStatusAdapter.addAll(allProducts);
+			showProducts(allProducts);
 			if (!initial) {
 				// Log cleared filter to analytics
 				Analytics.filter("Products", new ArrayList<String>(), "");
 			}
 		} else {
-			// Filter the products
-			List<ProductStatus> filteredProducts = new ArrayList<>();
-			for (ProductStatus product : allProducts) {
-				// Is there a reorder status filter?
-				if (filterReorderStatus != null) {
-					// Check if the product is within this filter
-					boolean isInFilter = false;
-					for (ReorderStatus status : filterReorderStatus) {
-						if (status == product.getReorderStatus()) {
-							isInFilter = true;
-							break;
-						}
-					}
-					if (!isInFilter) {
-						continue;
-					}
-				}
-
-				// Is there a product type filter?
-				if (filterProductTypes != null) {
-					// Check if the product is within this filter
-					if (!filterProductTypes.contains(product.getProductType())) {
-						// Not in product type filter
-						continue;
-					}
-				}
-
-				// Is there a brand filter?
-				if (filterBrands != null) {
-					// Check if the product is within this filter
-					if (!filterBrands.contains(product.getProduct().getDisplayBrandName())) {
-						// Not in filter
-						continue;
-					}
-				}
-
-				// Are there search tokens?
-				if (tokens != null) {
-					// Check all the tokens in the product
-					boolean isInFilter = true;
-					for (String token : tokens) {
-						if (!product.getProduct().hasToken(token)) {
-							isInFilter = false;
-							break;
-						}
-					}
-					if (!isInFilter) {
-						continue;
-					}
-				}
-
-				// The product is within the filter
-				filteredProducts.add(product);
-			}
-
 			// Push the filtered list
-			productStatusAdapter.clear();
-			productStatusAdapter.addAll(filteredProducts);
+			showProducts(getFilteredProducts(tokens, 0));
 
 			// Record analytics
 			ArrayList<String> options = new ArrayList<>();
@@ -1234,6 +1353,122 @@ public class SelectProductPage extends BasePage implements
 		}
 	}
 
+	/**
+	 * Splits the current search text into tokens.
+	 * @return Search tokens or null if there is no search text
+	 */
+	private String[] getSearchTokens() {
+		String searchText = searchEdit.getText().toString();
+		return searchText.matches("^\\s*$")
+				? null
+				: TextUtils.split(searchText, "\\s+");
+	}
+
+	/**
+	 * Updates the search field for the current lookup mode.
+	 */
+	private void updateSearchInput() {
+		searchEdit.setInputType(isKeypadLookup ? InputType.TYPE_CLASS_NUMBER : InputType.TYPE_CLASS_TEXT);
+		searchEdit.setHint(isKeypadLookup ? R.string.hint_keypad_lookup : R.string.hint_search_text);
+	}
+
+	/**
+	 * Gets the code digits to look up in keypad lookup mode.
+	 * @return Digits or null if not in keypad mode or no digits entered
+	 */
+	private String getKeypadDigits() {
+		if (!isKeypadLookup) {
+			return null;
+		}
+		String digits = searchEdit.getText().toString().replaceAll("[^0-9]", "");
+		return (digits.length() == 0) ? null : digits;
+	}
+
+	/**
+	 * Gets the products within the current filter.  Search tokens are matched through the
+	 * product index, so only the products containing every token are tested further.  In
+	 * keypad lookup mode the products are those with a code that starts or ends with the
+	 * digits entered, best candidates first.
+	 * @param tokens Search tokens or null if there is no search text
+	 * @param from Index of the first product to consider
+	 * @return Products in the filter, in list or candidate order
+	 */
+	private List<ProductStatus> getFilteredProducts(String[] tokens, int from) {
+		List<ProductStatus> filteredProducts = new ArrayList<>();
+		BitSet selected = productFacets.select(filterReorderStatus, filterProductTypes, filterBrands);
+		String digits = getKeypadDigits();
+		if (digits != null) {
+			// Test the candidates in rank order
+			for (int ordinal : codeTrie.find(digits)) {
+				if ((ordinal >= from) && selected.get(ordinal)) {
+					filteredProducts.add(allProducts.get(ordinal));
+				}
+			}
+		} else if (tokens == null) {
+			// Take every selected product
+			for (int ordinal = selected.nextSetBit(from); ordinal >= 0; ordinal = selected.nextSetBit(ordinal + 1)) {
+				filteredProducts.add(allProducts.get(ordinal));
+			}
+		} else {
+			// Test the products matching the search
+			for (int ordinal : productIndex.find(tokens, from)) {
+				if (selected.get(ordinal)) {
+					filteredProducts.add(allProducts.get(ordinal));
+				}
+			}
+		}
+		return filteredProducts;
+	}
+
+	/**
+	 * Gets the products matching the current search.
+	 * @return Matching products by ordinal, or null if there is no search
+	 */
+	private BitSet getSearchMatches() {
+		int[] ordinals;
+		String[] tokens = getSearchTokens();
+		String digits = getKeypadDigits();
+		if (digits != null) {
+			ordinals = codeTrie.find(digits);
+		} else if (tokens != null) {
+			ordinals = productIndex.find(tokens);
+		} else {
+			// No search
+			return null;
+		}
+		BitSet res = new BitSet(allProducts.size());
+		for (int ordinal : ordinals) {
+			res.set(ordinal);
+		}
+		return res;
+	}
+
+	/**
+	 * Brings the facets up to date with a product's reorder status.
+	 * @param product Product whose status may have changed, from our list
+	 * @return Flags the product as still within the current filter
+	 */
+	private boolean updateFacets(ProductStatus product) {
+		int ordinal = productOrdinals.get(product.getProduct().getId(), -1);
+		if (ordinal < 0) {
+			// Not one of ours
+			return false;
+		}
+		productFacets.setStatus(ordinal, product.getReorderStatus());
+		return productFacets.select(filterReorderStatus, filterProductTypes, filterBrands).get(ordinal);
+	}
+
+	/**
+	 * Replaces the products in the list, notifying the list once.
+	 * @param products Products to show
+	 */
+	private void showProducts(List<ProductStatus> products) {
+		productStatusAdapter.setNotifyOnChange(false);
+		productStatusAdapter.clear();
+		productStatusAdapter.addAll(products);
+		productStatusAdapter.notifyDataSetChanged();
+	}
+
 	/**
 	 * Sets the current barcode state and adjusts the user interface accordingly.
 	 * @param state New state, or UNCHANGED pseudo-state
@@ -1290,6 +1525,10 @@ public class SelectProductPage extends BasePage implements
 	 * Asks the user what they want to set to, apply.
 	 */
 	private void onSetUnscanned() {
+		if (isLoading) {
+			// Wait until all of the products are loaded
+			return;
+		}
 		CharSequence displayOptions[] = new CharSequence[] {
 				ReorderStatus.OUT_OF_STOCK.getName(),
 				ReorderStatus.VOID.getName(),
@@ -1412,7 +1651,8 @@ public class SelectProductPage extends BasePage implements
 					Toast.LENGTH_SHORT).show();
 			}
 			if (isAnyUpdated) {
-				// Refresh the list
+				// Refresh the facets and list
+				page.productFacets.syncStatuses(page.allProducts);
 				page.applyFilter(true);
 			}
 			if (isAllUpdated) {
@@ -1441,15 +1681,25 @@ public class SelectProductPage extends BasePage implements
 	}
 
 	private static final String LOG_TAG = "SelecProductPage";
+	private static final int FIRST_PAGE_SIZE = 100;
+	private static final int PAGE_SIZE = 500;
 	private static final String ARG_AUDIT = "argAudit";
 	private static final String STATE_FILTER_SEARCH = "filterSearch";
 	private static final String STATE_FILTER_REORDER_STATUS = "filterReorderStatus";
 	private static final String STATE_FILTER_PRODUCT_TYPES = "filterProductTypes";
+	private static final String STATE_KEYPAD_LOOKUP = "keypadLookup";
 
 	private Audit audit;
 	private ReorderStatus[] filterReorderStatus = new ReorderStatus[0];
 	private boolean isInModal = false;
+	private boolean isLoading = false;
 	private List<ProductStatus> allProducts;
+	private ProductSearchIndex productIndex;
+	private ProductCodeTrie codeTrie;
+	private ProductFacets productFacets;
+	private SparseIntArray productOrdinals;
+	private boolean isKeypadLookup = false;
+	private Map<String, Integer> productCodes;
 	private List<String> allProductTypes;
 	private ArrayList<String> filterProductTypes;
 	private SortedSet<String> allBrands;
@@ -1468,4 +1718,5 @@ public class SelectProductPage extends BasePage implements
 	private BarcodeState barcodeState = BarcodeState.NONE;
 	private MenuItem barcodeMenuItem;
 	private MenuItem unscannedMenuItem;
+	private MenuItem keypadMenuItem;
 }
@@ -16,6 +16,7 @@ import android.text.Editable;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.Pair;
+import android.util.SparseBooleanArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -142,7 +143,9 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 			@Override public void beforeTextChanged(CharSequence charSequence, int i, int i1, int i2) { }
 			@Override public void onTextChanged(CharSequence charSequence, int i, int i1, int i2) { }
 			@Override public void afterTextChanged(Editable editable) {
-				updateFilter(false);
+				// Search once the user pauses typing
+				searchEdit.removeCallbacks(delayedFilter);
+				searchEdit.postDelayed(delayedFilter, SEARCH_DELAY_MS);
 			}
 		});
 
@@ -328,7 +331,8 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 	}
 
 	/**
-	 * Updates the list adapter to set the current sort.
+	 * Updates the list adapter to set the current sort.  All of the stores are kept in the
+	 * current sort, so the filter can be applied without sorting again.
 	 */
 	private void updateSort() {
 		// Have we been initialized yet?
@@ -337,18 +341,28 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 			return;
 		}
 
+		// Apply the current sort
+		Comparator<Store> comparator = getSortComparator();
+		Collections.sort(allStores, comparator);
+		storeAdapter.sort(comparator);
+		updateSortButtons();
+	}
+
+	/**
+	 * Gets the comparator for the current sort.
+	 * @return Store comparator
+	 */
+	private Comparator<Store> getSortComparator() {
 		// What is the current sort that we should apply?
 		final int useDirection = currentSortDirection;
 		if (currentSortOption == SortOption.Name) {
 			// Basic store name sort
-			storeAdapter.sort(new Comparator<Store>() {
+			return new Comparator<Store>() {
 				@Override
 				public int compare(Store store, Store t1) {
 					return store.getStoreName().compareTo(t1.getStoreName()) * useDirection;
 				}
-			});
-			updateSortButtons();
-			return;
+			};
 		}
 
 		// Compare by geocode
@@ -363,8 +377,8 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 		final double srlatSource = Math.sin(rlatSource);
 		final double crlatSource = Math.cos(rlatSource);
 
-		// Apply sort comparator
-		storeAdapter.sort(new Comparator<Store>() {
+		// Compare by distance
+		return new Comparator<Store>() {
 			@Override
 			public int compare(Store t0, Store t1) {
 				// Trivial case, check geocoding
@@ -401,8 +415,7 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 				}
 				return ((distY > distX) ? 1 : -1) * useDirection;
 			}
-		});
-		updateSortButtons();
+		};
 	}
 
 	/**
@@ -424,7 +437,8 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 	}
 
 	/**
-	 * Updates the list to reflect the stores within the current filters.
+	 * Updates the list to reflect the stores within the current filters.  A search runs on a
+	 * worker thread, and the list is updated when it completes.
 	 * @param initial Flags first update after store load
 	 */
 	private void updateFilter(boolean initial) {
@@ -434,62 +448,107 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 			return;
 		}
 
-		// Is there a filter?
-		storeAdapter.clear();
+		// Drop the pending filter and any search still running, their results are stale
+		searchEdit.removeCallbacks(delayedFilter);
+		if (searchTask != null) {
+			searchTask.cancel(false);
+			searchTask = null;
+		}
+
+		// Is there a search?
 		String searchText = searchEdit.getText().toString();
 		boolean isSearchTextEmpty = searchText.matches("^\\s*$");
 		searchButton.setImageResource(isSearchTextEmpty
 				? android.R.drawable.ic_search_category_default
 				: android.R.drawable.ic_menu_close_clear_cancel);
-		String[] tokens = isSearchTextEmpty
-				? null
-				: TextUtils.split(searchText.toLowerCase(), "\\s+");
-		if ((tokens == null) && (currentChain == null)) {
+		String[] words = getSearchWords(searchText);
+		if (words == null) {
+			// Apply the chain filter now
+			applyFilter(null, initial, searchText);
+		} else {
+			// Search the stores within the chain on a worker thread
+			searchTask = new SearchStores(this, words,
+					(currentChain == null) ? 0 : currentChain.getChainId(), searchText);
+			searchTask.execute();
+		}
+	}
+
+	/**
+	 * Shows the stores within the current chain and search matches, in the current sort.
+	 * @param matchIds Ids of the stores matching the search, or null if there is no search
+	 * @param initial Flags first update after store load
+	 * @param searchText Search text entered by the user
+	 */
+	private void applyFilter(List<Integer> matchIds, boolean initial, String searchText) {
+		storeAdapter.clear();
+		if ((matchIds == null) && (currentChain == null)) {
 			// No filter
 			storeAdapter.addAll(allStores);
 			if (!initial) {
 				// Show cleared filter in analytics only after initial load
 				Analytics.filter("Stores", new ArrayList<String>(), "");
 			}
-		} else {
-			// Determine the stores within the filter
-			List<Store> filteredStores = new ArrayList<>();
-			for (Store store : allStores) {
-				// Check if the store is within the chain
-				if ((currentChain != null) && (store.getChainId() != currentChain.getChainId())) {
-					continue;
-				}
-
-				// Are there search tokens?
-				if (tokens != null) {
-					// Check all the tokens in the store
-					boolean isInFilter = true;
-					for (String token : tokens) {
-						if (!store.getStoreName().toLowerCase().contains(token)) {
-							isInFilter = false;
-							break;
-						}
-					}
-					if (!isInFilter) {
-						continue;
-					}
-				}
+			return;
+		}
 
-				// This store is within the filter
+		// Keep the stores within the filter, already in sort order
+		SparseBooleanArray isMatch = null;
+		if (matchIds != null) {
+			isMatch = new SparseBooleanArray(matchIds.size());
+			for (int storeId : matchIds) {
+				isMatch.put(storeId, true);
+			}
+		}
+		List<Store> filteredStores = new ArrayList<>();
+		for (Store store : allStores) {
+			if (((currentChain == null) || (store.getChainId() == currentChain.getChainId())) &&
+					((isMatch == null) || isMatch.get(store.getStoreId()))) {
 				filteredStores.add(store);
 			}
-			storeAdapter.addAll(filteredStores);
+		}
+		storeAdapter.addAll(filteredStores);
 
-			// Log filter in analytics
-			ArrayList<String> options = new ArrayList<>();
-			if (currentChain != null) {
-				options.add(currentChain.getChainName());
-			}
-			Analytics.filter("Stores", options, isSearchTextEmpty ? "" : searchText);
+		// Log filter in analytics
+		ArrayList<String> options = new ArrayList<>();
+		if (currentChain != null) {
+			options.add(currentChain.getChainName());
 		}
+		Analytics.filter("Stores", options, searchText.matches("^\\s*$") ? "" : searchText);
+	}
 
-		// Reassert sort
-		updateSort();
+	/**
+	 * Applies the results of a store search that completed.
+	 * @param task Search that completed
+	 * @param matchIds Ids of the matching stores, or null if the search failed
+	 * @param errorMessage Why the search failed, or null
+	 */
+	void completedSearch(SearchStores task, List<Integer> matchIds, String errorMessage) {
+		if ((task != searchTask) || (storeAdapter == null)) {
+			// Superseded by a later filter
+			return;
+		}
+		searchTask = null;
+		if (errorMessage != null) {
+			// Show the error and apply the chain filter only
+			Toast.makeText(getContext(), errorMessage, Toast.LENGTH_SHORT).show();
+		}
+		applyFilter(matchIds, false, task.searchText);
+	}
+
+	/**
+	 * Splits the search text into the words matched by the store search, which are the runs of
+	 * letters and digits.
+	 * @param searchText Search text entered by the user
+	 * @return Lower case words or null if there are none
+	 */
+	private static String[] getSearchWords(String searchText) {
+		List<String> words = new ArrayList<>();
+		for (String word : TextUtils.split(searchText.toLowerCase(), "[^\\p{L}\\p{N}]+")) {
+			if (word.length() > 0) {
+				words.add(word);
+			}
+		}
+		return words.isEmpty() ? null : words.toArray(new String[0]);
 	}
 
 	/**
@@ -631,6 +690,68 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 		}
 	}
 
+	/**
+	 * Searches the stores on a worker thread, so typing stays responsive on large catalogs.
+	 */
+	private static class SearchStores extends AsyncTask<Void, Void, List<Integer>> {
+
+		private WeakReference<SelectStorePage> pageRef;
+		private String[] words;
+		private int chainId;
+		private String searchText;
+		private String errorMessage;
+
+		/**
+		 * Initializes to search for the passed words.
+		 * @param page Page receives results
+		 * @param words Lower case words to find
+		 * @param chainId Limit results to this chain, or zero for all chains
+		 * @param searchText Search text entered by the user, for analytics
+		 */
+		SearchStores(SelectStorePage page, String[] words, int chainId, String searchText) {
+			pageRef = new WeakReference<>(page);
+			this.words = words;
+			this.chainId = chainId;
+			this.searchText = searchText;
+		}
+
+		/**
+		 * Searches the stores on a background thread.
+		 * @param voids Part of the async task superclass, ignored
+		 * @return Ids of the matching stores, or null if the search failed
+		 */
+		@Override
+		protected List<Integer> doInBackground(Void... voids) {
+			// Get the application context
+			SelectStorePage page = pageRef.get();
+			Context context = (page == null) ? null : page.getContext();
+			if (context == null) {
+				// Page is already gone
+				return null;
+			}
+
+			// Search the stores
+			try (StoresDatabase db = new StoresDatabase(context.getApplicationContext())) {
+				return db.searchStores(words, chainId);
+			} catch (MobileClientException exc) {
+				errorMessage = exc.getMessage();
+				return null;
+			}
+		}
+
+		/**
+		 * Applies the search results to the user interface.
+		 * @param matchIds Ids of the matching stores, or null if the search failed
+		 */
+		@Override
+		protected void onPostExecute(List<Integer> matchIds) {
+			SelectStorePage page = pageRef.get();
+			if ((page != null) && (page.getContext() != null)) {
+				page.completedSearch(this, matchIds, errorMessage);
+			}
+		}
+	}
+
 	/**
 	 * Populates our store list once its loaded from the database.
 	 * @param loadedStores Stores loaded from the database
@@ -657,6 +778,7 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 		});
 
 		// Complete initializing the store
+		updateSort();
 		updateFilter(true);
 	}
 
@@ -667,6 +789,7 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 	private static final String STATE_LAST_LOC_SORT_DIR = "lastLocSortDir";
 	private static final String STATE_LAST_LOC_FILT_CHAIN = "lastLocFiltChain";
 	private static final String STATE_FILTER_SEARCH = "filterSearch";
+	private static final long SEARCH_DELAY_MS = 250;
 
 	private Button chainButton;
 	private Button gpsButton;
@@ -677,6 +800,17 @@ public class SelectStorePage extends BasePage implements BeginAuditDialog.Listen
 	private ArrayAdapter<Store> storeAdapter;
 	private List<Store> allStores;
 	private List<Chain> allChains;
+	private SearchStores searchTask;
+
+	/**
+	 * Applies the search once the user pauses typing.
+	 */
+	private final Runnable delayedFilter = new Runnable() {
+		@Override
+		public void run() {
+			updateFilter(false);
+		}
+	};
 
 	/**
 	 * Options for sorting stores on the page.
@@ -14,6 +14,8 @@ import android.widget.CompoundButton;
 import android.widget.Switch;
 
 import com.auditpro.mobile_client.Analytics;
+import com.auditpro.mobile_client.MainActivity;
+import com.auditpro.mobile_client.UploadJobService;
 import com.auditpro.mobile_client.security.Security;
 import com.auditpro.mobile_client.test.R;
 
@@ -64,6 +66,10 @@ public class SettingsPage extends BasePage  {
 			public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
 				Analytics.log("Settings", Security.SETTING_AUTOSYNC_WIFI, isChecked);
 				sec.setSetting(Security.SETTING_AUTOSYNC_WIFI, isChecked);
+
+				// Start or stop the background upload to match
+				UploadJobService.schedule(getContext(),
+						((MainActivity) getActivity()).getSessionToken(), sec.getUserId());
 			}
 		});
 
@@ -7,6 +7,7 @@ package com.auditpro.mobile_client.pages;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.DialogInterface;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v7.app.AlertDialog;
@@ -25,6 +26,7 @@ import android.widget.Toast;
 
 import com.auditpro.mobile_client.MobileClientException;
 import com.auditpro.mobile_client.database.AuditDatabase;
+import com.auditpro.mobile_client.database.StoresDatabase;
 import com.auditpro.mobile_client.entities.Audit;
 import com.auditpro.mobile_client.entities.Product;
 import com.auditpro.mobile_client.entities.ProductStatus;
@@ -34,6 +36,7 @@ import com.auditpro.mobile_client.entities.Scan;
 import com.auditpro.mobile_client.security.Security;
 import com.auditpro.mobile_client.test.R;
 
+import java.lang.ref.WeakReference;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -106,6 +109,87 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 				initReorderStatus = ReorderStatus.fromId(args.getInt(ARG_INIT_REORDER_STATUS));
 			}
 		}
+
+		// The product list only carries summaries, load the full product details
+		if ((productStatus != null) && productStatus.getProduct().isSummary()) {
+			detailTask = new LoadDetailTask(this, productStatus.getProduct().getId());
+			detailTask.execute();
+		}
+	}
+
+	/**
+	 * Shows the full product details once loaded, and the values that depend on them.
+	 * @param detail Full product, or null to continue with the summary
+	 * @param errorMessage Error message if the load failed
+	 */
+	void completedLoadDetail(Product detail, String errorMessage) {
+		detailTask = null;
+		if (detail != null) {
+			productStatus.setProduct(detail);
+		} else if (errorMessage != null) {
+			// Continue with the summary
+			Toast.makeText(getContext(), errorMessage, Toast.LENGTH_SHORT).show();
+		}
+		if (getView() != null) {
+			// The view was created while loading
+			initValues(pendingState);
+			pendingState = null;
+		}
+	}
+
+	/**
+	 * Loads the full product details on a worker thread, holding the page behind the activity
+	 * indicator until they are shown.
+	 */
+	private static class LoadDetailTask extends AsyncTask<Void, Void, Product> {
+
+		private WeakReference<UpdateProductPage> pageRef;
+		private int productId;
+		private String errorMessage;
+
+		LoadDetailTask(UpdateProductPage page, int productId) {
+			pageRef = new WeakReference<>(page);
+			this.productId = productId;
+		}
+
+		@Override
+		protected void onPreExecute() {
+			super.onPreExecute();
+			UpdateProductPage page = pageRef.get();
+			IPageParent parent = (page == null) ? null : page.getParent();
+			if (parent != null) {
+				parent.setActivity(true);
+			}
+		}
+
+		@Override
+		protected Product doInBackground(Void... voids) {
+			// Get our page
+			UpdateProductPage page = pageRef.get();
+			Context context = (page == null) ? null : page.getContext();
+			if (context == null) {
+				return null;
+			}
+			try (StoresDatabase db = new StoresDatabase(context.getApplicationContext())) {
+				return db.getProduct(productId);
+			} catch (MobileClientException exc) {
+				// Failed to read the product
+				errorMessage = exc.getMessage();
+				return null;
+			}
+		}
+
+		@Override
+		protected void onPostExecute(Product detail) {
+			super.onPostExecute(detail);
+			UpdateProductPage page = pageRef.get();
+			IPageParent parent = (page == null) ? null : page.getParent();
+			if (parent == null) {
+				return;
+			}
+			parent.setActivity(false);
+			page.completedLoadDetail(detail, errorMessage);
+		}
 	}
 
 	/**
@@ -183,6 +267,63 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 		});
 
 
+		// Attach the input controls
+		retailPriceEdit = view.findViewById(R.id.retailPriceEdit);
+		salePriceEdit = view.findViewById(R.id.salePriceEdit);
+		retailPriceEdit.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+			@Override
+			public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
+				if ((i == EditorInfo.IME_ACTION_UNSPECIFIED) && (keyEvent != null) &&
+						(keyEvent.getKeyCode() == KeyEvent.KEYCODE_ENTER)) {
+					if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
+						return true;
+					}
+					i = EditorInfo.IME_ACTION_NEXT;
+				}
+				if (i == EditorInfo.IME_ACTION_NEXT) {
+					salePriceEdit.requestFocus();
+					return true;
+				}
+				return false;
+			}
+		});
+		salePriceEdit.setOnEditorActionListener(new TextView.OnEditorActionListener() {
+			@Override
+			public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
+				if ((i == EditorInfo.IME_ACTION_UNSPECIFIED) && (keyEvent != null) &&
+						(keyEvent.getKeyCode() == KeyEvent.KEYCODE_ENTER)) {
+					if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
+						return true;
+					}
+					i = EditorInfo.IME_ACTION_NEXT;
+				}
+				if (i == EditorInfo.IME_ACTION_NEXT) {
+					InputMethodManager imm = (InputMethodManager) getActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
+					if (imm != null) {
+						imm.hideSoftInputFromWindow(salePriceEdit.getWindowToken(), 0);
+					}
+					onReorderStatus();
+					return true;
+				}
+				return false;
+			}
+		});
+
+		// Show the values once the full product is loaded
+		if (detailTask == null) {
+			initValues(savedInstanceState);
+		} else {
+			pendingState = savedInstanceState;
+		}
+	}
+
+	/**
+	 * Initializes the prices and reorder status from the saved state or the database, and the
+	 * options that depend on the full product details.
+	 * @param savedInstanceState Optional state
+	 */
+	@SuppressLint("DefaultLocale")
+	private void initValues(Bundle savedInstanceState) {
 		// Figure out initial values for the price edits
 		Double retailPrice = null;
 		Double salePrice = null;
@@ -249,8 +390,6 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 		}
 
 		// Set the input controls
-		retailPriceEdit = view.findViewById(R.id.retailPriceEdit);
-		salePriceEdit = view.findViewById(R.id.salePriceEdit);
 		retailPriceEdit.requestFocus();
 		retailPriceEdit.setText((retailPrice == null) ? "" : String.format("%.2f", retailPrice));
 		salePriceEdit.setText((salePrice == null) ? "" : String.format("%.2f", salePrice));
@@ -259,44 +398,6 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 				? ReorderStatus.IN_STOCK.getName()
 				: reorderStatus.getName()
 		);
-		retailPriceEdit.setOnEditorActionListener(new TextView.OnEditorActionListener() {
-			@Override
-			public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
-				if ((i == EditorInfo.IME_ACTION_UNSPECIFIED) && (keyEvent != null) &&
-						(keyEvent.getKeyCode() == KeyEvent.KEYCODE_ENTER)) {
-					if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
-						return true;
-					}
-					i = EditorInfo.IME_ACTION_NEXT;
-				}
-				if (i == EditorInfo.IME_ACTION_NEXT) {
-					salePriceEdit.requestFocus();
-					return true;
-				}
-				return false;
-			}
-		});
-		salePriceEdit.setOnEditorActionListener(new TextView.OnEditorActionListener() {
-			@Override
-			public boolean onEditorAction(TextView textView, int i, KeyEvent keyEvent) {
-				if ((i == EditorInfo.IME_ACTION_UNSPECIFIED) && (keyEvent != null) &&
-						(keyEvent.getKeyCode() == KeyEvent.KEYCODE_ENTER)) {
-					if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
-						return true;
-					}
-					i = EditorInfo.IME_ACTION_NEXT;
-				}
-				if (i == EditorInfo.IME_ACTION_NEXT) {
-					InputMethodManager imm = (InputMethodManager) getActivity().getSystemService(Context.INPUT_METHOD_SERVICE);
-					if (imm != null) {
-						imm.hideSoftInputFromWindow(salePriceEdit.getWindowToken(), 0);
-					}
-					onReorderStatus();
-					return true;
-				}
-				return false;
-			}
-		});
 		if (sec.optSettingBool(Security.SETTING_AUTO_DECIMAL, true)) {
 			retailPriceEdit.addTextChangedListener(this);
 			salePriceEdit.addTextChangedListener(this);
@@ -354,6 +455,21 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 	@Override
 	public void onSaveInstanceState(Bundle outState) {
 		super.onSaveInstanceState(outState);
+		if (detailTask != null) {
+			// Nothing shown yet, keep the state restored before the load
+			if (pendingState != null) {
+				if (pendingState.containsKey(STATE_RETAIL_PRICE)) {
+					outState.putDouble(STATE_RETAIL_PRICE, pendingState.getDouble(STATE_RETAIL_PRICE));
+				}
+				if (pendingState.containsKey(STATE_SALE_PRICE)) {
+					outState.putDouble(STATE_SALE_PRICE, pendingState.getDouble(STATE_SALE_PRICE));
+				}
+				if (pendingState.containsKey(STATE_REORDER_STATUS)) {
+					outState.putInt(STATE_REORDER_STATUS, pendingState.getInt(STATE_REORDER_STATUS));
+				}
+			}
+			return;
+		}
 		Double retailPrice = validateInput(retailPriceEdit, null);
 		Double salePrice = validateInput(salePriceEdit, null);
 		ReorderStatus reorderStatus = ReorderStatus.fromName(reorderStatusButton.getText().toString());
@@ -418,6 +534,16 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 	 */
 	@Override
 	public boolean onBack() {
+		if (detailTask != null) {
+			// Nothing shown to save yet
+			detailTask.cancel(false);
+			detailTask = null;
+			IPageParent parent = getParent();
+			if (parent != null) {
+				parent.setActivity(false);
+			}
+			return true;
+		}
 		saveProduct();
 		return true;
 	}
@@ -729,6 +855,8 @@ public class UpdateProductPage extends BasePage implements TextWatcher {
 	private boolean isAutoDecimalEnabled;
 	private ReorderStatus initReorderStatus;
 	private ReorderStatus oldReorderStatus;
+	private LoadDetailTask detailTask;
+	private Bundle pendingState;
 
 	private EditText retailPriceEdit;
 	private EditText salePriceEdit;
@@ -10,6 +10,7 @@ import android.util.Log;
 import android.util.Pair;
 import android.util.SparseArray;
 
+import com.auditpro.mobile_client.api.CacheValidator;
 import com.auditpro.mobile_client.api.UserResponse;
 import com.auditpro.mobile_client.entities.SKUCondition;
 
@@ -119,6 +120,8 @@ public class Security {
 	public static final String SETTING_PRINT_VOIDS = "print_voids"; // Bool default false
 	public static final String SETTING_PRINT_CONDITIONS = "print_conditions"; // Bool default false
 	public static final String SETTING_PRINT_STORE_NOTES = "print_store_notes"; // Bool default false
+	public static final String SETTING_GZIP_UPLOAD = "gzip_upload"; // Bool default false
+	public static final String SETTING_CHUNKED_UPLOAD = "chunked_upload"; // Bool default false
 	@SuppressWarnings("unused") public static final String SETTING_ALLOW_CHAIN_SKU = "allow_chain_sku"; // Bool
 	@SuppressWarnings("unused") public static final String SETTING_AUDIT_DISTANCE_MAX_MILES = "audit_distance_max_miles"; // Double
 
@@ -280,6 +283,31 @@ public class Security {
 		editor.apply();
 	}
 
+	/**
+	 * Keeps the token of the current session, so background uploads use the credentials of
+	 * whoever is logged in when they run.
+	 * @param sessionToken Token for remote API access, or null on logout
+	 */
+	public void setSessionToken(String sessionToken) {
+		SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		SharedPreferences.Editor editor = prefs.edit();
+		if (sessionToken == null) {
+			editor.remove(SESSIONTOKEN_KEY);
+		} else {
+			editor.putString(SESSIONTOKEN_KEY, sessionToken);
+		}
+		editor.apply();
+	}
+
+	/**
+	 * Gets the token of the current session.
+	 * @return Token for remote API access, or null if logged out
+	 */
+	public String getSessionToken() {
+		SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		return prefs.getString(SESSIONTOKEN_KEY, null);
+	}
+
 	/**
 	 * Saves the store database version following sync.
 	 * @param storeVersion Current store database version code at sync
@@ -301,6 +329,45 @@ public class Security {
 		return prefs.getInt(SYNCSTORESVER_KEY, 0) < storeVersion;
 	}
 
+	/**
+	 * Gets the cache validators kept for a web service resource.  Validators kept for another
+	 * user are ignored, since the cache then holds that user's data.
+	 * @param resource Names the resource
+	 * @return Validators or null if none for the current user
+	 */
+	public CacheValidator getCacheValidator(String resource) {
+		SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		if (prefs.getInt(VALIDATOR_USERID_KEY_PREFIX + resource, -1) != getUserId()) {
+			// None kept for this user
+			return null;
+		}
+		CacheValidator res = new CacheValidator(
+				prefs.getString(VALIDATOR_ETAG_KEY_PREFIX + resource, null),
+				prefs.getString(VALIDATOR_MODIFIED_KEY_PREFIX + resource, null));
+		return res.isEmpty() ? null : res;
+	}
+
+	/**
+	 * Keeps the cache validators for a web service resource after its response has been
+	 * applied to the cache.
+	 * @param resource Names the resource
+	 * @param validator Validators to keep, or null to clear them
+	 */
+	public void setCacheValidator(String resource, CacheValidator validator) {
+		SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		SharedPreferences.Editor editor = prefs.edit();
+		if (validator == null) {
+			editor.remove(VALIDATOR_USERID_KEY_PREFIX + resource);
+			editor.remove(VALIDATOR_ETAG_KEY_PREFIX + resource);
+			editor.remove(VALIDATOR_MODIFIED_KEY_PREFIX + resource);
+		} else {
+			editor.putInt(VALIDATOR_USERID_KEY_PREFIX + resource, getUserId());
+			editor.putString(VALIDATOR_ETAG_KEY_PREFIX + resource, validator.getETag());
+			editor.putString(VALIDATOR_MODIFIED_KEY_PREFIX + resource, validator.getLastModified());
+		}
+		editor.apply();
+	}
+
 	/**
 	 * Applies a secure password hash.
 	 * @param password Password to hash
@@ -355,5 +422,9 @@ public class Security {
 	private static final String LASTAUDITLAT_KEY = "lastauditlat";
 	private static final String LASTAUDITLON_KEY = "lastauditlon";
 	private static final String SYNCSTORESVER_KEY = "syncstoresver";
+	private static final String SESSIONTOKEN_KEY = "sessiontoken";
 	private static final String CLIENT_SETTING_KEY_PREFIX = "clientsetting_";
+	private static final String VALIDATOR_USERID_KEY_PREFIX = "validatoruserid_";
+	private static final String VALIDATOR_ETAG_KEY_PREFIX = "validatoretag_";
+	private static final String VALIDATOR_MODIFIED_KEY_PREFIX = "validatormodified_";
 }
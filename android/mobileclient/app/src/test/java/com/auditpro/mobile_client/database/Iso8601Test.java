@@ -0,0 +1,205 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Fuzzes Iso8601 against the SimpleDateFormat code it replaced.  Iso8601BenchmarkTest times
+ * both on a device.
+ * @author Eric Ruck
+ */
+public class Iso8601Test {
+
+	@Before
+	public void setUp() {
+		savedZone = TimeZone.getDefault();
+	}
+
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(savedZone);
+	}
+
+	@Test
+	public void formatMatchesLegacy() {
+		Random random = new Random(SEED);
+		for (String zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			for (int index = 0; index < FUZZ_COUNT; ++index) {
+				Date date = new Date(randomMillis(random));
+				String expected = legacyFormat(date);
+				assertEquals(zone + " " + date.getTime(), expected, Iso8601.format(date));
+				assertEquals(expected, legacyParse(expected), Iso8601.parse(expected));
+			}
+		}
+	}
+
+	@Test
+	public void parseMatchesLegacy() {
+		Random random = new Random(SEED);
+		for (String zone : ZONES) {
+			TimeZone.setDefault(TimeZone.getTimeZone(zone));
+			for (int index = 0; index < FUZZ_COUNT; ++index) {
+				String source = randomTimeStamp(random);
+				assertEquals(source, legacyParse(source), Iso8601.parse(source));
+			}
+		}
+	}
+
+	@Test
+	public void parseMatchesLegacyExamples() {
+		String[] sources = {
+				"2018-06-01T10:15:30.000+0000",
+				"2018-06-01T10:15:30.000Z",
+				"2018-06-01T10:15:30Z",
+				"2018-06-01T10:15:30+0530",
+				"2018-06-01T10:15:30.000-0500",
+				"2018-06-01T10:15:30.5+0000",
+				"2018-06-01T10:15:30.123456+0000",
+				"2018-06-01T10:15:30.0001234567890+0000",
+				"2018-02-30T10:15:30.000+0000",
+				"2016-02-29T10:15:30.000+0000",
+				"2018-00-00T10:15:30.000+0000",
+				"2018-13-01T10:15:30.000+0000",
+				"2018-06-01T24:00:00.000+0000",
+				"2018-06-01T10:60:60.000+0000",
+				"2018-06-01T10:15:30.000+0500junk",
+				"2018-06-01T10:15:30Zjunk",
+				"2018-06-01T10:15:30.000+2400",
+				"2018-06-01T10:15:30.000+0560",
+				"2018-06-01T10:15:30.000+05",
+				"2018-06-01T10:15:30.+0000",
+				"2018-06-01T10:15:30.000",
+				"2018-06-01",
+				"not a time stamp"
+		};
+		for (String source : sources) {
+			assertEquals(source, legacyParse(source), Iso8601.parse(source));
+		}
+	}
+
+	@Test
+	public void parseDeliberateDifferences() {
+		// Accepted now, rejected before
+		assertNull(legacyParse("2018-06-01T10:15:30-0500"));
+		assertEquals(legacyParse("2018-06-01T10:15:30.000-0500"), Iso8601.parse("2018-06-01T10:15:30-0500"));
+		assertNull(legacyParse("2018-06-01T10:15:30.000+05:30"));
+		assertEquals(legacyParse("2018-06-01T10:15:30.000+0530"), Iso8601.parse("2018-06-01T10:15:30.000+05:30"));
+
+		// Rejected now, accepted before
+		String[] tolerated = {
+				"2018-6-1T10:15:30.000+0000",
+				" 2018-06-01T10:15:30.000+0000",
+				"2018-06-01T10:15:30.000 +0000",
+				"2018-06-01T10:15:30.000GMT+05:00",
+				"2018-06-01T10:15:30.-5+0000",
+				"2018-06-01T10:15:30.1234567890123456789+0000"
+		};
+		for (String source : tolerated) {
+			assertNotNull(source, legacyParse(source));
+			assertNull(source, Iso8601.parse(source));
+		}
+	}
+
+	/**
+	 * Gets a random instant between 1900 and 2100.
+	 * @param random Random source
+	 * @return Epoch milliseconds
+	 */
+	private static long randomMillis(Random random) {
+		return MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+	}
+
+	/**
+	 * Builds a random time stamp from the forms both parsers read the same way, including out
+	 * of range fields, odd fractions, bad offsets and trailing text.
+	 * @param random Random source
+	 * @return Time stamp text
+	 */
+	private static String randomTimeStamp(Random random) {
+		StringBuilder res = new StringBuilder();
+		res.append(String.format(Locale.US, "%04d-%02d-%02dT%02d:%02d:%02d",
+				1900 + random.nextInt(201), random.nextInt(14), random.nextInt(33),
+				random.nextInt(25), random.nextInt(61), random.nextInt(61)));
+		boolean isNegative = random.nextInt(3) == 0;
+		boolean isUtc = !isNegative && (random.nextInt(3) == 0);
+
+		// The old parser only read a missing fraction before Z or a positive offset
+		if (isNegative || (random.nextInt(4) != 0)) {
+			res.append('.');
+			int digits = 1 + random.nextInt(random.nextInt(8) == 0 ? 12 : 4);
+			for (int index = 0; index < digits; ++index) {
+				res.append((char) ('0' + random.nextInt(10)));
+			}
+		}
+		if (isUtc) {
+			res.append('Z');
+			if (random.nextInt(10) == 0) {
+				res.append("junk");
+			}
+		} else {
+			res.append(isNegative ? '-' : '+');
+			res.append(String.format(Locale.US, "%02d%02d",
+					random.nextInt(random.nextInt(10) == 0 ? 30 : 24),
+					random.nextInt(random.nextInt(10) == 0 ? 70 : 60)));
+			if (random.nextInt(10) == 0) {
+				res.append(" junk");
+			}
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Parses as BaseDatabase.parseDateTime did before Iso8601.
+	 * @param source Time stamp text
+	 * @return Parsed date or null
+	 */
+	private static Date legacyParse(String source) {
+		if ((source == null) || source.matches("^\\s*$")) {
+			return null;
+		}
+		SimpleDateFormat df = new SimpleDateFormat(LEGACY_PATTERN, Locale.US);
+		ParsePosition pos = new ParsePosition(0);
+		String parse = source.
+				replaceAll("Z$", "+0000").
+				replaceAll("(?<=T\\d\\d:\\d\\d:\\d\\d)\\+", ".000+");
+		return df.parse(parse, pos);
+	}
+
+	/**
+	 * Formats as BaseDatabase.parseDateTime did before Iso8601.
+	 * @param source Date to format
+	 * @return Time stamp text
+	 */
+	private static String legacyFormat(Date source) {
+		SimpleDateFormat df = new SimpleDateFormat(LEGACY_PATTERN, Locale.US);
+		return df.format(source);
+	}
+
+	private static final String LEGACY_PATTERN = "yyyy-MM-dd'T'HH:mm:ss.SSSZ";
+	private static final String[] ZONES = {
+			"UTC", "America/New_York", "America/St_Johns", "Asia/Kolkata", "Australia/Lord_Howe",
+			"Europe/Amsterdam", "Pacific/Kiritimati"
+	};
+	private static final long SEED = 8601;
+	private static final int FUZZ_COUNT = 20000;
+	private static final long MIN_MILLIS = -2208988800000L; // 1900-01-01
+	private static final long MAX_MILLIS = 4102444800000L; // 2100-01-01
+
+	private TimeZone savedZone;
+}
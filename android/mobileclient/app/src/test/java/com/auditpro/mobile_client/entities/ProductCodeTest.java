@@ -0,0 +1,111 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks the keys ProductCode derives from product codes and scans, and the rank of each key.
+ * @author Eric Ruck
+ */
+public class ProductCodeTest {
+
+	@Test
+	public void stripsLeadingZeros() {
+		// UPC-A, EAN-13 and GTIN-14 forms of one number share their keys
+		List<String> expected = Arrays.asList("12345678905", "1234567890");
+		assertEquals(expected, ProductCode.getKeys("012345678905", true));
+		assertEquals(expected, ProductCode.getKeys("0012345678905", true));
+		assertEquals(expected, ProductCode.getKeys("00012345678905", true));
+
+		// A code of zeros keeps one
+		assertEquals(Collections.singletonList("0"), ProductCode.getKeys("0000", false));
+	}
+
+	@Test
+	public void stripsValidCheckDigit() {
+		assertEquals(Arrays.asList("96385074", "9638507"), ProductCode.getKeys("96385074", true));
+
+		// An invalid check digit is part of the code
+		assertEquals(Collections.singletonList("12345678900"),
+				ProductCode.getKeys("012345678900", true));
+
+		// Codes other than barcodes keep their last digit
+		assertEquals(Collections.singletonList("12345678905"),
+				ProductCode.getKeys("012345678905", false));
+	}
+
+	@Test
+	public void expandsUpcE() {
+		// 04252614 is 042100005264 compressed, and is not a valid EAN-8
+		assertEquals(Arrays.asList("4252614", "42100005264", "4210000526"),
+				ProductCode.getKeys("04252614", true));
+
+		// Each form of the last digit
+		assertEquals("1200000345", expandedKey("01234505"));
+		assertEquals("1230000045", expandedKey("01234531"));
+		assertEquals("1234000005", expandedKey("01234543"));
+		assertEquals("1234500007", expandedKey("01234572"));
+
+		// Only number systems 0 and 1 compress, and the expanded check digit must be valid
+		assertEquals(2, ProductCode.getKeys("21234507", true).size());
+		assertEquals(1, ProductCode.getKeys("01234500", true).size());
+	}
+
+	@Test
+	public void cleansCodes() {
+		assertEquals(Collections.singletonList("AB12C"), ProductCode.getKeys("ab-12 c", true));
+		assertTrue(ProductCode.getKeys(null, true).isEmpty());
+		assertTrue(ProductCode.getKeys(" - ", true).isEmpty());
+		assertEquals("0123", ProductCode.getDigits("0 12-3"));
+		assertNull(ProductCode.getDigits("12a"));
+		assertNull(ProductCode.getDigits(" "));
+		assertNull(ProductCode.getDigits(null));
+	}
+
+	@Test
+	public void findsScannedForms() {
+		Map<String, Integer> codes = new HashMap<>();
+		for (String key : ProductCode.getKeys("042100005264", true)) {
+			codes.put(key, 7);
+		}
+		assertEquals(Integer.valueOf(7), ProductCode.find(codes, "042100005264"));
+		assertEquals(Integer.valueOf(7), ProductCode.find(codes, "0042100005264"));
+		assertEquals(Integer.valueOf(7), ProductCode.find(codes, "04252614"));
+		assertEquals(Integer.valueOf(7), ProductCode.find(codes, "04210000526"));
+		assertNull(ProductCode.find(codes, "042100005265"));
+	}
+
+	@Test
+	public void ranksByCodeThenVariant() {
+		assertEquals(0, ProductCode.getRank(0, 0));
+		assertEquals(3, ProductCode.getRank(0, 3));
+		assertEquals(4, ProductCode.getRank(1, 0));
+		assertEquals(2 * 4 + 1, ProductCode.getRank(2, 1));
+
+		// Every variant of a code ranks ahead of the next code
+		assertTrue(ProductCode.getKeys("04252614", true).size() <= ProductCode.MAX_VARIANTS);
+		assertTrue(ProductCode.getRank(0, ProductCode.MAX_VARIANTS - 1) < ProductCode.getRank(1, 0));
+	}
+
+	/**
+	 * Gets the UPC-A key, without its check digit, expanded from a UPC-E barcode.
+	 * @param upcE UPC-E barcode
+	 * @return Expanded key without the check digit
+	 */
+	private static String expandedKey(String upcE) {
+		List<String> keys = ProductCode.getKeys(upcE, true);
+		return keys.get(keys.size() - 1);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Checks ProductCodeTrie lookups by the first and last digits of a code, the order of the
+ * results, and the edges of the input and of the trie's storage.
+ * @author Eric Ruck
+ */
+public class ProductCodeTrieTest {
+
+	@Test
+	public void findsByFirstOrLastDigits() {
+		ProductCodeTrie trie = new ProductCodeTrie();
+		assertEquals(0, trie.add(new TestProduct("012345678905", null, null, null)));
+		assertEquals(1, trie.add(new TestProduct(null, "4455", "99912345", null)));
+		assertEquals(2, trie.add(new TestProduct("777", null, null, "RC-5678")));
+
+		// Leading digits ignore the zeros before them, trailing digits do not
+		assertArrayEquals(new int[] { 0 }, trie.find("1234"));
+		assertArrayEquals(new int[] { 0 }, trie.find("0001234"));
+		assertArrayEquals(new int[] { 1 }, trie.find("999"));
+		assertArrayEquals(new int[] { 0 }, trie.find("8905"));
+
+		// A code with letters is not numeric, so it is not indexed
+		assertArrayEquals(new int[0], trie.find("5678"));
+
+		// Either end of any code
+		assertArrayEquals(new int[] { 1, 0 }, trie.find("12345"));
+		assertArrayEquals(new int[0], trie.find("6"));
+	}
+
+	@Test
+	public void ranksCloserCodesFirst() {
+		ProductCodeTrie trie = new ProductCodeTrie();
+		trie.add(new TestProduct("5551234", null, null, null));
+		trie.add(new TestProduct(null, "555", null, null));
+		trie.add(new TestProduct("555", null, null, null));
+		trie.add(new TestProduct(null, null, "55512", null));
+		trie.add(new TestProduct("555", null, null, null));
+
+		// Complete codes first, the UPC ahead of the SKU, then the fewest digits left, then
+		// the order added
+		assertArrayEquals(new int[] { 2, 4, 1, 3, 0 }, trie.find("555"));
+	}
+
+	@Test
+	public void keepsBestScorePerProduct() {
+		ProductCodeTrie trie = new ProductCodeTrie();
+		trie.add(new TestProduct("123456", null, "123", null));
+		trie.add(new TestProduct("1234", null, null, null));
+
+		// The product is listed once, at the score of its closest code
+		assertArrayEquals(new int[] { 0, 1 }, trie.find("123"));
+
+		// Lookups do not carry scores over
+		assertArrayEquals(new int[] { 1, 0 }, trie.find("1234"));
+		assertArrayEquals(new int[] { 0, 1 }, trie.find("123"));
+	}
+
+	@Test
+	public void handlesInputEdges() {
+		ProductCodeTrie trie = new ProductCodeTrie();
+		trie.add(new TestProduct("1000", null, null, null));
+		trie.add(new TestProduct("2000", null, null, null));
+
+		// Zeros alone only match the end of a code
+		assertArrayEquals(new int[] { 0, 1 }, trie.find("000"));
+		assertArrayEquals(new int[0], trie.find("12a"));
+		assertArrayEquals(new int[0], trie.find("0000000"));
+	}
+
+	@Test
+	public void growsPastInitialCapacity() {
+		ProductCodeTrie trie = new ProductCodeTrie();
+		for (int ordinal = 0; ordinal < GROWTH_PRODUCTS; ++ordinal) {
+			assertEquals(ordinal, trie.add(new TestProduct(code(ordinal), null, null, null)));
+		}
+		for (int ordinal = 0; ordinal < GROWTH_PRODUCTS; ordinal += 97) {
+			int[] found = trie.find(code(ordinal));
+			assertTrue(found.length > 0);
+			assertEquals(ordinal, found[0]);
+		}
+	}
+
+	/**
+	 * Builds a distinct code for a product.
+	 * @param ordinal Product ordinal
+	 * @return Code with the ordinal spread over its digits
+	 */
+	private static String code(int ordinal) {
+		return String.format(Locale.US, "9%07d", ordinal * 7919L % 10000000L);
+	}
+
+	/**
+	 * Product with just the codes the trie reads.
+	 */
+	private static class TestProduct extends Product {
+		TestProduct(String upc, String brandSku, String chainSku, String reorderCode) {
+			setUPC(upc);
+			setBrandSKU(brandSku);
+			setChainSKU(chainSku);
+			setCurrentReorderCode(reorderCode);
+		}
+	}
+
+	private static final int GROWTH_PRODUCTS = 5000;
+}
@@ -0,0 +1,291 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Fuzzes ProductFacets against the field by field filter test it replaced, including status
+ * changes and counts.  ProductFacetsBenchmarkTest times both on a device.
+ * @author Eric Ruck
+ */
+public class ProductFacetsTest {
+
+	@Test
+	public void selectMatchesFilter() {
+		Random random = new Random(SEED);
+		List<ProductStatus> products = randomProducts(random, FUZZ_PRODUCTS);
+		ProductFacets facets = facetsOf(products);
+		for (int round = 0; round < FUZZ_ROUNDS; ++round) {
+			// Change some statuses, one at a time or in bulk
+			boolean isBulk = random.nextBoolean();
+			for (int change = random.nextInt(5); change > 0; --change) {
+				int ordinal = random.nextInt(products.size());
+				ReorderStatus status = setRandomStatus(random, products.get(ordinal));
+				if (!isBulk) {
+					facets.setStatus(ordinal, status);
+				}
+			}
+			if (isBulk) {
+				facets.syncStatuses(products);
+			}
+
+			// Select with a random filter
+			Filter filter = new Filter(random);
+			BitSet selected = facets.select(filter.statuses, filter.types, filter.brands);
+			assertEquals(filter.toString(), filter.select(products), selected);
+		}
+	}
+
+	@Test
+	public void countMatchesFilter() {
+		Random random = new Random(SEED);
+		List<ProductStatus> products = randomProducts(random, FUZZ_PRODUCTS);
+		ProductFacets facets = facetsOf(products);
+		for (int round = 0; round < FUZZ_ROUNDS / 10; ++round) {
+			Filter filter = new Filter(random);
+			BitSet within = null;
+			if (random.nextBoolean()) {
+				// Count within a search
+				within = new BitSet();
+				for (int ordinal = 0; ordinal < products.size(); ++ordinal) {
+					within.set(ordinal, random.nextInt(3) == 0);
+				}
+			}
+			ProductFacets.Counts counts = facets.count(within, filter.statuses, filter.types,
+					filter.brands);
+
+			// Each count is what selecting only that value within the other filters shows
+			String descr = filter.toString();
+			for (ReorderStatus status : ReorderStatus.Statuses) {
+				Filter only = filter.copy();
+				only.statuses = new ReorderStatus[] { status };
+				assertEquals(descr + " " + status.getName(), countWithin(only.select(products), within),
+						counts.getStatusCount(status));
+			}
+			for (String type : TYPES) {
+				Filter only = filter.copy();
+				only.types = Arrays.asList(type);
+				assertEquals(descr + " " + type, countWithin(only.select(products), within),
+						counts.getTypeCount(type));
+			}
+			for (String brand : BRANDS) {
+				Filter only = filter.copy();
+				only.brands = Arrays.asList(brand);
+				assertEquals(descr + " " + brand, countWithin(only.select(products), within),
+						counts.getBrandCount(brand));
+			}
+			assertEquals(0, counts.getBrandCount("Unknown Brand"));
+		}
+	}
+
+	/**
+	 * Counts the selected products within a search.
+	 * @param selected Selected products
+	 * @param within Products in the search, or null for all
+	 * @return Count of selected products in the search
+	 */
+	private static int countWithin(BitSet selected, BitSet within) {
+		if (within != null) {
+			selected.and(within);
+		}
+		return selected.cardinality();
+	}
+
+	/**
+	 * Adds products to new facets in order.
+	 * @param products Products to add
+	 * @return Product facets
+	 */
+	private static ProductFacets facetsOf(List<ProductStatus> products) {
+		ProductFacets res = new ProductFacets();
+		res.addAll(products);
+		assertEquals(products.size(), res.size());
+		return res;
+	}
+
+	/**
+	 * Builds products with random types, brands and statuses, some missing.
+	 * @param random Random source
+	 * @param count Number of products
+	 * @return Product statuses
+	 */
+	private static List<ProductStatus> randomProducts(Random random, int count) {
+		List<ProductStatus> res = new ArrayList<>();
+		for (int id = 1; id <= count; ++id) {
+			TestProduct product = new TestProduct(id);
+			product.setProductTypeName(TYPES[random.nextInt(TYPES.length)]);
+			String brand = BRANDS[random.nextInt(BRANDS.length)];
+			if (random.nextBoolean()) {
+				product.setBrandName(brand);
+			} else {
+				product.setBrandNameShort(brand);
+			}
+			ProductStatus status = new ProductStatus(product);
+			setRandomStatus(random, status);
+			res.add(status);
+		}
+		return res;
+	}
+
+	/**
+	 * Records a random status for a product as the audit would.
+	 * @param random Random source
+	 * @param product Product to update
+	 * @return New reorder status
+	 */
+	private static ReorderStatus setRandomStatus(Random random, ProductStatus product) {
+		ReorderStatus status = ReorderStatus.Statuses[random.nextInt(ReorderStatus.Statuses.length)];
+		product.setReorderStatus(new AuditItem(product.getProduct().getId(), status.getId(), false,
+				null, null, null));
+		assertSame(status, product.getReorderStatus());
+		return status;
+	}
+
+	/**
+	 * Status, type and brand filter, as set on the product page.
+	 */
+	private static class Filter {
+
+		/**
+		 * Initializes an empty filter, selecting every product.
+		 */
+		Filter() { }
+
+		/**
+		 * Initializes a random filter.  Each facet is left out, empty, or a few values that
+		 * may include values no product has.
+		 * @param random Random source
+		 */
+		Filter(Random random) {
+			if (random.nextInt(3) != 0) {
+				List<ReorderStatus> values = new ArrayList<>();
+				for (ReorderStatus status : ReorderStatus.Statuses) {
+					if (random.nextInt(3) == 0) {
+						values.add(status);
+					}
+				}
+				statuses = values.toArray(new ReorderStatus[0]);
+			}
+			if (random.nextInt(3) != 0) {
+				types = randomValues(random, TYPES, "Unknown Type");
+			}
+			if (random.nextInt(3) != 0) {
+				brands = randomValues(random, BRANDS, "Unknown Brand");
+			}
+		}
+
+		/**
+		 * Copies the filter.
+		 * @return Filter with the same values
+		 */
+		Filter copy() {
+			Filter res = new Filter();
+			res.statuses = statuses;
+			res.types = types;
+			res.brands = brands;
+			return res;
+		}
+
+		/**
+		 * Selects the products in the filter as the product page did before the facets.
+		 * @param products Products to test
+		 * @return Products in the filter by ordinal
+		 */
+		BitSet select(List<ProductStatus> products) {
+			BitSet res = new BitSet(products.size());
+			for (int ordinal = 0; ordinal < products.size(); ++ordinal) {
+				res.set(ordinal, isInFilter(products.get(ordinal)));
+			}
+			return res;
+		}
+
+		/**
+		 * Tests a product field by field.
+		 * @param product Product to test
+		 * @return In filter flag
+		 */
+		private boolean isInFilter(ProductStatus product) {
+			if (statuses != null) {
+				boolean isInFilter = false;
+				for (ReorderStatus status : statuses) {
+					if (status == product.getReorderStatus()) {
+						isInFilter = true;
+						break;
+					}
+				}
+				if (!isInFilter) {
+					return false;
+				}
+			}
+			if ((types != null) && !types.contains(product.getProductType())) {
+				return false;
+			}
+			return (brands == null) || brands.contains(product.getProduct().getDisplayBrandName());
+		}
+
+		/**
+		 * Picks some values for a facet.
+		 * @param random Random source
+		 * @param values Values products have
+		 * @param unknown Value no product has
+		 * @return Chosen values, possibly none
+		 */
+		private static Collection<String> randomValues(Random random, String[] values,
+				String unknown) {
+			List<String> res = new ArrayList<>();
+			for (String value : values) {
+				if (random.nextInt(4) == 0) {
+					res.add(value);
+				}
+			}
+			if (random.nextInt(10) == 0) {
+				res.add(unknown);
+			}
+			return res;
+		}
+
+		@Override
+		public String toString() {
+			return ((statuses == null) ? "all statuses" : Arrays.toString(statuses)) + " " +
+					((types == null) ? "all types" : types) + " " +
+					((brands == null) ? "all brands" : brands);
+		}
+
+		ReorderStatus[] statuses;
+		Collection<String> types;
+		Collection<String> brands;
+	}
+
+	/**
+	 * Product with just the faceted fields.
+	 */
+	private static class TestProduct extends Product {
+		TestProduct(int id) {
+			setId(id);
+		}
+	}
+
+	private static final long SEED = 25;
+	private static final int FUZZ_PRODUCTS = 500;
+	private static final int FUZZ_ROUNDS = 5000;
+	private static final String[] TYPES = {
+			"Grocery", "Dairy", "Frozen", "Beverage", "Snack", "Household", null
+	};
+	private static final String[] BRANDS = {
+			"Acme", "Brand A", "Brand B", "Store Brand", "Organic Co", "Fresh Farms", "Value",
+			"Premium", null
+	};
+}
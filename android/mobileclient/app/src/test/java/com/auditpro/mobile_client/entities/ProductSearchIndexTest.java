@@ -0,0 +1,217 @@
+/*
+  AuditPRO Mobile Client Android
+  Copyright 2018 AuditPRO All Rights Reserved
+ */
+package com.auditpro.mobile_client.entities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Fuzzes ProductSearchIndex against the Product.hasToken scan it replaced.
+ * ProductSearchIndexBenchmarkTest times both on a device.
+ * @author Eric Ruck
+ */
+public class ProductSearchIndexTest {
+
+	@Test
+	public void findMatchesScan() {
+		Random random = new Random(SEED);
+		List<Product> products = randomProducts(random, FUZZ_PRODUCTS);
+		ProductSearchIndex index = indexOf(products);
+		for (int search = 0; search < FUZZ_SEARCHES; ++search) {
+			String[] tokens = randomTokens(random, products);
+			int from = random.nextInt(products.size() + 3);
+			String descr = Arrays.toString(tokens) + " from " + from;
+			assertArrayEquals(descr, scan(products, tokens, from), index.find(tokens, from));
+			if (from == 0) {
+				assertArrayEquals(descr, scan(products, tokens, 0), index.find(tokens));
+			}
+		}
+	}
+
+	@Test
+	public void findMatchesScanExamples() {
+		Random random = new Random(SEED);
+		List<Product> products = randomProducts(random, FUZZ_PRODUCTS);
+		ProductSearchIndex index = indexOf(products);
+		String[][] searches = {
+				{},
+				{ "" },
+				{ "a" },
+				{ "Z" },
+				{ "00" },
+				{ "ch" },
+				{ "choc" },
+				{ "CHOC", "choc" },
+				{ "ch", "choc", "ch" },
+				{ "bar", "bar", "bar" },
+				{ "dark", "" },
+				{ "0", "1", "2" },
+				{ "rc-" },
+				{ "e\nd" },
+				{ "\n" },
+				{ "nothing-matches-this" }
+		};
+		for (String[] tokens : searches) {
+			for (int from : new int[] { 0, 1, products.size() / 2, products.size() - 1,
+					products.size(), products.size() + 1 }) {
+				assertArrayEquals(Arrays.toString(tokens) + " from " + from,
+						scan(products, tokens, from), index.find(tokens, from));
+			}
+		}
+	}
+
+	/**
+	 * Finds the products containing every token as the product page did before the index.
+	 * @param products Products to search
+	 * @param tokens Search tokens
+	 * @param from First ordinal to consider
+	 * @return Matching ordinals in ascending order
+	 */
+	private static int[] scan(List<Product> products, String[] tokens, int from) {
+		int[] res = new int[products.size()];
+		int count = 0;
+		for (int ordinal = from; ordinal < products.size(); ++ordinal) {
+			boolean isMatch = true;
+			for (String token : tokens) {
+				if (!products.get(ordinal).hasToken(token)) {
+					isMatch = false;
+					break;
+				}
+			}
+			if (isMatch) {
+				res[count++] = ordinal;
+			}
+		}
+		return Arrays.copyOf(res, count);
+	}
+
+	/**
+	 * Indexes products in order.
+	 * @param products Products to index
+	 * @return Product index
+	 */
+	private static ProductSearchIndex indexOf(List<Product> products) {
+		ProductSearchIndex res = new ProductSearchIndex();
+		for (int ordinal = 0; ordinal < products.size(); ++ordinal) {
+			assertEquals(ordinal, res.add(products.get(ordinal)));
+		}
+		assertEquals(products.size(), res.size());
+		return res;
+	}
+
+	/**
+	 * Builds products with overlapping names and codes, missing fields and mixed case.
+	 * @param random Random source
+	 * @param count Number of products
+	 * @return Products
+	 */
+	private static List<Product> randomProducts(Random random, int count) {
+		List<Product> res = new ArrayList<>();
+		for (int id = 1; id <= count; ++id) {
+			TestProduct product = new TestProduct(id);
+			StringBuilder name = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+			for (int word = random.nextInt(4); word > 0; --word) {
+				name.append(random.nextInt(20) == 0 ? '\n' : ' ').append(WORDS[random.nextInt(WORDS.length)]);
+			}
+			product.setProductName(random.nextInt(50) == 0 ? null : mixCase(random, name.toString()));
+			product.setUPC(random.nextInt(10) == 0 ? null : digits(random, 12));
+			product.setCurrentReorderCode(random.nextInt(3) == 0 ? null : "RC-" + digits(random, 4));
+			product.setBrandSKU(random.nextInt(2) == 0 ? null : "b" + digits(random, 5));
+			product.setChainSKU(random.nextInt(2) == 0 ? null : mixCase(random, "Ch" + digits(random, 6)));
+			res.add(product);
+		}
+		return res;
+	}
+
+	/**
+	 * Builds search tokens: pieces of product fields, short and repeated tokens, tokens that
+	 * match nothing, and the empty token a leading space produces.
+	 * @param random Random source
+	 * @param products Products to take pieces from
+	 * @return Search tokens
+	 */
+	private static String[] randomTokens(Random random, List<Product> products) {
+		String[] res = new String[random.nextInt(4)];
+		for (int index = 0; index < res.length; ++index) {
+			int kind = random.nextInt(10);
+			if ((index > 0) && (kind == 0)) {
+				// Repeat an earlier token
+				res[index] = res[random.nextInt(index)];
+			} else if (kind == 1) {
+				// Random characters, mostly matching nothing
+				res[index] = mixCase(random, Integer.toString(random.nextInt(100000), 36));
+			} else if (kind == 2) {
+				// Leading white space splits to an empty token
+				res[index] = "";
+			} else {
+				// Piece of a field, often too short to index
+				Product product = products.get(random.nextInt(products.size()));
+				String text = product.getSearchText();
+				int length = 1 + random.nextInt(random.nextInt(3) == 0 ? 2 : 7);
+				if (text.length() < length) {
+					res[index] = text;
+				} else {
+					int start = random.nextInt(text.length() - length + 1);
+					res[index] = mixCase(random, text.substring(start, start + length));
+				}
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Randomly changes the case of letters.
+	 * @param random Random source
+	 * @param source Text to change
+	 * @return Text in mixed case
+	 */
+	private static String mixCase(Random random, String source) {
+		StringBuilder res = new StringBuilder(source.length());
+		for (int index = 0; index < source.length(); ++index) {
+			char ch = source.charAt(index);
+			res.append(random.nextBoolean() ? Character.toUpperCase(ch) : Character.toLowerCase(ch));
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Builds random digits.
+	 * @param random Random source
+	 * @param count Number of digits
+	 * @return Digits
+	 */
+	private static String digits(Random random, int count) {
+		StringBuilder res = new StringBuilder(count);
+		for (int index = 0; index < count; ++index) {
+			res.append((char) ('0' + random.nextInt(10)));
+		}
+		return res.toString();
+	}
+
+	/**
+	 * Product with just the searched fields.
+	 */
+	private static class TestProduct extends Product {
+		TestProduct(int id) {
+			setId(id);
+		}
+	}
+
+	private static final long SEED = 3;
+	private static final int FUZZ_PRODUCTS = 600;
+	private static final int FUZZ_SEARCHES = 20000;
+	private static final String[] WORDS = {
+			"Dark", "Milk", "Chocolate", "Bar", "Choc", "Chip", "Cookie", "Oat", "Bran", "Flakes",
+			"Orange", "Juice", "Apple", "Sauce", "Cheddar", "Cheese", "Crackers", "Sea", "Salt",
+			"12oz", "16oz", "2pk", "Family", "Size", "Organic", "Caf\u00e9", "Cr\u00e8me"
+	};
+}